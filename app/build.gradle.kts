@@ -29,10 +29,14 @@ android {
         sourceCompatibility = JavaVersion.VERSION_1_8
         targetCompatibility = JavaVersion.VERSION_1_8
     }
+    testOptions {
+        // Log и детекторы жестов в локальных тестах ничего не делают; GLES20 и Matrix подменяются из src/test
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 dependencies {
-
+    implementation(project(":mesh"))
 
     implementation("androidx.appcompat:appcompat:1.7.0")
     implementation("com.google.android.material:material:1.12.0")
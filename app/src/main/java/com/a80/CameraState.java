@@ -0,0 +1,69 @@
+package com.a80;
+
+// Состояние камеры, которое UI-поток публикует раз в vsync, а GL-поток читает раз в кадр.
+// Два слота и счетчик версий (seqlock): писатель никогда не ждет, читатель повторяет чтение,
+// если слот переписали прямо во время копирования. Кадр никогда не видит наполовину обновленное состояние
+public final class CameraState {
+    private static final long PREDICTION_LEAD_NANOS = 8_000_000L; // Кадр попадет на экран примерно через полкадра после отрисовки
+    private static final long MAX_PREDICTION_NANOS = 24_000_000L; // Дальше полутора кадров не экстраполируем
+
+    // Копия состояния для одного кадра; принадлежит читающему потоку
+    public static final class Snapshot {
+        public float rotationX, rotationY; // Углы вращения, градусы
+        public float scale = 1.0f; // Масштаб
+        public float velocityX, velocityY; // Скорость вращения, градусов в секунду
+        public long timeNanos; // Время vsync, к которому относится состояние (System.nanoTime)
+
+        // Сдвигаем углы вперед по скорости к моменту показа кадра; горизонт короткий, чтобы не промахиваться
+        public void predict(long drawTimeNanos) {
+            long ahead = drawTimeNanos + PREDICTION_LEAD_NANOS - timeNanos;
+            if (timeNanos == 0 || ahead <= 0) return;
+            float dt = Math.min(ahead, MAX_PREDICTION_NANOS) / 1e9f;
+            rotationX += velocityX * dt;
+            rotationY += velocityY * dt;
+        }
+    }
+
+    // Слот двойного буфера; нечетная версия означает, что писатель внутри
+    private static final class Slot {
+        volatile int version;
+        volatile float rotationX, rotationY;
+        volatile float scale = 1.0f;
+        volatile float velocityX, velocityY;
+        volatile long timeNanos;
+    }
+
+    private final Slot[] slots = { new Slot(), new Slot() };
+    private volatile int published; // Слот с последним полным состоянием
+
+    // Публикуем новое состояние; писатель должен быть один (UI-поток)
+    public void publish(float rotationX, float rotationY, float scale, float velocityX, float velocityY, long timeNanos) {
+        int target = published ^ 1; // Пишем в слот, который читатели сейчас не выбирают
+        Slot slot = slots[target];
+        slot.version++; // Нечетная: слот занят
+        slot.rotationX = rotationX;
+        slot.rotationY = rotationY;
+        slot.scale = scale;
+        slot.velocityX = velocityX;
+        slot.velocityY = velocityY;
+        slot.timeNanos = timeNanos;
+        slot.version++; // Четная: слот согласован
+        published = target;
+    }
+
+    // Копируем последнее опубликованное состояние; без блокировок и без выделения памяти
+    public void read(Snapshot out) {
+        while (true) {
+            Slot slot = slots[published];
+            int version = slot.version;
+            if ((version & 1) != 0) continue; // Писатель уже переписывает этот слот
+            out.rotationX = slot.rotationX;
+            out.rotationY = slot.rotationY;
+            out.scale = slot.scale;
+            out.velocityX = slot.velocityX;
+            out.velocityY = slot.velocityY;
+            out.timeNanos = slot.timeNanos;
+            if (slot.version == version) return; // Слот не менялся во время копирования
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.a80;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+// Текстура, заранее сжатая в ETC1 или ETC2, из файла KTX или PKM. Уровни mip лежат в прямых буферах
+// и уходят в glCompressedTexImage2D как есть: ни распаковки, ни сжатия на устройстве
+public final class CompressedImage {
+    public static final int GL_ETC1_RGB8_OES = 0x8D64;
+    public static final int GL_COMPRESSED_RGB8_ETC2 = 0x9274;
+    public static final int GL_COMPRESSED_RGBA8_ETC2_EAC = 0x9278;
+
+    private static final byte[] KTX_IDENTIFIER = {
+            (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+    };
+    private static final int KTX_HEADER_SIZE = 64;
+    private static final int KTX_ENDIANNESS = 0x04030201; // Так читается поле порядка байт, если он совпал
+    private static final int PKM_HEADER_SIZE = 16;
+    private static final int MAX_DIMENSION = 16384; // Больше не бывает: испорченный заголовок
+
+    public final int format; // Внутренний формат GL
+    public final int width; // Размер уровня 0 в пикселях
+    public final int height;
+    private final ByteBuffer[] levels; // Уровни mip от полного размера
+
+    private CompressedImage(int format, int width, int height, ByteBuffer[] levels) {
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.levels = levels;
+    }
+
+    // Читаем KTX 1.1 или PKM; формат определяется по сигнатуре
+    public static CompressedImage read(InputStream input) throws IOException {
+        ReadableByteChannel channel = Channels.newChannel(input);
+        ByteBuffer header = ByteBuffer.allocate(KTX_HEADER_SIZE);
+        header.limit(PKM_HEADER_SIZE);
+        readFully(channel, header);
+        if (header.get(0) == 'P' && header.get(1) == 'K' && header.get(2) == 'M' && header.get(3) == ' ') {
+            return readPkm(channel, header);
+        }
+        for (int i = 0; i < KTX_IDENTIFIER.length; i++) {
+            if (header.get(i) != KTX_IDENTIFIER[i]) throw new IOException("Not a KTX or PKM file");
+        }
+        header.limit(KTX_HEADER_SIZE);
+        readFully(channel, header);
+        return readKtx(channel, header);
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public ByteBuffer getLevel(int level) {
+        return levels[level];
+    }
+
+    public int getLevelWidth(int level) {
+        return Math.max(1, width >> level);
+    }
+
+    public int getLevelHeight(int level) {
+        return Math.max(1, height >> level);
+    }
+
+    // Полная ли цепочка mip: без нее нельзя фильтровать GL_LINEAR_MIPMAP_LINEAR
+    public boolean hasFullMipChain() {
+        return levels.length == 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+
+    // Память всех уровней на GPU
+    public long getByteCount() {
+        long bytes = 0;
+        for (ByteBuffer level : levels) bytes += level.capacity();
+        return bytes;
+    }
+
+    // Отбрасываем старшие уровни, пока картинка не уложится в размер и память; null, если не уложится
+    public CompressedImage fitTo(int maxSize, long maxBytes) {
+        int first = 0;
+        long bytes = getByteCount();
+        while (getLevelWidth(first) > maxSize || getLevelHeight(first) > maxSize || bytes > maxBytes) {
+            if (first == levels.length - 1) return null;
+            bytes -= levels[first].capacity();
+            first++;
+        }
+        if (first == 0) return this;
+        ByteBuffer[] rest = new ByteBuffer[levels.length - first];
+        System.arraycopy(levels, first, rest, 0, rest.length);
+        return new CompressedImage(format, getLevelWidth(first), getLevelHeight(first), rest);
+    }
+
+    // PKM: один уровень ETC1 (версия 10) или ETC2 (версия 20), поля big-endian
+    private static CompressedImage readPkm(ReadableByteChannel channel, ByteBuffer header) throws IOException {
+        header.order(ByteOrder.BIG_ENDIAN);
+        int type = header.getShort(6) & 0xFFFF;
+        int format;
+        switch (type) {
+            case 0:
+                format = GL_ETC1_RGB8_OES;
+                break;
+            case 1:
+                format = GL_COMPRESSED_RGB8_ETC2;
+                break;
+            case 3:
+                format = GL_COMPRESSED_RGBA8_ETC2_EAC;
+                break;
+            default:
+                throw new IOException("Unsupported PKM format " + type);
+        }
+        int width = header.getShort(12) & 0xFFFF; // Исходный размер; выровненный до блоков вычисляется сам
+        int height = header.getShort(14) & 0xFFFF;
+        checkSize(width, height);
+        ByteBuffer level = ByteBuffer.allocateDirect(levelSize(format, width, height));
+        readFully(channel, level);
+        level.flip();
+        return new CompressedImage(format, width, height, new ByteBuffer[] { level });
+    }
+
+    // KTX 1.1: двумерная текстура без массивов и граней куба, уровни идут подряд после пар ключ-значение
+    private static CompressedImage readKtx(ReadableByteChannel channel, ByteBuffer header) throws IOException {
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(12) != KTX_ENDIANNESS) header.order(ByteOrder.BIG_ENDIAN);
+        int glType = header.getInt(16);
+        int format = header.getInt(28);
+        int width = header.getInt(36);
+        int height = header.getInt(40);
+        int depth = header.getInt(44);
+        int arrayElements = header.getInt(48);
+        int faces = header.getInt(52);
+        int levelCount = Math.max(1, header.getInt(56)); // 0 - уровни предлагается построить самим
+        int keyValueBytes = header.getInt(60);
+        if (glType != 0) throw new IOException("KTX texture is not compressed");
+        if (format != GL_ETC1_RGB8_OES && format != GL_COMPRESSED_RGB8_ETC2 && format != GL_COMPRESSED_RGBA8_ETC2_EAC) {
+            throw new IOException("Unsupported KTX format 0x" + Integer.toHexString(format));
+        }
+        if (depth > 1 || arrayElements > 0 || faces != 1) throw new IOException("Only 2D KTX textures are supported");
+        checkSize(width, height);
+        if (keyValueBytes < 0 || levelCount > 32) throw new IOException("Corrupt KTX header");
+
+        skip(channel, keyValueBytes);
+        ByteBuffer sizeField = ByteBuffer.allocate(4).order(header.order());
+        ByteBuffer[] levels = new ByteBuffer[levelCount];
+        for (int i = 0; i < levelCount; i++) {
+            sizeField.clear();
+            readFully(channel, sizeField);
+            int imageSize = sizeField.getInt(0);
+            int expected = levelSize(format, Math.max(1, width >> i), Math.max(1, height >> i));
+            if (imageSize != expected) throw new IOException("Corrupt KTX level " + i);
+            levels[i] = ByteBuffer.allocateDirect(imageSize);
+            readFully(channel, levels[i]);
+            levels[i].flip();
+            skip(channel, 3 - (imageSize + 3) % 4); // Выравнивание уровня до 4 байт
+        }
+        return new CompressedImage(format, width, height, levels);
+    }
+
+    // Блоки 4x4 по 8 байт, у RGBA с EAC - по 16
+    private static int levelSize(int format, int width, int height) {
+        int blockBytes = format == GL_COMPRESSED_RGBA8_ETC2_EAC ? 16 : 8;
+        return ((width + 3) / 4) * ((height + 3) / 4) * blockBytes;
+    }
+
+    private static void checkSize(int width, int height) throws IOException {
+        if (width <= 0 || height <= 0 || width > MAX_DIMENSION || height > MAX_DIMENSION) {
+            throw new IOException("Invalid texture size " + width + "x" + height);
+        }
+    }
+
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) throw new IOException("Unexpected end of texture file");
+        }
+    }
+
+    private static void skip(ReadableByteChannel channel, int bytes) throws IOException {
+        if (bytes > 0) readFully(channel, ByteBuffer.allocate(bytes));
+    }
+}
@@ -1,34 +1,56 @@
 package com.a80;
 
+import android.content.ComponentCallbacks2;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
 import android.util.Log;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
-// Класс рендерера, отвечающий за рисование куба и загрузку моделей
+// Класс рендерера, отвечающий за рисование куба и сцены из загруженных моделей.
+// Каждый кадр видимые части всех моделей собираются в список отрисовки, отсортированный по состоянию GL.
+// В режиме нагрузки сцена рисуется сеткой копий, чтобы мерить, сколько экземпляров держит 60 fps.
+// Убранная с экрана сцена уходит в кэш моделей и показывается снова без загрузки
 public class CubeRenderer implements GLSurfaceView.Renderer {
     private static final String TAG = "CubeRenderer"; // Метка для логирования
-    private final List<Model> models = new ArrayList<>(); // Список моделей для отрисовки
+    private final List<Model> models = new ArrayList<>(); // Модели сцены, каждая со своей матрицей
+    private final DrawList drawList = new DrawList(); // Видимые части текущего кадра
     private final TouchHandler touchHandler; // Обработчик касаний
+    private final CameraState.Snapshot camera = new CameraState.Snapshot(); // Состояние камеры текущего кадра
+    private final ShaderRegistry shaders = new ShaderRegistry(); // Шейдерные программы
+    private final FrameProfiler profiler = new FrameProfiler(); // Время фаз кадра и счетчики отрисовки
+    private final TextureCache textures = new TextureCache(TextureCache.DEFAULT_BUDGET_BYTES); // Текстуры материалов
+    private final ModelCache modelCache = new ModelCache(ModelCache.DEFAULT_BUDGET_BYTES, textures); // Недавние сцены
+    private volatile String sceneKey; // Ключ сцены на экране в кэше моделей; null - сцена не кэшируется
+    private RenderBackend backend = new Es2Backend(); // Привязка вершин частей; выбирается по контексту
 
     private final float[] projectionMatrix = new float[16]; // Матрица проекции
     private final float[] viewMatrix = new float[16]; // Матрица вида
     private final float[] modelMatrix = new float[16]; // Матрица модели
+    private final float[] modelViewMatrix = new float[16]; // Матрица модели в пространстве камеры
+    private final float[] mvpMatrix = new float[16]; // Матрица MVP для отрисовки; кадр не выделяет память
+    private final float[] center = new float[4]; // Центр модели в координатах модели
+    private final float[] sceneCenter = new float[4]; // Центр модели в координатах сцены
+    private final float[] viewCenter = new float[4]; // Центр модели в пространстве камеры
+    private int viewportHeight = 1; // Высота области рендеринга в пикселях
+    private final Frustum frustum = new Frustum(); // Пирамида видимости текущего кадра
     private boolean wireframeMode = false; // Режим отображения в Wireframe
+    private volatile Runnable renderRequest; // Запрос следующего кадра в режиме RENDERMODE_WHEN_DIRTY
+    private int stressGridSize; // Копий по каждой оси в режиме нагрузки; 0 - режим выключен
+    private InstanceBuffer stressGrid; // Матрицы копий, общие для всех моделей сцены
 
     // Конструктор класса рендерера
     public CubeRenderer(TouchHandler touchHandler) {
         this.touchHandler = touchHandler; // Инициализируем обработчик касаний
+        textures.setOnDecoded(this::requestRender); // Декодированную текстуру загрузит следующий кадр
         models.add(createCube()); // Создаем куб и добавляем в список моделей
     }
 
@@ -37,33 +59,134 @@ public class CubeRenderer implements GLSurfaceView.Renderer {
         return touchHandler;
     }
 
+    // Кадры рисуются только по запросу: сцена сама просит кадр, когда меняется
+    public void setRenderRequest(Runnable renderRequest) {
+        this.renderRequest = renderRequest;
+    }
+
+    // Просим нарисовать кадр; можно вызывать из любого потока
+    public void requestRender() {
+        Runnable request = renderRequest;
+        if (request != null) request.run();
+    }
+
+    // Кэш текстур материалов; загрузчик берет в нем ссылки для новой сцены
+    public TextureCache getTextureCache() {
+        return textures;
+    }
+
     // Устанавливаем режим Wireframe
     public void setWireframeMode(boolean wireframeMode) {
         this.wireframeMode = wireframeMode;
+        requestRender();
     }
 
-    // Загружаем модель из входного потока
-    public void loadModel(InputStream objInputStream) {
-        try {
-            Model model = parseObj(objInputStream); // Парсим OBJ-файл
-            models.clear(); // Очищаем список моделей
-            models.add(model); // Добавляем загруженную модель
-            Log.d(TAG, "Model loaded successfully."); // Логируем успех
-        } catch (Exception e) {
-            Log.e(TAG, "Error loading model: " + e.getMessage(), e); // Логируем ошибку загрузки
-        }
+    public ModelCache getModelCache() {
+        return modelCache;
+    }
+
+    // Ключ сцены на экране; можно читать из любого потока
+    public String getSceneKey() {
+        return sceneKey;
+    }
+
+    // Показываем готовую модель вместо текущей сцены; вызывается на GL-потоке
+    public void setModel(Model model) {
+        setModels(Collections.singletonList(model));
+    }
+
+    // Показываем сцену из нескольких моделей вместо текущей; вызывается на GL-потоке
+    public void setModels(List<Model> scene) {
+        setModels(scene, null);
     }
 
-    // Выгружаем все модели
+    // То же для сцены с ключом: когда ее уберут с экрана, она попадет в кэш моделей под этим ключом
+    public void setModels(List<Model> scene, String key) {
+        releaseModels(); // Старая сцена уходит в кэш или освобождается
+        models.addAll(scene); // Добавляем загруженные модели
+        sceneKey = key;
+        applyStressGrid(); // Новая сцена рисуется той же сеткой
+        Log.d(TAG, "Scene loaded: " + scene.size() + " models."); // Логируем успех
+        requestRender();
+    }
+
+    // Убираем сцену с экрана; загруженная из файлов сцена остается в кэше моделей
     public void unloadModels() {
-        models.clear(); // Очищаем список моделей
+        releaseModels(); // Отдаем сцену в кэш или освобождаем буферы и очищаем список моделей
         models.add(createCube()); // Добавляем куб обратно
+        applyStressGrid();
         Log.d(TAG, "All models unloaded."); // Логируем выгрузку
+        requestRender();
+    }
+
+    // Режим нагрузки: сцена рисуется сеткой size x size x size копий; 0 выключает режим.
+    // На ES 3.0 каждая часть рисуется один раз на все копии, на ES 2.0 - по вызову на копию
+    public void setStressGrid(int size) {
+        stressGridSize = size;
+        applyStressGrid();
+        Log.d(TAG, "Stress grid: " + size * size * size + " instances.");
+        requestRender();
+    }
+
+    // Строим сетку по границам текущей сцены и раздаем ее моделям
+    private void applyStressGrid() {
+        if (stressGrid != null) stressGrid.release();
+        stressGrid = stressGridSize > 0 ? InstanceBuffer.grid(stressGridSize, sceneBounds()) : null;
+        for (Model model : models) model.setInstances(stressGrid);
+    }
+
+    // Объединение границ всех моделей; загруженные модели стоят в сцене без смещения
+    private float[] sceneBounds() {
+        float[] bounds = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,
+                -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+        for (Model model : models) {
+            float[] b = model.getBounds();
+            for (int axis = 0; axis < 3; axis++) {
+                bounds[axis] = Math.min(bounds[axis], b[axis]);
+                bounds[axis + 3] = Math.max(bounds[axis + 3], b[axis + 3]);
+            }
+        }
+        return bounds;
+    }
+
+    // Система просит память; вызывается на GL-потоке. Текстуры вытесненных сцен кэш моделей убирает сам,
+    // а при сильной нехватке уходят и остальные текстуры без ссылок
+    public void onTrimMemory(int level) {
+        modelCache.onTrimMemory(level);
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            textures.trimUnreferenced();
+        }
+    }
+
+    // Сцену с ключом отдаем в кэш моделей, остальные освобождаем: буферы на GPU и текстуры материалов
+    private void releaseModels() {
+        if (sceneKey != null) {
+            modelCache.put(sceneKey, new ArrayList<>(models));
+            sceneKey = null;
+        } else {
+            releaseMaterials(models);
+            for (Model model : models) model.release();
+        }
+        models.clear();
+    }
+
+    // Отпускаем текстуры материалов сцены; материал бывает общим у нескольких моделей, отпускаем его один раз.
+    // Вызывается и для сцены, которая так и не попала на экран
+    public static void releaseMaterials(List<Model> scene) {
+        Set<Material> released = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Model model : scene) {
+            if (released.add(model.getMaterial())) model.getMaterial().release();
+        }
     }
 
     // Метод, вызываемый при создании поверхности для рендеринга
     @Override
     public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+        GlCapabilities.detect(); // Определяем возможности драйвера
+        backend = GlCapabilities.supportsVertexArrays() ? new Es3Backend() : new Es2Backend(); // ES 2.0 - запасной путь
+        shaders.buildAll(); // Собираем шейдеры один раз на контекст
+        textures.onContextCreated(); // Текстуры старого контекста декодируются заново
         GLES20.glClearColor(0, 0, 0, 1); // Устанавливаем цвет фона
         GLES20.glEnable(GLES20.GL_DEPTH_TEST); // Включаем тест глубины
         Matrix.setLookAtM(viewMatrix, 0, 0, 0, 20, 0, 0, 0, 0, 1, 0); // Устанавливаем матрицу вида
@@ -72,27 +195,71 @@ public class CubeRenderer implements GLSurfaceView.Renderer {
     // Метод, вызываемый для отрисовки каждого кадра
     @Override
     public void onDrawFrame(GL10 gl) {
+        profiler.beginFrame();
+        if (textures.uploadPending()) requestRender(); // Остальные готовые текстуры - в следующих кадрах
+        touchHandler.getCameraState().read(camera); // Одна согласованная копия на весь кадр
+        camera.predict(System.nanoTime()); // Поправка на время до показа кадра
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT); // Очищаем буферы
 
         Matrix.setIdentityM(modelMatrix, 0); // Обнуляем матрицу модели
         Matrix.translateM(modelMatrix, 0, 0, 0, -10); // Перемещаем модель
-        Matrix.rotateM(modelMatrix, 0, touchHandler.getRotationX(), 1, 0, 0); // Вращаем по оси X
-        Matrix.rotateM(modelMatrix, 0, touchHandler.getRotationY(), 0, 1, 0); // Вращаем по оси Y
-        Matrix.scaleM(modelMatrix, 0, touchHandler.getScale(), touchHandler.getScale(), touchHandler.getScale()); // Масштабируем модель
+        Matrix.rotateM(modelMatrix, 0, camera.rotationX, 1, 0, 0); // Вращаем по оси X
+        Matrix.rotateM(modelMatrix, 0, camera.rotationY, 0, 1, 0); // Вращаем по оси Y
+        Matrix.scaleM(modelMatrix, 0, camera.scale, camera.scale, camera.scale); // Масштабируем модель
 
-        float[] mvpMatrix = new float[16]; // Матрица MVP для отрисовки
-        Matrix.multiplyMM(mvpMatrix, 0, projectionMatrix, 0, viewMatrix, 0); // Умножаем проекцию на вид
-        Matrix.multiplyMM(mvpMatrix, 0, mvpMatrix, 0, modelMatrix, 0); // Умножаем на матрицу модели
+        Matrix.multiplyMM(modelViewMatrix, 0, viewMatrix, 0, modelMatrix, 0); // Умножаем вид на матрицу модели
+        Matrix.multiplyMM(mvpMatrix, 0, projectionMatrix, 0, modelViewMatrix, 0); // Умножаем проекцию на результат
 
-        for (Model model : models) {
-            model.draw(mvpMatrix, wireframeMode); // Отрисовываем каждую модель
+        profiler.endPhase(FrameProfiler.SETUP);
+
+        int culled = 0;
+        int total = 0;
+        drawList.clear();
+        for (int i = 0; i < models.size(); i++) { // Без итератора: кадр не выделяет память
+            Model model = models.get(i);
+            model.updateMvp(mvpMatrix);
+            frustum.extract(model.getMvp()); // Плоскости в координатах модели
+            if (model.getLodCount() > 1) model.selectLod(projectedSize(model)); // Уровень детализации по размеру на экране
+            culled += model.cull(frustum);
+            total += model.getChunkCount();
+            model.collect(drawList, wireframeMode);
         }
+        drawList.sort(); // Части с одинаковой программой, форматом и материалом идут подряд
+        profiler.countChunks(culled, total);
+        profiler.endPhase(FrameProfiler.CULLING);
+
+        drawList.submit(shaders, backend, wireframeMode, profiler);
+        profiler.endPhase(FrameProfiler.SUBMISSION);
+        profiler.endFrame();
+    }
+
+    // Профилировщик кадра; HUD и экспорт читают его с UI-потока
+    public FrameProfiler getProfiler() {
+        return profiler;
+    }
+
+    // Диаметр ограничивающей сферы модели на экране в пикселях
+    private float projectedSize(Model model) {
+        float[] bounds = model.getBounds();
+        float dx = bounds[3] - bounds[0], dy = bounds[4] - bounds[1], dz = bounds[5] - bounds[2];
+        float radius = 0.5f * (float) Math.sqrt(dx * dx + dy * dy + dz * dz) * camera.scale * model.getTransformScale();
+        if (model.getInstances() != null) radius *= model.getInstances().getScale(); // Размер одной копии
+        center[0] = (bounds[0] + bounds[3]) * 0.5f;
+        center[1] = (bounds[1] + bounds[4]) * 0.5f;
+        center[2] = (bounds[2] + bounds[5]) * 0.5f;
+        center[3] = 1;
+        Matrix.multiplyMV(sceneCenter, 0, model.getTransform(), 0, center, 0);
+        Matrix.multiplyMV(viewCenter, 0, modelViewMatrix, 0, sceneCenter, 0);
+        float distance = -viewCenter[2]; // Камера смотрит вдоль -Z
+        if (distance <= radius) return Float.MAX_VALUE; // Камера внутри сферы: нужна полная детализация
+        return radius * projectionMatrix[5] * viewportHeight / distance;
     }
 
     // Метод, вызываемый при изменении размеров поверхности
     @Override
     public void onSurfaceChanged(GL10 gl, int width, int height) {
         GLES20.glViewport(0, 0, width, height); // Устанавливаем размер области рендеринга
+        viewportHeight = height;
         float aspectRatio = (float) width / height; // Вычисляем соотношение сторон
         Matrix.frustumM(projectionMatrix, 0, -aspectRatio, aspectRatio, -1, 1, 2, 100); // Устанавливаем матрицу проекции
     }
@@ -116,42 +283,4 @@ public class CubeRenderer implements GLSurfaceView.Renderer {
 
         return new Model(vertices, indices); // Возвращаем новый объект модели куба
     }
-
-    // Метод для парсинга OBJ-файла
-    private Model parseObj(InputStream inputStream) throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream)); // Читаем содержимое
-        List<Float> vertices = new ArrayList<>(); // Список вершин
-        List<Short> indices = new ArrayList<>(); // Список индексов
-
-        String line;
-        while ((line = reader.readLine()) != null) { // Читаем файл построчно
-            String[] tokens = line.split("\\s+"); // Разбиваем строку на токены
-            if (tokens[0].equals("v")) { // Если токен - вершина
-                vertices.add(Float.parseFloat(tokens[1])); // Добавляем координаты вершины
-                vertices.add(Float.parseFloat(tokens[2]));
-                vertices.add(Float.parseFloat(tokens[3]));
-            } else if (tokens[0].equals("f")) { // Если токен - грань
-                for (int i = 1; i <= 3; i++) { // Добавляем индексы вершин
-                    String[] parts = tokens[i].split("/");
-                    indices.add((short) (Integer.parseInt(parts[0]) - 1)); // Индексы начинаются с 1
-                }
-            }
-        }
-
-        return new Model(toFloatArray(vertices), toShortArray(indices)); // Возвращаем модель
-    }
-
-    // Преобразование списка вершин в массив
-    private float[] toFloatArray(List<Float> list) {
-        float[] array = new float[list.size()];
-        for (int i = 0; i < list.size(); i++) array[i] = list.get(i); // Копируем значения
-        return array; // Возвращаем массив
-    }
-
-    // Преобразование списка индексов в массив
-    private short[] toShortArray(List<Short> list) {
-        short[] array = new short[list.size()];
-        for (int i = 0; i < list.size(); i++) array[i] = list.get(i); // Копируем значения
-        return array; // Возвращаем массив
-    }
 }
\ No newline at end of file
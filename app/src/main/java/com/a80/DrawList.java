@@ -0,0 +1,131 @@
+package com.a80;
+
+import android.opengl.GLES20;
+
+import java.util.Arrays;
+
+// Список отрисовки кадра: видимые части моделей с ключом сортировки.
+// Ключ упорядочивает их по программе, формату вершин, материалу и буферу, поэтому при отправке
+// программа и материал меняются по разу на группу, а не на каждую часть. Только GL-поток
+public final class DrawList {
+    private static final float[] LIGHT_POSITION = { 0, 0, 100 }; // Свет со стороны камеры
+
+    // Поля ключа от старших битов к младшим; номер элемента в младших битах делает ключи уникальными
+    private static final int PROGRAM_SHIFT = 60; // 3 бита: программа (ключ остается положительным)
+    private static final int LAYOUT_SHIFT = 52; // 8 бит: формат вершин и индексов
+    private static final int MATERIAL_SHIFT = 36; // 16 бит: младшие биты номера материала, только для сортировки
+    private static final int BUFFER_SHIFT = 20; // 16 бит: вершинный буфер
+    private static final long FIELD_MASK = 0xFFFF;
+    private static final long INDEX_MASK = (1 << BUFFER_SHIFT) - 1;
+
+    private Model[] models = new Model[64]; // Модель элемента
+    private int[] submeshes = new int[64]; // Часть модели на текущем уровне детализации
+    private long[] keys = new long[64]; // Ключи сортировки
+    private int size;
+
+    public void clear() {
+        Arrays.fill(models, 0, size, null); // Не держим выгруженные модели до следующего кадра
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Добавляем часть; массивы растут только когда сцена становится больше прежней
+    public void add(Model model, int submesh, int program, int layout, int material, int buffer) {
+        if (size == keys.length) {
+            int capacity = size * 2;
+            models = Arrays.copyOf(models, capacity);
+            submeshes = Arrays.copyOf(submeshes, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+        }
+        models[size] = model;
+        submeshes[size] = submesh;
+        keys[size] = (long) program << PROGRAM_SHIFT
+                | (layout & 0xFFL) << LAYOUT_SHIFT
+                | (material & FIELD_MASK) << MATERIAL_SHIFT
+                | (buffer & FIELD_MASK) << BUFFER_SHIFT
+                | (size & INDEX_MASK);
+        size++;
+    }
+
+    // Сортировка вставками: порядок моделей от кадра к кадру почти не меняется, поэтому
+    // список почти упорядочен и сортируется за линейное время без выделения памяти
+    public void sort() {
+        for (int i = 1; i < size; i++) {
+            long key = keys[i];
+            int j = i - 1;
+            while (j >= 0 && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                j--;
+            }
+            keys[j + 1] = key;
+        }
+    }
+
+    // Отправляем отсортированный список; программа и материал меняются только на границах групп,
+    // вершины частей привязывает backend
+    public void submit(ShaderRegistry shaders, RenderBackend backend, boolean wireframeMode, FrameProfiler profiler) {
+        int currentProgram = -1;
+        // Сравниваем сами материалы: номера растут всю жизнь процесса, и 16 бит ключа у разных материалов совпадают
+        Material currentMaterial = null;
+        boolean currentTexCoords = false; // От формата зависит, есть ли текстурные координаты
+        ShaderProgram program = null;
+        if (wireframeMode) GLES20.glLineWidth(6.0f); // Толщина линии для wireframe
+
+        for (int k = 0; k < size; k++) {
+            long key = keys[k];
+            int item = (int) (key & INDEX_MASK);
+            int programId = (int) (key >>> PROGRAM_SHIFT);
+            if (programId != currentProgram) {
+                if (program != null && program.isReady()) backend.endProgram(program);
+                currentProgram = programId;
+                currentMaterial = null;
+                program = shaders.get(programId);
+                if (!program.isReady()) continue; // Программа не собралась: ее части не рисуем
+                useProgram(program, wireframeMode);
+                backend.beginProgram(program);
+                profiler.countStateChange();
+            }
+            if (!program.isReady()) continue;
+
+            Model model = models[item];
+            Material material = model.getMaterial();
+            boolean texCoords = model.hasTexCoords();
+            if ((material != currentMaterial || texCoords != currentTexCoords) && program.getBaseColorHandle() >= 0) {
+                bindMaterial(program, material, texCoords);
+                currentMaterial = material;
+                currentTexCoords = texCoords;
+                profiler.countStateChange();
+            }
+            backend.bindSubmesh(model, submeshes[item], program, wireframeMode);
+            profiler.countStateChange();
+            model.drawSubmesh(submeshes[item], program, wireframeMode, profiler);
+        }
+
+        if (program != null && program.isReady()) backend.endProgram(program);
+        backend.finish();
+    }
+
+    // Включаем программу и задаем общие для всех ее частей uniform
+    private static void useProgram(ShaderProgram program, boolean wireframeMode) {
+        program.use();
+        if (program.getWireframeModeHandle() >= 0) {
+            GLES20.glUniform1i(program.getWireframeModeHandle(), wireframeMode ? 1 : 0); // Белый цвет для wireframe
+        }
+        if (program.getLightPositionHandle() >= 0) {
+            GLES20.glUniform3fv(program.getLightPositionHandle(), 1, LIGHT_POSITION, 0);
+        }
+        if (program.getDiffuseMapHandle() >= 0) GLES20.glUniform1i(program.getDiffuseMapHandle(), 0); // Блок 0
+    }
+
+    // Цвет и текстура материала; пока текстура не загружена, часть рисуется цветом
+    private static void bindMaterial(ShaderProgram program, Material material, boolean hasTexCoords) {
+        GLES20.glUniform3fv(program.getBaseColorHandle(), 1, material.getDiffuseColor(), 0);
+        if (program.getTexturedHandle() < 0) return;
+        Texture texture = material.getDiffuseMap();
+        boolean textured = texture != null && hasTexCoords && texture.bind();
+        GLES20.glUniform1i(program.getTexturedHandle(), textured ? 1 : 0);
+    }
+}
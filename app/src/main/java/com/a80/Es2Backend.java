@@ -0,0 +1,42 @@
+package com.a80;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+// Отрисовка на ES 2.0: атрибуты включаются на программу, указатели задаются на каждую часть.
+// Текстурные координаты включает сама часть: они есть не у всех частей программы
+public final class Es2Backend implements RenderBackend {
+    @Override
+    public void beginProgram(ShaderProgram program) {
+        GLES20.glEnableVertexAttribArray(program.getPositionHandle());
+        if (program.getNormalHandle() >= 0) GLES20.glEnableVertexAttribArray(program.getNormalHandle());
+        int instanceHandle = program.getInstanceMatrixHandle();
+        for (int column = 0; instanceHandle >= 0 && column < 4; column++) { // Матрица экземпляра - четыре столбца
+            GLES20.glEnableVertexAttribArray(instanceHandle + column);
+            GLES30.glVertexAttribDivisor(instanceHandle + column, 1); // Столбец меняется раз на экземпляр
+        }
+    }
+
+    @Override
+    public void bindSubmesh(Model model, int submesh, ShaderProgram program, boolean wireframeMode) {
+        model.bindSubmesh(submesh, program, wireframeMode);
+    }
+
+    @Override
+    public void endProgram(ShaderProgram program) {
+        GLES20.glDisableVertexAttribArray(program.getPositionHandle());
+        if (program.getNormalHandle() >= 0) GLES20.glDisableVertexAttribArray(program.getNormalHandle());
+        if (program.getTexCoordHandle() >= 0) GLES20.glDisableVertexAttribArray(program.getTexCoordHandle());
+        int instanceHandle = program.getInstanceMatrixHandle();
+        for (int column = 0; instanceHandle >= 0 && column < 4; column++) {
+            GLES30.glVertexAttribDivisor(instanceHandle + column, 0); // Те же номера атрибутов у других программ
+            GLES20.glDisableVertexAttribArray(instanceHandle + column);
+        }
+    }
+
+    @Override
+    public void finish() {
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    }
+}
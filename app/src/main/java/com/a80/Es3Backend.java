@@ -0,0 +1,26 @@
+package com.a80;
+
+import android.opengl.GLES30;
+
+// Отрисовка на ES 3.0: формат вершин, буферы и делители части записаны в ее VAO один раз,
+// поэтому на каждую часть остается привязка VAO и вызов отрисовки
+public final class Es3Backend implements RenderBackend {
+    @Override
+    public void beginProgram(ShaderProgram program) {
+        // Включенные атрибуты хранятся в VAO частей
+    }
+
+    @Override
+    public void bindSubmesh(Model model, int submesh, ShaderProgram program, boolean wireframeMode) {
+        model.bindVertexArray(submesh, wireframeMode);
+    }
+
+    @Override
+    public void endProgram(ShaderProgram program) {
+    }
+
+    @Override
+    public void finish() {
+        GLES30.glBindVertexArray(0); // Дальнейшие привязки буферов не должны попасть в VAO части
+    }
+}
@@ -0,0 +1,324 @@
+package com.a80;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Профилировщик кадра: CPU-время фаз onDrawFrame, GPU-время через EXT_disjoint_timer_query,
+// количество треугольников, вызовов отрисовки, смен состояния и отсеченных кусков. Пишет GL-поток, читают HUD и экспорт на UI-потоке
+public final class FrameProfiler {
+    public static final int SETUP = 0; // Камера и матрицы
+    public static final int CULLING = 1; // Выбор уровней детализации и отсечение кусков
+    public static final int SUBMISSION = 2; // Отправка команд отрисовки
+    public static final int FRAME = 3; // Весь onDrawFrame на CPU
+    public static final int GPU = 4; // Время кадра на GPU
+    public static final int TRIANGLES = 5; // Треугольников за кадр
+    public static final int DRAW_CALLS = 6; // Вызовов отрисовки за кадр
+    public static final int STATE_CHANGES = 7; // Смен программы, материала и вершинного буфера за кадр
+    public static final int CULLED_CHUNKS = 8; // Кусков моделей, отсеченных по пирамиде видимости за кадр
+    public static final int CHUNKS = 9; // Всего кусков у моделей за кадр
+    private static final String[] NAMES = { "setup", "culling", "submission", "frame", "gpu", "triangles", "draw_calls",
+            "state_changes", "culled_chunks", "chunks" };
+    private static final int METRIC_COUNT = NAMES.length;
+
+    private static final long TIME_BUCKET_NANOS = 50_000L; // 0.05 мс на корзину
+    private static final int TIME_BUCKETS = 1000; // До 50 мс, дальше переполнение
+    private static final int TRIANGLE_BUCKET = 1000; // Треугольники считаем с точностью до тысячи
+    private static final int TRIANGLE_BUCKETS = 10_000; // До 10 млн треугольников
+    private static final int DRAW_CALL_BUCKET = 1; // Вызовы и смены состояния считаем точно
+    private static final int DRAW_CALL_BUCKETS = 1000;
+    private static final int CHUNK_BUCKETS = 10_000; // Куски тоже точно; у больших сцен их тысячи
+
+    private static final int GL_TIME_ELAPSED_EXT = 0x88BF; // Цель запроса из EXT_disjoint_timer_query
+    private static final int GL_GPU_DISJOINT_EXT = 0x8FBB; // Таймер GPU сбивался: результаты недостоверны
+    private static final int QUERY_COUNT = 4; // Результаты приходят с задержкой в несколько кадров
+
+    private final Histogram[] histograms = new Histogram[METRIC_COUNT];
+    private volatile boolean enabled; // Профилирование включено (HUD на экране)
+    private volatile boolean resetRequested; // Обнулить гистограммы в начале следующего кадра
+    private volatile long lastTriangles; // Треугольников в последнем кадре
+    private volatile long lastDrawCalls; // Вызовов отрисовки в последнем кадре
+    private volatile long lastStateChanges; // Смен состояния в последнем кадре
+    private volatile long lastCulledChunks; // Отсеченных кусков в последнем кадре
+    private volatile long lastChunks; // Всего кусков в последнем кадре
+
+    // Состояние кадра; только GL-поток
+    private boolean frameActive; // Текущий кадр записывается
+    private long frameStart; // Начало кадра
+    private long phaseStart; // Начало текущей фазы
+    private long triangles; // Счетчики текущего кадра
+    private long drawCalls;
+    private long stateChanges;
+    private long culledChunks;
+    private long chunks;
+
+    // Запросы таймера GPU: кольцо из QUERY_COUNT объектов; только GL-поток
+    private final int[] queries = new int[QUERY_COUNT];
+    private final int[] queryValue = new int[1];
+    private int queryGeneration = -1; // Поколение контекста, в котором созданы запросы
+    private int queryHead; // Самый старый ожидающий запрос
+    private int queryPending; // Сколько запросов ждут результата
+    private boolean queryActive; // Запрос текущего кадра открыт
+
+    public FrameProfiler() {
+        for (int i = 0; i < METRIC_COUNT; i++) {
+            if (i == TRIANGLES) histograms[i] = new Histogram(TRIANGLE_BUCKET, TRIANGLE_BUCKETS);
+            else if (i == DRAW_CALLS || i == STATE_CHANGES) histograms[i] = new Histogram(DRAW_CALL_BUCKET, DRAW_CALL_BUCKETS);
+            else if (i == CULLED_CHUNKS || i == CHUNKS) histograms[i] = new Histogram(DRAW_CALL_BUCKET, CHUNK_BUCKETS);
+            else histograms[i] = new Histogram(TIME_BUCKET_NANOS, TIME_BUCKETS);
+        }
+    }
+
+    // Включаем или выключаем запись; вызывать можно из любого потока
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Просим начать статистику заново; гистограммы обнулит GL-поток
+    public void reset() {
+        resetRequested = true;
+    }
+
+    // Начало кадра: засекаем время и открываем запрос таймера GPU
+    public void beginFrame() {
+        frameActive = enabled;
+        if (!frameActive) return;
+        if (resetRequested) {
+            resetRequested = false;
+            for (Histogram histogram : histograms) histogram.reset();
+        }
+        triangles = 0;
+        drawCalls = 0;
+        stateChanges = 0;
+        culledChunks = 0;
+        chunks = 0;
+        collectGpuResults();
+        beginGpuQuery();
+        frameStart = System.nanoTime();
+        phaseStart = frameStart;
+    }
+
+    // Конец фазы: время с конца предыдущей фазы попадает в гистограмму фазы
+    public void endPhase(int phase) {
+        if (!frameActive) return;
+        long now = System.nanoTime();
+        histograms[phase].record(now - phaseStart);
+        phaseStart = now;
+    }
+
+    // Учитываем вызов отрисовки; count - количество индексов, instances - сколько копий нарисовано вызовом
+    public void countDraw(int mode, int count, int instances) {
+        if (!frameActive) return;
+        drawCalls++;
+        if (mode == GLES20.GL_TRIANGLES) triangles += (long) (count / 3) * instances;
+    }
+
+    // Учитываем смену программы, материала или вершинного буфера
+    public void countStateChange() {
+        if (frameActive) stateChanges++;
+    }
+
+    // Учитываем итог отсечения: culled из total кусков не попадут в отрисовку
+    public void countChunks(int culled, int total) {
+        if (!frameActive) return;
+        culledChunks += culled;
+        chunks += total;
+    }
+
+    // Конец кадра: закрываем запрос GPU и записываем итоги
+    public void endFrame() {
+        if (!frameActive) return;
+        if (queryActive) {
+            GLES30.glEndQuery(GL_TIME_ELAPSED_EXT);
+            queryActive = false;
+            queryPending++;
+        }
+        histograms[FRAME].record(System.nanoTime() - frameStart);
+        histograms[TRIANGLES].record(triangles);
+        histograms[DRAW_CALLS].record(drawCalls);
+        histograms[STATE_CHANGES].record(stateChanges);
+        histograms[CULLED_CHUNKS].record(culledChunks);
+        histograms[CHUNKS].record(chunks);
+        lastTriangles = triangles;
+        lastDrawCalls = drawCalls;
+        lastStateChanges = stateChanges;
+        lastCulledChunks = culledChunks;
+        lastChunks = chunks;
+        frameActive = false;
+    }
+
+    // Открываем запрос для текущего кадра, если есть свободный объект
+    private void beginGpuQuery() {
+        if (!GlCapabilities.supportsTimerQueries()) return;
+        int generation = GlCapabilities.getContextGeneration();
+        if (queryGeneration != generation) { // Новый контекст: старые запросы пропали вместе с ним
+            GLES30.glGenQueries(QUERY_COUNT, queries, 0);
+            queryGeneration = generation;
+            queryHead = 0;
+            queryPending = 0;
+        }
+        if (queryPending == QUERY_COUNT) return; // GPU отстает: этот кадр не измеряем
+        GLES30.glBeginQuery(GL_TIME_ELAPSED_EXT, queries[(queryHead + queryPending) % QUERY_COUNT]);
+        queryActive = true;
+    }
+
+    // Забираем готовые результаты прошлых кадров, не дожидаясь GPU
+    private void collectGpuResults() {
+        if (queryPending == 0 || queryGeneration != GlCapabilities.getContextGeneration()) return;
+        GLES20.glGetIntegerv(GL_GPU_DISJOINT_EXT, queryValue, 0);
+        boolean disjoint = queryValue[0] != 0; // Частота или питание GPU менялись: время не сравнимо
+        while (queryPending > 0) {
+            int query = queries[queryHead];
+            GLES30.glGetQueryObjectuiv(query, GLES30.GL_QUERY_RESULT_AVAILABLE, queryValue, 0);
+            if (queryValue[0] == 0) break; // Результаты приходят по порядку
+            GLES30.glGetQueryObjectuiv(query, GLES30.GL_QUERY_RESULT, queryValue, 0);
+            if (!disjoint) histograms[GPU].record(queryValue[0] & 0xFFFFFFFFL); // Наносекунды
+            queryHead = (queryHead + 1) % QUERY_COUNT;
+            queryPending--;
+        }
+    }
+
+    // Треугольников в последнем кадре
+    public long getLastTriangles() {
+        return lastTriangles;
+    }
+
+    // Вызовов отрисовки в последнем кадре
+    public long getLastDrawCalls() {
+        return lastDrawCalls;
+    }
+
+    // Смен состояния в последнем кадре
+    public long getLastStateChanges() {
+        return lastStateChanges;
+    }
+
+    // Отсеченных кусков в последнем кадре
+    public long getLastCulledChunks() {
+        return lastCulledChunks;
+    }
+
+    // Всего кусков в последнем кадре
+    public long getLastChunks() {
+        return lastChunks;
+    }
+
+    // Пишем итоги и полные гистограммы в CSV, чтобы сравнивать прогоны вне устройства
+    public void export(File file, String description) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+            out.println("# " + description);
+            out.println("metric,unit,count,p50,p95,p99,max");
+            long[][] snapshots = snapshotAll();
+            for (int i = 0; i < METRIC_COUNT; i++) {
+                long[] counts = snapshots[i];
+                long width = histograms[i].getBucketWidth();
+                out.println(String.format(Locale.US, "%s,%s,%d,%s,%s,%s,%s", NAMES[i], unitOf(i), Histogram.total(counts),
+                        format(i, Histogram.percentile(counts, width, 0.5)),
+                        format(i, Histogram.percentile(counts, width, 0.95)),
+                        format(i, Histogram.percentile(counts, width, 0.99)),
+                        format(i, Histogram.percentile(counts, width, 1.0))));
+            }
+            out.println();
+            out.println("metric,bucket_start,count"); // Только непустые корзины; последняя - переполнение
+            for (int i = 0; i < METRIC_COUNT; i++) {
+                long[] counts = snapshots[i];
+                long width = histograms[i].getBucketWidth();
+                for (int b = 0; b < counts.length; b++) {
+                    if (counts[b] != 0) out.println(NAMES[i] + "," + format(i, b * width) + "," + counts[b]);
+                }
+            }
+        }
+    }
+
+    private long[][] snapshotAll() {
+        long[][] snapshots = new long[METRIC_COUNT][];
+        for (int i = 0; i < METRIC_COUNT; i++) {
+            snapshots[i] = new long[histograms[i].length()];
+            histograms[i].snapshot(snapshots[i]);
+        }
+        return snapshots;
+    }
+
+    private static String unitOf(int metric) {
+        return metric >= TRIANGLES ? "count" : "ms";
+    }
+
+    private static String format(int metric, long value) {
+        return metric >= TRIANGLES ? Long.toString(value) : String.format(Locale.US, "%.2f", value / 1e6);
+    }
+
+    // Окно для HUD: перцентили по кадрам, записанным с прошлого обновления. Живет на UI-потоке
+    public final class Window {
+        private final long[][] previous = new long[METRIC_COUNT][];
+        private final long[][] current = new long[METRIC_COUNT][];
+        private final long[] window = new long[TIME_BUCKETS + 1]; // В HUD только времена
+
+        Window() {
+            for (int i = 0; i < METRIC_COUNT; i++) {
+                previous[i] = new long[histograms[i].length()];
+                current[i] = new long[histograms[i].length()];
+                histograms[i].snapshot(previous[i]);
+            }
+        }
+
+        // Текст HUD; обнуляет окно
+        public String update() {
+            for (int i = 0; i < METRIC_COUNT; i++) histograms[i].snapshot(current[i]);
+            StringBuilder text = new StringBuilder();
+            long frames = windowOf(FRAME);
+            text.append(String.format(Locale.US, "CPU %s  (%d frames)\n", percentiles(FRAME), frames));
+            text.append(GlCapabilities.supportsTimerQueries()
+                    ? String.format(Locale.US, "GPU %s\n", windowOf(GPU) > 0 ? percentiles(GPU) : "-")
+                    : "GPU timer queries unavailable\n");
+            windowOf(SETUP);
+            long setup = Histogram.percentile(window, TIME_BUCKET_NANOS, 0.95);
+            windowOf(CULLING);
+            long culling = Histogram.percentile(window, TIME_BUCKET_NANOS, 0.95);
+            windowOf(SUBMISSION);
+            long submission = Histogram.percentile(window, TIME_BUCKET_NANOS, 0.95);
+            text.append(String.format(Locale.US, "p95 setup %.2f  cull %.2f  submit %.2f ms\n",
+                    setup / 1e6, culling / 1e6, submission / 1e6));
+            text.append(String.format(Locale.US, "%d triangles, %d draw calls, %d state changes\n",
+                    lastTriangles, lastDrawCalls, lastStateChanges));
+            text.append(String.format(Locale.US, "%d of %d chunks culled", lastCulledChunks, lastChunks));
+            for (int i = 0; i < METRIC_COUNT; i++) { // Следующее окно начинается отсюда
+                long[] swap = previous[i];
+                previous[i] = current[i];
+                current[i] = swap;
+            }
+            return text.toString();
+        }
+
+        // Разность счетчиков в window; возвращаем количество значений
+        private long windowOf(int metric) {
+            long[] now = current[metric];
+            long[] before = previous[metric];
+            Arrays.fill(window, 0);
+            for (int b = 0; b < now.length; b++) window[b] = Math.max(now[b] - before[b], 0); // После reset счетчики меньше прежних
+            return Histogram.total(window);
+        }
+
+        private String percentiles(int metric) {
+            windowOf(metric);
+            return String.format(Locale.US, "p50 %.2f  p95 %.2f  p99 %.2f ms",
+                    Histogram.percentile(window, TIME_BUCKET_NANOS, 0.5) / 1e6,
+                    Histogram.percentile(window, TIME_BUCKET_NANOS, 0.95) / 1e6,
+                    Histogram.percentile(window, TIME_BUCKET_NANOS, 0.99) / 1e6);
+        }
+    }
+
+    // Новое окно для HUD, начинающееся с текущего момента
+    public Window newWindow() {
+        return new Window();
+    }
+}
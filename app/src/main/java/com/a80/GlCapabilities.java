@@ -0,0 +1,104 @@
+package com.a80;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+// Возможности текущего GL-контекста, определяются один раз при создании поверхности
+public final class GlCapabilities {
+    private static final String TAG = "GlCapabilities"; // Метка для логирования
+
+    private static final int GL_HALF_FLOAT = 0x140B; // Тип half float в ES 3.0
+    private static final int GL_HALF_FLOAT_OES = 0x8D61; // Тот же тип из расширения GL_OES_vertex_half_float
+
+    private static volatile boolean uintIndices = false; // Поддержка 32-битных индексов
+    private static volatile int halfFloatType = 0; // Тип half float для вершинных атрибутов; 0 - не поддерживается
+    private static volatile boolean timerQueries = false; // Запросы времени GPU (EXT_disjoint_timer_query)
+    private static volatile boolean instancing = false; // glDrawElementsInstanced и делители атрибутов (ES 3.0)
+    private static volatile boolean vertexArrays = false; // Объекты вершинных массивов (VAO, ES 3.0)
+    private static volatile boolean etc1Textures = false; // Текстуры GL_ETC1_RGB8_OES
+    private static volatile boolean etc2Textures = false; // Текстуры ETC2/EAC (ES 3.0)
+    private static volatile boolean npotTextures = false; // Mip и GL_REPEAT у текстур со сторонами не степени двойки
+    private static volatile int contextGeneration = 0; // Номер текущего GL-контекста, растет при каждом пересоздании
+
+    private GlCapabilities() {}
+
+    // Опрашиваем драйвер; вызывается на GL-потоке из onSurfaceCreated
+    public static void detect() {
+        contextGeneration++; // Все ранее созданные GL-объекты принадлежат старому контексту
+        String version = GLES20.glGetString(GLES20.GL_VERSION);
+        String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+        boolean es3 = version != null && version.startsWith("OpenGL ES 3"); // В ES 3.0 32-битные индексы в ядре
+        uintIndices = es3 || hasExtension(extensions, "GL_OES_element_index_uint");
+        halfFloatType = es3 ? GL_HALF_FLOAT
+                : hasExtension(extensions, "GL_OES_vertex_half_float") ? GL_HALF_FLOAT_OES : 0;
+        timerQueries = es3 && hasExtension(extensions, "GL_EXT_disjoint_timer_query"); // Запросы берем из API ES 3.0
+        instancing = es3;
+        vertexArrays = es3;
+        etc1Textures = hasExtension(extensions, "GL_OES_compressed_ETC1_RGB8_texture");
+        etc2Textures = es3;
+        npotTextures = es3 || hasExtension(extensions, "GL_OES_texture_npot");
+        Log.d(TAG, "GL version: " + version + ", uint indices: " + uintIndices
+                + ", half float attributes: " + (halfFloatType != 0) + ", timer queries: " + timerQueries
+                + ", instancing: " + instancing + ", vertex arrays: " + vertexArrays
+                + ", ETC1: " + etc1Textures + ", ETC2: " + etc2Textures + ", NPOT textures: " + npotTextures);
+    }
+
+    // Номер текущего контекста; объекты, созданные в другом поколении, нужно пересоздать
+    public static int getContextGeneration() {
+        return contextGeneration;
+    }
+
+    // Можно ли рисовать с индексами GL_UNSIGNED_INT
+    public static boolean supportsUintIndices() {
+        return uintIndices;
+    }
+
+    // Тип для glVertexAttribPointer с half float; 0, если драйвер их не принимает
+    public static int getHalfFloatVertexType() {
+        return halfFloatType;
+    }
+
+    // Можно ли мерить время GPU запросами GL_TIME_ELAPSED_EXT
+    public static boolean supportsTimerQueries() {
+        return timerQueries;
+    }
+
+    // Можно ли рисовать экземпляры одним вызовом с матрицами из буфера экземпляров
+    public static boolean supportsInstancing() {
+        return instancing;
+    }
+
+    // Можно ли хранить формат вершин части в VAO
+    public static boolean supportsVertexArrays() {
+        return vertexArrays;
+    }
+
+    // Можно ли загружать текстуры, сжатые ETC1
+    public static boolean supportsEtc1Textures() {
+        return etc1Textures;
+    }
+
+    // Можно ли загружать текстуры, сжатые ETC2 и EAC; данные ETC1 - частный случай ETC2 RGB8
+    public static boolean supportsEtc2Textures() {
+        return etc2Textures;
+    }
+
+    // Можно ли строить mip и повторять текстуру с размерами не степени двойки; в ES 2.0 без расширения нельзя
+    public static boolean supportsNpotTextures() {
+        return npotTextures;
+    }
+
+    // Ищем расширение в строке GL_EXTENSIONS целиком, а не как подстроку
+    static boolean hasExtension(String extensions, String name) {
+        if (extensions == null) return false;
+        int from = 0;
+        while ((from = extensions.indexOf(name, from)) >= 0) {
+            int end = from + name.length();
+            boolean startOk = from == 0 || extensions.charAt(from - 1) == ' ';
+            boolean endOk = end == extensions.length() || extensions.charAt(end) == ' ';
+            if (startOk && endOk) return true;
+            from = end;
+        }
+        return false;
+    }
+}
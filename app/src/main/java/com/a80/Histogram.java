@@ -0,0 +1,62 @@
+package com.a80;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Гистограмма фиксированного размера с равными корзинами и корзиной переполнения.
+// Пишет один поток (GL), читать можно из любого: без блокировок и без выделения памяти при записи
+public final class Histogram {
+    private final long bucketWidth; // Ширина корзины в единицах значения
+    private final int bucketCount; // Обычные корзины; последняя ячейка массива - переполнение
+    private final AtomicLongArray counts; // Количество значений в корзинах
+
+    public Histogram(long bucketWidth, int bucketCount) {
+        this.bucketWidth = bucketWidth;
+        this.bucketCount = bucketCount;
+        this.counts = new AtomicLongArray(bucketCount + 1);
+    }
+
+    // Добавляем значение; вызывается только потоком-писателем
+    public void record(long value) {
+        int bucket = (int) Math.min(Math.max(value, 0) / bucketWidth, bucketCount);
+        counts.lazySet(bucket, counts.get(bucket) + 1); // Писатель один: атомарное сложение не нужно
+    }
+
+    // Размер массива для snapshot
+    public int length() {
+        return bucketCount + 1;
+    }
+
+    public long getBucketWidth() {
+        return bucketWidth;
+    }
+
+    // Копируем счетчики; копия может отставать от писателя на несколько значений
+    public void snapshot(long[] into) {
+        for (int i = 0; i <= bucketCount; i++) into[i] = counts.get(i);
+    }
+
+    // Обнуляем счетчики; вызывается только потоком-писателем
+    public void reset() {
+        for (int i = 0; i <= bucketCount; i++) counts.lazySet(i, 0);
+    }
+
+    // Количество значений в копии счетчиков
+    public static long total(long[] snapshot) {
+        long total = 0;
+        for (long count : snapshot) total += count;
+        return total;
+    }
+
+    // Перцентиль по копии счетчиков: наибольшее значение корзины, в которую он попал
+    public static long percentile(long[] snapshot, long bucketWidth, double fraction) {
+        long total = total(snapshot);
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= Math.max(rank, 1)) return (i + 1) * bucketWidth - 1;
+        }
+        return snapshot.length * bucketWidth - 1;
+    }
+}
@@ -0,0 +1,135 @@
+package com.a80;
+
+import android.opengl.GLES20;
+import android.opengl.Matrix;
+
+// Матрицы экземпляров модели: на ES 3.0 все копии рисуются одним glDrawElementsInstanced,
+// матрица приходит атрибутом с делителем 1 из отдельного VBO. Только GL-поток
+public final class InstanceBuffer {
+    private static final int MATRIX_FLOATS = 16;
+    private static final int MATRIX_BYTES = MATRIX_FLOATS * 4;
+    private static final float GRID_SPACING = 1.25f; // Шаг сетки в размерах содержимого: копии не касаются
+
+    private final float[] matrices; // Матрицы 4x4 по столбцам подряд
+    private final int count; // Количество экземпляров
+    private final float[] bounds = new float[6]; // AABB всех экземпляров в координатах модели
+    private float scale; // Наибольший масштаб среди экземпляров
+    private int bufferId; // VBO с матрицами
+    private int uploadedGeneration = -1; // Поколение контекста, в котором создан буфер
+
+    // contentBounds - AABB того, что будет нарисовано каждым экземпляром
+    public InstanceBuffer(float[] matrices, int count, float[] contentBounds) {
+        this.matrices = matrices;
+        this.count = count;
+        computeBounds(contentBounds);
+    }
+
+    // Сетка size x size x size копий, уменьшенная так, чтобы целиком занять место исходного содержимого:
+    // камера и отсечение работают так же, как без сетки
+    public static InstanceBuffer grid(int size, float[] contentBounds) {
+        float cx = (contentBounds[0] + contentBounds[3]) * 0.5f;
+        float cy = (contentBounds[1] + contentBounds[4]) * 0.5f;
+        float cz = (contentBounds[2] + contentBounds[5]) * 0.5f;
+        float extent = Math.max(contentBounds[3] - contentBounds[0],
+                Math.max(contentBounds[4] - contentBounds[1], contentBounds[5] - contentBounds[2]));
+        float cellScale = 1 / (size * GRID_SPACING); // Масштаб одной копии
+        float step = extent * GRID_SPACING * cellScale; // Расстояние между центрами копий
+
+        float[] matrices = new float[size * size * size * MATRIX_FLOATS];
+        int offset = 0;
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                for (int z = 0; z < size; z++) {
+                    Matrix.setIdentityM(matrices, offset);
+                    Matrix.translateM(matrices, offset, cx + (x - (size - 1) * 0.5f) * step,
+                            cy + (y - (size - 1) * 0.5f) * step, cz + (z - (size - 1) * 0.5f) * step);
+                    Matrix.scaleM(matrices, offset, cellScale, cellScale, cellScale);
+                    Matrix.translateM(matrices, offset, -cx, -cy, -cz); // Копия масштабируется вокруг своего центра
+                    offset += MATRIX_FLOATS;
+                }
+            }
+        }
+        return new InstanceBuffer(matrices, size * size * size, contentBounds);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    // Матрицы экземпляров для отрисовки по одной на ES 2.0; не изменять
+    public float[] getMatrices() {
+        return matrices;
+    }
+
+    // AABB всех экземпляров: по нему отсекается модель целиком
+    public float[] getBounds() {
+        return bounds;
+    }
+
+    // Наибольший масштаб экземпляра: размер одной копии на экране для выбора уровня детализации
+    public float getScale() {
+        return scale;
+    }
+
+    // Привязываем матрицы к четырем атрибутам-столбцам, начиная с matrixHandle
+    public void bind(int matrixHandle) {
+        ensureUploaded();
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, bufferId);
+        for (int column = 0; column < 4; column++) {
+            GLES20.glVertexAttribPointer(matrixHandle + column, 4, GLES20.GL_FLOAT, false, MATRIX_BYTES, column * 16);
+        }
+    }
+
+    // Загружаем матрицы в GL_STATIC_DRAW буфер, если его нет в текущем контексте
+    private void ensureUploaded() {
+        int generation = GlCapabilities.getContextGeneration();
+        if (uploadedGeneration == generation) return;
+
+        int[] ids = new int[1];
+        GLES20.glGenBuffers(1, ids, 0);
+        bufferId = ids[0];
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, bufferId);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, count * MATRIX_BYTES, MeshBuffers.createVertexBuffer(matrices),
+                GLES20.GL_STATIC_DRAW);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        uploadedGeneration = generation;
+    }
+
+    // Удаляем буфер, если он принадлежит текущему контексту
+    public void release() {
+        if (uploadedGeneration == GlCapabilities.getContextGeneration()) {
+            GLES20.glDeleteBuffers(1, new int[] { bufferId }, 0);
+        }
+        uploadedGeneration = -1;
+    }
+
+    // Объединяем AABB содержимого, перенесенный матрицей каждого экземпляра:
+    // центр переносится матрицей, полуразмеры - модулями ее элементов
+    private void computeBounds(float[] content) {
+        float[] center = { (content[0] + content[3]) * 0.5f, (content[1] + content[4]) * 0.5f,
+                (content[2] + content[5]) * 0.5f };
+        float[] half = { (content[3] - content[0]) * 0.5f, (content[4] - content[1]) * 0.5f,
+                (content[5] - content[2]) * 0.5f };
+        for (int axis = 0; axis < 3; axis++) {
+            bounds[axis] = Float.MAX_VALUE;
+            bounds[axis + 3] = -Float.MAX_VALUE;
+        }
+        for (int i = 0, m = 0; i < count; i++, m += MATRIX_FLOATS) {
+            for (int row = 0; row < 3; row++) {
+                float c = matrices[m + 12 + row];
+                float h = 0;
+                for (int column = 0; column < 3; column++) {
+                    float element = matrices[m + column * 4 + row];
+                    c += element * center[column];
+                    h += Math.abs(element) * half[column];
+                }
+                bounds[row] = Math.min(bounds[row], c - h);
+                bounds[row + 3] = Math.max(bounds[row + 3], c + h);
+            }
+            for (int column = 0; column < 3; column++) {
+                float x = matrices[m + column * 4], y = matrices[m + column * 4 + 1], z = matrices[m + column * 4 + 2];
+                scale = Math.max(scale, (float) Math.sqrt(x * x + y * y + z * z));
+            }
+        }
+    }
+}
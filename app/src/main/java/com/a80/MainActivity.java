@@ -1,24 +1,53 @@
 package com.a80;
 
+import android.app.ActivityManager;
+import android.content.ClipData;
 import android.content.Intent;
 import android.net.Uri;
 import android.opengl.GLSurfaceView;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
 import android.widget.Button;
+import android.widget.ProgressBar;
 import android.widget.Switch;
+import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
 // Главный класс активности приложения
 public class MainActivity extends AppCompatActivity {
     private static final int PICK_MODEL_REQUEST = 1; // Константа для запроса выбора модели
+    private static final long MESH_CACHE_BYTES = 512L * 1024 * 1024; // Лимит дискового кэша сеток
+    private static final long HUD_INTERVAL_MS = 500; // Период обновления статистики кадра
+    private static final int[] STRESS_GRID_SIZES = { 0, 4, 8, 16, 24, 32 }; // Копий по оси в режиме нагрузки
     private GLSurfaceView glSurfaceView; // Поле для отображения 3D-графики
     private CubeRenderer cubeRenderer; // Рендерер для отрисовки куба
+    private ModelLoader modelLoader; // Фоновый загрузчик моделей
+    private ProgressBar loadProgress; // Полоса прогресса загрузки
+    private TextView loadStatus; // Прочитанные байты и треугольники
+    private TextView hudText; // Статистика кадра
+    private final Handler hudHandler = new Handler(Looper.getMainLooper()); // Таймер обновления статистики
+    private FrameProfiler.Window hudWindow; // Окно перцентилей с прошлого обновления
+    private final Runnable hudUpdate = new Runnable() {
+        @Override
+        public void run() {
+            hudText.setText(hudWindow.update());
+            hudHandler.postDelayed(this, HUD_INTERVAL_MS);
+        }
+    };
     private boolean isModelLoaded = false; // Флаг, указывающий, загружена ли модель
+    private int stressStep = 0; // Текущий размер сетки в STRESS_GRID_SIZES
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -27,9 +56,17 @@ public class MainActivity extends AppCompatActivity {
 
         // Находим представление для OpenGL
         glSurfaceView = findViewById(R.id.gl_surface_view);
-        glSurfaceView.setEGLContextClientVersion(2); // Устанавливаем версию OpenGL
+        glSurfaceView.setEGLContextClientVersion(glEsVersion()); // ES 3.0 нужен для отрисовки экземпляров
+        MeshCache meshCache = new MeshCache(new File(getCacheDir(), "meshes"), MESH_CACHE_BYTES); // Кэш разобранных моделей
         cubeRenderer = new CubeRenderer(new TouchHandler(this)); // Инициализируем рендерер
         glSurfaceView.setRenderer(cubeRenderer); // Устанавливаем рендерер для поверхности
+        glSurfaceView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY); // Неизменную сцену не перерисовываем
+        cubeRenderer.setRenderRequest(glSurfaceView::requestRender);
+        cubeRenderer.getTouchHandler().setOnCameraChanged(glSurfaceView::requestRender); // Кадры в такт с vsync
+        modelLoader = new ModelLoader(getContentResolver(), glSurfaceView, cubeRenderer, meshCache); // Загрузка в фоне
+
+        loadProgress = findViewById(R.id.load_progress);
+        loadStatus = findViewById(R.id.load_status);
 
         // Устанавливаем обработчик жестов для поверхности
         glSurfaceView.setOnTouchListener((v, event) -> {
@@ -45,6 +82,8 @@ public class MainActivity extends AppCompatActivity {
         Button unloadModelButton = findViewById(R.id.unload_model_button);
         unloadModelButton.setEnabled(false); // Сначала отключаем кнопку
         unloadModelButton.setOnClickListener(v -> {
+            modelLoader.cancel(); // Останавливаем незавершенную загрузку
+            hideProgress();
             glSurfaceView.queueEvent(cubeRenderer::unloadModels); // Запрос на выгрузку модели
             isModelLoaded = false; // Устанавливаем состояние при выгрузке
             unloadModelButton.setEnabled(false); // Деактивируем кнопку
@@ -55,14 +94,64 @@ public class MainActivity extends AppCompatActivity {
         wireframeSwitch.setOnCheckedChangeListener((buttonView, isChecked) ->
                 glSurfaceView.queueEvent(() -> cubeRenderer.setWireframeMode(isChecked)) // Устанавливаем режим
         );
+
+        // Режим нагрузки: каждое нажатие увеличивает сетку копий, после самой большой - выключает
+        Button stressButton = findViewById(R.id.stress_button);
+        stressButton.setOnClickListener(v -> {
+            stressStep = (stressStep + 1) % STRESS_GRID_SIZES.length;
+            int size = STRESS_GRID_SIZES[stressStep];
+            stressButton.setText(size == 0 ? "Stress" : String.format(Locale.US, "%d instances", size * size * size));
+            glSurfaceView.queueEvent(() -> cubeRenderer.setStressGrid(size));
+        });
+
+        // Статистика кадра поверх сцены
+        hudText = findViewById(R.id.hud_text);
+        hudText.setOnLongClickListener(v -> {
+            exportProfile();
+            return true;
+        });
+        Switch hudSwitch = findViewById(R.id.hud_switch);
+        hudSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> setHudVisible(isChecked));
+    }
+
+    // Просим ES 3.0, если устройство его поддерживает; иначе остаемся на ES 2.0 без экземпляров
+    private int glEsVersion() {
+        ActivityManager activityManager = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+        return activityManager.getDeviceConfigurationInfo().reqGlEsVersion >= 0x30000 ? 3 : 2;
+    }
+
+    // Показываем или прячем статистику; профилировщик работает только пока она видна
+    private void setHudVisible(boolean visible) {
+        FrameProfiler profiler = cubeRenderer.getProfiler();
+        profiler.setEnabled(visible);
+        hudHandler.removeCallbacks(hudUpdate);
+        hudText.setVisibility(visible ? View.VISIBLE : View.GONE);
+        if (visible) {
+            hudWindow = profiler.newWindow();
+            hudText.setText("");
+            hudHandler.postDelayed(hudUpdate, HUD_INTERVAL_MS);
+        }
+    }
+
+    // Сохраняем накопленные гистограммы в CSV для сравнения прогонов
+    private void exportProfile() {
+        File dir = getExternalFilesDir(null);
+        File file = new File(dir != null ? dir : getFilesDir(), "frame-profile-" + System.currentTimeMillis() + ".csv");
+        try {
+            cubeRenderer.getProfiler().export(file, Build.MODEL + ", Android " + Build.VERSION.RELEASE);
+            Toast.makeText(this, "Saved " + file.getAbsolutePath(), Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Toast.makeText(this, "Export failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
+        }
     }
 
     // Метод для открытия выборщика файлов
     private void openFileChooser() {
         Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
-        intent.setType("application/octet-stream"); // Задаем тип файла
+        intent.setType("*/*"); // Вместе с моделью выбираются MTL и текстуры, у них другие типы
         intent.addCategory(Intent.CATEGORY_OPENABLE);
-        startActivityForResult(Intent.createChooser(intent, "Select .obj file"), PICK_MODEL_REQUEST); // Запускаем выбор файла
+        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true); // Детали сборки можно выбрать разом
+        startActivityForResult(Intent.createChooser(intent, "Select .obj, .obj.gz or .zip models with their .mtl and textures"), PICK_MODEL_REQUEST); // Запускаем выбор файла
     }
 
     // Обработка результата выбора файла
@@ -70,36 +159,59 @@ public class MainActivity extends AppCompatActivity {
     protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
         if (requestCode == PICK_MODEL_REQUEST && resultCode == RESULT_OK && data != null) {
-            Uri uri = data.getData(); // Получаем URI выбранного файла
-            if (uri != null) {
-                loadModelFromUri(uri); // Загружаем модель из URI
+            List<Uri> uris = new ArrayList<>(); // URI выбранных файлов
+            ClipData clipData = data.getClipData(); // Несколько файлов приходят через ClipData
+            if (clipData != null) {
+                for (int i = 0; i < clipData.getItemCount(); i++) uris.add(clipData.getItemAt(i).getUri());
+            } else if (data.getData() != null) {
+                uris.add(data.getData());
+            }
+            if (!uris.isEmpty()) {
+                loadModelFromUris(uris); // Загружаем сцену из выбранных файлов
             }
         }
     }
 
-    // Метод для загрузки 3D-модели из URI
-    private void loadModelFromUri(Uri uri) {
-        try {
-            InputStream objInputStream = getContentResolver().openInputStream(uri); // Открываем поток
-            if (objInputStream != null) {
-                glSurfaceView.queueEvent(() -> {
-                    cubeRenderer.loadModel(objInputStream); // Загружаем модель в рендерер
-                    try {
-                        objInputStream.close(); // Закрываем поток
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                    // Возвращаемся к основному потоку для обновления интерфейса
-                    runOnUiThread(() -> {
-                        isModelLoaded = true; // Устанавливаем флаг загрузки
-                        findViewById(R.id.unload_model_button).setEnabled(true); // Активируем кнопку выгрузки
-                    });
-                });
+    // Метод для загрузки 3D-моделей из URI: разбор идет в фоне, рендеринг не останавливается
+    private void loadModelFromUris(List<Uri> uris) {
+        loadProgress.setIndeterminate(true);
+        loadProgress.setVisibility(View.VISIBLE); // Показываем прогресс
+        loadStatus.setText("");
+        loadStatus.setVisibility(View.VISIBLE);
+
+        modelLoader.load(uris, new ModelLoader.Callback() { // Предыдущая загрузка отменяется
+            @Override
+            public void onProgress(int file, int fileCount, long bytesRead, long totalBytes, long triangles) {
+                if (totalBytes > 0) {
+                    loadProgress.setIndeterminate(false);
+                    loadProgress.setMax(1000);
+                    loadProgress.setProgress((int) (bytesRead * 1000 / totalBytes));
+                }
+                String status = String.format(Locale.US, "%.1f MB, %d triangles",
+                        bytesRead / (1024.0 * 1024.0), triangles);
+                if (fileCount > 1) status = String.format(Locale.US, "file %d/%d, %s", file + 1, fileCount, status);
+                loadStatus.setText(status);
             }
-        } catch (IOException e) {
-            e.printStackTrace(); // Обработка ошибок ввода-вывода
-        }
+
+            @Override
+            public void onLoaded() {
+                hideProgress();
+                isModelLoaded = true; // Устанавливаем флаг загрузки
+                findViewById(R.id.unload_model_button).setEnabled(true); // Активируем кнопку выгрузки
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                hideProgress();
+                Toast.makeText(MainActivity.this, "Error loading model: " + e.getMessage(), Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
+    // Прячем прогресс загрузки
+    private void hideProgress() {
+        loadProgress.setVisibility(View.GONE);
+        loadStatus.setVisibility(View.GONE);
     }
 
     // Пауза активности
@@ -115,4 +227,20 @@ public class MainActivity extends AppCompatActivity {
         super.onResume();
         glSurfaceView.onResume(); // Возобновление рендерера
     }
+
+    // Система просит память: кэши моделей и текстур держат буферы на GPU, поэтому чистятся на GL-потоке
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        glSurfaceView.queueEvent(() -> cubeRenderer.onTrimMemory(level));
+    }
+
+    // Уничтожение активности
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        hudHandler.removeCallbacks(hudUpdate);
+        modelLoader.shutdown(); // Останавливаем фоновую загрузку
+        cubeRenderer.getTextureCache().shutdown(); // И декодирование текстур
+    }
 }
\ No newline at end of file
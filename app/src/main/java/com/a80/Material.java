@@ -0,0 +1,43 @@
+package com.a80;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Материал части сцены: диффузный цвет и, если есть, диффузная текстура. Части с одним материалом
+// рисуются подряд без смены uniform и текстуры, а склеивать в общий буфер можно только их
+public final class Material {
+    private static final AtomicInteger nextId = new AtomicInteger(); // Номера для ключей сортировки
+
+    public static final Material DEFAULT = new Material(0.5f, 0.7f, 0.9f); // Прежний цвет освещенных моделей
+
+    private final int id; // Номер материала
+    private final float[] diffuseColor; // r, g, b
+    private final Texture diffuseMap; // Ссылка из TextureCache; null - только цвет
+
+    public Material(float red, float green, float blue) {
+        this(red, green, blue, null);
+    }
+
+    // Материал забирает ссылку на diffuseMap и отпускает ее в release
+    public Material(float red, float green, float blue, Texture diffuseMap) {
+        this.id = nextId.getAndIncrement();
+        this.diffuseColor = new float[] { red, green, blue };
+        this.diffuseMap = diffuseMap;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public float[] getDiffuseColor() {
+        return diffuseColor;
+    }
+
+    public Texture getDiffuseMap() {
+        return diffuseMap;
+    }
+
+    // Отпускаем текстуру, когда сцена с материалом выгружена; вызывается один раз
+    public void release() {
+        if (diffuseMap != null) diffuseMap.release();
+    }
+}
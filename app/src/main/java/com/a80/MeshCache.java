@@ -0,0 +1,161 @@
+package com.a80;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+// Дисковый кэш разобранных сеток в бинарном формате с вытеснением давно не использованных файлов
+public class MeshCache {
+    private static final String TAG = "MeshCache"; // Метка для логирования
+    private static final String EXTENSION = ".mesh"; // Расширение файлов кэша
+    private static final String PARTS_EXTENSION = ".parts"; // Список частей сетки, разделенной по материалам
+    private static final int SAMPLE_COUNT = 32; // Сколько блоков исходника участвует в хэше
+    private static final int SAMPLE_SIZE = 64 * 1024; // Размер одного блока
+
+    private final File directory; // Каталог кэша
+    private final long maxBytes; // Ограничение на суммарный размер файлов
+
+    public MeshCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    // Ключ по содержимому исходника: размер и равномерно распределенные блоки данных. Большой файл хэшируется
+    // не целиком, поэтому в его ключ входит и version - размер и время изменения от провайдера: иначе правка
+    // между блоками не меняла бы ключ. null - большой файл без версии, такой не кэшируем.
+    // Читаем позиционно, поэтому позиция канала не меняется и поток можно разбирать дальше
+    public static String contentKey(FileChannel channel, String version) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        long size = channel.size();
+        boolean sampled = size > (long) SAMPLE_COUNT * SAMPLE_SIZE;
+        if (sampled && version == null) return null;
+        ByteBuffer sizeBytes = ByteBuffer.allocate(8).putLong(0, size);
+        digest.update(sizeBytes);
+
+        ByteBuffer block = ByteBuffer.allocate(SAMPLE_SIZE);
+        if (!sampled) { // Небольшой файл хэшируем целиком
+            for (long position = 0; position < size; position += SAMPLE_SIZE) readBlock(channel, position, block, digest);
+        } else {
+            digest.update(version.getBytes(StandardCharsets.UTF_8));
+            long step = (size - SAMPLE_SIZE) / (SAMPLE_COUNT - 1);
+            for (int i = 0; i < SAMPLE_COUNT; i++) readBlock(channel, i * step, block, digest);
+        }
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) key.append(String.format("%02x", b));
+        return key.toString();
+    }
+
+    // Отображаем закэшированную сетку в память; null, если ее нет или файл испорчен
+    public MappedMesh get(String key) {
+        File file = fileFor(key);
+        if (!file.isFile()) return null;
+        try {
+            MappedMesh mesh = MeshFile.map(file);
+            file.setLastModified(System.currentTimeMillis()); // Отмечаем использование для LRU
+            return mesh;
+        } catch (IOException e) {
+            Log.w(TAG, "Dropping unreadable cache entry " + file.getName(), e);
+            file.delete();
+            return null;
+        }
+    }
+
+    // Сохраняем сетку и вытесняем старые записи, если кэш превысил лимит
+    public void put(String key, MeshData mesh) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Cannot create cache directory " + directory);
+            return;
+        }
+        File file = fileFor(key);
+        File temp = new File(directory, key + ".tmp");
+        try {
+            MeshFile.write(mesh, temp); // Пишем во временный файл, чтобы не оставить половину записи
+            if (!temp.renameTo(file)) throw new IOException("Cannot rename " + temp);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to cache mesh " + key, e);
+            temp.delete();
+            return;
+        }
+        trim(file);
+    }
+
+    // Строки списка частей, сохраненного putParts; null, если его нет. Сами части лежат отдельными сетками
+    public List<String> getParts(String key) {
+        File file = new File(directory, key + PARTS_EXTENSION);
+        if (!file.isFile()) return null;
+        try {
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            file.setLastModified(System.currentTimeMillis());
+            return lines;
+        } catch (IOException e) {
+            Log.w(TAG, "Dropping unreadable part list " + file.getName(), e);
+            file.delete();
+            return null;
+        }
+    }
+
+    // Сохраняем список частей; записывается после самих частей
+    public void putParts(String key, List<String> lines) {
+        File file = new File(directory, key + PARTS_EXTENSION);
+        File temp = new File(directory, key + PARTS_EXTENSION + ".tmp");
+        try {
+            Files.write(temp.toPath(), lines, StandardCharsets.UTF_8);
+            if (!temp.renameTo(file)) throw new IOException("Cannot rename " + temp);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to cache part list " + key, e);
+            temp.delete();
+        }
+    }
+
+    // Удаляем самые давно использованные файлы, пока кэш не уложится в лимит
+    private void trim(File keep) {
+        File[] files = directory.listFiles((dir, name) ->
+                name.endsWith(EXTENSION) || name.endsWith(PARTS_EXTENSION));
+        if (files == null) return;
+
+        long total = 0;
+        for (File file : files) total += file.length();
+        if (total <= maxBytes) return;
+
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (total <= maxBytes) break;
+            if (file.equals(keep)) continue; // Только что записанную сетку не трогаем
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+                Log.d(TAG, "Evicted " + file.getName());
+            }
+        }
+    }
+
+    private File fileFor(String key) {
+        return new File(directory, key + EXTENSION);
+    }
+
+    // Читаем блок позиционно и добавляем в хэш
+    private static void readBlock(FileChannel channel, long position, ByteBuffer block, MessageDigest digest) throws IOException {
+        block.clear();
+        while (block.hasRemaining()) {
+            int read = channel.read(block, position + block.position());
+            if (read < 0) break;
+        }
+        block.flip();
+        digest.update(block);
+    }
+}
@@ -1,131 +1,733 @@
 package com.a80;
 
 import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.opengl.Matrix;
 
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // Класс модели, содержащий вершинные данные и методы отрисовки
 public class Model {
-    private final FloatBuffer vertexBuffer; // Буфер для вершин
-    private final ShortBuffer indexBuffer; // Буфер для индексов
-    private final int indexCount; // Количество индексов
+    private static final float TRIANGLES_PER_PIXEL = 1.0f; // Больше треугольников на пиксель площади не видно
+    private static final float LOD_HYSTERESIS = 0.25f; // Запас перед переходом на более грубый уровень
+    private static final float[] UNIT_SCALE = { 1, 1, 1 }; // Несжатые позиции уже в координатах модели
+    private static final float[] ZERO_OFFSET = { 0, 0, 0 };
+
+    private Submesh[][] levels; // Уровни детализации: 0 - полная сетка; меняется только на GL-потоке
+    private int[] levelTriangles; // Количество треугольников на каждом уровне
+    private int currentLevel; // Уровень, выбранный для следующего кадра
+    private final float[] bounds; // minX, minY, minZ, maxX, maxY, maxZ полной сетки
+    private final boolean hasNormals; // В вершинах есть нормали: рисуем с освещением
+    private final boolean hasTexCoords; // В вершинах есть текстурные координаты
+    private final boolean quantized; // Вершины на GPU хранятся в сжатом формате
+    private final float[] submeshMvp = new float[16]; // MVP с разворотом сжатых позиций одной части
+    private final float[] transform = new float[16]; // Положение модели в сцене; меняется только на GL-потоке
+    private boolean identityTransform = true; // Матрицу модели можно не умножать
+    private float transformScale = 1; // Наибольший масштаб матрицы модели по осям
+    private final float[] mvp = new float[16]; // MVP модели в текущем кадре
+    private final float[] instanceMvp = new float[16]; // MVP экземпляра при отрисовке по одному на ES 2.0
+    private InstanceBuffer instances; // Копии модели; null - модель рисуется один раз
+    private Material material = Material.DEFAULT; // Материал освещенной отрисовки
+    private volatile String pendingLods; // Ключ полной сетки в кэше сеток, пока цепочка уровней не достроена
+
+    {
+        Matrix.setIdentityM(transform, 0);
+    }
 
     // Конструктор класса модели
     public Model(float[] vertices, short[] indices) {
-        vertexBuffer = ByteBuffer.allocateDirect(vertices.length * 4) // Создаем буфер под вершины
-                .order(ByteOrder.nativeOrder())
-                .asFloatBuffer();
-        vertexBuffer.put(vertices).position(0); // Добавляем вершины в буфер
-
-        indexBuffer = ByteBuffer.allocateDirect(indices.length * 2) // Создаем буфер под индексы
-                .order(ByteOrder.nativeOrder())
-                .asShortBuffer();
-        indexBuffer.put(indices).position(0); // Добавляем индексы в буфер
-
-        indexCount = indices.length; // Устанавливаем количество индексов
-    }
-
-    // Метод для отрисовки модели
-    public void draw(float[] mvpMatrix, boolean wireframeMode) {
-        String vertexShaderCode =
-                "uniform mat4 uMVPMatrix;" +
-                        "attribute vec4 vPosition;" +
-                        "varying vec3 vPositionInSpace;" +
-                        "void main() {" +
-                        "  gl_Position = uMVPMatrix * vPosition;" +
-                        "  vPositionInSpace = vPosition.xyz;" +
-                        "}";
-
-        String fragmentShaderCode =
-                "precision mediump float;" +
-                        "uniform bool uWireframeMode;" +
-                        "varying vec3 vPositionInSpace;" +
-                        "void main() {" +
-                        "  if (uWireframeMode) {" +
-                        "    gl_FragColor = vec4(1.0, 1.0, 1.0, 1.0);" +
-                        "  } else {" +
-                        "    float brightness = 0.5 + 0.5 * sin(length(vPositionInSpace) * 5.0);" +
-                        "    vec3 baseColor = vec3(0.2, 0.1, 0.4);" +
-                        "    vec3 glowColor = vec3(0.7, 0.5, 1.0);" +
-                        "    gl_FragColor = vec4(mix(baseColor, glowColor, brightness), 1.0);" +
-                        "  }" +
-                        "}";
-
-        // Компиляция шейдеров
-        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexShaderCode);
-        int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode);
-
-        // Создание программы шейдеров
-        int program = GLES20.glCreateProgram();
-        GLES20.glAttachShader(program, vertexShader);
-        GLES20.glAttachShader(program, fragmentShader);
-        GLES20.glLinkProgram(program);
-        GLES20.glUseProgram(program); // Используем программу
-
-        // Передача матрицы и цвета в шейдер
-        int mvpMatrixHandle = GLES20.glGetUniformLocation(program, "uMVPMatrix");
-        int colorHandle = GLES20.glGetUniformLocation(program, "uColor");
-        int positionHandle = GLES20.glGetAttribLocation(program, "vPosition");
-
-        GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0); // Устанавливаем матрицу
-
-        // Установка цвета для wireframe или стандартного
-        if (wireframeMode) {
-            GLES20.glLineWidth(6.0f); // Устанавливаем толщину линии для wireframe
-            GLES20.glUniform4f(colorHandle, 1.0f, 1.0f, 1.0f, 1.0f); // Белый цвет для wireframe
+        int[] data = new int[indices.length];
+        for (int i = 0; i < indices.length; i++) data[i] = indices[i] & 0xFFFF;
+        MeshData mesh = new MeshData(vertices, data);
+        this.hasNormals = false;
+        this.hasTexCoords = false;
+        this.quantized = false;
+        this.bounds = mesh.computeBounds();
+        setLevels(new Submesh[] { new Submesh(mesh, GLES20.GL_UNSIGNED_SHORT, false) });
+    }
+
+    // Конструктор модели из разобранных данных сетки
+    public Model(MeshData mesh) {
+        this(mesh, false);
+    }
+
+    // quantized - хранить вершины на GPU в сжатом формате (VertexQuantizer)
+    public Model(MeshData mesh, boolean quantized) {
+        this.hasNormals = mesh.hasNormals;
+        this.hasTexCoords = mesh.hasTexCoords;
+        this.quantized = quantized;
+        this.bounds = mesh.computeBounds();
+        setLevels(createSubmeshes(mesh, quantized));
+    }
+
+    // Конструктор модели из файла кэша: отображенные блоки уходят в GL без промежуточной копии
+    public Model(MappedMesh mesh) {
+        this(mesh, false);
+    }
+
+    // Сжатые вершины упаковываются из отображения здесь же, на потоке загрузки
+    public Model(MappedMesh mesh, boolean quantized) {
+        this.hasNormals = mesh.hasNormals;
+        this.hasTexCoords = mesh.hasTexCoords;
+        this.quantized = quantized;
+        this.bounds = mesh.bounds;
+        setLevels(createSubmeshes(mesh, quantized));
+    }
+
+    private void setLevels(Submesh[] submeshes) {
+        levels = new Submesh[][] { submeshes };
+        levelTriangles = new int[] { countTriangles(submeshes) };
+    }
+
+    // Готовим следующий, более грубый уровень детализации на фоновом потоке: сжатие вершин
+    // и разбиение на части не должны занимать GL-поток
+    public Lod prepareLod(MeshData mesh) {
+        return new Lod(createSubmeshes(mesh, quantized));
+    }
+
+    // То же для уровня из файла кэша
+    public Lod prepareLod(MappedMesh mesh) {
+        return new Lod(createSubmeshes(mesh, quantized));
+    }
+
+    // Подключаем подготовленный уровень; вызывается на GL-потоке
+    public void addLod(Lod lod) {
+        Submesh[] submeshes = lod.submeshes;
+        for (Submesh submesh : submeshes) submesh.ensureUploaded();
+        int count = levels.length;
+        levels = Arrays.copyOf(levels, count + 1);
+        levels[count] = submeshes;
+        levelTriangles = Arrays.copyOf(levelTriangles, count + 1);
+        levelTriangles[count] = countTriangles(submeshes);
+    }
+
+    // Выбираем уровень по размеру модели на экране (диаметр в пикселях).
+    // Более грубый уровень берется только с запасом, чтобы на границе уровни не мигали
+    public int selectLod(float projectedSize) {
+        float wanted = projectedSize * projectedSize * TRIANGLES_PER_PIXEL; // Сколько треугольников различимо
+        int level = Math.min(currentLevel, levels.length - 1);
+        while (level > 0 && levelTriangles[level] < wanted) level--; // Уровень слишком грубый
+        while (level + 1 < levels.length && levelTriangles[level + 1] >= wanted * (1 + LOD_HYSTERESIS)) level++;
+        currentLevel = level;
+        return level;
+    }
+
+    // Количество треугольников полной сетки
+    public int getTriangleCount() {
+        return levelTriangles[0];
+    }
+
+    public int getLodCount() {
+        return levels.length;
+    }
+
+    // Ограничивающий параллелепипед полной сетки в координатах модели
+    public float[] getBounds() {
+        return bounds;
+    }
+
+    // Есть ли в вершинах текстурные координаты
+    public boolean hasTexCoords() {
+        return hasTexCoords;
+    }
+
+    // Ставим модель в сцену матрицей 4x4 (по столбцам); вызывается на GL-потоке
+    public void setTransform(float[] matrix) {
+        System.arraycopy(matrix, 0, transform, 0, 16);
+        identityTransform = true;
+        for (int i = 0; i < 16; i++) identityTransform &= transform[i] == (i % 5 == 0 ? 1 : 0);
+        float scale = 0;
+        for (int column = 0; column < 3; column++) {
+            float x = transform[column * 4], y = transform[column * 4 + 1], z = transform[column * 4 + 2];
+            scale = Math.max(scale, (float) Math.sqrt(x * x + y * y + z * z));
+        }
+        transformScale = scale;
+    }
+
+    // Матрица модели в сцене; не изменять
+    public float[] getTransform() {
+        return transform;
+    }
+
+    // Во сколько раз матрица модели растягивает ее размер (наибольший масштаб по осям)
+    public float getTransformScale() {
+        return transformScale;
+    }
+
+    // Считаем MVP модели из матрицы сцены; вызывается в начале кадра перед cull
+    public void updateMvp(float[] sceneMvp) {
+        if (identityTransform) {
+            System.arraycopy(sceneMvp, 0, mvp, 0, 16);
         } else {
-            GLES20.glUniform4f(colorHandle, 0.2f, 0.5f, 1.0f, 1.0f); // Стандартный цвет
+            Matrix.multiplyMM(mvp, 0, sceneMvp, 0, transform, 0);
+        }
+    }
+
+    // MVP текущего кадра: по ней строится пирамида видимости в координатах модели
+    public float[] getMvp() {
+        return mvp;
+    }
+
+    // Рисуем модель копиями с матрицами из буфера; null - одна копия. Матрицы копий применяются
+    // в координатах модели, до ее матрицы в сцене. Буфером владеет вызывающий
+    public void setInstances(InstanceBuffer instances) {
+        this.instances = instances;
+    }
+
+    public InstanceBuffer getInstances() {
+        return instances;
+    }
+
+    public Material getMaterial() {
+        return material;
+    }
+
+    // Материал меняется на GL-потоке, как и остальная сцена
+    public void setMaterial(Material material) {
+        this.material = material;
+    }
+
+    // Уровни детализации еще строятся: загрузку могли отменить, и сцена из кэша моделей достраивает их
+    // по этому ключу. null - цепочка готова или не нужна. Пишет и читает поток загрузки
+    public void setPendingLods(String meshKey) {
+        pendingLods = meshKey;
+    }
+
+    public String getPendingLods() {
+        return pendingLods;
+    }
+
+    // Отображенные блоки используем напрямую, если GL примет их как есть
+    private static Submesh[] createSubmeshes(MappedMesh mesh, boolean quantized) {
+        boolean direct = mesh.isNativeOrder() && (mesh.indexSize == 2 || GlCapabilities.supportsUintIndices());
+        return direct ? new Submesh[] { new Submesh(mesh, quantized) } : createSubmeshes(mesh.toMeshData(), quantized);
+    }
+
+    private static int countTriangles(Submesh[] submeshes) {
+        int count = 0;
+        for (Submesh submesh : submeshes) count += submesh.indexCount / 3;
+        return count;
+    }
+
+    // Выбираем самый дешевый формат индексов
+    private static Submesh[] createSubmeshes(MeshData mesh, boolean quantized) {
+        if (MeshSplitter.fitsShortIndices(mesh)) { // 16-битных индексов достаточно
+            return new Submesh[] { new Submesh(mesh, GLES20.GL_UNSIGNED_SHORT, quantized) };
+        } else if (GlCapabilities.supportsUintIndices()) { // Драйвер умеет GL_UNSIGNED_INT
+            return new Submesh[] { new Submesh(mesh, GLES20.GL_UNSIGNED_INT, quantized) };
         }
+        // Запасной вариант: режем на части по 64K вершин
+        List<MeshData> parts = MeshSplitter.split(mesh, MeshSplitter.MAX_VERTICES);
+        Submesh[] submeshes = new Submesh[parts.size()];
+        for (int i = 0; i < submeshes.length; i++) {
+            MeshData part = parts.get(i);
+            if (mesh.chunks != null) part = MeshChunker.chunk(part); // Куски исходной сетки не совпадают с частями
+            submeshes[i] = new Submesh(part, GLES20.GL_UNSIGNED_SHORT, quantized); // У каждой части свой AABB
+        }
+        return submeshes;
+    }
+
+    // Проверяем куски текущего уровня по пирамиде видимости; возвращаем, сколько кусков отсечено.
+    // Результат запоминается в частях и используется следующим draw
+    public int cull(Frustum frustum) {
+        if (instances != null) return cullInstances(frustum);
+        int culled = 0;
+        for (Submesh submesh : levels[currentLevel]) {
+            MeshChunks chunks = submesh.chunks;
+            if (chunks == null) continue;
+            for (int c = 0; c < chunks.count; c++) {
+                boolean visible = isVisible(chunks, c, frustum);
+                submesh.visible[c] = visible;
+                if (!visible) culled++;
+            }
+        }
+        return culled;
+    }
+
+    // Куски видны в разных копиях по-разному, поэтому экземпляры отсекаются только все вместе
+    private int cullInstances(Frustum frustum) {
+        float[] b = instances.getBounds();
+        boolean visible = frustum.intersectsBox(b[0], b[1], b[2], b[3], b[4], b[5]);
+        int culled = 0;
+        for (Submesh submesh : levels[currentLevel]) {
+            if (submesh.visible == null) continue;
+            Arrays.fill(submesh.visible, visible);
+            if (!visible) culled += submesh.visible.length;
+        }
+        return culled;
+    }
+
+    // Программа из реестра выбирается по атрибутам вершин; копии на ES 3.0 рисуются вариантом с экземплярами
+    public int getProgramId(boolean wireframeMode) {
+        int id = hasNormals && !wireframeMode
+                ? (quantized ? ShaderRegistry.LIT_QUANTIZED : ShaderRegistry.LIT) : ShaderRegistry.BASIC;
+        return instances != null && GlCapabilities.supportsInstancing() ? ShaderRegistry.instancedOf(id) : id;
+    }
+
+    // Добавляем в список отрисовки части текущего уровня, у которых после cull остались видимые куски
+    public void collect(DrawList drawList, boolean wireframeMode) {
+        int programId = getProgramId(wireframeMode);
+        Submesh[] submeshes = levels[currentLevel];
+        for (int i = 0; i < submeshes.length; i++) {
+            Submesh submesh = submeshes[i];
+            if (!submesh.hasVisibleChunks()) continue;
+            drawList.add(this, i, programId, submesh.layout, material.getId(), submesh.bufferKey);
+        }
+    }
+
+    // ES 2.0: привязываем буферы части и задаем указатели атрибутов; атрибуты включает backend,
+    // кроме текстурных координат
+    public void bindSubmesh(int index, ShaderProgram program, boolean wireframeMode) {
+        Submesh submesh = levels[currentLevel][index];
+        submesh.ensureUploaded(); // Загружаем на GPU при первом показе и после потери контекста
+        if (wireframeMode) submesh.ensureEdgesUploaded();
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, submesh.vertexBufferId);
+        int texCoordHandle = program.getTexCoordHandle();
+        submesh.setAttributePointers(program.getPositionHandle(), program.getNormalHandle(), texCoordHandle);
+        if (texCoordHandle >= 0) { // Текстурные координаты есть не у всех частей, рисуемых программой
+            if (submesh.hasTexCoords) GLES20.glEnableVertexAttribArray(texCoordHandle);
+            else GLES20.glDisableVertexAttribArray(texCoordHandle);
+        }
+        if (program.getInstanceMatrixHandle() >= 0) instances.bind(program.getInstanceMatrixHandle());
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, wireframeMode ? submesh.edgeBufferId : submesh.indexBufferId);
+    }
 
-        // Настройка вершин
-        GLES20.glEnableVertexAttribArray(positionHandle); // Включаем атрибут
-        GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, 0, vertexBuffer); // Указываем формат вершин
+    // ES 3.0: привязываем VAO части. VAO создается при первом показе, после потери контекста
+    // и при смене экземпляров; в wireframe в нем меняется только буфер индексов
+    public void bindVertexArray(int index, boolean wireframeMode) {
+        Submesh submesh = levels[currentLevel][index];
+        int generation = GlCapabilities.getContextGeneration();
+        boolean stale = submesh.vertexArrayGeneration != generation || submesh.vertexArrayInstances != instances;
+        if (stale || wireframeMode && submesh.edgeGeneration != generation) {
+            GLES30.glBindVertexArray(0); // Загрузка буферов не должна изменить VAO предыдущей части
+            submesh.ensureUploaded();
+            if (wireframeMode) submesh.ensureEdgesUploaded();
+            if (stale) submesh.createVertexArray(instances);
+        }
+        GLES30.glBindVertexArray(submesh.vertexArrayId);
+        if (submesh.vertexArrayEdges != wireframeMode) { // Буфер индексов - часть состояния VAO
+            GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER,
+                    wireframeMode ? submesh.edgeBufferId : submesh.indexBufferId);
+            submesh.vertexArrayEdges = wireframeMode;
+        }
+    }
 
-        // Рисуем в зависимости от режима
+    // Рисуем видимые куски части, привязанной backend: треугольники или уникальные ребра
+    public void drawSubmesh(int index, ShaderProgram program, boolean wireframeMode, FrameProfiler profiler) {
+        Submesh submesh = levels[currentLevel][index];
+        if (instances == null || program.getInstanceMatrixHandle() >= 0) { // Одна копия или все копии одним вызовом
+            loadMatrices(program, submesh, null, 0);
+            drawPrimitives(submesh, wireframeMode, instances != null ? instances.getCount() : 0, profiler);
+        } else { // ES 2.0: вызов на каждую копию
+            float[] matrices = instances.getMatrices();
+            for (int i = 0; i < instances.getCount(); i++) {
+                loadMatrices(program, submesh, matrices, i * 16);
+                drawPrimitives(submesh, wireframeMode, 0, profiler);
+            }
+        }
+    }
+
+    private static void drawPrimitives(Submesh submesh, boolean wireframeMode, int instanceCount, FrameProfiler profiler) {
         if (wireframeMode) {
-            // Рисуем только линии
-            for (int i = 0; i < indexBuffer.limit(); i += 3) {
-                short a = indexBuffer.get(i);
-                short b = indexBuffer.get(i + 1);
-                short c = indexBuffer.get(i + 2);
-
-                short[] lineIndices = {a, b, b, c, c, a}; // Создаем линии из треугольников
-                ShortBuffer lineBuffer = ByteBuffer.allocateDirect(lineIndices.length * 2)
-                        .order(ByteOrder.nativeOrder())
-                        .asShortBuffer();
-                lineBuffer.put(lineIndices).position(0);
-
-                GLES20.glDrawElements(GLES20.GL_LINES, lineIndices.length, GLES20.GL_UNSIGNED_SHORT, lineBuffer); // Рисуем линии
+            drawChunks(submesh, GLES20.GL_LINES, submesh.edgeFirst, submesh.edgeCounts, submesh.edgeIndexCount,
+                    instanceCount, profiler); // Рисуем линии
+        } else {
+            int[] first = submesh.chunks != null ? submesh.chunks.firstIndex : null;
+            int[] counts = submesh.chunks != null ? submesh.chunks.indexCount : null;
+            drawChunks(submesh, GLES20.GL_TRIANGLES, first, counts, submesh.indexCount, instanceCount,
+                    profiler); // Рисуем треугольники
+        }
+    }
+
+    // Матрица части: разворот сжатых позиций встраивается в MVP, отсечение по кускам идет в координатах модели.
+    // Программа с экземплярами получает MVP модели и разворачивает позиции сама.
+    // instanceMatrices - матрицы копий при отрисовке по одной, иначе null
+    private void loadMatrices(ShaderProgram program, Submesh submesh, float[] instanceMatrices, int instanceOffset) {
+        float[] matrix = mvp;
+        if (instanceMatrices != null) {
+            Matrix.multiplyMM(instanceMvp, 0, mvp, 0, instanceMatrices, instanceOffset);
+            matrix = instanceMvp;
+        }
+        if (submesh.quantized && program.getInstanceMatrixHandle() < 0) {
+            Matrix.multiplyMM(submeshMvp, 0, matrix, 0, submesh.dequantization, 0);
+            matrix = submeshMvp;
+        }
+        GLES20.glUniformMatrix4fv(program.getMvpMatrixHandle(), 1, false, matrix, 0); // Устанавливаем матрицу
+        if (program.getPositionScaleHandle() >= 0) { // Процедурной окраске нужны координаты модели
+            GLES20.glUniform3fv(program.getPositionScaleHandle(), 1,
+                    submesh.quantized ? submesh.positionScale : UNIT_SCALE, 0);
+        }
+        if (program.getPositionOffsetHandle() >= 0) { // Минимум AABB лежит в начале массива границ
+            GLES20.glUniform3fv(program.getPositionOffsetHandle(), 1,
+                    submesh.quantized ? submesh.quantizationBounds : ZERO_OFFSET, 0);
+        }
+    }
+
+    // Рисуем диапазоны видимых кусков; соседние видимые куски склеиваются в один вызов.
+    // instanceCount > 0 - каждый диапазон рисуется сразу во всех копиях
+    private static void drawChunks(Submesh submesh, int mode, int[] first, int[] counts, int total, int instanceCount,
+                                   FrameProfiler profiler) {
+        MeshChunks chunks = submesh.chunks;
+        if (chunks == null) { // Сетка не разбита: рисуем целиком
+            drawRange(submesh, mode, 0, total, instanceCount, profiler);
+            return;
+        }
+
+        int rangeStart = 0;
+        int rangeEnd = 0; // Пустой диапазон
+        for (int c = 0; c < chunks.count; c++) {
+            if (!submesh.visible[c]) continue;
+            if (first[c] != rangeEnd) { // Разрыв: рисуем накопленный диапазон
+                if (rangeEnd > rangeStart) {
+                    drawRange(submesh, mode, rangeStart, rangeEnd - rangeStart, instanceCount, profiler);
+                }
+                rangeStart = first[c];
             }
+            rangeEnd = first[c] + counts[c];
+        }
+        if (rangeEnd > rangeStart) drawRange(submesh, mode, rangeStart, rangeEnd - rangeStart, instanceCount, profiler);
+    }
+
+    private static void drawRange(Submesh submesh, int mode, int start, int count, int instanceCount,
+                                  FrameProfiler profiler) {
+        int indexSize = submesh.indexType == GLES20.GL_UNSIGNED_INT ? 4 : 2;
+        if (instanceCount > 0) {
+            GLES30.glDrawElementsInstanced(mode, count, submesh.indexType, start * indexSize, instanceCount);
+            profiler.countDraw(mode, count, instanceCount);
         } else {
-            // Рисуем треугольники
-            GLES20.glDrawElements(GLES20.GL_TRIANGLES, indexCount, GLES20.GL_UNSIGNED_SHORT, indexBuffer); // Рисуем треугольники
+            GLES20.glDrawElements(mode, count, submesh.indexType, start * indexSize);
+            profiler.countDraw(mode, count, 1);
+        }
+    }
+
+    // Дешевая проверка сферой, затем более точная параллелепипедом
+    private static boolean isVisible(MeshChunks chunks, int c, Frustum frustum) {
+        float[] s = chunks.spheres;
+        if (!frustum.intersectsSphere(s[c * 4], s[c * 4 + 1], s[c * 4 + 2], s[c * 4 + 3])) return false;
+        float[] b = chunks.bounds;
+        return frustum.intersectsBox(b[c * 6], b[c * 6 + 1], b[c * 6 + 2], b[c * 6 + 3], b[c * 6 + 4], b[c * 6 + 5]);
+    }
+
+    // Количество кусков на текущем уровне детализации
+    public int getChunkCount() {
+        int count = 0;
+        for (Submesh submesh : levels[currentLevel]) count += submesh.chunks != null ? submesh.chunks.count : 1;
+        return count;
+    }
+
+    // Загружаем все части на GPU заранее, чтобы первый кадр с моделью не тратил на это время
+    public void upload() {
+        for (Submesh[] level : levels) {
+            for (Submesh submesh : level) submesh.ensureUploaded();
+        }
+    }
+
+    // Освобождаем буферы на GPU; вызывается на GL-потоке при выгрузке модели
+    public void release() {
+        for (Submesh[] level : levels) {
+            for (Submesh submesh : level) submesh.release();
+        }
+    }
+
+    // Память модели со всеми уровнями детализации: буферы на GPU и исходные данные в куче
+    public long getByteCount() {
+        long bytes = 0;
+        for (Submesh[] level : levels) {
+            for (Submesh submesh : level) bytes += submesh.getByteCount();
         }
+        return bytes;
+    }
 
-        GLES20.glDisableVertexAttribArray(positionHandle); // Отключаем атрибут
-        GLES20.glDeleteProgram(program); // Очищаем программу
+    // Уровень детализации, подготовленный вне GL-потока
+    public static final class Lod {
+        private final Submesh[] submeshes;
+
+        private Lod(Submesh[] submeshes) {
+            this.submeshes = submeshes;
+        }
     }
 
-    // Метод для загрузки шейдера
-    private int loadShader(int type, String shaderCode) {
-        int shader = GLES20.glCreateShader(type); // Создаем шейдер
-        GLES20.glShaderSource(shader, shaderCode); // Применяем исходный код шейдера
-        GLES20.glCompileShader(shader); // Компилируем шейдер
+    // Часть модели: исходные данные, формат индексов и буферы на GPU
+    private static final class Submesh {
+        private static final AtomicInteger nextBufferKey = new AtomicInteger(); // Номера частей для ключа сортировки
 
-        // Проверяем статус компиляции шейдера
-        int[] compileStatus = new int[1];
-        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
+        final float[] vertices; // Вершины в куче, из которых VBO восстанавливается после потери контекста; null, если сжаты
+        final int[] indices; // Индексы в куче; null для файла кэша
+        final ByteBuffer quantizedVertices; // Сжатые на фоновом потоке вершины вместо vertices или отображения
+        final MappedMesh mapped; // Либо отображенный в память файл кэша
+        final int vertexCount; // Количество вершин
+        final int indexType; // GL_UNSIGNED_SHORT или GL_UNSIGNED_INT
+        final int indexCount; // Количество индексов
+        final MeshChunks chunks; // Пространственные куски; null - рисуем целиком
+        final boolean[] visible; // Видимость кусков по последнему cull
+        final boolean quantized; // Вершины на GPU в сжатом формате
+        final boolean hasNormals;
+        final boolean hasTexCoords;
+        final int vertexStride; // Размер вершины на GPU в байтах
+        final boolean halfTexCoords; // Текстурные координаты сжаты в half float
+        final float[] quantizationBounds; // AABB, относительно которого сжаты позиции
+        final float[] positionScale; // Размер AABB по осям
+        final float[] dequantization; // Матрица из [0, 1] в координаты модели
+        final int layout; // Формат вершин и индексов для ключа сортировки
+        final int bufferKey = nextBufferKey.getAndIncrement(); // Номер части для ключа сортировки
+
+        int vertexBufferId; // VBO с вершинами
+        int indexBufferId; // IBO с индексами
+        int uploadedGeneration = -1; // Поколение контекста, в котором созданы буферы
+
+        int edgeBufferId; // IBO с уникальными ребрами для wireframe
+        int edgeIndexCount; // Количество индексов ребер
+        int[] edgeFirst; // Начало ребер каждого куска в буфере ребер
+        int[] edgeCounts; // Количество индексов ребер каждого куска
+        int edgeGeneration = -1; // Поколение контекста, в котором создан буфер ребер
+
+        int vertexArrayId; // VAO с форматом вершин для ES 3.0
+        int vertexArrayGeneration = -1; // Поколение контекста, в котором создан VAO
+        InstanceBuffer vertexArrayInstances; // Экземпляры, привязанные к VAO
+        boolean vertexArrayEdges; // В VAO привязан буфер ребер вместо треугольников
+
+        // Вызывается на фоновом потоке загрузки: сжатие вершин не занимает GL-поток
+        Submesh(MeshData source, int indexType, boolean quantized) {
+            this.mapped = null;
+            this.indices = source.indices;
+            this.vertexCount = source.getVertexCount();
+            this.indexType = indexType;
+            this.indexCount = source.indices.length;
+            this.chunks = source.chunks;
+            this.visible = visibilityOf(chunks);
+            this.quantized = quantized;
+            this.hasNormals = source.hasNormals;
+            this.hasTexCoords = source.hasTexCoords;
+            this.halfTexCoords = quantized && source.hasTexCoords && GlCapabilities.getHalfFloatVertexType() != 0;
+            this.vertexStride = quantized
+                    ? VertexQuantizer.strideOf(source.hasNormals, source.hasTexCoords, halfTexCoords)
+                    : source.stride * 4;
+            this.quantizationBounds = quantized ? source.computeBounds() : null;
+            this.positionScale = quantized ? extentOf(quantizationBounds) : null;
+            this.dequantization = quantized ? dequantizationOf(quantizationBounds) : null;
+            this.layout = layoutOf(quantized, source.hasNormals, source.hasTexCoords, halfTexCoords, indexType);
+            this.quantizedVertices = quantized ? VertexQuantizer.quantize(FloatBuffer.wrap(source.vertices), vertexCount,
+                    source.stride, hasNormals, hasTexCoords, halfTexCoords, quantizationBounds) : null;
+            this.vertices = quantized ? null : source.vertices; // Float-копия сжатой сетки не нужна
+        }
 
-        if (compileStatus[0] == 0) {
-            // Если компиляция не удалась, выводим сообщение об ошибке и удаляем шейдер
-            String errorLog = GLES20.glGetShaderInfoLog(shader);
-            GLES20.glDeleteShader(shader);
-            throw new RuntimeException("Error compiling shader: " + errorLog);
+        Submesh(MappedMesh mapped, boolean quantized) {
+            this.vertices = null;
+            this.indices = null;
+            this.mapped = mapped;
+            this.vertexCount = mapped.vertexCount;
+            this.indexType = mapped.indexSize == 4 ? GLES20.GL_UNSIGNED_INT : GLES20.GL_UNSIGNED_SHORT;
+            this.indexCount = mapped.indexCount;
+            this.chunks = mapped.chunks;
+            this.visible = visibilityOf(chunks);
+            this.quantized = quantized;
+            this.hasNormals = mapped.hasNormals;
+            this.hasTexCoords = mapped.hasTexCoords;
+            this.halfTexCoords = quantized && mapped.hasTexCoords && GlCapabilities.getHalfFloatVertexType() != 0;
+            this.vertexStride = quantized
+                    ? VertexQuantizer.strideOf(mapped.hasNormals, mapped.hasTexCoords, halfTexCoords)
+                    : mapped.vertexStride;
+            this.quantizationBounds = quantized ? mapped.bounds : null;
+            this.positionScale = quantized ? extentOf(quantizationBounds) : null;
+            this.dequantization = quantized ? dequantizationOf(quantizationBounds) : null;
+            this.layout = layoutOf(quantized, mapped.hasNormals, mapped.hasTexCoords, halfTexCoords, indexType);
+            this.quantizedVertices = quantized ? VertexQuantizer.quantize(
+                    mapped.vertexData.duplicate().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer(), vertexCount,
+                    mapped.vertexStride / 4, hasNormals, hasTexCoords, halfTexCoords, quantizationBounds) : null;
         }
 
-        return shader; // Возвращаем шейдер
+        private static int layoutOf(boolean quantized, boolean normals, boolean texCoords, boolean halfTexCoords,
+                                    int indexType) {
+            return (quantized ? 1 : 0) | (normals ? 2 : 0) | (texCoords ? 4 : 0) | (halfTexCoords ? 8 : 0)
+                    | (indexType == GLES20.GL_UNSIGNED_INT ? 16 : 0);
+        }
+
+        // Остался ли после cull хотя бы один видимый кусок
+        boolean hasVisibleChunks() {
+            if (visible == null) return true;
+            for (boolean chunkVisible : visible) {
+                if (chunkVisible) return true;
+            }
+            return false;
+        }
+
+        // До первого cull все куски видимы
+        private static boolean[] visibilityOf(MeshChunks chunks) {
+            if (chunks == null) return null;
+            boolean[] visible = new boolean[chunks.count];
+            Arrays.fill(visible, true);
+            return visible;
+        }
+
+        private static float[] extentOf(float[] bounds) {
+            return new float[] { bounds[3] - bounds[0], bounds[4] - bounds[1], bounds[5] - bounds[2] };
+        }
+
+        private static float[] dequantizationOf(float[] bounds) {
+            float[] matrix = new float[16];
+            VertexQuantizer.dequantization(bounds, matrix);
+            return matrix;
+        }
+
+        // Указатели атрибутов в привязанном VBO: атрибуты чередуются, позиция идет первой.
+        // normalLocation и texCoordLocation = -1, если атрибут не нужен
+        void setAttributePointers(int positionLocation, int normalLocation, int texCoordLocation) {
+            if (quantized) { // Нормализованные unsigned short внутри AABB части
+                GLES20.glVertexAttribPointer(positionLocation, 3, GLES20.GL_UNSIGNED_SHORT, true, vertexStride, 0);
+            } else {
+                GLES20.glVertexAttribPointer(positionLocation, 3, GLES20.GL_FLOAT, false, vertexStride, 0); // Указываем формат вершин
+            }
+            if (normalLocation >= 0 && hasNormals) {
+                if (quantized) { // Октаэдрическая развертка, раскрывается в шейдере
+                    GLES20.glVertexAttribPointer(normalLocation, 2, GLES20.GL_SHORT, true, vertexStride,
+                            VertexQuantizer.normalOffset());
+                } else {
+                    GLES20.glVertexAttribPointer(normalLocation, 3, GLES20.GL_FLOAT, false, vertexStride,
+                            MeshData.POSITION_SIZE * 4); // Нормаль сразу после позиции
+                }
+            }
+            if (texCoordLocation >= 0 && hasTexCoords) {
+                if (quantized) {
+                    GLES20.glVertexAttribPointer(texCoordLocation, 2,
+                            halfTexCoords ? GlCapabilities.getHalfFloatVertexType() : GLES20.GL_FLOAT, false,
+                            vertexStride, VertexQuantizer.texCoordOffset(hasNormals));
+                } else { // После позиции и нормали
+                    GLES20.glVertexAttribPointer(texCoordLocation, 2, GLES20.GL_FLOAT, false, vertexStride,
+                            (MeshData.POSITION_SIZE + (hasNormals ? MeshData.NORMAL_SIZE : 0)) * 4);
+                }
+            }
+        }
+
+        // Записываем в новый VAO формат вершин, матрицы экземпляров и буфер треугольников.
+        // Номера атрибутов общие для всех программ, поэтому VAO подходит любой из них
+        void createVertexArray(InstanceBuffer instances) {
+            int generation = GlCapabilities.getContextGeneration();
+            if (vertexArrayGeneration == generation) GLES30.glDeleteVertexArrays(1, new int[] { vertexArrayId }, 0);
+            int[] ids = new int[1];
+            GLES30.glGenVertexArrays(1, ids, 0);
+            vertexArrayId = ids[0];
+
+            GLES30.glBindVertexArray(vertexArrayId);
+            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferId);
+            setAttributePointers(ShaderProgram.POSITION_LOCATION, ShaderProgram.NORMAL_LOCATION,
+                    ShaderProgram.TEX_COORD_LOCATION);
+            GLES20.glEnableVertexAttribArray(ShaderProgram.POSITION_LOCATION);
+            if (hasNormals) GLES20.glEnableVertexAttribArray(ShaderProgram.NORMAL_LOCATION);
+            if (hasTexCoords) GLES20.glEnableVertexAttribArray(ShaderProgram.TEX_COORD_LOCATION);
+            if (instances != null) {
+                instances.bind(ShaderProgram.INSTANCE_MATRIX_LOCATION);
+                for (int column = 0; column < 4; column++) {
+                    GLES20.glEnableVertexAttribArray(ShaderProgram.INSTANCE_MATRIX_LOCATION + column);
+                    GLES30.glVertexAttribDivisor(ShaderProgram.INSTANCE_MATRIX_LOCATION + column, 1);
+                }
+            }
+            GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
+            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0); // Указатели уже запомнили свой буфер
+
+            vertexArrayGeneration = generation;
+            vertexArrayInstances = instances;
+            vertexArrayEdges = false;
+        }
+
+        // Загружаем данные в GL_STATIC_DRAW буферы, если их нет в текущем контексте
+        void ensureUploaded() {
+            int generation = GlCapabilities.getContextGeneration();
+            if (uploadedGeneration == generation) return;
+
+            int[] ids = new int[2];
+            GLES20.glGenBuffers(2, ids, 0);
+            vertexBufferId = ids[0];
+            indexBufferId = ids[1];
+
+            // Сжатые вершины и отображенные блоки кэша передаются как есть; прямые буферы из кучи
+            // нужны только на время копирования и сразу отдаются сборщику мусора
+            Buffer vertexBuffer = quantized ? quantizedVertices
+                    : mapped != null ? mapped.vertexData : MeshBuffers.createVertexBuffer(vertices);
+            int vertexBytes = vertexCount * vertexStride;
+            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferId);
+            GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexBytes, vertexBuffer, GLES20.GL_STATIC_DRAW);
+            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+            int indexSize = indexType == GLES20.GL_UNSIGNED_INT ? 4 : 2;
+            Buffer indexBuffer = mapped != null ? mapped.indexData : MeshBuffers.createIndexBuffer(indices, indexSize);
+            GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
+            GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexCount * indexSize, indexBuffer, GLES20.GL_STATIC_DRAW);
+            GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+            uploadedGeneration = generation;
+        }
+
+        // Строим и загружаем буфер ребер при первом включении wireframe
+        void ensureEdgesUploaded() {
+            int generation = GlCapabilities.getContextGeneration();
+            if (edgeGeneration == generation) return;
+
+            int[] indices = mapped != null ? mapped.readIndices() : this.indices;
+            int[] edges;
+            if (chunks == null) {
+                edges = EdgeBuilder.buildUniqueEdges(indices); // Общие ребра треугольников склеиваются
+            } else { // Ребра строятся по кускам, чтобы отсекать их вместе с треугольниками
+                IntStore store = new IntStore(indices.length);
+                edgeFirst = new int[chunks.count];
+                edgeCounts = new int[chunks.count];
+                for (int c = 0; c < chunks.count; c++) {
+                    int from = chunks.firstIndex[c];
+                    int[] chunkIndices = Arrays.copyOfRange(indices, from, from + chunks.indexCount[c]);
+                    int[] chunkEdges = EdgeBuilder.buildUniqueEdges(chunkIndices);
+                    edgeFirst[c] = store.size();
+                    edgeCounts[c] = chunkEdges.length;
+                    for (int index : chunkEdges) store.add(index);
+                }
+                edges = store.toArray();
+            }
+            int[] ids = new int[1];
+            GLES20.glGenBuffers(1, ids, 0);
+            edgeBufferId = ids[0];
+            edgeIndexCount = edges.length;
+
+            int indexSize = indexType == GLES20.GL_UNSIGNED_INT ? 4 : 2;
+            GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, edgeBufferId);
+            GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, edges.length * indexSize,
+                    MeshBuffers.createIndexBuffer(edges, indexSize), GLES20.GL_STATIC_DRAW);
+            GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+            edgeGeneration = generation;
+        }
+
+        // Вершины и треугольники на GPU, ребра, если их строили, и исходник в куче.
+        // Отображение файла кэша не считается: эти страницы система вытеснит сама
+        long getByteCount() {
+            int indexSize = indexType == GLES20.GL_UNSIGNED_INT ? 4 : 2;
+            long bytes = (long) vertexCount * vertexStride + (long) indexCount * indexSize;
+            if (edgeGeneration >= 0) bytes += (long) edgeIndexCount * indexSize;
+            if (vertices != null) bytes += 4L * vertices.length;
+            if (indices != null) bytes += 4L * indices.length;
+            if (quantizedVertices != null) bytes += quantizedVertices.capacity();
+            return bytes;
+        }
+
+        // Удаляем буферы, если они принадлежат текущему контексту
+        void release() {
+            int generation = GlCapabilities.getContextGeneration();
+            if (uploadedGeneration == generation) { // Иначе контекст уже уничтожен вместе с буферами
+                GLES20.glDeleteBuffers(2, new int[] { vertexBufferId, indexBufferId }, 0);
+            }
+            if (edgeGeneration == generation) {
+                GLES20.glDeleteBuffers(1, new int[] { edgeBufferId }, 0);
+            }
+            if (vertexArrayGeneration == generation) {
+                GLES30.glDeleteVertexArrays(1, new int[] { vertexArrayId }, 0);
+            }
+            uploadedGeneration = -1;
+            edgeGeneration = -1;
+            vertexArrayGeneration = -1;
+            vertexArrayInstances = null;
+        }
     }
-}
\ No newline at end of file
+}
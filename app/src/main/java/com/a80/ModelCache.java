@@ -0,0 +1,118 @@
+package com.a80;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Недавно показанные сцены вместе с буферами на GPU и текстурами: повторный выбор тех же файлов
+// показывает сцену сразу, без чтения, разбора и загрузки. Ключ - файлы и их размер и время изменения.
+// Сцена на экране в кэше не лежит; кэш держит только убранные с экрана и вытесняет их по LRU.
+// После каждого вытеснения текстуры, на которые больше никто не ссылается, уходят с GPU
+public final class ModelCache {
+    private static final String TAG = "ModelCache"; // Метка для логирования
+    public static final long DEFAULT_BUDGET_BYTES = 256L * 1024 * 1024; // Буферы на GPU и данные в куче
+
+    private final LinkedHashMap<String, Entry> scenes = new LinkedHashMap<>(16, 0.75f, true); // В порядке LRU
+    private long budgetBytes; // Ограничение памяти всех сцен кэша
+    private long residentBytes; // Сколько сейчас занято
+    private final TextureCache textures; // Текстуры материалов сцен
+
+    public ModelCache(long budgetBytes, TextureCache textures) {
+        this.budgetBytes = budgetBytes;
+        this.textures = textures;
+    }
+
+    // Меняем бюджет; вызывается на GL-потоке, лишнее вытесняется сразу
+    public synchronized void setBudget(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        if (evict(budgetBytes)) textures.trimUnreferenced();
+    }
+
+    // Забираем сцену из кэша; она снова принадлежит вызывающему. Можно вызывать из любого потока
+    public synchronized List<Model> take(String key) {
+        Entry entry = scenes.remove(key);
+        if (entry == null) return null;
+        residentBytes -= entry.bytes;
+        Log.d(TAG, "Scene taken from cache: " + entry.scene.size() + " models, " + entry.bytes / 1024 + " KB.");
+        return entry.scene;
+    }
+
+    // Кладем сцену, убранную с экрана; вызывается на GL-потоке. Сцена больше бюджета сразу освобождается
+    public synchronized void put(String key, List<Model> scene) {
+        long bytes = 0;
+        for (Model model : scene) {
+            model.setInstances(null); // Сетку копий режим нагрузки раздаст заново
+            bytes += model.getByteCount();
+        }
+        Entry old = scenes.remove(key);
+        boolean released = old != null;
+        if (old != null) { // Ту же сцену загрузили заново, пока старая лежала в кэше
+            residentBytes -= old.bytes;
+            release(old.scene);
+        }
+        if (bytes > budgetBytes) {
+            Log.d(TAG, "Scene of " + bytes / 1024 + " KB does not fit the cache.");
+            release(scene);
+            released = true;
+        } else {
+            released |= evict(budgetBytes - bytes);
+            scenes.put(key, new Entry(scene, bytes));
+            residentBytes += bytes;
+        }
+        if (released) textures.trimUnreferenced();
+    }
+
+    // Система просит память: в фоне и при критической нехватке кэш пустеет целиком,
+    // при нехватке на экране - наполовину. Вызывается на GL-потоке
+    public synchronized void onTrimMemory(int level) {
+        boolean evicted = false;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            evicted = evict(0);
+        } else if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            evicted = evict(Math.min(residentBytes, budgetBytes) / 2);
+        }
+        if (evicted) textures.trimUnreferenced();
+    }
+
+    // Количество сцен в кэше. После потери контекста сцены остаются: части хранят исходник в куче
+    // или в файле кэша и загружаются на GPU заново при показе
+    public synchronized int size() {
+        return scenes.size();
+    }
+
+    // Вытесняем давно не показанные сцены, пока занято больше limit; true - что-то вытеснено
+    private boolean evict(long limit) {
+        boolean evicted = false;
+        Iterator<Map.Entry<String, Entry>> iterator = scenes.entrySet().iterator();
+        while (residentBytes > limit && iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            iterator.remove();
+            residentBytes -= entry.bytes;
+            release(entry.scene);
+            evicted = true;
+            Log.d(TAG, "Evicted scene of " + entry.scene.size() + " models, " + entry.bytes / 1024 + " KB.");
+        }
+        return evicted;
+    }
+
+    private static void release(List<Model> scene) {
+        CubeRenderer.releaseMaterials(scene);
+        for (Model model : scene) model.release();
+    }
+
+    // Сцена и ее размер на момент помещения в кэш
+    private static final class Entry {
+        final List<Model> scene;
+        final long bytes;
+
+        Entry(List<Model> scene, long bytes) {
+            this.scene = scene;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,828 @@
+package com.a80;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.opengl.GLSurfaceView;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.DocumentsContract;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+// Загрузчик моделей: чтение и разбор идут в фоне, на GL-поток отправляется только загрузка буферов.
+// Несколько файлов загружаются как одна сцена, мелкие детали склеиваются в общие буферы.
+// Вместе с OBJ можно выбрать его MTL и текстуры: сетка делится на части по материалам.
+// Недавние сцены берутся из кэша моделей рендерера, если файлы с тех пор не менялись.
+// OBJ в gzip и архивы zip читаются без распаковки на диск: распаковка идет на своем потоке параллельно с разбором
+public class ModelLoader {
+    private static final String TAG = "ModelLoader"; // Метка для логирования
+    private static final long PROGRESS_INTERVAL_NANOS = 100_000_000L; // Не чаще 10 обновлений прогресса в секунду
+    private static final float[] LOD_RATIOS = { 0.5f, 0.25f, 0.1f }; // Доля треугольников на уровнях детализации
+    private static final int MIN_LOD_TRIANGLES = 20000; // Небольшим моделям уровни детализации не нужны
+    private static final int MAX_BATCHED_PART_TRIANGLES = MIN_LOD_TRIANGLES; // Детали без уровней детализации склеиваются
+    private static final int MAX_BATCH_TRIANGLES = 1 << 20; // Предел склеенного буфера; внутри он все равно режется на куски
+    private static final String[] COMPANION_EXTENSIONS = { // Файлы, на которые ссылаются OBJ и MTL
+            ".mtl", ".png", ".jpg", ".jpeg", ".webp", ".ktx", ".pkm"
+    };
+    private static final String[] COMPRESSED_EXTENSIONS = { ".ktx", ".pkm" }; // ETC-версии текстуры рядом с картинкой
+    private static final int INFLATE_BUFFER_SIZE = 64 * 1024; // Сжатых байт за одно чтение из файла
+    private static final String INFLATER_THREAD = "ModelInflater"; // Имя потока распаковки
+
+    // Уведомления о ходе загрузки; все методы вызываются на UI-потоке
+    public interface Callback {
+        // file - номер файла от 0 до fileCount - 1; totalBytes = -1, если размер неизвестен
+        void onProgress(int file, int fileCount, long bytesRead, long totalBytes, long triangles);
+        void onLoaded();
+        void onFailed(Exception e);
+    }
+
+    private final ContentResolver contentResolver; // Источник файлов
+    private final GLSurfaceView glSurfaceView; // Через него задачи попадают на GL-поток
+    private final CubeRenderer renderer; // Рендерер, в который попадает готовая модель
+    private final MeshCache meshCache; // Дисковый кэш разобранных сеток
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(); // Фоновый поток загрузки
+    private final Handler mainHandler = new Handler(Looper.getMainLooper()); // UI-поток
+    private final AtomicInteger currentLoad = new AtomicInteger(); // Номер актуальной загрузки
+    private Future<?> task; // Загрузка в процессе; трогаем только с UI-потока
+    private boolean parallelLoading = Runtime.getRuntime().availableProcessors() > 1; // Параллельный разбор OBJ
+    private boolean meshOptimization = true; // Переупорядочивание треугольников и вершин после разбора
+    private boolean lodGeneration = true; // Построение уровней детализации после загрузки
+    private boolean vertexQuantization = true; // Сжатый формат вершин на GPU
+    private float creaseAngle = NormalGenerator.DEFAULT_CREASE_ANGLE; // Излом нормалей для сеток без vn; 0 - не строить
+
+    public ModelLoader(ContentResolver contentResolver, GLSurfaceView glSurfaceView, CubeRenderer renderer, MeshCache meshCache) {
+        this.contentResolver = contentResolver;
+        this.glSurfaceView = glSurfaceView;
+        this.renderer = renderer;
+        this.meshCache = meshCache;
+    }
+
+    // Включаем или выключаем параллельный разбор OBJ
+    public void setParallelLoading(boolean parallelLoading) {
+        this.parallelLoading = parallelLoading;
+    }
+
+    // Включаем или выключаем оптимизацию порядка индексов и вершин
+    public void setMeshOptimization(boolean meshOptimization) {
+        this.meshOptimization = meshOptimization;
+    }
+
+    // Включаем или выключаем построение уровней детализации
+    public void setLodGeneration(boolean lodGeneration) {
+        this.lodGeneration = lodGeneration;
+    }
+
+    // Включаем или выключаем сжатие вершин на GPU; на кэш и разбор не влияет
+    public void setVertexQuantization(boolean vertexQuantization) {
+        this.vertexQuantization = vertexQuantization;
+    }
+
+    // Угол излома в градусах для нормалей, которые строятся у сеток без vn; 180 сглаживает все, 0 выключает
+    // построение, и такие сетки рисуются без освещения
+    public void setCreaseAngle(float creaseAngle) {
+        this.creaseAngle = creaseAngle;
+    }
+
+    // Запускаем загрузку; предыдущая загрузка отменяется
+    public void load(Uri uri, Callback callback) {
+        load(Collections.singletonList(uri), callback);
+    }
+
+    // Загружаем несколько файлов одной сценой, например детали сборки в общих координатах
+    public void load(List<Uri> uris, Callback callback) {
+        cancel();
+        int id = currentLoad.get();
+        List<Uri> files = new ArrayList<>(uris);
+        boolean parallel = parallelLoading;
+        boolean optimize = meshOptimization;
+        boolean lods = lodGeneration;
+        boolean quantize = vertexQuantization;
+        float crease = creaseAngle;
+        task = executor.submit(() -> run(files, callback, id, parallel, optimize, lods, quantize, crease));
+    }
+
+    // Отменяем текущую загрузку, если она есть
+    public void cancel() {
+        currentLoad.incrementAndGet(); // Результаты старой загрузки больше не применяются
+        if (task != null) {
+            task.cancel(true); // Прерывание останавливает чтение и разбор
+            task = null;
+        }
+    }
+
+    // Останавливаем фоновый поток; вызывается при уничтожении активности
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    // Фоновая часть загрузки
+    private void run(List<Uri> uris, Callback callback, int id, boolean parallel, boolean optimize, boolean lods,
+                     boolean quantize, float crease) {
+        try {
+            String key = sceneKey(uris, optimize, lods, quantize, crease);
+            if (key != null && showCached(key, callback, id, optimize)) return;
+
+            SelectedFiles files = new SelectedFiles(uris);
+            if (files.meshes.isEmpty()) throw new IOException("No model files selected");
+            List<Source> sources = new ArrayList<>();
+            for (int i = 0; i < files.meshes.size(); i++) {
+                Uri uri = files.meshes.get(i);
+                try (InputStream input = contentResolver.openInputStream(uri)) {
+                    if (input == null) throw new IOException("Cannot open " + uri);
+                    sources.addAll(loadInput(uri, input, files, callback, id, i, files.meshes.size(), parallel, optimize,
+                            crease));
+                }
+            }
+            resolveMaterials(sources, files); // Архив может хранить MTL после OBJ, поэтому ищем, когда прочитано все
+            sources = batchSmallParts(sources);
+            List<Model> scene = new ArrayList<>();
+            for (Source source : sources) {
+                Model model = source.mapped != null ? new Model(source.mapped, quantize) : new Model(source.data, quantize);
+                if (lods && source.key != null && source.getTriangleCount() >= MIN_LOD_TRIANGLES) {
+                    model.setPendingLods(source.key); // До отправки на GL-поток: сцена может сразу уйти в кэш моделей
+                }
+                scene.add(model);
+            }
+            applyMaterials(scene, sources, files); // Берет ссылки на текстуры: дальше сцена обязательно уходит на GL-поток
+
+            glSurfaceView.queueEvent(() -> {
+                if (currentLoad.get() != id) { // Пока ждали GL-поток, пользователь выбрал другой файл
+                    CubeRenderer.releaseMaterials(scene);
+                    return;
+                }
+                for (Model model : scene) model.upload(); // Единственная работа на GL-потоке
+                renderer.setModels(scene, key);
+                mainHandler.post(() -> {
+                    if (currentLoad.get() == id) callback.onLoaded();
+                });
+            });
+
+            // Сцена уже на экране; уровни детализации подключаются по мере готовности
+            for (int i = 0; lods && i < sources.size(); i++) {
+                Source source = sources.get(i);
+                if (source.getTriangleCount() >= MIN_LOD_TRIANGLES) buildModelLods(scene.get(i), source, id, optimize);
+            }
+        } catch (InterruptedIOException e) {
+            Log.d(TAG, "Loading cancelled.");
+        } catch (Exception e) {
+            Log.e(TAG, "Error loading model: " + e.getMessage(), e); // Логируем ошибку загрузки
+            mainHandler.post(() -> {
+                if (currentLoad.get() == id) callback.onFailed(e);
+            });
+        }
+    }
+
+    // Сцена из кэша моделей показывается сразу: буферы уже на GPU, материалы и текстуры при ней.
+    // Уровни детализации, которые прошлая загрузка не успела построить до отмены, достраиваются здесь же.
+    // false - в кэше ее нет, файлы нужно загрузить
+    private boolean showCached(String key, Callback callback, int id, boolean optimize) throws InterruptedIOException {
+        if (key.equals(renderer.getSceneKey())) { // Эти файлы уже на экране
+            mainHandler.post(() -> {
+                if (currentLoad.get() == id) callback.onLoaded();
+            });
+            return true;
+        }
+        List<Model> scene = renderer.getModelCache().take(key);
+        if (scene == null) return false;
+        glSurfaceView.queueEvent(() -> {
+            if (currentLoad.get() != id) { // Пользователь уже выбрал другое: возвращаем сцену в кэш
+                renderer.getModelCache().put(key, scene);
+                return;
+            }
+            for (Model model : scene) model.upload(); // Нужно только после потери контекста
+            renderer.setModels(scene, key);
+        });
+        mainHandler.post(() -> {
+            if (currentLoad.get() == id) callback.onLoaded();
+        });
+
+        for (Model model : scene) { // Готовые уровни лежат в кэше сеток, упрощать заново нужно только недостающие
+            String meshKey = model.getPendingLods();
+            MappedMesh mesh = meshKey != null ? meshCache.get(meshKey) : null;
+            if (mesh != null) buildModelLods(model, new Source(meshKey, null, mesh, null), id, optimize);
+        }
+        return true;
+    }
+
+    // Ключ сцены в кэше моделей: файлы в порядке выбора, их размер и время изменения, настройки загрузки.
+    // null - у какого-то файла версию не узнать, такую сцену не кэшируем
+    private String sceneKey(List<Uri> uris, boolean optimize, boolean lods, boolean quantize, float crease) {
+        StringBuilder key = new StringBuilder();
+        for (Uri uri : uris) {
+            String version = fileVersion(uri);
+            if (version == null) return null;
+            key.append(uri).append(' ').append(version).append('\n');
+        }
+        return key.append(optimize ? "opt" : "").append(lods ? "-lod" : "").append(quantize ? "-q" : "")
+                .append(normalsSuffix(crease)).toString();
+    }
+
+    // Сетки с построенными нормалями и без них хранятся в кэше отдельно, как и с разным углом излома
+    private static String normalsSuffix(float crease) {
+        return crease > 0 ? "-n" + crease : "";
+    }
+
+    // Размер и время изменения файла; null, если провайдер их не сообщает
+    private String fileVersion(Uri uri) {
+        if ("file".equals(uri.getScheme())) {
+            File file = new File(uri.getPath());
+            return file.isFile() ? file.length() + ":" + file.lastModified() : null;
+        }
+        try (Cursor cursor = contentResolver.query(uri, null, null, null, null)) {
+            if (cursor == null || !cursor.moveToFirst()) return null;
+            int size = cursor.getColumnIndex(OpenableColumns.SIZE);
+            int modified = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+            if (size < 0 || modified < 0 || cursor.isNull(size) || cursor.isNull(modified)) return null;
+            return cursor.getLong(size) + ":" + cursor.getLong(modified);
+        } catch (RuntimeException e) { // Провайдер может не поддерживать запрос
+            Log.w(TAG, "Cannot query metadata of " + uri, e);
+            return null;
+        }
+    }
+
+    // Уровни одной модели; ошибка оставляет модель без уровней. После отмены цепочка остается недостроенной,
+    // и ее достроит showCached, когда сцену покажут из кэша моделей
+    private void buildModelLods(Model model, Source source, int id, boolean optimize) throws InterruptedIOException {
+        try {
+            buildLods(model, source, id, optimize);
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "LOD generation failed: " + e.getMessage(), e); // Модель остается без уровней
+        }
+        model.setPendingLods(null);
+    }
+
+    // Строим цепочку упрощенных сеток; каждый уровень упрощается из предыдущего и кладется в кэш.
+    // Уровни, которые уже есть у модели, подключать повторно не нужно: их отсеивает postLod
+    private void buildLods(Model model, Source source, int id, boolean optimize) throws IOException {
+        int fullTriangles = source.getTriangleCount();
+        MeshData previous = null; // Предыдущий уровень в куче; null - взять из source или кэша
+        MappedMesh previousMapped = source.mapped;
+        int previousTriangles = fullTriangles;
+        for (int i = 0; i < LOD_RATIOS.length; i++) {
+            if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Loading cancelled");
+            String key = source.key != null ? source.key + "-lod" + i : null;
+            MappedMesh cached = key != null ? meshCache.get(key) : null;
+            if (cached == null) {
+                long start = System.nanoTime();
+                MeshData base = previous != null ? previous
+                        : previousMapped != null ? previousMapped.toMeshData() : source.data;
+                MeshData lod = MeshSimplifier.simplify(base, (int) (fullTriangles * LOD_RATIOS[i]));
+                if (lod.getTriangleCount() > previousTriangles * 0.9f) break; // Сетка больше не упрощается
+                if (optimize) lod = MeshOptimizer.optimize(lod, new MeshOptimizer.Report());
+                lod = MeshChunker.chunk(lod);
+                Log.d(TAG, "LOD " + (i + 1) + ": " + lod.getTriangleCount() + " triangles in "
+                        + (System.nanoTime() - start) / 1_000_000 + " ms.");
+                if (key != null) {
+                    meshCache.put(key, lod);
+                    cached = meshCache.get(key); // Как и основная сетка, уровень живет в отображении файла
+                }
+                previous = cached != null ? null : lod;
+                previousMapped = cached;
+                previousTriangles = lod.getTriangleCount();
+                postLod(model, i + 1, id, cached, lod);
+            } else {
+                previous = null;
+                previousMapped = cached;
+                previousTriangles = cached.indexCount / 3;
+                postLod(model, i + 1, id, cached, null);
+            }
+        }
+    }
+
+    // Склеиваем мелкие детали с одинаковым форматом вершин и материалом: сотни деталей сборки рисуются
+    // несколькими буферами вместо сотен привязок. Детали неподвижны, поэтому склейка ничего не меняет на экране;
+    // крупные детали остаются отдельными моделями со своими уровнями детализации
+    private List<Source> batchSmallParts(List<Source> sources) throws IOException {
+        List<Source> result = new ArrayList<>();
+        Map<List<Object>, List<Source>> groups = new LinkedHashMap<>(); // Нормали, текстурные координаты, материал
+        for (Source source : sources) {
+            if (source.getTriangleCount() >= MAX_BATCHED_PART_TRIANGLES) {
+                result.add(source);
+                continue;
+            }
+            List<Object> format = Arrays.asList(source.hasNormals(), source.hasTexCoords(), source.material);
+            List<Source> group = groups.get(format);
+            if (group == null) groups.put(format, group = new ArrayList<>());
+            group.add(source);
+        }
+
+        int batches = 0;
+        int merged = 0;
+        for (List<Source> group : groups.values()) {
+            if (group.size() < 2) { // Одну деталь склеивать не с чем
+                result.addAll(group);
+                continue;
+            }
+            List<MeshData> batch = new ArrayList<>();
+            int batchTriangles = 0;
+            for (Source part : group) {
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Loading cancelled");
+                if (!batch.isEmpty() && batchTriangles + part.getTriangleCount() > MAX_BATCH_TRIANGLES) {
+                    result.add(mergeBatch(batch, part.material));
+                    batches++;
+                    batch.clear();
+                    batchTriangles = 0;
+                }
+                batch.add(part.toMeshData());
+                batchTriangles += part.getTriangleCount();
+                merged++;
+            }
+            result.add(mergeBatch(batch, group.get(0).material));
+            batches++;
+        }
+        if (merged > 0) Log.d(TAG, "Merged " + merged + " small parts into " + batches + " batches.");
+        return result;
+    }
+
+    // Склеенная сетка заново режется на куски, чтобы отсекать детали по отдельности
+    private static Source mergeBatch(List<MeshData> parts, MtlMaterial material) {
+        MeshData mesh = parts.size() == 1 ? parts.get(0) : MeshChunker.chunk(MeshMerger.merge(parts, null));
+        return new Source(null, mesh, null, material);
+    }
+
+    // Материалы MTL превращаются в материалы сцены, по одному на MtlMaterial: детали с общим материалом
+    // рисуются подряд с одной привязкой текстуры
+    private void applyMaterials(List<Model> scene, List<Source> sources, SelectedFiles files) {
+        Map<MtlMaterial, Material> materials = new IdentityHashMap<>();
+        for (int i = 0; i < scene.size(); i++) {
+            MtlMaterial mtl = sources.get(i).material;
+            if (mtl == null) continue;
+            Material material = materials.get(mtl);
+            if (material == null) {
+                material = createMaterial(mtl, files);
+                materials.put(mtl, material);
+            }
+            scene.get(i).setMaterial(material);
+        }
+    }
+
+    // Цвет Kd и текстура map_Kd; готовая ETC-версия текстуры рядом с картинкой загружается вместо нее
+    private Material createMaterial(MtlMaterial mtl, SelectedFiles files) {
+        Texture texture = null;
+        if (mtl.diffuseMap != null) {
+            Uri base = files.libraryOf(mtl);
+            Uri image = files.find(base, mtl.diffuseMap);
+            Uri compressed = null;
+            for (int i = 0; compressed == null && i < COMPRESSED_EXTENSIONS.length; i++) {
+                compressed = files.find(base, withExtension(mtl.diffuseMap, COMPRESSED_EXTENSIONS[i]));
+            }
+            if (image == null && compressed == null) {
+                Log.w(TAG, "Texture " + mtl.diffuseMap + " of material " + mtl.name
+                        + " was not selected; using its diffuse color.");
+            } else {
+                Uri key = image != null ? image : compressed;
+                texture = renderer.getTextureCache().acquire(key.toString(), files.opener(image),
+                        files.opener(compressed));
+            }
+        }
+        return new Material(mtl.diffuse[0], mtl.diffuse[1], mtl.diffuse[2], texture);
+    }
+
+    private static String withExtension(String path, String extension) {
+        int dot = path.lastIndexOf('.');
+        return (dot > Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) ? path.substring(0, dot) : path) + extension;
+    }
+
+    // Готовим уровень здесь, на фоновом потоке, и подключаем его к модели на GL-потоке; уровни идут по порядку
+    private void postLod(Model model, int level, int id, MappedMesh mapped, MeshData data) {
+        Model.Lod lod = mapped != null ? model.prepareLod(mapped) : model.prepareLod(data);
+        glSurfaceView.queueEvent(() -> {
+            if (currentLoad.get() != id) return; // Модель уже заменена или выгружена
+            if (model.getLodCount() != level) return; // Уровень подключила прошлая загрузка этой сцены
+            model.addLod(lod);
+            renderer.requestRender(); // Новый уровень может подойти лучше текущего
+        });
+    }
+
+    // Читаем выбранный файл: OBJ, OBJ в gzip или архив zip с OBJ, MTL и текстурами. Сжатое распаковывается
+    // на лету без временных файлов, и с диска читаются только сжатые байты
+    private List<Source> loadInput(Uri uri, InputStream input, SelectedFiles files, Callback callback, int id, int file,
+                                   int fileCount, boolean parallel, boolean optimize, float crease) throws IOException {
+        String contentKey = null;
+        long totalBytes = -1;
+        if (input instanceof FileInputStream) { // Потоки ContentResolver обычно файловые
+            FileChannel channel = ((FileInputStream) input).getChannel();
+            totalBytes = channel.size();
+            // По байтам файла как есть: ради ключа ничего не распаковываем
+            contentKey = MeshCache.contentKey(channel, fileVersion(uri));
+            if (contentKey == null) Log.d(TAG, "Provider reports no modification time; the mesh is not cached.");
+        }
+        String suffix = (optimize ? "-opt" : "") // Оптимизированная сетка хранится отдельно
+                + normalsSuffix(crease);
+        AtomicLong bytesRead = new AtomicLong(); // Прочитано из файла; у сжатого обновляет поток распаковки
+        InputStream buffered = new BufferedInputStream(new ProgressInputStream(input, bytesRead::set));
+        CompressionFormat format = CompressionFormat.detect(buffered);
+        Progress progress = new Progress(callback, id, file, fileCount, bytesRead, totalBytes);
+        if (format == CompressionFormat.ZIP) {
+            return loadArchive(uri, new ZipInputStream(buffered), contentKey, suffix, files, progress, parallel,
+                    optimize, crease);
+        }
+
+        String key = contentKey != null ? contentKey + suffix : null;
+        List<Source> cached = key != null ? loadCached(key, uri) : null;
+        if (cached != null) {
+            Log.d(TAG, "Model loaded from cache."); // Ни распаковка, ни разбор не нужны
+            return cached;
+        }
+        if (format == CompressionFormat.NONE) return parseMesh(key, uri, buffered, progress, parallel, optimize, crease);
+        try (InputStream inflated = new ReadAheadInputStream(new GZIPInputStream(buffered, INFLATE_BUFFER_SIZE),
+                INFLATER_THREAD)) {
+            return parseMesh(key, uri, inflated, progress, parallel, optimize, crease);
+        }
+    }
+
+    // Проходим архив один раз: MTL и текстуры запоминаются как выбранные рядом файлы, каждый OBJ берется
+    // из кэша или разбирается прямо из распаковки. Ключ OBJ - содержимое архива и номер OBJ в нем
+    private List<Source> loadArchive(Uri uri, ZipInputStream zip, String contentKey, String suffix, SelectedFiles files,
+                                     Progress progress, boolean parallel, boolean optimize, float crease)
+            throws IOException {
+        List<Source> sources = new ArrayList<>();
+        int meshes = 0;
+        for (ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+            if (entry.isDirectory()) continue;
+            String name = entry.getName();
+            String fileName = name.substring(name.lastIndexOf('/') + 1);
+            if (isCompanion(fileName)) {
+                files.addArchived(uri, name, zip);
+                continue;
+            }
+            if (!fileName.toLowerCase(Locale.ROOT).endsWith(".obj")) continue; // Описания, лицензии и прочее
+            Uri entryUri = entryUri(uri, name);
+            String key = contentKey != null ? contentKey + "-entry" + meshes + suffix : null;
+            meshes++;
+            List<Source> cached = key != null ? loadCached(key, entryUri) : null;
+            if (cached != null) {
+                Log.d(TAG, "Model " + name + " loaded from cache."); // Запись пропустит getNextEntry
+                sources.addAll(cached);
+                continue;
+            }
+            try (InputStream inflated = new ReadAheadInputStream(new EntryInputStream(zip), INFLATER_THREAD)) {
+                sources.addAll(parseMesh(key, entryUri, inflated, progress, parallel, optimize, crease));
+            }
+        }
+        if (meshes == 0) throw new IOException("No .obj files in " + displayName(uri));
+        return sources;
+    }
+
+    // Файл внутри архива; в пути он идет после #, чтобы ключи текстур и библиотек отличались у разных архивов
+    private static Uri entryUri(Uri archive, String name) {
+        return archive.buildUpon().fragment(name).build();
+    }
+
+    // Разбираем OBJ и кладем результат в кэш. Сетка с материалами делится на части; сами материалы
+    // находит resolveMaterials, когда прочитаны все файлы
+    private List<Source> parseMesh(String key, Uri uri, InputStream input, Progress progress, boolean parallel,
+                                   boolean optimize, float crease) throws IOException {
+        ObjParser parser = parallel ? null : new ObjParser();
+        ParallelObjParser parallelParser = parallel ? new ParallelObjParser() : null;
+        // Счетчик разобранного читаем на потоке разбора; прочитанное из файла приходит от потока распаковки
+        ProgressInputStream progressInput = new ProgressInputStream(input, new ProgressInputStream.Listener() {
+            private long lastReport; // Время последнего обновления прогресса
+
+            @Override
+            public void onBytesRead(long bytesRead) {
+                long now = System.nanoTime();
+                if (now - lastReport < PROGRESS_INTERVAL_NANOS) return;
+                lastReport = now;
+                progress.post(parallel ? parallelParser.getParsedTriangles() : parser.getParsedTriangles());
+            }
+        });
+
+        MeshData mesh = parallel
+                ? parallelParser.parse(progressInput) // Парсим OBJ-файл на всех ядрах
+                : parser.parse(progressInput); // Парсим OBJ-файл в одном потоке
+        progress.post(mesh.getTriangleCount());
+        Log.d(TAG, "Parsed " + mesh.getTriangleCount() + " triangles.");
+        if (!mesh.hasNormals && crease > 0) { // Порядок треугольников сохраняется, диапазоны usemtl остаются верными
+            if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Loading cancelled");
+            long start = System.nanoTime();
+            mesh = NormalGenerator.generate(mesh, crease);
+            Log.d(TAG, "Normals generated in " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+        }
+        MaterialGroups groups = parallel ? parallelParser.getMaterialGroups() : parser.getMaterialGroups();
+        if (groups.isEmpty()) return Collections.singletonList(store(key, prepare(mesh, optimize)));
+
+        // Делим до оптимизации: она меняет порядок треугольников, по которому записаны диапазоны usemtl
+        List<String> libraries = parallel ? parallelParser.getMaterialLibraries() : parser.getMaterialLibraries();
+        MeshData[] parts = groups.split(mesh);
+        List<Source> sources = new ArrayList<>();
+        List<String> partList = new ArrayList<>(); // Строки в духе OBJ: mtllib библиотек, usemtl частей по порядку
+        for (String library : libraries) partList.add("mtllib " + library);
+        for (int m = 0; m < parts.length; m++) {
+            if (parts[m] == null) continue;
+            String name = m < groups.getMaterialCount() ? groups.getName(m) : null;
+            String partKey = key != null ? key + "-part" + sources.size() : null;
+            sources.add(store(partKey, prepare(parts[m], optimize)).withMaterial(uri, libraries, name));
+            partList.add(name != null ? "usemtl " + name : "usemtl");
+        }
+        if (key != null) meshCache.putParts(key, partList);
+        Log.d(TAG, "Split into " + sources.size() + " parts by material.");
+        return sources;
+    }
+
+    // Сетка целиком или ее части по материалам из кэша; null, если чего-то нет и файл нужно разобрать
+    private List<Source> loadCached(String key, Uri uri) {
+        MappedMesh whole = meshCache.get(key);
+        if (whole != null) return Collections.singletonList(new Source(key, null, whole, null));
+        List<String> partList = meshCache.getParts(key);
+        if (partList == null) return null;
+
+        List<String> libraries = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (String line : partList) {
+            if (line.startsWith("mtllib ")) libraries.add(line.substring("mtllib ".length()));
+            else if (line.startsWith("usemtl")) names.add(line.length() > "usemtl ".length() ? line.substring("usemtl ".length()) : null);
+        }
+        List<MappedMesh> parts = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            MappedMesh part = meshCache.get(key + "-part" + i);
+            if (part == null) return null; // Часть вытеснена из кэша
+            parts.add(part);
+        }
+        List<Source> sources = new ArrayList<>();
+        for (int i = 0; i < parts.size(); i++) {
+            sources.add(new Source(key + "-part" + i, null, parts.get(i), null).withMaterial(uri, libraries, names.get(i)));
+        }
+        return sources;
+    }
+
+    // Оптимизируем порядок вершин и режем на куски для отсечения по пирамиде видимости
+    private static MeshData prepare(MeshData mesh, boolean optimize) throws IOException {
+        if (optimize) {
+            if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Loading cancelled");
+            long start = System.nanoTime();
+            MeshOptimizer.Report report = new MeshOptimizer.Report();
+            mesh = MeshOptimizer.optimize(mesh, report); // Результат попадает в кэш, поэтому платим один раз
+            Log.d(TAG, "Mesh optimized in " + (System.nanoTime() - start) / 1_000_000 + " ms: " + report);
+        }
+        return MeshChunker.chunk(mesh);
+    }
+
+    // Кладем сетку в кэш и дальше работаем с отображением файла: данные в куче больше не нужны
+    private Source store(String key, MeshData mesh) {
+        if (key == null) return new Source(null, mesh, null, null);
+        meshCache.put(key, mesh);
+        MappedMesh cached = meshCache.get(key);
+        return cached != null ? new Source(key, null, cached, null) : new Source(key, mesh, null, null);
+    }
+
+    // Находим материалы частей по именам usemtl; библиотеки одной сетки разбираются один раз
+    private void resolveMaterials(List<Source> sources, SelectedFiles files) throws IOException {
+        Map<List<String>, Map<String, MtlMaterial>> loaded = new IdentityHashMap<>(); // У частей сетки общий список
+        for (Source source : sources) {
+            if (source.materialName == null) continue;
+            Map<String, MtlMaterial> materials = loaded.get(source.libraries);
+            if (materials == null) {
+                materials = loadMaterials(source.base, source.libraries, files);
+                loaded.put(source.libraries, materials);
+            }
+            source.material = findMaterial(materials, source.materialName);
+        }
+    }
+
+    // Материалы всех библиотек OBJ; библиотеки, которые не выбраны вместе с моделью, пропускаем
+    private Map<String, MtlMaterial> loadMaterials(Uri mesh, List<String> libraries, SelectedFiles files)
+            throws IOException {
+        Map<String, MtlMaterial> materials = new HashMap<>();
+        for (String library : libraries) {
+            Uri uri = files.find(mesh, library);
+            if (uri == null) {
+                Log.w(TAG, "Material library " + library + " was not selected; using the default material.");
+                continue;
+            }
+            materials.putAll(files.library(uri));
+        }
+        return materials;
+    }
+
+    private static MtlMaterial findMaterial(Map<String, MtlMaterial> materials, String name) {
+        if (name == null) return null;
+        MtlMaterial material = materials.get(name);
+        if (material == null && !materials.isEmpty()) Log.w(TAG, "Material " + name + " is not defined.");
+        return material;
+    }
+
+    // Прогресс одного выбранного файла; у сжатого считаются прочитанные сжатые байты, поэтому
+    // доля прочитанного верна и без размера распакованных данных
+    private final class Progress {
+        final Callback callback;
+        final int id; // Номер загрузки
+        final int file;
+        final int fileCount;
+        final AtomicLong bytesRead; // Прочитано из файла
+        final long totalBytes; // -1, если размер неизвестен
+
+        Progress(Callback callback, int id, int file, int fileCount, AtomicLong bytesRead, long totalBytes) {
+            this.callback = callback;
+            this.id = id;
+            this.file = file;
+            this.fileCount = fileCount;
+            this.bytesRead = bytesRead;
+            this.totalBytes = totalBytes;
+        }
+
+        // Передаем прогресс на UI-поток
+        void post(long triangles) {
+            long read = bytesRead.get();
+            mainHandler.post(() -> {
+                if (currentLoad.get() == id) callback.onProgress(file, fileCount, read, totalBytes, triangles);
+            });
+        }
+    }
+
+    // Имя файла для сопоставления со ссылками из OBJ и MTL
+    private String displayName(Uri uri) {
+        String name = null;
+        if (!"file".equals(uri.getScheme())) {
+            try (Cursor cursor = contentResolver.query(uri, new String[] { OpenableColumns.DISPLAY_NAME }, null, null,
+                    null)) {
+                if (cursor != null && cursor.moveToFirst()) name = cursor.getString(0);
+            } catch (RuntimeException e) { // Провайдер без этой колонки
+                Log.w(TAG, "Cannot query name of " + uri, e);
+            }
+        }
+        if (name == null) name = uri.getLastPathSegment();
+        return name != null ? name.substring(name.lastIndexOf('/') + 1) : "";
+    }
+
+    private static boolean isCompanion(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        for (String extension : COMPANION_EXTENSIONS) {
+            if (lower.endsWith(extension)) return true;
+        }
+        return false;
+    }
+
+    // Выбранные файлы одной загрузки: модели и то, на что они ссылаются, - библиотеки MTL и текстуры.
+    // Файлы из архивов добавляются по ходу чтения архива
+    private final class SelectedFiles {
+        final List<Uri> meshes = new ArrayList<>(); // Все, что не MTL и не картинка: OBJ, gzip или zip
+        private final Map<String, Uri> companions = new HashMap<>(); // По имени файла в нижнем регистре
+        private final Map<Uri, String> archived = new HashMap<>(); // Файлы из архивов и их пути внутри архива
+        private final Map<Uri, Map<String, MtlMaterial>> libraries = new HashMap<>(); // Уже разобранные MTL
+        private final Map<MtlMaterial, Uri> libraryOf = new IdentityHashMap<>(); // От MTL отсчитываются пути текстур
+
+        SelectedFiles(List<Uri> uris) {
+            for (Uri uri : uris) {
+                String name = displayName(uri);
+                if (isCompanion(name)) companions.put(name.toLowerCase(Locale.ROOT), uri);
+                else meshes.add(uri);
+            }
+        }
+
+        // Файл по пути из OBJ или MTL: среди выбранных - по имени, у file:// - еще и относительно base
+        Uri find(Uri base, String path) {
+            String normalized = path.replace('\\', '/'); // Пути из экспорта под Windows
+            Uri selected = companions.get(normalized.substring(normalized.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT));
+            if (selected != null) return selected;
+            if (base != null && "file".equals(base.getScheme()) && base.getPath() != null) {
+                File file = new File(new File(base.getPath()).getParentFile(), normalized);
+                if (file.isFile()) return Uri.fromFile(file);
+            }
+            return null;
+        }
+
+        // Разбираем библиотеку один раз на загрузку: ее материалы общие у всех деталей сборки
+        Map<String, MtlMaterial> library(Uri uri) throws IOException {
+            Map<String, MtlMaterial> materials = libraries.get(uri);
+            if (materials != null) return materials;
+            try (InputStream input = contentResolver.openInputStream(uri)) {
+                if (input == null) throw new IOException("Cannot open " + uri);
+                materials = MtlParser.parse(input);
+            }
+            for (MtlMaterial material : materials.values()) libraryOf.put(material, uri);
+            libraries.put(uri, materials);
+            return materials;
+        }
+
+        Uri libraryOf(MtlMaterial material) {
+            return libraryOf.get(material);
+        }
+
+        // Запоминаем MTL или текстуру из архива; zip стоит на этой записи. MTL разбираем сразу, а текстуру
+        // поток декодирования позже прочитает из архива сам, поэтому в памяти она не лежит
+        void addArchived(Uri archive, String name, ZipInputStream zip) throws IOException {
+            Uri uri = entryUri(archive, name);
+            String fileName = name.substring(name.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+            companions.put(fileName, uri);
+            archived.put(uri, name);
+            if (!fileName.endsWith(".mtl")) return;
+            Map<String, MtlMaterial> materials = MtlParser.parse(new EntryInputStream(zip));
+            for (MtlMaterial material : materials.values()) libraryOf.put(material, uri);
+            libraries.put(uri, materials);
+        }
+
+        // Источник для потока декодирования текстур; null, если файла нет
+        TextureCache.Source opener(Uri uri) {
+            if (uri == null) return null;
+            String entry = archived.get(uri);
+            if (entry == null) {
+                return () -> {
+                    InputStream input = contentResolver.openInputStream(uri);
+                    if (input == null) throw new IOException("Cannot open " + uri);
+                    return input;
+                };
+            }
+            Uri archive = uri.buildUpon().fragment(null).build();
+            return () -> { // Листаем архив до записи; распаковывается только то, что перед ней
+                InputStream input = contentResolver.openInputStream(archive);
+                if (input == null) throw new IOException("Cannot open " + archive);
+                ZipInputStream zip = new ZipInputStream(new BufferedInputStream(input, INFLATE_BUFFER_SIZE));
+                try {
+                    for (ZipEntry next; (next = zip.getNextEntry()) != null; ) {
+                        if (next.getName().equals(entry)) return zip; // Читается до конца записи
+                    }
+                } catch (IOException | RuntimeException e) {
+                    zip.close();
+                    throw e;
+                }
+                zip.close();
+                throw new FileNotFoundException(entry + " is missing from " + archive);
+            };
+        }
+    }
+
+    // Текущая запись zip для разбора: закрытие не закрывает архив, следующая запись читается из него же
+    private static final class EntryInputStream extends FilterInputStream {
+        EntryInputStream(ZipInputStream zip) {
+            super(zip);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // Загруженная сетка: отображение файла кэша или данные в куче
+    private static final class Source {
+        final String key; // Ключ в кэше; null, если файл не кэшируется
+        final MeshData data;
+        final MappedMesh mapped;
+        MtlMaterial material; // null - материал по умолчанию
+        Uri base; // Файл OBJ: от него отсчитываются пути библиотек
+        List<String> libraries = Collections.emptyList(); // mtllib этого OBJ
+        String materialName; // usemtl части; null - материал не задан
+
+        Source(String key, MeshData data, MappedMesh mapped, MtlMaterial material) {
+            this.key = key;
+            this.data = data;
+            this.mapped = mapped;
+            this.material = material;
+        }
+
+        // Имя материала части; сам материал находит resolveMaterials
+        Source withMaterial(Uri base, List<String> libraries, String materialName) {
+            this.base = base;
+            this.libraries = libraries;
+            this.materialName = materialName;
+            return this;
+        }
+
+        int getTriangleCount() {
+            return mapped != null ? mapped.indexCount / 3 : data.getTriangleCount();
+        }
+
+        boolean hasNormals() {
+            return mapped != null ? mapped.hasNormals : data.hasNormals;
+        }
+
+        boolean hasTexCoords() {
+            return mapped != null ? mapped.hasTexCoords : data.hasTexCoords;
+        }
+
+        MeshData toMeshData() {
+            return mapped != null ? mapped.toMeshData() : data;
+        }
+    }
+}
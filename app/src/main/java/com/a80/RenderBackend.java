@@ -0,0 +1,17 @@
+package com.a80;
+
+// Способ подготовить вершины части к отрисовке. Выбирается при создании GL-контекста:
+// на ES 3.0 формат каждой части хранится в VAO, на ES 2.0 задается заново на каждую часть
+public interface RenderBackend {
+    // Программа только что включена
+    void beginProgram(ShaderProgram program);
+
+    // Привязываем вершины и индексы части; в wireframe - буфер ребер вместо треугольников
+    void bindSubmesh(Model model, int submesh, ShaderProgram program, boolean wireframeMode);
+
+    // Программа больше не нужна
+    void endProgram(ShaderProgram program);
+
+    // Все части отправлены: снимаем привязки, чтобы остальной код видел чистое состояние
+    void finish();
+}
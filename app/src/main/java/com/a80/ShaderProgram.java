@@ -1,63 +1,165 @@
-//package com.a80;
-//
-//import android.opengl.GLES20;
-//import android.util.Log;
-//
-//public class ShaderProgram {
-//    private static final String TAG = "ShaderProgram";
-//    private int program;
-//
-//    public static int create() {
-//        ShaderProgram shaderProgram = new ShaderProgram();
-//
-//        int vertexShader = VertexShader.load();
-//        int fragmentShader = FragmentShader.load();
-//
-//        if (vertexShader == 0 || fragmentShader == 0) {
-//            return 0;
-//        }
-//
-//        shaderProgram.program = GLES20.glCreateProgram();
-//        if (shaderProgram.program == 0) {
-//            Log.e(TAG, "Error creating program.");
-//            return 0;
-//        }
-//
-//        GLES20.glAttachShader(shaderProgram.program, vertexShader);
-//        GLES20.glAttachShader(shaderProgram.program, fragmentShader);
-//        GLES20.glLinkProgram(shaderProgram.program);
-//
-//        int[] linkStatus = new int[1];
-//        GLES20.glGetProgramiv(shaderProgram.program, GLES20.GL_LINK_STATUS, linkStatus, 0);
-//        if (linkStatus[0] == 0) {
-//            Log.e(TAG, "Error linking program: " + GLES20.glGetProgramInfoLog(shaderProgram.program));
-//            GLES20.glDeleteProgram(shaderProgram.program);
-//            return 0;
-//        }
-//
-//        GLES20.glDeleteShader(vertexShader);
-//        GLES20.glDeleteShader(fragmentShader);
-//
-//        return shaderProgram.program;
-//    }
-//
-//    public void use() {
-//        if (program != 0) {
-//            GLES20.glUseProgram(program);
-//        } else {
-//            Log.e(TAG, "Shader program is not initialized.");
-//        }
-//    }
-//
-//    public int getProgram() {
-//        return program;
-//    }
-//
-//    public void delete() {
-//        if (program != 0) {
-//            GLES20.glDeleteProgram(program);
-//            program = 0;
-//            Log.d(TAG, "Shader program deleted.");
-//        }
-//    }
-//}
+package com.a80;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+// Слинкованная шейдерная программа с закэшированными адресами атрибутов и uniform-переменных
+public class ShaderProgram {
+    private static final String TAG = "ShaderProgram";
+
+    // Номера атрибутов общие для всех программ: VAO части подходит к любой из них
+    public static final int POSITION_LOCATION = 0;
+    public static final int NORMAL_LOCATION = 1;
+    public static final int INSTANCE_MATRIX_LOCATION = 2; // Занимает 2..5, по номеру на столбец
+    public static final int TEX_COORD_LOCATION = 6;
+
+    private final String vertexCode; // Исходник вершинного шейдера
+    private final String fragmentCode; // Исходник фрагментного шейдера
+    private int program; // Идентификатор программы в текущем контексте
+
+    // Адреса атрибутов; -1, если в программе их нет
+    private int positionHandle = -1;
+    private int normalHandle = -1;
+    private int instanceMatrixHandle = -1; // Первый из четырех столбцов матрицы экземпляра
+    private int texCoordHandle = -1;
+
+    // Адреса uniform-переменных; -1, если в программе их нет
+    private int mvpMatrixHandle = -1;
+    private int wireframeModeHandle = -1;
+    private int lightPositionHandle = -1;
+    private int positionScaleHandle = -1;
+    private int positionOffsetHandle = -1;
+    private int baseColorHandle = -1;
+    private int diffuseMapHandle = -1;
+    private int texturedHandle = -1;
+
+    public ShaderProgram(String vertexCode, String fragmentCode) {
+        this.vertexCode = vertexCode;
+        this.fragmentCode = fragmentCode;
+    }
+
+    // Компилируем и линкуем программу в текущем контексте; старый идентификатор считается потерянным
+    public boolean build() {
+        program = 0;
+
+        int vertexShader = VertexShader.load(vertexCode);
+        int fragmentShader = FragmentShader.load(fragmentCode);
+
+        if (vertexShader == 0 || fragmentShader == 0) {
+            return false;
+        }
+
+        int id = GLES20.glCreateProgram();
+        if (id == 0) {
+            Log.e(TAG, "Error creating program.");
+            return false;
+        }
+
+        GLES20.glAttachShader(id, vertexShader);
+        GLES20.glAttachShader(id, fragmentShader);
+        GLES20.glBindAttribLocation(id, POSITION_LOCATION, "vPosition");
+        GLES20.glBindAttribLocation(id, NORMAL_LOCATION, "vNormal");
+        GLES20.glBindAttribLocation(id, INSTANCE_MATRIX_LOCATION, "aInstanceMatrix");
+        GLES20.glBindAttribLocation(id, TEX_COORD_LOCATION, "vTexCoord");
+        GLES20.glLinkProgram(id);
+
+        // Шейдеры больше не нужны: программа держит их до удаления
+        GLES20.glDeleteShader(vertexShader);
+        GLES20.glDeleteShader(fragmentShader);
+
+        int[] linkStatus = new int[1];
+        GLES20.glGetProgramiv(id, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        if (linkStatus[0] == 0) {
+            Log.e(TAG, "Error linking program: " + GLES20.glGetProgramInfoLog(id));
+            GLES20.glDeleteProgram(id);
+            return false;
+        }
+
+        program = id;
+        positionHandle = GLES20.glGetAttribLocation(program, "vPosition");
+        normalHandle = GLES20.glGetAttribLocation(program, "vNormal");
+        instanceMatrixHandle = GLES20.glGetAttribLocation(program, "aInstanceMatrix");
+        texCoordHandle = GLES20.glGetAttribLocation(program, "vTexCoord");
+        mvpMatrixHandle = GLES20.glGetUniformLocation(program, "uMVPMatrix");
+        wireframeModeHandle = GLES20.glGetUniformLocation(program, "uWireframeMode");
+        lightPositionHandle = GLES20.glGetUniformLocation(program, "uLightPosition");
+        positionScaleHandle = GLES20.glGetUniformLocation(program, "uPositionScale");
+        positionOffsetHandle = GLES20.glGetUniformLocation(program, "uPositionOffset");
+        baseColorHandle = GLES20.glGetUniformLocation(program, "uBaseColor");
+        diffuseMapHandle = GLES20.glGetUniformLocation(program, "uDiffuseMap");
+        texturedHandle = GLES20.glGetUniformLocation(program, "uTextured");
+        return true;
+    }
+
+    public void use() {
+        if (program != 0) {
+            GLES20.glUseProgram(program);
+        } else {
+            Log.e(TAG, "Shader program is not initialized.");
+        }
+    }
+
+    public boolean isReady() {
+        return program != 0;
+    }
+
+    public int getProgram() {
+        return program;
+    }
+
+    public int getPositionHandle() {
+        return positionHandle;
+    }
+
+    public int getNormalHandle() {
+        return normalHandle;
+    }
+
+    public int getInstanceMatrixHandle() {
+        return instanceMatrixHandle;
+    }
+
+    public int getTexCoordHandle() {
+        return texCoordHandle;
+    }
+
+    public int getMvpMatrixHandle() {
+        return mvpMatrixHandle;
+    }
+
+    public int getWireframeModeHandle() {
+        return wireframeModeHandle;
+    }
+
+    public int getLightPositionHandle() {
+        return lightPositionHandle;
+    }
+
+    public int getPositionScaleHandle() {
+        return positionScaleHandle;
+    }
+
+    public int getPositionOffsetHandle() {
+        return positionOffsetHandle;
+    }
+
+    public int getBaseColorHandle() {
+        return baseColorHandle;
+    }
+
+    public int getDiffuseMapHandle() {
+        return diffuseMapHandle;
+    }
+
+    public int getTexturedHandle() {
+        return texturedHandle;
+    }
+
+    public void delete() {
+        if (program != 0) {
+            GLES20.glDeleteProgram(program);
+            program = 0;
+            Log.d(TAG, "Shader program deleted.");
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.a80;
+
+import android.util.Log;
+
+// Реестр шейдерных программ: все программы собираются один раз при создании GL-контекста
+public class ShaderRegistry {
+    private static final String TAG = "ShaderRegistry";
+
+    public static final int BASIC = 0; // Процедурная окраска и wireframe
+    public static final int LIT = 1; // Диффузное освещение по нормалям
+    public static final int LIT_QUANTIZED = 2; // То же для сжатых вершин с октаэдрическими нормалями
+    public static final int BASIC_INSTANCED = 3; // Те же программы для отрисовки экземпляров (ES 3.0)
+    public static final int LIT_INSTANCED = 4;
+    public static final int LIT_QUANTIZED_INSTANCED = 5;
+
+    private final ShaderProgram[] programs = {
+            new ShaderProgram(VertexShader.BASIC, FragmentShader.BASIC),
+            new ShaderProgram(VertexShader.LIT, FragmentShader.LIT),
+            new ShaderProgram(VertexShader.LIT_OCTAHEDRAL, FragmentShader.LIT),
+            new ShaderProgram(VertexShader.BASIC_INSTANCED, FragmentShader.BASIC),
+            new ShaderProgram(VertexShader.LIT_INSTANCED, FragmentShader.LIT),
+            new ShaderProgram(VertexShader.LIT_OCTAHEDRAL_INSTANCED, FragmentShader.LIT)
+    };
+
+    // Собираем все программы; вызывается из onSurfaceCreated, в том числе после потери EGL-контекста
+    public void buildAll() {
+        for (int i = 0; i < programs.length; i++) {
+            if (!programs[i].build()) {
+                Log.e(TAG, "Failed to build shader program " + i);
+            }
+        }
+    }
+
+    // Вариант программы для отрисовки экземпляров
+    public static int instancedOf(int id) {
+        return id + BASIC_INSTANCED;
+    }
+
+    // Готовая программа по идентификатору
+    public ShaderProgram get(int id) {
+        return programs[id];
+    }
+}
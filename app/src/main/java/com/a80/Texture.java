@@ -0,0 +1,46 @@
+package com.a80;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+
+// Диффузная текстура из TextureCache: одна на файл, сколько бы материалов на нее ни ссылалось.
+// Пока она декодируется или не помещается в бюджет, материал рисуется своим цветом
+public final class Texture {
+    final TextureCache cache; // Кэш, который ведет ссылки и память
+    final String key; // Файл текстуры; он же имя в логах
+    final TextureCache.Source image; // PNG, JPG или WebP; null, если есть только сжатый файл
+    final TextureCache.Source compressed; // KTX или PKM с ETC1/ETC2; null, если его нет
+
+    // Под блокировкой кэша
+    int references; // Материалы, которые держат текстуру
+    boolean decoding; // Декодируется или ждет загрузки на GPU
+    boolean unavailable; // Не декодировалась или не поместилась в бюджет
+
+    // Результат декодирования; передается GL-потоку через очередь кэша, данные отпускаются после загрузки
+    long bytes; // Память на GPU вместе с уровнями mip
+    Bitmap bitmap;
+    CompressedImage compressedImage;
+
+    // Только GL-поток
+    int textureId;
+    int generation = -1; // Поколение контекста, в котором текстура на GPU; -1 - ее там нет
+
+    Texture(TextureCache cache, String key, TextureCache.Source image, TextureCache.Source compressed) {
+        this.cache = cache;
+        this.key = key;
+        this.image = image;
+        this.compressed = compressed;
+    }
+
+    // Привязываем к активному текстурному блоку; false, если текстуры на GPU еще нет. Только GL-поток
+    public boolean bind() {
+        if (generation != GlCapabilities.getContextGeneration()) return false;
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+        return true;
+    }
+
+    // Отпускаем ссылку; без ссылок текстура остается в кэше, пока ее не вытеснят
+    public void release() {
+        cache.release(this);
+    }
+}
@@ -0,0 +1,298 @@
+package com.a80;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Кэш текстур материалов со счетчиком ссылок. Файлы декодируются на пуле фоновых потоков,
+// на GL-поток в начале кадра попадает не больше UPLOADS_PER_FRAME готовых текстур.
+// Текстуры без ссылок остаются на GPU для следующей сцены и вытесняются в порядке давности
+// использования, когда новой текстуре не хватает бюджета памяти
+public final class TextureCache {
+    private static final String TAG = "TextureCache"; // Метка для логирования
+    public static final long DEFAULT_BUDGET_BYTES = 64L * 1024 * 1024; // Бюджет памяти GPU по умолчанию
+    private static final int DECODE_THREADS = Math.min(2, Runtime.getRuntime().availableProcessors());
+    private static final int UPLOADS_PER_FRAME = 1; // Загрузка с mip - несколько миллисекунд, кадр не должен ждать
+    private static final int MAX_SIZE = 2048; // Больше на экране телефона не видно
+    private static final int MAX_BUDGET_SHARE = 4; // Одна текстура занимает не больше четверти бюджета
+    private static final int BYTES_PER_PIXEL = 2; // RGB_565: альфа шейдеру не нужна
+
+    // Открывает файл текстуры; вызывается на потоке декодирования
+    public interface Source {
+        InputStream open() throws IOException;
+    }
+
+    private final LinkedHashMap<String, Texture> textures = new LinkedHashMap<>(16, 0.75f, true); // В порядке LRU
+    private final ArrayDeque<Texture> ready = new ArrayDeque<>(); // Декодированы и ждут GL-поток
+    private volatile int pendingUploads; // Размер ready; кадр без загрузок не берет блокировку
+    private volatile long budgetBytes; // Ограничение памяти текстур на GPU
+    private long residentBytes; // Сколько сейчас занято на GPU
+    private ExecutorService decoder; // Пул декодирования; создается при первой текстуре
+    private volatile Runnable onDecoded; // Просит кадр, чтобы GL-поток забрал готовую текстуру
+
+    public TextureCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    // Меняем бюджет; лишнее вытесняется при следующей загрузке
+    public void setBudget(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    public void setOnDecoded(Runnable onDecoded) {
+        this.onDecoded = onDecoded;
+    }
+
+    // Берем ссылку на текстуру файла key и запускаем декодирование, если ее еще нет.
+    // compressed предпочтительнее image, если драйвер принимает его формат. Можно вызывать из любого потока
+    public synchronized Texture acquire(String key, Source image, Source compressed) {
+        Texture texture = textures.get(key); // Отмечаем использование
+        if (texture == null) {
+            texture = new Texture(this, key, image, compressed);
+            textures.put(key, texture);
+            schedule(texture);
+        } else if (texture.unavailable && !texture.decoding && texture.references == 0) {
+            texture.unavailable = false; // Новая сцена: бюджет мог освободиться
+            schedule(texture);
+        }
+        texture.references++;
+        return texture;
+    }
+
+    // Отпускаем ссылку; текстуру, которой нет на GPU, держать незачем
+    synchronized void release(Texture texture) {
+        if (--texture.references > 0) return;
+        if (texture.generation < 0 && !texture.decoding) textures.remove(texture.key);
+    }
+
+    // Загружаем готовые текстуры на GPU; вызывается на GL-потоке в начале кадра.
+    // true - в очереди еще есть текстуры, нужен следующий кадр
+    public boolean uploadPending() {
+        if (pendingUploads == 0) return false;
+        for (int i = 0; i < UPLOADS_PER_FRAME; i++) {
+            Texture texture;
+            synchronized (this) {
+                texture = ready.poll();
+                pendingUploads = ready.size();
+                if (texture == null) break;
+                texture.decoding = false;
+                if (texture.references == 0 || texture.unavailable) { // Сцену уже заменили или файл не читается
+                    discard(texture);
+                    if (texture.references == 0) textures.remove(texture.key);
+                    continue;
+                }
+                if (!makeRoom(texture.bytes)) {
+                    Log.w(TAG, "Texture " + texture.key + " (" + texture.bytes / 1024 + " KB) does not fit the "
+                            + budgetBytes / (1024 * 1024) + " MB budget; drawing material color instead.");
+                    texture.unavailable = true;
+                    discard(texture);
+                    continue;
+                }
+                residentBytes += texture.bytes;
+            }
+            upload(texture);
+        }
+        return pendingUploads > 0;
+    }
+
+    // Новый GL-контекст: старые текстуры потеряны. Нужные декодируются заново, остальные забываются
+    public synchronized void onContextCreated() {
+        residentBytes = 0;
+        Iterator<Texture> iterator = textures.values().iterator();
+        while (iterator.hasNext()) {
+            Texture texture = iterator.next();
+            if (texture.generation < 0) continue; // Еще не загружена: загрузится уже в новый контекст
+            texture.generation = -1;
+            if (texture.references == 0) iterator.remove();
+            else schedule(texture);
+        }
+    }
+
+    // Нехватка памяти: удаляем с GPU все текстуры без ссылок; вызывается на GL-потоке
+    public synchronized void trimUnreferenced() {
+        makeRoom(budgetBytes); // Место под целый бюджет есть, только когда на GPU остались одни нужные текстуры
+    }
+
+    // Останавливаем декодирование; вызывается при уничтожении активности
+    public synchronized void shutdown() {
+        if (decoder != null) decoder.shutdownNow();
+        decoder = null;
+    }
+
+    private void schedule(Texture texture) {
+        if (decoder == null) decoder = Executors.newFixedThreadPool(DECODE_THREADS);
+        texture.decoding = true;
+        decoder.execute(() -> decode(texture));
+    }
+
+    // Фоновая часть: сжатый файл, если драйвер его примет, иначе картинка с уменьшением под бюджет
+    private void decode(Texture texture) {
+        long maxBytes = budgetBytes / MAX_BUDGET_SHARE;
+        boolean decoded = false;
+        if (texture.compressed != null) {
+            try {
+                decoded = decodeCompressed(texture, maxBytes);
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Cannot read compressed texture for " + texture.key + ": " + e.getMessage());
+            }
+        }
+        if (!decoded && texture.image != null) {
+            try {
+                decoded = decodeImage(texture, maxBytes);
+            } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                Log.w(TAG, "Cannot decode texture " + texture.key + ": " + e.getMessage());
+            }
+        }
+        synchronized (this) {
+            if (!decoded) texture.unavailable = true;
+            ready.add(texture);
+            pendingUploads = ready.size();
+        }
+        Runnable listener = onDecoded;
+        if (listener != null) listener.run();
+    }
+
+    // Готовые блоки ETC грузятся без распаковки; по бюджету отбрасываются старшие уровни mip
+    private boolean decodeCompressed(Texture texture, long maxBytes) throws IOException {
+        CompressedImage image;
+        try (InputStream input = texture.compressed.open()) {
+            image = CompressedImage.read(input);
+        }
+        boolean supported = image.format == CompressedImage.GL_ETC1_RGB8_OES
+                ? GlCapabilities.supportsEtc1Textures() || GlCapabilities.supportsEtc2Textures()
+                : GlCapabilities.supportsEtc2Textures();
+        if (!supported) {
+            Log.d(TAG, "Compressed format of " + texture.key + " is not supported, decoding image instead.");
+            return false;
+        }
+        CompressedImage fitted = image.fitTo(MAX_SIZE, maxBytes);
+        if (fitted == null) return false; // Без уровней mip не уменьшить: пробуем картинку
+        texture.compressedImage = fitted;
+        texture.bytes = fitted.getByteCount();
+        return true;
+    }
+
+    // Сначала читаем только размер, чтобы сразу декодировать с уменьшением в степень двойки
+    private boolean decodeImage(Texture texture, long maxBytes) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream input = texture.image.open()) {
+            BitmapFactory.decodeStream(input, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) throw new IOException("Unsupported image format");
+
+        int sampleSize = 1;
+        while (options.outWidth / sampleSize > MAX_SIZE || options.outHeight / sampleSize > MAX_SIZE
+                || mipmappedBytes(options.outWidth / sampleSize, options.outHeight / sampleSize) > maxBytes) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inScaled = false;
+        Bitmap bitmap;
+        try (InputStream input = texture.image.open()) {
+            bitmap = BitmapFactory.decodeStream(input, null, options);
+        }
+        if (bitmap == null) throw new IOException("Cannot decode image");
+
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (!GlCapabilities.supportsNpotTextures() && (!isPowerOfTwo(width) || !isPowerOfTwo(height))) {
+            // ES 2.0 не строит mip для таких размеров: уменьшаем до ближайшей степени двойки
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap, Integer.highestOneBit(width),
+                    Integer.highestOneBit(height), true);
+            bitmap.recycle();
+            bitmap = scaled;
+        }
+        if (sampleSize > 1) Log.d(TAG, texture.key + " downsampled " + sampleSize + "x to fit the budget.");
+        texture.bitmap = bitmap;
+        texture.bytes = mipmappedBytes(bitmap.getWidth(), bitmap.getHeight());
+        return true;
+    }
+
+    // Освобождаем место в бюджете, вытесняя давно не использованные текстуры без ссылок
+    private boolean makeRoom(long bytes) {
+        long budget = budgetBytes;
+        Iterator<Texture> iterator = textures.values().iterator();
+        while (residentBytes + bytes > budget && iterator.hasNext()) {
+            Texture texture = iterator.next();
+            if (texture.references > 0 || texture.generation < 0) continue;
+            GLES20.glDeleteTextures(1, new int[] { texture.textureId }, 0);
+            residentBytes -= texture.bytes;
+            texture.generation = -1;
+            iterator.remove();
+            Log.d(TAG, "Evicted texture " + texture.key);
+        }
+        return residentBytes + bytes <= budget;
+    }
+
+    // Загрузка на GL-потоке: сжатые уровни как есть, картинка с построением mip на GPU
+    private void upload(Texture texture) {
+        int[] ids = new int[1];
+        GLES20.glGenTextures(1, ids, 0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, ids[0]);
+
+        boolean mipmapped;
+        int width, height;
+        CompressedImage image = texture.compressedImage;
+        if (image != null) {
+            int format = image.format == CompressedImage.GL_ETC1_RGB8_OES && !GlCapabilities.supportsEtc1Textures()
+                    ? CompressedImage.GL_COMPRESSED_RGB8_ETC2 : image.format; // ETC2 читает блоки ETC1
+            for (int level = 0; level < image.getLevelCount(); level++) {
+                GLES20.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, level, format, image.getLevelWidth(level),
+                        image.getLevelHeight(level), 0, image.getLevel(level).capacity(), image.getLevel(level));
+            }
+            mipmapped = image.hasFullMipChain(); // Сжатые уровни GPU строить не умеет
+            width = image.width;
+            height = image.height;
+        } else {
+            Bitmap bitmap = texture.bitmap;
+            width = bitmap.getWidth();
+            height = bitmap.getHeight();
+            GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+            GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D); // Размеры подогнаны под mip при декодировании
+            mipmapped = true;
+        }
+        boolean repeat = GlCapabilities.supportsNpotTextures() || isPowerOfTwo(width) && isPowerOfTwo(height);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER,
+                mipmapped ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        int wrap = repeat ? GLES20.GL_REPEAT : GLES20.GL_CLAMP_TO_EDGE; // Развертки OBJ часто выходят за [0, 1]
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, wrap);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, wrap);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+        discard(texture);
+        texture.textureId = ids[0];
+        texture.generation = GlCapabilities.getContextGeneration();
+        Log.d(TAG, "Uploaded " + texture.key + " " + width + "x" + height + (image != null ? " ETC" : "")
+                + ", " + texture.bytes / 1024 + " KB.");
+    }
+
+    // Отпускаем декодированные данные
+    private static void discard(Texture texture) {
+        if (texture.bitmap != null) texture.bitmap.recycle();
+        texture.bitmap = null;
+        texture.compressedImage = null;
+    }
+
+    // Полная цепочка mip добавляет треть к уровню 0
+    private static long mipmappedBytes(int width, int height) {
+        return (long) width * height * BYTES_PER_PIXEL * 4 / 3;
+    }
+
+    private static boolean isPowerOfTwo(int value) {
+        return (value & (value - 1)) == 0;
+    }
+}
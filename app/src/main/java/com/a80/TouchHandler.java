@@ -1,17 +1,35 @@
 package com.a80;
 
 import android.content.Context;
+import android.view.Choreographer;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
 
 import androidx.annotation.NonNull;
 
-// Класс для обработки касаний и жестов
+// Класс для обработки касаний и жестов. Все поля живут на UI-потоке: события копятся между vsync,
+// а в обратном вызове Choreographer состояние один раз публикуется в CameraState для GL-потока
 public class TouchHandler {
+    private static final float INERTIA_TIME_CONSTANT = 0.3f; // За это время скорость после броска падает в e раз, с
+    private static final float MIN_INERTIA_SPEED = 5f; // Медленнее, градусов в секунду, вращение останавливается
+    private static final float MAX_FRAME_STEP = 0.1f; // Длинная пауза между vsync не превращается в рывок, с
+    private static final float VELOCITY_SMOOTHING = 0.5f; // Вес нового замера в оценке скорости пальца
+
     private final ScaleGestureDetector scaleGestureDetector; // Обработчик жестов масштабирования
     private final GestureDetector gestureDetector; // Обработчик жестов
+    private final CameraState cameraState = new CameraState(); // Опубликованное для GL-потока состояние
+    private final Choreographer.FrameCallback frameCallback = this::doFrame; // Один объект на все кадры
     private float rotationX = 0, rotationY = 0, scale = 1.0f; // Угол вращения и масштаб
+    private float velocityX = 0, velocityY = 0; // Скорость вращения, градусов в секунду
+    private boolean inertia; // Модель крутится по инерции после броска
+    private boolean touching; // Палец на экране
+    private boolean frameScheduled; // Обратный вызов на следующий vsync уже заказан
+    private long lastFrameTime; // Время предыдущего vsync; 0 - анимация только началась
+    private float lastRotationX, lastRotationY; // Углы на предыдущем vsync, для оценки скорости пальца
+    private float publishedScale = 1.0f; // Масштаб в последнем опубликованном состоянии
+    private float publishedVelocityX, publishedVelocityY; // Скорость в последнем опубликованном состоянии
+    private Runnable onCameraChanged; // Вызывается после публикации нового состояния
 
     // Конструктор класса обработчика касаний
     public TouchHandler(Context context) {
@@ -33,19 +51,105 @@ public class TouchHandler {
         });
 
         gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(@NonNull MotionEvent e) {
+                inertia = false; // Касание останавливает вращение по инерции
+                velocityX = 0;
+                velocityY = 0;
+                return true;
+            }
+
             @Override
             public boolean onScroll(MotionEvent e1, @NonNull MotionEvent e2, float distanceX, float distanceY) {
                 rotationX -= distanceY; // Инвертируем направление вращения по X
                 rotationY += distanceX; // Оставляем направление вращения по Y
                 return true;
             }
+
+            @Override
+            public boolean onFling(MotionEvent e1, @NonNull MotionEvent e2, float velocityX, float velocityY) {
+                // Пиксели в секунду переводим в градусы так же, как в onScroll
+                TouchHandler.this.velocityX = velocityY;
+                TouchHandler.this.velocityY = -velocityX;
+                inertia = true;
+                return true;
+            }
         });
     }
 
+    // Подписка на изменения камеры; обычно это запрос кадра у GLSurfaceView
+    public void setOnCameraChanged(Runnable onCameraChanged) {
+        this.onCameraChanged = onCameraChanged;
+    }
+
+    // Состояние камеры для GL-потока
+    public CameraState getCameraState() {
+        return cameraState;
+    }
+
     // Метод для обработки событий касания
     public void onTouchEvent(MotionEvent event) {
+        int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_DOWN) touching = true;
         scaleGestureDetector.onTouchEvent(event); // Обрабатываем масштабирование
         gestureDetector.onTouchEvent(event); // Обрабатываем другие жесты
+        if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) touching = false;
+        scheduleFrame(); // Изменения уйдут в GL на ближайшем vsync, а не на каждом событии
+    }
+
+    // Заказываем обратный вызов на следующий vsync
+    private void scheduleFrame() {
+        if (frameScheduled) return;
+        frameScheduled = true;
+        Choreographer.getInstance().postFrameCallback(frameCallback);
+    }
+
+    // Один шаг на vsync: продвигаем инерцию, оцениваем скорость и публикуем состояние
+    private void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        float dt = lastFrameTime == 0 ? 0 : Math.min((frameTimeNanos - lastFrameTime) / 1e9f, MAX_FRAME_STEP);
+        lastFrameTime = frameTimeNanos;
+
+        if (inertia) {
+            rotationX += velocityX * dt;
+            rotationY += velocityY * dt;
+            float decay = (float) Math.exp(-dt / INERTIA_TIME_CONSTANT); // Экспоненциальное затухание
+            velocityX *= decay;
+            velocityY *= decay;
+            if (velocityX * velocityX + velocityY * velocityY < MIN_INERTIA_SPEED * MIN_INERTIA_SPEED) {
+                inertia = false;
+                velocityX = 0;
+                velocityY = 0;
+            }
+        } else if (touching && dt > 0) { // Скорость пальца сглаживаем, чтобы предсказание не дрожало
+            velocityX += ((rotationX - lastRotationX) / dt - velocityX) * VELOCITY_SMOOTHING;
+            velocityY += ((rotationY - lastRotationY) / dt - velocityY) * VELOCITY_SMOOTHING;
+            if (velocityX * velocityX + velocityY * velocityY < MIN_INERTIA_SPEED * MIN_INERTIA_SPEED) {
+                velocityX = 0; // Палец почти стоит
+                velocityY = 0;
+            }
+        } else if (!touching) {
+            velocityX = 0; // Палец отпущен без броска: модель стоит, предсказывать нечего
+            velocityY = 0;
+        }
+        boolean changed = rotationX != lastRotationX || rotationY != lastRotationY || scale != publishedScale
+                || velocityX != publishedVelocityX || velocityY != publishedVelocityY;
+        lastRotationX = rotationX;
+        lastRotationY = rotationY;
+
+        if (changed) { // Неподвижный палец на экране не заставляет перерисовывать сцену
+            cameraState.publish(rotationX, rotationY, scale, velocityX, velocityY, frameTimeNanos);
+            publishedScale = scale;
+            publishedVelocityX = velocityX;
+            publishedVelocityY = velocityY;
+            if (onCameraChanged != null) onCameraChanged.run();
+        }
+
+        if (touching || inertia) {
+            scheduleFrame(); // Пока есть движение, идем в такт с дисплеем
+        } else {
+            lastFrameTime = 0;
+        }
     }
 
     // Получаем угол вращения по оси X
@@ -62,4 +166,4 @@ public class TouchHandler {
     public float getScale() {
         return scale;
     }
-}
\ No newline at end of file
+}
@@ -1,42 +1,137 @@
-//package com.a80;
-//
-//import android.opengl.GLES20;
-//import android.util.Log;
-//
-//public class VertexShader {
-//    private static final String TAG = "VertexShader";
-//
-//    public static int load() {
-//        String shaderCode =
-//                "uniform mat4 uMVPMatrix;" +
-//                        "attribute vec4 vPosition;" +
-//                        "attribute vec3 vNormal;" +
-//                        "varying vec3 vNormalInterp;" +
-//                        "varying vec3 vPositionInterp;" +
-//                        "void main() {" +
-//                        "    vPositionInterp = vec3(uMVPMatrix * vPosition);" +
-//                        "    vNormalInterp = normalize(vNormal);" +
-//                        "    gl_Position = uMVPMatrix * vPosition;" +
-//                        "}";
-//
-//
-//        int shader = GLES20.glCreateShader(GLES20.GL_VERTEX_SHADER);
-//        if (shader == 0) {
-//            Log.e(TAG, "Error creating vertex shader");
-//            return 0;
-//        }
-//
-//        GLES20.glShaderSource(shader, shaderCode);
-//        GLES20.glCompileShader(shader);
-//
-//        int[] compiled = new int[1];
-//        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
-//        if (compiled[0] == 0) {
-//            Log.e(TAG, "Error compiling vertex shader: " + GLES20.glGetShaderInfoLog(shader));
-//            GLES20.glDeleteShader(shader);
-//            return 0;
-//        }
-//
-//        return shader;
-//    }
-//}
+package com.a80;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+// Исходники и компиляция вершинных шейдеров
+public final class VertexShader {
+    private static final String TAG = "VertexShader";
+
+    // Базовый шейдер: позиция и координаты в пространстве модели для процедурной окраски
+    public static final String BASIC =
+            "uniform mat4 uMVPMatrix;" +
+                    "uniform vec3 uPositionScale;" +
+                    "uniform vec3 uPositionOffset;" +
+                    "attribute vec4 vPosition;" +
+                    "varying vec3 vPositionInSpace;" +
+                    "void main() {" +
+                    "  gl_Position = uMVPMatrix * vPosition;" +
+                    "  vPositionInSpace = vPosition.xyz * uPositionScale + uPositionOffset;" + // Сжатые позиции разворачиваем в координаты модели
+                    "}";
+
+    // Шейдер с освещением по нормалям и диффузной текстурой материала
+    public static final String LIT =
+            "uniform mat4 uMVPMatrix;" +
+                    "attribute vec4 vPosition;" +
+                    "attribute vec3 vNormal;" +
+                    "attribute vec2 vTexCoord;" +
+                    "varying vec3 vNormalInterp;" +
+                    "varying vec3 vPositionInterp;" +
+                    "varying vec2 vTexCoordInterp;" +
+                    "void main() {" +
+                    "    vTexCoordInterp = vec2(vTexCoord.x, 1.0 - vTexCoord.y);" + // В OBJ v растет вверх, строки текстуры идут сверху вниз
+                    "    vPositionInterp = vec3(uMVPMatrix * vPosition);" +
+                    "    vNormalInterp = normalize(vNormal);" +
+                    "    gl_Position = uMVPMatrix * vPosition;" +
+                    "}";
+
+    // Шейдер с освещением для сжатых вершин: нормаль приходит октаэдрической разверткой
+    public static final String LIT_OCTAHEDRAL =
+            "uniform mat4 uMVPMatrix;" +
+                    "attribute vec4 vPosition;" +
+                    "attribute vec2 vNormal;" +
+                    "attribute vec2 vTexCoord;" +
+                    "varying vec3 vNormalInterp;" +
+                    "varying vec3 vPositionInterp;" +
+                    "varying vec2 vTexCoordInterp;" +
+                    "void main() {" +
+                    "    vTexCoordInterp = vec2(vTexCoord.x, 1.0 - vTexCoord.y);" +
+                    "    vec3 n = vec3(vNormal, 1.0 - abs(vNormal.x) - abs(vNormal.y));" +
+                    "    float fold = max(-n.z, 0.0);" + // Нижняя полусфера свернута в углы квадрата
+                    "    n.x += n.x >= 0.0 ? -fold : fold;" +
+                    "    n.y += n.y >= 0.0 ? -fold : fold;" +
+                    "    vPositionInterp = vec3(uMVPMatrix * vPosition);" +
+                    "    vNormalInterp = normalize(n);" +
+                    "    gl_Position = uMVPMatrix * vPosition;" +
+                    "}";
+
+    // Варианты для glDrawElementsInstanced: матрица экземпляра приходит атрибутом с делителем 1.
+    // Сжатые позиции разворачиваются в шейдере, поэтому uMVPMatrix у всех частей модели одна
+    public static final String BASIC_INSTANCED =
+            "uniform mat4 uMVPMatrix;" +
+                    "uniform vec3 uPositionScale;" +
+                    "uniform vec3 uPositionOffset;" +
+                    "attribute vec4 vPosition;" +
+                    "attribute mat4 aInstanceMatrix;" +
+                    "varying vec3 vPositionInSpace;" +
+                    "void main() {" +
+                    "  vPositionInSpace = vPosition.xyz * uPositionScale + uPositionOffset;" +
+                    "  gl_Position = uMVPMatrix * aInstanceMatrix * vec4(vPositionInSpace, 1.0);" +
+                    "}";
+
+    public static final String LIT_INSTANCED =
+            "uniform mat4 uMVPMatrix;" +
+                    "uniform vec3 uPositionScale;" +
+                    "uniform vec3 uPositionOffset;" +
+                    "attribute vec4 vPosition;" +
+                    "attribute vec3 vNormal;" +
+                    "attribute mat4 aInstanceMatrix;" +
+                    "attribute vec2 vTexCoord;" +
+                    "varying vec3 vNormalInterp;" +
+                    "varying vec3 vPositionInterp;" +
+                    "varying vec2 vTexCoordInterp;" +
+                    "void main() {" +
+                    "    vTexCoordInterp = vec2(vTexCoord.x, 1.0 - vTexCoord.y);" +
+                    "    vec4 position = uMVPMatrix * aInstanceMatrix * vec4(vPosition.xyz * uPositionScale + uPositionOffset, 1.0);" +
+                    "    vPositionInterp = vec3(position);" +
+                    "    vNormalInterp = normalize((aInstanceMatrix * vec4(vNormal, 0.0)).xyz);" +
+                    "    gl_Position = position;" +
+                    "}";
+
+    public static final String LIT_OCTAHEDRAL_INSTANCED =
+            "uniform mat4 uMVPMatrix;" +
+                    "uniform vec3 uPositionScale;" +
+                    "uniform vec3 uPositionOffset;" +
+                    "attribute vec4 vPosition;" +
+                    "attribute vec2 vNormal;" +
+                    "attribute mat4 aInstanceMatrix;" +
+                    "attribute vec2 vTexCoord;" +
+                    "varying vec3 vNormalInterp;" +
+                    "varying vec3 vPositionInterp;" +
+                    "varying vec2 vTexCoordInterp;" +
+                    "void main() {" +
+                    "    vTexCoordInterp = vec2(vTexCoord.x, 1.0 - vTexCoord.y);" +
+                    "    vec3 n = vec3(vNormal, 1.0 - abs(vNormal.x) - abs(vNormal.y));" +
+                    "    float fold = max(-n.z, 0.0);" +
+                    "    n.x += n.x >= 0.0 ? -fold : fold;" +
+                    "    n.y += n.y >= 0.0 ? -fold : fold;" +
+                    "    vec4 position = uMVPMatrix * aInstanceMatrix * vec4(vPosition.xyz * uPositionScale + uPositionOffset, 1.0);" +
+                    "    vPositionInterp = vec3(position);" +
+                    "    vNormalInterp = normalize((aInstanceMatrix * vec4(n, 0.0)).xyz);" +
+                    "    gl_Position = position;" +
+                    "}";
+
+    private VertexShader() {}
+
+    // Компилируем шейдер; возвращаем 0 при ошибке
+    public static int load(String shaderCode) {
+        int shader = GLES20.glCreateShader(GLES20.GL_VERTEX_SHADER);
+        if (shader == 0) {
+            Log.e(TAG, "Error creating vertex shader");
+            return 0;
+        }
+
+        GLES20.glShaderSource(shader, shaderCode);
+        GLES20.glCompileShader(shader);
+
+        int[] compiled = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
+        if (compiled[0] == 0) {
+            Log.e(TAG, "Error compiling vertex shader: " + GLES20.glGetShaderInfoLog(shader));
+            GLES20.glDeleteShader(shader);
+            return 0;
+        }
+
+        return shader;
+    }
+}
@@ -0,0 +1,233 @@
+package android.opengl;
+
+// Записывающая замена GLES20 для локальных тестов: в тестовом classpath стоит раньше android.jar.
+// Объекты GL - просто номера, вызовы только считаются; сама замена память не выделяет
+public class GLES20 {
+    public static final int GL_DEPTH_BUFFER_BIT = 0x00000100;
+    public static final int GL_COLOR_BUFFER_BIT = 0x00004000;
+    public static final int GL_LINES = 0x0001;
+    public static final int GL_TRIANGLES = 0x0004;
+    public static final int GL_DEPTH_TEST = 0x0B71;
+    public static final int GL_TEXTURE_2D = 0x0DE1;
+    public static final int GL_BYTE = 0x1400;
+    public static final int GL_UNSIGNED_BYTE = 0x1401;
+    public static final int GL_SHORT = 0x1402;
+    public static final int GL_UNSIGNED_SHORT = 0x1403;
+    public static final int GL_UNSIGNED_INT = 0x1405;
+    public static final int GL_FLOAT = 0x1406;
+    public static final int GL_VERSION = 0x1F02;
+    public static final int GL_EXTENSIONS = 0x1F03;
+    public static final int GL_ARRAY_BUFFER = 0x8892;
+    public static final int GL_ELEMENT_ARRAY_BUFFER = 0x8893;
+    public static final int GL_STATIC_DRAW = 0x88E4;
+    public static final int GL_FRAGMENT_SHADER = 0x8B30;
+    public static final int GL_VERTEX_SHADER = 0x8B31;
+    public static final int GL_COMPILE_STATUS = 0x8B81;
+    public static final int GL_LINK_STATUS = 0x8B82;
+
+    public static final String ES3_VERSION = "OpenGL ES 3.0 (recording stand-in)";
+    public static final String ES2_VERSION = "OpenGL ES 2.0 (recording stand-in)";
+    private static final int MAX_OBJECTS = 4096; // Больше шейдеров и программ тестам не нужно
+
+    private static final String[] shaderSources = new String[MAX_OBJECTS]; // Исходник по номеру шейдера
+    private static final int[] vertexShaders = new int[MAX_OBJECTS]; // Вершинный шейдер программы
+    private static final int[] fragmentShaders = new int[MAX_OBJECTS]; // Фрагментный шейдер программы
+    private static final java.util.Map<String, Integer> boundAttributes = new java.util.HashMap<>(); // "программа имя"
+    private static int nextObject = 1; // 0 в GL означает ошибку
+
+    public static String version = ES3_VERSION; // Что вернет GL_VERSION: от нее зависит выбор пути отрисовки
+
+    public static long calls; // Все вызовы
+    public static long drawCalls; // glDrawElements и glDrawArrays
+    public static long drawnIndices; // Сумма count по вызовам рисования
+    public static long bufferUploads; // glBufferData
+    public static long attributePointers; // glVertexAttribPointer
+    public static long textureBinds; // glBindTexture
+    public static long vectorUniforms; // glUniform3fv: свет и цвета материалов
+
+    // Сбрасываем счетчики перед измерением
+    public static void resetCounters() {
+        calls = 0;
+        drawCalls = 0;
+        drawnIndices = 0;
+        bufferUploads = 0;
+        attributePointers = 0;
+        textureBinds = 0;
+        vectorUniforms = 0;
+    }
+
+    public static String glGetString(int name) {
+        calls++;
+        if (name == GL_VERSION) return version;
+        if (name == GL_EXTENSIONS) return "GL_OES_element_index_uint GL_OES_vertex_half_float";
+        return "";
+    }
+
+    public static int glCreateShader(int type) {
+        calls++;
+        return nextObject++;
+    }
+
+    public static void glShaderSource(int shader, String source) {
+        calls++;
+        shaderSources[shader] = source;
+    }
+
+    public static void glCompileShader(int shader) {
+        calls++;
+    }
+
+    public static void glGetShaderiv(int shader, int name, int[] params, int offset) {
+        calls++;
+        params[offset] = 1; // Все компилируется
+    }
+
+    public static String glGetShaderInfoLog(int shader) {
+        calls++;
+        return "";
+    }
+
+    public static void glDeleteShader(int shader) {
+        calls++;
+    }
+
+    public static int glCreateProgram() {
+        calls++;
+        return nextObject++;
+    }
+
+    public static void glAttachShader(int program, int shader) {
+        calls++;
+        if (shaderSources[shader] != null && shaderSources[shader].contains("gl_Position")) {
+            vertexShaders[program] = shader;
+        } else {
+            fragmentShaders[program] = shader;
+        }
+    }
+
+    public static void glLinkProgram(int program) {
+        calls++;
+    }
+
+    public static void glGetProgramiv(int program, int name, int[] params, int offset) {
+        calls++;
+        params[offset] = 1; // Все линкуется
+    }
+
+    public static String glGetProgramInfoLog(int program) {
+        calls++;
+        return "";
+    }
+
+    public static void glDeleteProgram(int program) {
+        calls++;
+    }
+
+    public static void glUseProgram(int program) {
+        calls++;
+    }
+
+    public static void glBindAttribLocation(int program, int index, String name) {
+        calls++;
+        boundAttributes.put(program + " " + name, index);
+    }
+
+    // Атрибут есть, если его имя встречается в вершинном шейдере программы
+    public static int glGetAttribLocation(int program, String name) {
+        calls++;
+        String source = shaderSources[vertexShaders[program]];
+        if (source == null || !source.contains(name)) return -1;
+        Integer bound = boundAttributes.get(program + " " + name);
+        return bound != null ? bound : name.hashCode() & 0xF;
+    }
+
+    // Uniform-переменная есть, если ее имя встречается в любом шейдере программы
+    public static int glGetUniformLocation(int program, String name) {
+        calls++;
+        String vertex = shaderSources[vertexShaders[program]];
+        String fragment = shaderSources[fragmentShaders[program]];
+        boolean found = vertex != null && vertex.contains(name) || fragment != null && fragment.contains(name);
+        return found ? name.hashCode() & 0xFFFF : -1;
+    }
+
+    public static void glGenBuffers(int n, int[] buffers, int offset) {
+        calls++;
+        for (int i = 0; i < n; i++) buffers[offset + i] = nextObject++;
+    }
+
+    public static void glDeleteBuffers(int n, int[] buffers, int offset) {
+        calls++;
+    }
+
+    public static void glBindBuffer(int target, int buffer) {
+        calls++;
+    }
+
+    public static void glBufferData(int target, int size, java.nio.Buffer data, int usage) {
+        calls++;
+        bufferUploads++;
+    }
+
+    public static void glEnableVertexAttribArray(int index) {
+        calls++;
+    }
+
+    public static void glDisableVertexAttribArray(int index) {
+        calls++;
+    }
+
+    public static void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+        calls++;
+        attributePointers++;
+    }
+
+    public static void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        calls++;
+    }
+
+    public static void glUniform3fv(int location, int count, float[] value, int offset) {
+        calls++;
+        vectorUniforms++;
+    }
+
+    public static void glUniform1i(int location, int x) {
+        calls++;
+    }
+
+    public static void glBindTexture(int target, int texture) {
+        calls++;
+        textureBinds++;
+    }
+
+    public static void glDrawElements(int mode, int count, int type, int offset) {
+        calls++;
+        drawCalls++;
+        drawnIndices += count;
+    }
+
+    public static void glDrawArrays(int mode, int first, int count) {
+        calls++;
+        drawCalls++;
+        drawnIndices += count;
+    }
+
+    public static void glLineWidth(float width) {
+        calls++;
+    }
+
+    public static void glClear(int mask) {
+        calls++;
+    }
+
+    public static void glClearColor(float red, float green, float blue, float alpha) {
+        calls++;
+    }
+
+    public static void glEnable(int cap) {
+        calls++;
+    }
+
+    public static void glViewport(int x, int y, int width, int height) {
+        calls++;
+    }
+}
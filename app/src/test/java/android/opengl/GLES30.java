@@ -0,0 +1,60 @@
+package android.opengl;
+
+// Записывающая замена GLES30 для локальных тестов: вызовы ES 3.0 считаются в тех же счетчиках GLES20
+public class GLES30 extends GLES20 {
+    public static final int GL_QUERY_RESULT = 0x8866;
+    public static final int GL_QUERY_RESULT_AVAILABLE = 0x8867;
+
+    public static long instancedDrawCalls; // glDrawElementsInstanced
+    public static long drawnInstances; // Сумма instanceCount по вызовам рисования экземпляров
+    public static long vertexArrayBinds; // glBindVertexArray с ненулевым VAO
+
+    // Сбрасываем счетчики перед измерением
+    public static void resetCounters() {
+        GLES20.resetCounters();
+        instancedDrawCalls = 0;
+        drawnInstances = 0;
+        vertexArrayBinds = 0;
+    }
+
+    public static void glGenQueries(int n, int[] ids, int offset) {
+        calls++;
+    }
+
+    public static void glBeginQuery(int target, int id) {
+        calls++;
+    }
+
+    public static void glEndQuery(int target) {
+        calls++;
+    }
+
+    public static void glGetQueryObjectuiv(int id, int name, int[] params, int offset) {
+        calls++;
+    }
+
+    public static void glGenVertexArrays(int n, int[] arrays, int offset) {
+        glGenBuffers(n, arrays, offset); // Номера из общего счетчика объектов
+    }
+
+    public static void glBindVertexArray(int array) {
+        calls++;
+        if (array != 0) vertexArrayBinds++;
+    }
+
+    public static void glDeleteVertexArrays(int n, int[] arrays, int offset) {
+        calls++;
+    }
+
+    public static void glVertexAttribDivisor(int index, int divisor) {
+        calls++;
+    }
+
+    public static void glDrawElementsInstanced(int mode, int count, int type, int offset, int instanceCount) {
+        calls++;
+        drawCalls++;
+        drawnIndices += count;
+        instancedDrawCalls++;
+        drawnInstances += instanceCount;
+    }
+}
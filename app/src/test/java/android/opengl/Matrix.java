@@ -0,0 +1,118 @@
+package android.opengl;
+
+// Замена android.opengl.Matrix для локальных тестов: та же математика по столбцам, без выделения памяти
+public class Matrix {
+    private static final float[] temp = new float[32]; // Рабочие матрицы для rotateM
+
+    public static void multiplyMM(float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+        for (int i = 0; i < 4; i++) { // Столбец результата
+            float r0 = rhs[rhsOffset + i * 4];
+            float r1 = rhs[rhsOffset + i * 4 + 1];
+            float r2 = rhs[rhsOffset + i * 4 + 2];
+            float r3 = rhs[rhsOffset + i * 4 + 3];
+            for (int j = 0; j < 4; j++) {
+                result[resultOffset + i * 4 + j] = lhs[lhsOffset + j] * r0 + lhs[lhsOffset + 4 + j] * r1
+                        + lhs[lhsOffset + 8 + j] * r2 + lhs[lhsOffset + 12 + j] * r3;
+            }
+        }
+    }
+
+    public static void multiplyMV(float[] resultVec, int resultVecOffset, float[] lhsMat, int lhsMatOffset, float[] rhsVec, int rhsVecOffset) {
+        float x = rhsVec[rhsVecOffset], y = rhsVec[rhsVecOffset + 1], z = rhsVec[rhsVecOffset + 2], w = rhsVec[rhsVecOffset + 3];
+        for (int j = 0; j < 4; j++) {
+            resultVec[resultVecOffset + j] = lhsMat[lhsMatOffset + j] * x + lhsMat[lhsMatOffset + 4 + j] * y
+                    + lhsMat[lhsMatOffset + 8 + j] * z + lhsMat[lhsMatOffset + 12 + j] * w;
+        }
+    }
+
+    public static void setIdentityM(float[] sm, int smOffset) {
+        for (int i = 0; i < 16; i++) sm[smOffset + i] = 0;
+        for (int i = 0; i < 16; i += 5) sm[smOffset + i] = 1;
+    }
+
+    public static void translateM(float[] m, int mOffset, float x, float y, float z) {
+        for (int i = 0; i < 4; i++) {
+            m[mOffset + 12 + i] += m[mOffset + i] * x + m[mOffset + 4 + i] * y + m[mOffset + 8 + i] * z;
+        }
+    }
+
+    public static void scaleM(float[] m, int mOffset, float x, float y, float z) {
+        for (int i = 0; i < 4; i++) {
+            m[mOffset + i] *= x;
+            m[mOffset + 4 + i] *= y;
+            m[mOffset + 8 + i] *= z;
+        }
+    }
+
+    public static void rotateM(float[] m, int mOffset, float a, float x, float y, float z) {
+        synchronized (temp) {
+            setRotateM(temp, 0, a, x, y, z);
+            multiplyMM(temp, 16, m, mOffset, temp, 0);
+            System.arraycopy(temp, 16, m, mOffset, 16);
+        }
+    }
+
+    public static void setRotateM(float[] rm, int rmOffset, float a, float x, float y, float z) {
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        x /= length;
+        y /= length;
+        z /= length;
+        float radians = (float) Math.toRadians(a);
+        float s = (float) Math.sin(radians);
+        float c = (float) Math.cos(radians);
+        float nc = 1 - c;
+        setIdentityM(rm, rmOffset);
+        rm[rmOffset] = x * x * nc + c;
+        rm[rmOffset + 1] = y * x * nc + z * s;
+        rm[rmOffset + 2] = x * z * nc - y * s;
+        rm[rmOffset + 4] = x * y * nc - z * s;
+        rm[rmOffset + 5] = y * y * nc + c;
+        rm[rmOffset + 6] = y * z * nc + x * s;
+        rm[rmOffset + 8] = x * z * nc + y * s;
+        rm[rmOffset + 9] = y * z * nc - x * s;
+        rm[rmOffset + 10] = z * z * nc + c;
+    }
+
+    public static void frustumM(float[] m, int offset, float left, float right, float bottom, float top, float near, float far) {
+        for (int i = 0; i < 16; i++) m[offset + i] = 0;
+        m[offset] = 2 * near / (right - left);
+        m[offset + 5] = 2 * near / (top - bottom);
+        m[offset + 8] = (right + left) / (right - left);
+        m[offset + 9] = (top + bottom) / (top - bottom);
+        m[offset + 10] = -(far + near) / (far - near);
+        m[offset + 11] = -1;
+        m[offset + 14] = -2 * far * near / (far - near);
+    }
+
+    public static void setLookAtM(float[] rm, int rmOffset, float eyeX, float eyeY, float eyeZ,
+                                  float centerX, float centerY, float centerZ, float upX, float upY, float upZ) {
+        float fx = centerX - eyeX, fy = centerY - eyeY, fz = centerZ - eyeZ;
+        float rlf = 1 / (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+        fx *= rlf;
+        fy *= rlf;
+        fz *= rlf;
+        float sx = fy * upZ - fz * upY, sy = fz * upX - fx * upZ, sz = fx * upY - fy * upX; // s = f x up
+        float rls = 1 / (float) Math.sqrt(sx * sx + sy * sy + sz * sz);
+        sx *= rls;
+        sy *= rls;
+        sz *= rls;
+        float ux = sy * fz - sz * fy, uy = sz * fx - sx * fz, uz = sx * fy - sy * fx; // u = s x f
+        rm[rmOffset] = sx;
+        rm[rmOffset + 1] = ux;
+        rm[rmOffset + 2] = -fx;
+        rm[rmOffset + 3] = 0;
+        rm[rmOffset + 4] = sy;
+        rm[rmOffset + 5] = uy;
+        rm[rmOffset + 6] = -fy;
+        rm[rmOffset + 7] = 0;
+        rm[rmOffset + 8] = sz;
+        rm[rmOffset + 9] = uz;
+        rm[rmOffset + 10] = -fz;
+        rm[rmOffset + 11] = 0;
+        rm[rmOffset + 12] = 0;
+        rm[rmOffset + 13] = 0;
+        rm[rmOffset + 14] = 0;
+        rm[rmOffset + 15] = 1;
+        translateM(rm, rmOffset, -eyeX, -eyeY, -eyeZ);
+    }
+}
@@ -0,0 +1,339 @@
+package com.a80;
+
+import android.content.ComponentCallbacks2;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.opengl.Matrix;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+// Гоняем цикл отрисовки на записывающей замене GLES20 из тестовых исходников и проверяем,
+// что установившиеся кадры не выделяют память на потоке рендеринга. Нужна JDK на базе HotSpot
+public class FrameAllocationTest {
+    private static final int WARMUP_FRAMES = 2000; // Первые загрузки, буферы ребер и JIT
+    private static final int MEASURED_FRAMES = 5000; // Кадры, в которых память выделяться не должна
+    private static final int MAX_ROUNDS = 5; // JIT и загрузка классов изредка выделяют память на нашем потоке
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private CubeRenderer renderer;
+    private CameraState camera;
+
+    @Before
+    public void setUp() {
+        GLES20.version = GLES20.ES3_VERSION;
+        TouchHandler touchHandler = new TouchHandler(null);
+        camera = touchHandler.getCameraState();
+        renderer = new CubeRenderer(touchHandler);
+        renderer.onSurfaceCreated(null, null);
+        renderer.onSurfaceChanged(null, 1080, 1920);
+    }
+
+    @Test
+    public void cubeFramesDoNotAllocate() {
+        assertSteadyStateAllocations(0);
+    }
+
+    @Test
+    public void litModelWithLodsDoesNotAllocate() {
+        renderer.setModel(createModel(false));
+        assertSteadyStateAllocations(0);
+    }
+
+    @Test
+    public void quantizedModelDoesNotAllocate() {
+        renderer.setModel(createModel(true));
+        assertSteadyStateAllocations(0);
+    }
+
+    @Test
+    public void profiledFramesDoNotAllocate() {
+        renderer.setModel(createModel(false));
+        renderer.getProfiler().setEnabled(true);
+        assertSteadyStateAllocations(0);
+        FrameProfiler profiler = renderer.getProfiler();
+        assertTrue("chunks not recorded", profiler.getLastChunks() > 0);
+        assertTrue("more chunks culled than exist", profiler.getLastCulledChunks() <= profiler.getLastChunks());
+    }
+
+    @Test
+    public void wireframeDoesNotAllocate() {
+        renderer.setModel(createModel(false));
+        renderer.setWireframeMode(true);
+        assertSteadyStateAllocations(0);
+    }
+
+    @Test
+    public void sortedSceneDoesNotAllocate() {
+        List<Model> scene = new ArrayList<>();
+        Material[] materials = { Material.DEFAULT, new Material(0.8f, 0.3f, 0.2f), new Material(0.3f, 0.8f, 0.4f) };
+        MeshData part = MeshChunker.chunk(createSphere(16, 8));
+        for (int i = 0; i < 200; i++) {
+            Model model = new Model(part, i % 2 == 0);
+            model.upload();
+            model.setMaterial(materials[i % materials.length]);
+            float[] transform = new float[16];
+            Matrix.setIdentityM(transform, 0);
+            Matrix.translateM(transform, 0, (i % 20 - 10) * 7f, (i / 20 - 5) * 7f, 0);
+            model.setTransform(transform);
+            scene.add(model);
+        }
+        renderer.setModels(scene);
+        assertSteadyStateAllocations(0);
+    }
+
+    // Номера материалов растут всю жизнь процесса, и 16 бит ключа сортировки у разных материалов совпадают.
+    // Совпавшие материалы все равно привязываются каждый свой: на один glUniform3fv больше, чем с общим материалом
+    @Test
+    public void materialsWithCollidingKeysAreBoundSeparately() {
+        Material first = new Material(0.8f, 0.3f, 0.2f);
+        Material second;
+        do {
+            second = new Material(0.3f, 0.8f, 0.4f);
+        } while (((second.getId() ^ first.getId()) & 0xFFFF) != 0);
+
+        long shared = countVectorUniforms(first, first);
+        long colliding = countVectorUniforms(first, second);
+        assertEquals("second material was not bound", shared + 1, colliding);
+    }
+
+    @Test
+    public void stressGridDrawsInstancesWithoutAllocating() {
+        renderer.setModel(createModel(true));
+        renderer.setStressGrid(16);
+        assertSteadyStateAllocations(0);
+        assertTrue("stress grid was not drawn instanced", GLES30.instancedDrawCalls > 0);
+        assertEquals("every instanced call draws the whole grid",
+                GLES30.instancedDrawCalls * 16 * 16 * 16, GLES30.drawnInstances);
+    }
+
+    @Test
+    public void vertexArraysSkipAttributeSetup() {
+        renderer.setModel(createModel(false));
+        assertSteadyStateAllocations(0);
+        assertEquals("attribute pointers re-specified with VAOs", 0, GLES20.attributePointers);
+        assertTrue("no VAO bound", GLES30.vertexArrayBinds >= MEASURED_FRAMES);
+    }
+
+    // Контекст ES 2.0: запасной путь с указателями атрибутов и копиями по одной
+    @Test
+    public void es2FallbackDoesNotAllocate() {
+        GLES20.version = GLES20.ES2_VERSION;
+        renderer.onSurfaceCreated(null, null); // Новый контекст: буферы загружаются заново
+        renderer.setModel(createModel(true));
+        renderer.setStressGrid(3);
+        assertSteadyStateAllocations(0);
+        assertEquals("VAO used on ES 2.0", 0, GLES30.vertexArrayBinds);
+        assertEquals("instanced draw on ES 2.0", 0, GLES30.instancedDrawCalls);
+    }
+
+    // Убранная с экрана сцена ждет в кэше моделей и возвращается без повторной загрузки буферов
+    @Test
+    public void cachedSceneReturnsWithoutUpload() {
+        Model model = createModel(false);
+        renderer.setModels(Collections.singletonList(model), "scene");
+        renderFrame(0);
+        renderer.unloadModels();
+        assertEquals("scene not cached", 1, renderer.getModelCache().size());
+
+        List<Model> cached = renderer.getModelCache().take("scene");
+        assertSame("cache returned another scene", model, cached.get(0));
+        GLES20.resetCounters();
+        for (Model m : cached) m.upload();
+        renderer.setModels(cached, "scene");
+        assertEquals("cached scene re-uploaded", 0, GLES20.bufferUploads);
+        assertSteadyStateAllocations(0);
+
+        renderer.unloadModels();
+        renderer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals("cache kept scenes after trim", 0, renderer.getModelCache().size());
+    }
+
+    // На экране при нехватке памяти кэш теряет половину, в фоне - все сцены
+    @Test
+    public void trimLevelsEvictCachedScenes() {
+        MeshData part = MeshChunker.chunk(createSphere(16, 8));
+        for (String key : new String[] { "first", "second", "third", "fourth" }) {
+            Model model = new Model(part);
+            model.upload();
+            renderer.setModels(Collections.singletonList(model), key);
+        }
+        renderer.unloadModels();
+        ModelCache cache = renderer.getModelCache();
+        assertEquals("scenes not cached", 4, cache.size());
+
+        renderer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertEquals("moderate pressure evicted scenes", 4, cache.size());
+        renderer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals("low memory did not halve the cache", 2, cache.size());
+        renderer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertEquals("cache kept scenes in the background", 0, cache.size());
+    }
+
+    // Текстурированные детали с общим материалом: одна привязка текстуры на программу, а не на деталь
+    @Test
+    public void texturedSceneDoesNotAllocate() {
+        renderer.setModels(createTexturedScene());
+        assertSteadyStateAllocations(0);
+        assertTrue("texture not bound", GLES20.textureBinds > 0);
+        assertTrue("texture bound per draw", GLES20.textureBinds < GLES20.drawCalls);
+    }
+
+    @Test
+    public void es2TexturedSceneDoesNotAllocate() {
+        GLES20.version = GLES20.ES2_VERSION;
+        renderer.onSurfaceCreated(null, null);
+        renderer.setModels(createTexturedScene());
+        assertSteadyStateAllocations(0);
+        assertTrue("texture not bound", GLES20.textureBinds > 0);
+    }
+
+    // Сетка с текстурными координатами и текстура, уже лежащая на GPU текущего контекста
+    private List<Model> createTexturedScene() {
+        Texture texture = new Texture(renderer.getTextureCache(), "test.png", null, null);
+        texture.textureId = 1;
+        texture.generation = GlCapabilities.getContextGeneration();
+        Material material = new Material(1f, 1f, 1f, texture);
+        MeshData part = MeshChunker.chunk(withTexCoords(createSphere(32, 16)));
+        List<Model> scene = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Model model = new Model(part, i % 2 == 0);
+            model.upload();
+            model.setMaterial(material);
+            float[] transform = new float[16];
+            Matrix.setIdentityM(transform, 0);
+            Matrix.translateM(transform, 0, (i % 10 - 5) * 7f, (i / 10 - 2) * 7f, 0);
+            model.setTransform(transform);
+            scene.add(model);
+        }
+        return scene;
+    }
+
+    // glUniform3fv за кадр с двумя одинаковыми моделями в материалах first и second
+    private long countVectorUniforms(Material first, Material second) {
+        MeshData mesh = createSphere(16, 8);
+        List<Model> scene = new ArrayList<>();
+        for (Material material : new Material[] { first, second }) {
+            Model model = new Model(mesh);
+            model.upload();
+            model.setMaterial(material);
+            scene.add(model);
+        }
+        renderer.setModels(scene);
+        GLES20.resetCounters();
+        renderFrame(0);
+        return GLES20.vectorUniforms;
+    }
+
+    // Прогреваем, затем считаем байты, выделенные текущим потоком за измеряемые кадры.
+    // Достаточно одного чистого раунда: выделение в каждом кадре или хотя бы раз на MEASURED_FRAMES
+    // кадров его не допустит, а разовые выделения компилятора и загрузчика классов не мешают
+    private void assertSteadyStateAllocations(long expected) {
+        int frame = 0;
+        for (int i = 0; i < WARMUP_FRAMES; i++) renderFrame(frame++);
+
+        long allocated = -1;
+        for (int round = 0; round < MAX_ROUNDS && allocated != expected; round++) {
+            GLES30.resetCounters();
+            long overhead = measurementOverhead();
+            long before = allocatedBytes();
+            for (int i = 0; i < MEASURED_FRAMES; i++) renderFrame(frame++);
+            long after = allocatedBytes();
+            allocated = after - before - overhead;
+
+            assertTrue("frames issued no draw calls", GLES20.drawCalls >= MEASURED_FRAMES);
+            assertEquals("buffers re-uploaded in steady state", 0, GLES20.bufferUploads);
+        }
+        assertEquals("bytes allocated over " + MEASURED_FRAMES + " frames", expected, allocated);
+    }
+
+    // Камера вращается и приближается, чтобы отсечение и выбор уровня детализации шли по разным веткам
+    private void renderFrame(int frame) {
+        float angle = frame * 0.7f;
+        float scale = 0.5f + 1.5f * (float) Math.abs(Math.sin(frame * 0.01));
+        camera.publish(angle * 0.3f, angle, scale, 40f, 40f, System.nanoTime());
+        renderer.onDrawFrame(null);
+    }
+
+    // Память, которую выделяет само измерение
+    private static long measurementOverhead() {
+        long first = allocatedBytes();
+        long second = allocatedBytes();
+        return second - first;
+    }
+
+    private static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // Сфера с нормалями, разбитая на куски, как в загрузчике, и два упрощенных уровня детализации
+    private static Model createModel(boolean quantized) {
+        MeshData mesh = MeshChunker.chunk(createSphere(256, 128));
+        Model model = new Model(mesh, quantized);
+        model.upload();
+        MeshData lod = MeshSimplifier.simplify(mesh, mesh.getTriangleCount() / 4);
+        model.addLod(model.prepareLod(MeshChunker.chunk(lod)));
+        model.addLod(model.prepareLod(MeshChunker.chunk(MeshSimplifier.simplify(lod, lod.getTriangleCount() / 4))));
+        return model;
+    }
+
+    // Добавляем к вершинам сферы координаты по долготе и широте
+    private static MeshData withTexCoords(MeshData mesh) {
+        int stride = MeshData.strideOf(true, true);
+        float[] source = mesh.vertices;
+        int count = source.length / MeshData.strideOf(true, false);
+        float[] vertices = new float[count * stride];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(source, i * 6, vertices, i * stride, 6);
+            vertices[i * stride + 6] = (float) (Math.atan2(source[i * 6 + 5], source[i * 6 + 3]) / (2 * Math.PI) + 0.5);
+            vertices[i * stride + 7] = (float) (Math.acos(Math.max(-1, Math.min(1, source[i * 6 + 4]))) / Math.PI);
+        }
+        return new MeshData(vertices, mesh.indices, true, true);
+    }
+
+    private static MeshData createSphere(int segments, int rings) {
+        int stride = MeshData.strideOf(true, false);
+        float[] vertices = new float[(segments + 1) * (rings + 1) * stride];
+        int v = 0;
+        for (int r = 0; r <= rings; r++) {
+            double theta = Math.PI * r / rings;
+            for (int s = 0; s <= segments; s++) {
+                double phi = 2 * Math.PI * s / segments;
+                float x = (float) (Math.sin(theta) * Math.cos(phi));
+                float y = (float) Math.cos(theta);
+                float z = (float) (Math.sin(theta) * Math.sin(phi));
+                vertices[v++] = x * 3;
+                vertices[v++] = y * 3;
+                vertices[v++] = z * 3;
+                vertices[v++] = x;
+                vertices[v++] = y;
+                vertices[v++] = z;
+            }
+        }
+        int[] indices = new int[segments * rings * 6];
+        int i = 0;
+        for (int r = 0; r < rings; r++) {
+            for (int s = 0; s < segments; s++) {
+                int a = r * (segments + 1) + s;
+                int b = a + segments + 1;
+                indices[i++] = a;
+                indices[i++] = b;
+                indices[i++] = a + 1;
+                indices[i++] = a + 1;
+                indices[i++] = b;
+                indices[i++] = b + 1;
+            }
+        }
+        return new MeshData(vertices, indices, true, false);
+    }
+}
@@ -0,0 +1,26 @@
+// Замеры JMH для модуля :mesh на синтетических сетках от 1 тыс. до 10 млн треугольников.
+// Полный прогон: ./gradlew :benchmark:jmh, результаты - в build/results/jmh/results.json.
+// Быстрая проверка на регрессии: ./gradlew :benchmark:jmh -Pjmh.include=ObjParse -Pjmh.triangles=1000,100000
+plugins {
+    java
+    id("me.champeau.jmh")
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    jmh(project(":mesh"))
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    jvmArgs.addAll("-Xms8g", "-Xmx8g") // Сетке на 10 млн треугольников нужно около 4 ГБ; размер кучи фиксирован для сравнимых пиков
+    resultFormat.set("JSON")
+    providers.gradleProperty("jmh.include").orNull?.let { includes.add(it) }
+    providers.gradleProperty("jmh.triangles").orNull?.let {
+        benchmarkParameters.put("triangles", objects.listProperty<String>().value(it.split(",")))
+    }
+}
@@ -0,0 +1,47 @@
+package com.a80;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+// Пик кучи за один вызов сверх того, что было занято перед ним. Учитывает и мусор, который сборщик
+// еще не убрал, поэтому сравнивать значения можно только при одинаковых настройках кучи и сборщика
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class HeapPeak {
+    public double peakHeapMegabytes; // Наибольший пик за итерацию
+
+    private long baseline; // Занято перед вызовом
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        peakHeapMegabytes = 0;
+    }
+
+    @Setup(Level.Invocation)
+    public void start() {
+        System.gc(); // Начинаем с чистой кучи, чтобы мусор прошлого вызова не попал в пик
+        baseline = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) continue;
+            pool.resetPeakUsage();
+            baseline += pool.getUsage().getUsed();
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void stop() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        peakHeapMegabytes = Math.max(peakHeapMegabytes, (peak - baseline) / 1e6);
+    }
+}
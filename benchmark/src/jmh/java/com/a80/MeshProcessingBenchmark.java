@@ -0,0 +1,90 @@
+package com.a80;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Проходы, которые загрузчик делает после разбора: нормали для сеток без vn, оптимизация, куски,
+// уровни детализации, ребра для wireframe, деление под 16-битные индексы и подготовка буферов для GPU
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class MeshProcessingBenchmark {
+    @Param({ "1000", "100000", "1000000", "10000000" })
+    public int triangles; // Размер синтетической сетки
+
+    private MeshData mesh; // Сетка как после разбора
+    private MeshData withoutNormals; // Та же сетка без vn
+    private float[] bounds; // AABB для квантования
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mesh = SyntheticMesh.create(triangles);
+        bounds = mesh.computeBounds();
+        float[] positions = new float[mesh.getVertexCount() * MeshData.POSITION_SIZE];
+        for (int v = 0; v < mesh.getVertexCount(); v++) {
+            System.arraycopy(mesh.vertices, v * mesh.stride, positions, v * MeshData.POSITION_SIZE, MeshData.POSITION_SIZE);
+        }
+        withoutNormals = new MeshData(positions, mesh.indices);
+    }
+
+    @Benchmark
+    public MeshData normals() {
+        return NormalGenerator.generate(withoutNormals, NormalGenerator.DEFAULT_CREASE_ANGLE);
+    }
+
+    @Benchmark
+    public MeshData optimize() {
+        return MeshOptimizer.optimize(mesh, new MeshOptimizer.Report());
+    }
+
+    @Benchmark
+    public MeshData chunk() {
+        return MeshChunker.chunk(mesh);
+    }
+
+    @Benchmark
+    public MeshData simplify() {
+        return MeshSimplifier.simplify(mesh, triangles / 4); // Как второй уровень детализации
+    }
+
+    @Benchmark
+    public int[] edges() {
+        return EdgeBuilder.buildUniqueEdges(mesh.indices);
+    }
+
+    @Benchmark
+    public List<MeshData> split() {
+        return MeshSplitter.split(mesh, MeshSplitter.MAX_VERTICES);
+    }
+
+    @Benchmark
+    public ByteBuffer quantize() {
+        return VertexQuantizer.quantize(FloatBuffer.wrap(mesh.vertices), mesh.getVertexCount(), mesh.stride,
+                mesh.hasNormals, mesh.hasTexCoords, true, bounds);
+    }
+
+    @Benchmark
+    public void buffers(Blackhole blackhole) {
+        blackhole.consume(MeshBuffers.createVertexBuffer(mesh.vertices));
+        blackhole.consume(MeshBuffers.createIndexBuffer(mesh.indices, 4));
+    }
+}
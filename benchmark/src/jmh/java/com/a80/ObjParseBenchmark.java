@@ -0,0 +1,64 @@
+package com.a80;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Скорость разбора OBJ из памяти: счетчик megabytes выводится как MB/s, без влияния диска
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ObjParseBenchmark {
+    @Param({ "1000", "100000", "1000000", "10000000" })
+    public int triangles; // Размер синтетической сетки
+
+    private byte[] obj; // Текст OBJ
+
+    // Разобранные байты за итерацию; JMH делит их на время итерации
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Input {
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        obj = SyntheticMesh.toObj(SyntheticMesh.create(triangles));
+    }
+
+    @Benchmark
+    public MeshData sequential(Input input) throws IOException {
+        MeshData mesh = new ObjParser().parse(new ByteArrayInputStream(obj));
+        input.megabytes += obj.length / 1e6;
+        return mesh;
+    }
+
+    @Benchmark
+    public MeshData parallel(Input input) throws IOException {
+        MeshData mesh = new ParallelObjParser().parse(new ByteArrayInputStream(obj));
+        input.megabytes += obj.length / 1e6;
+        return mesh;
+    }
+}
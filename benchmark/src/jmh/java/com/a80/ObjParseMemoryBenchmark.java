@@ -0,0 +1,48 @@
+package com.a80;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Пиковая память разбора OBJ: перед каждым вызовом куча очищается, счетчик peakHeapMegabytes - пик сверх нее.
+// Отдельно от ObjParseBenchmark, потому что сборка мусора перед каждым вызовом искажает скорость
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ObjParseMemoryBenchmark {
+    @Param({ "1000", "100000", "1000000", "10000000" })
+    public int triangles; // Размер синтетической сетки
+
+    private byte[] obj; // Текст OBJ; в пик не входит, он занят до начала замера
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        obj = SyntheticMesh.toObj(SyntheticMesh.create(triangles));
+    }
+
+    @Benchmark
+    public MeshData sequential(HeapPeak heap) throws IOException {
+        return new ObjParser().parse(new ByteArrayInputStream(obj));
+    }
+
+    @Benchmark
+    public MeshData parallel(HeapPeak heap) throws IOException {
+        return new ParallelObjParser().parse(new ByteArrayInputStream(obj));
+    }
+}
@@ -0,0 +1,142 @@
+package com.a80;
+
+import java.util.Arrays;
+
+// Синтетические сетки для замеров: волнистая поверхность на регулярной сетке с нормалями.
+// Размер задается точным числом треугольников, текст OBJ пишется с шестью знаками, как у экспортеров
+public final class SyntheticMesh {
+    private static final int DECIMALS = 6; // Знаков после запятой в OBJ
+    private static final float WAVE_FREQUENCY = 7f; // Волн на сторону квадрата [-1, 1]
+    private static final float WAVE_HEIGHT = 0.1f; // Амплитуда волн, чтобы упрощению было что сохранять
+
+    private SyntheticMesh() {}
+
+    // Сетка ровно из triangles треугольников: квадраты по строкам, последний ряд может быть неполным
+    public static MeshData create(int triangles) {
+        int columns = (int) Math.max(1, Math.ceil(Math.sqrt(triangles / 2.0)));
+        int rows = (int) Math.max(1, Math.ceil(triangles / (2.0 * columns)));
+        int stride = MeshData.strideOf(true, false);
+        float[] vertices = new float[(rows + 1) * (columns + 1) * stride];
+        int v = 0;
+        for (int r = 0; r <= rows; r++) {
+            float y = 2f * r / rows - 1;
+            for (int c = 0; c <= columns; c++) {
+                float x = 2f * c / columns - 1;
+                double sx = Math.sin(x * WAVE_FREQUENCY), cx = Math.cos(x * WAVE_FREQUENCY);
+                double sy = Math.sin(y * WAVE_FREQUENCY), cy = Math.cos(y * WAVE_FREQUENCY);
+                float dx = (float) (WAVE_HEIGHT * WAVE_FREQUENCY * cx * cy); // Производные высоты для нормали
+                float dy = (float) (-WAVE_HEIGHT * WAVE_FREQUENCY * sx * sy);
+                float length = (float) Math.sqrt(dx * dx + dy * dy + 1);
+                vertices[v++] = x;
+                vertices[v++] = y;
+                vertices[v++] = (float) (WAVE_HEIGHT * sx * cy);
+                vertices[v++] = -dx / length;
+                vertices[v++] = -dy / length;
+                vertices[v++] = 1 / length;
+            }
+        }
+        int[] indices = new int[triangles * 3];
+        int i = 0;
+        for (int r = 0; r < rows && i < indices.length; r++) {
+            for (int c = 0; c < columns && i < indices.length; c++) {
+                int a = r * (columns + 1) + c;
+                int b = a + columns + 1;
+                indices[i++] = a;
+                indices[i++] = a + 1;
+                indices[i++] = b;
+                if (i == indices.length) break;
+                indices[i++] = a + 1;
+                indices[i++] = b + 1;
+                indices[i++] = b;
+            }
+        }
+        return new MeshData(vertices, indices, true, false);
+    }
+
+    // Текст OBJ той же сетки: строки v и vn на каждую вершину и грани вида f a//a b//b c//c
+    public static byte[] toObj(MeshData mesh) {
+        ObjWriter out = new ObjWriter((long) mesh.getVertexCount() * 64 + (long) mesh.indices.length * 16);
+        for (int v = 0; v < mesh.getVertexCount(); v++) {
+            int base = v * mesh.stride;
+            out.line('v', mesh.vertices, base);
+            out.line('n', mesh.vertices, base + mesh.getNormalOffset());
+        }
+        for (int i = 0; i < mesh.indices.length; i += 3) {
+            out.write('f');
+            for (int k = 0; k < 3; k++) {
+                int index = mesh.indices[i + k] + 1; // Индексы OBJ начинаются с единицы
+                out.write(' ');
+                out.writeInt(index);
+                out.write('/');
+                out.write('/');
+                out.writeInt(index);
+            }
+            out.write('\n');
+        }
+        return out.toByteArray();
+    }
+
+    // Запись чисел без String.format: генерация OBJ на 10 млн треугольников занимает секунды, а не минуты
+    private static final class ObjWriter {
+        private final byte[] digits = new byte[20];
+        private byte[] data;
+        private int size;
+
+        ObjWriter(long expectedSize) {
+            data = new byte[(int) Math.min(expectedSize, Integer.MAX_VALUE - 16)];
+        }
+
+        void write(int b) {
+            if (size == data.length) grow(1);
+            data[size++] = (byte) b;
+        }
+
+        void write(byte[] bytes, int from, int length) {
+            if (size + length > data.length) grow(length);
+            System.arraycopy(bytes, from, data, size, length);
+            size += length;
+        }
+
+        private void grow(int needed) {
+            long capacity = Math.max((long) data.length * 3 / 2, (long) size + needed);
+            data = Arrays.copyOf(data, (int) Math.min(capacity, Integer.MAX_VALUE - 16));
+        }
+
+        byte[] toByteArray() {
+            return size == data.length ? data : Arrays.copyOf(data, size);
+        }
+
+        // Строка "v x y z" или "vn x y z"
+        void line(char kind, float[] values, int from) {
+            write('v');
+            if (kind == 'n') write('n');
+            for (int k = 0; k < 3; k++) {
+                write(' ');
+                writeFixed(values[from + k]);
+            }
+            write('\n');
+        }
+
+        void writeFixed(float value) {
+            long scaled = Math.round(Math.abs((double) value) * 1_000_000);
+            if (value < 0 && scaled != 0) write('-');
+            writeInt(scaled / 1_000_000);
+            write('.');
+            long fraction = scaled % 1_000_000;
+            for (int d = DECIMALS - 1; d >= 0; d--) {
+                digits[d] = (byte) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            write(digits, 0, DECIMALS);
+        }
+
+        void writeInt(long value) {
+            int n = digits.length;
+            do {
+                digits[--n] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            write(digits, n, digits.length - n);
+        }
+    }
+}
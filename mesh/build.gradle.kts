@@ -0,0 +1,19 @@
+// Разбор и обработка сеток без зависимостей от Android: модуль собирается и измеряется на обычной JVM
+plugins {
+    `java-library`
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    // Модуль попадает в APK: компилируем по API Java 8, иначе новые JDK подставят,
+    // например, ковариантный ByteBuffer.position, которого нет на старых версиях Android
+    options.release.set(8)
+}
+
+dependencies {
+    testImplementation("junit:junit:4.13.2") // Тесты идут на обычной JVM: ./gradlew :mesh:test
+}
@@ -0,0 +1,24 @@
+package com.a80;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// Сжатие входного файла; определяется по первым байтам, а не по имени: провайдеры часто его не сообщают
+public enum CompressionFormat {
+    NONE,
+    GZIP, // Один сжатый файл, например model.obj.gz
+    ZIP; // Архив: OBJ вместе с MTL и текстурами
+
+    // Смотрим сигнатуру и возвращаем поток в начало; нужен поток с поддержкой mark
+    public static CompressionFormat detect(InputStream input) throws IOException {
+        input.mark(4);
+        byte[] magic = new byte[4];
+        int length = 0;
+        int read;
+        while (length < magic.length && (read = input.read(magic, length, magic.length - length)) >= 0) length += read;
+        input.reset();
+        if (length >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) return GZIP;
+        if (length == 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4) return ZIP;
+        return NONE;
+    }
+}
@@ -0,0 +1,58 @@
+package com.a80;
+
+import java.util.Arrays;
+
+// Строит список уникальных ребер сетки для отрисовки wireframe одним вызовом GL_LINES
+public final class EdgeBuilder {
+    private static final long EMPTY = -1L; // Пустая ячейка хэш-таблицы
+
+    private EdgeBuilder() {}
+
+    // Возвращаем пары индексов (a, b) для каждого ребра; общие ребра треугольников попадают один раз
+    public static int[] buildUniqueEdges(int[] indices) {
+        int capacity = Integer.highestOneBit(Math.max(indices.length, 8) * 2 - 1) << 1; // Загрузка таблицы не выше 50%
+        long[] keys = new long[capacity]; // Открытая адресация с линейным пробированием
+        Arrays.fill(keys, EMPTY);
+        int mask = capacity - 1;
+
+        IntStore edges = new IntStore(indices.length);
+        for (int t = 0; t + 2 < indices.length; t += 3) {
+            int a = indices[t], b = indices[t + 1], c = indices[t + 2];
+            addEdge(a, b, keys, mask, edges);
+            addEdge(b, c, keys, mask, edges);
+            addEdge(c, a, keys, mask, edges);
+        }
+        return edges.toArray();
+    }
+
+    // Добавляем ребро, если его еще нет в таблице
+    private static void addEdge(int a, int b, long[] keys, int mask, IntStore edges) {
+        if (a == b) return; // Вырожденное ребро
+        int min = Math.min(a, b);
+        int max = Math.max(a, b);
+        long key = ((long) min << 32) | (max & 0xFFFFFFFFL); // Ребро без учета направления
+
+        int slot = hash(key) & mask;
+        while (true) {
+            long current = keys[slot];
+            if (current == EMPTY) {
+                keys[slot] = key;
+                edges.add(min);
+                edges.add(max);
+                return;
+            }
+            if (current == key) return; // Ребро уже есть
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    // Перемешиваем биты ключа (финализатор MurmurHash3)
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb93fe53ec049L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
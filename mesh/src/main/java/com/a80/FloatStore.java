@@ -0,0 +1,64 @@
+package com.a80;
+
+import java.util.Arrays;
+
+// Растущий массив примитивных float без упаковки в Float
+public final class FloatStore {
+    private float[] data; // Данные
+    private int size; // Количество заполненных элементов
+
+    public FloatStore(int initialCapacity) {
+        data = new float[Math.max(initialCapacity, 16)];
+    }
+
+    // Добавляем значение в конец
+    public void add(float value) {
+        if (size == data.length) grow(size + 1);
+        data[size++] = value;
+    }
+
+    // Добавляем три значения сразу (координаты вершины)
+    public void add(float x, float y, float z) {
+        if (size + 3 > data.length) grow(size + 3);
+        data[size] = x;
+        data[size + 1] = y;
+        data[size + 2] = z;
+        size += 3;
+    }
+
+    // Добавляем все значения другого массива
+    public void addAll(FloatStore other) {
+        if (size + other.size > data.length) grow(size + other.size);
+        System.arraycopy(other.data, 0, data, size, other.size);
+        size += other.size;
+    }
+
+    public float get(int index) {
+        return data[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Очищаем без освобождения памяти, чтобы переиспользовать массив
+    public void clear() {
+        size = 0;
+    }
+
+    // Копируем заполненную часть в чужой массив начиная с позиции destPos
+    public void copyTo(float[] dest, int destPos) {
+        System.arraycopy(data, 0, dest, destPos, size);
+    }
+
+    // Копия заполненной части массива
+    public float[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    // Увеличиваем емкость в полтора раза
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, data.length + (data.length >> 1));
+        data = Arrays.copyOf(data, capacity);
+    }
+}
@@ -0,0 +1,46 @@
+package com.a80;
+
+// Пирамида видимости: шесть плоскостей, извлеченных из матрицы MVP (метод Грибба-Хартманна).
+// Плоскости получаются в координатах модели, поэтому границы кусков проверяются без преобразования
+public final class Frustum {
+    private final float[] planes = new float[24]; // По 4 float на плоскость: a, b, c, d; нормаль смотрит внутрь
+
+    // Извлекаем плоскости из матрицы в формате android.opengl.Matrix (по столбцам)
+    public void extract(float[] m) {
+        for (int i = 0; i < 3; i++) {
+            // Строка i матрицы плюс и минус четвертая строка: left/right, bottom/top, near/far
+            setPlane(i * 2, m[3] + m[i], m[7] + m[4 + i], m[11] + m[8 + i], m[15] + m[12 + i]);
+            setPlane(i * 2 + 1, m[3] - m[i], m[7] - m[4 + i], m[11] - m[8 + i], m[15] - m[12 + i]);
+        }
+    }
+
+    // Пересекает ли сфера пирамиду видимости (или лежит внутри)
+    public boolean intersectsSphere(float x, float y, float z, float radius) {
+        for (int p = 0; p < 24; p += 4) {
+            if (planes[p] * x + planes[p + 1] * y + planes[p + 2] * z + planes[p + 3] < -radius) return false;
+        }
+        return true;
+    }
+
+    // Пересекает ли параллелепипед пирамиду: проверяем вершину, дальше всех продвинутую вдоль нормали
+    public boolean intersectsBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        for (int p = 0; p < 24; p += 4) {
+            float x = planes[p] >= 0 ? maxX : minX;
+            float y = planes[p + 1] >= 0 ? maxY : minY;
+            float z = planes[p + 2] >= 0 ? maxZ : minZ;
+            if (planes[p] * x + planes[p + 1] * y + planes[p + 2] * z + planes[p + 3] < 0) return false;
+        }
+        return true;
+    }
+
+    // Нормируем плоскость, чтобы расстояние до нее было в единицах модели
+    private void setPlane(int index, float a, float b, float c, float d) {
+        float length = (float) Math.sqrt(a * a + b * b + c * c);
+        if (length == 0) length = 1;
+        int p = index * 4;
+        planes[p] = a / length;
+        planes[p + 1] = b / length;
+        planes[p + 2] = c / length;
+        planes[p + 3] = d / length;
+    }
+}
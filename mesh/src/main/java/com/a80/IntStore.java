@@ -0,0 +1,57 @@
+package com.a80;
+
+import java.util.Arrays;
+
+// Растущий массив примитивных int без упаковки в Integer
+public final class IntStore {
+    private int[] data; // Данные
+    private int size; // Количество заполненных элементов
+
+    public IntStore(int initialCapacity) {
+        data = new int[Math.max(initialCapacity, 16)];
+    }
+
+    // Добавляем значение в конец
+    public void add(int value) {
+        if (size == data.length) grow(size + 1);
+        data[size++] = value;
+    }
+
+    // Добавляем три значения сразу (индексы треугольника)
+    public void add(int a, int b, int c) {
+        if (size + 3 > data.length) grow(size + 3);
+        data[size] = a;
+        data[size + 1] = b;
+        data[size + 2] = c;
+        size += 3;
+    }
+
+    public int get(int index) {
+        return data[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Очищаем без освобождения памяти, чтобы переиспользовать массив
+    public void clear() {
+        size = 0;
+    }
+
+    // Копируем заполненную часть в чужой массив начиная с позиции destPos
+    public void copyTo(int[] dest, int destPos) {
+        System.arraycopy(data, 0, dest, destPos, size);
+    }
+
+    // Копия заполненной части массива
+    public int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    // Увеличиваем емкость в полтора раза
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, data.length + (data.length >> 1));
+        data = Arrays.copyOf(data, capacity);
+    }
+}
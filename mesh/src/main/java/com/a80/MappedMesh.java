@@ -0,0 +1,61 @@
+package com.a80;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+// Сетка, отображенная в память из файла кэша: буферы можно сразу отдавать в glBufferData
+public final class MappedMesh {
+    public final int vertexCount; // Количество вершин
+    public final int indexCount; // Количество индексов
+    public final int vertexStride; // Размер вершины в байтах
+    public final int indexSize; // Размер индекса в байтах: 2 или 4
+    public final boolean hasNormals; // Есть ли в вершине нормаль (сразу после позиции)
+    public final boolean hasTexCoords; // Есть ли в вершине текстурные координаты (в конце вершины)
+    public final float[] bounds; // minX, minY, minZ, maxX, maxY, maxZ
+    public final MeshChunks chunks; // Пространственные куски; null, если сетка не разбита
+    public final ByteBuffer vertexData; // Блок вершин (little-endian)
+    public final ByteBuffer indexData; // Блок индексов (little-endian)
+
+    MappedMesh(int vertexCount, int indexCount, int vertexStride, int indexSize, boolean hasNormals,
+               boolean hasTexCoords, float[] bounds, MeshChunks chunks, ByteBuffer vertexData, ByteBuffer indexData) {
+        this.vertexCount = vertexCount;
+        this.indexCount = indexCount;
+        this.vertexStride = vertexStride;
+        this.indexSize = indexSize;
+        this.hasNormals = hasNormals;
+        this.hasTexCoords = hasTexCoords;
+        this.bounds = bounds;
+        this.chunks = chunks;
+        this.vertexData = vertexData;
+        this.indexData = indexData;
+    }
+
+    // Можно ли передать блоки в GL без перестановки байтов
+    public boolean isNativeOrder() {
+        return ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+    }
+
+    // Читаем индексы в массив (нужно для построения ребер и других проходов по сетке)
+    public int[] readIndices() {
+        int[] indices = new int[indexCount];
+        ByteBuffer data = indexData.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (indexSize == 4) {
+            IntBuffer buffer = data.asIntBuffer();
+            buffer.get(indices);
+        } else {
+            ShortBuffer buffer = data.asShortBuffer();
+            for (int i = 0; i < indexCount; i++) indices[i] = buffer.get(i) & 0xFFFF;
+        }
+        return indices;
+    }
+
+    // Копируем в кучу: нужно, если сетку придется резать на части
+    public MeshData toMeshData() {
+        float[] vertices = new float[vertexCount * vertexStride / 4];
+        ByteBuffer data = vertexData.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        data.asFloatBuffer().get(vertices); // Вершина целиком состоит из float
+        return new MeshData(vertices, readIndices(), hasNormals, hasTexCoords, chunks);
+    }
+}
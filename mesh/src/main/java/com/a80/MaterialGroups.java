@@ -0,0 +1,97 @@
+package com.a80;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Материалы треугольников из строк usemtl: диапазоны индексов подряд, каждому назначен материал.
+// Треугольники до первой usemtl остаются без материала
+public final class MaterialGroups {
+    private final List<String> names = new ArrayList<>(); // Имена материалов в порядке первого появления
+    private final IntStore starts = new IntStore(16); // Первый индекс диапазона
+    private final IntStore materials = new IntStore(16); // Номер материала диапазона
+
+    // С индекса firstIndex треугольники используют материал name
+    public void use(String name, int firstIndex) {
+        int id = names.indexOf(name); // Материалов в файле единицы, линейный поиск дешевле карты
+        if (id < 0) {
+            id = names.size();
+            names.add(name);
+        }
+        starts.add(firstIndex);
+        materials.add(id);
+    }
+
+    // Добавляем диапазоны куска файла, разобранного отдельно; индексы куска начинаются с indexOffset.
+    // Треугольники куска до его первой usemtl продолжают последний диапазон
+    void append(MaterialGroups chunk, int indexOffset) {
+        for (int i = 0; i < chunk.starts.size(); i++) {
+            use(chunk.names.get(chunk.materials.get(i)), chunk.starts.get(i) + indexOffset);
+        }
+    }
+
+    public void clear() {
+        names.clear();
+        starts.clear();
+        materials.clear();
+    }
+
+    // Были ли в файле строки usemtl
+    public boolean isEmpty() {
+        return starts.size() == 0;
+    }
+
+    // Количество разных материалов
+    public int getMaterialCount() {
+        return names.size();
+    }
+
+    public String getName(int material) {
+        return names.get(material);
+    }
+
+    // Делим сетку на части по материалам: элемент i - треугольники материала i,
+    // последний элемент - треугольники без материала; null, если у материала нет треугольников.
+    // Индексы mesh должны идти в порядке разбора: оптимизация и куски меняют порядок треугольников
+    public MeshData[] split(MeshData mesh) {
+        int groups = names.size() + 1;
+        IntStore[] groupIndices = new IntStore[groups];
+        int rangeStart = 0;
+        int material = groups - 1; // До первой usemtl
+        for (int i = 0; i <= starts.size(); i++) {
+            int rangeEnd = i < starts.size() ? starts.get(i) : mesh.indices.length;
+            if (rangeEnd > rangeStart) {
+                if (groupIndices[material] == null) groupIndices[material] = new IntStore(rangeEnd - rangeStart);
+                for (int k = rangeStart; k < rangeEnd; k++) groupIndices[material].add(mesh.indices[k]);
+            }
+            if (i < starts.size()) {
+                rangeStart = Math.max(rangeStart, rangeEnd);
+                material = materials.get(i);
+            }
+        }
+
+        MeshData[] parts = new MeshData[groups];
+        int[] remap = new int[mesh.getVertexCount()];
+        for (int g = 0; g < groups; g++) {
+            if (groupIndices[g] != null) parts[g] = compact(mesh, groupIndices[g], remap);
+        }
+        return parts;
+    }
+
+    // Копируем в часть только вершины, на которые ссылаются ее треугольники
+    private static MeshData compact(MeshData mesh, IntStore indices, int[] remap) {
+        Arrays.fill(remap, -1);
+        int stride = mesh.stride;
+        FloatStore vertices = new FloatStore(indices.size() * stride);
+        int[] local = new int[indices.size()];
+        for (int i = 0; i < local.length; i++) {
+            int index = indices.get(i);
+            if (remap[index] < 0) {
+                remap[index] = vertices.size() / stride;
+                for (int k = 0; k < stride; k++) vertices.add(mesh.vertices[index * stride + k]);
+            }
+            local[i] = remap[index];
+        }
+        return new MeshData(vertices.toArray(), local, mesh.hasNormals, mesh.hasTexCoords);
+    }
+}
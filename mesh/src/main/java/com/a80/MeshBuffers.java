@@ -0,0 +1,39 @@
+package com.a80;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+// Прямые буферы в порядке байт платформы: в таком виде вершины и индексы уходят в glBufferData
+public final class MeshBuffers {
+    private MeshBuffers() {}
+
+    // Создаем прямой буфер и копируем в него вершины
+    public static FloatBuffer createVertexBuffer(float[] vertices) {
+        FloatBuffer buffer = ByteBuffer.allocateDirect(vertices.length * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        buffer.put(vertices).position(0); // Добавляем вершины в буфер
+        return buffer;
+    }
+
+    // Создаем прямой буфер индексов; indexSize - 2 (unsigned short) или 4 (unsigned int) байта
+    public static Buffer createIndexBuffer(int[] indices, int indexSize) {
+        if (indexSize == 4) {
+            IntBuffer buffer = ByteBuffer.allocateDirect(indices.length * 4)
+                    .order(ByteOrder.nativeOrder())
+                    .asIntBuffer();
+            buffer.put(indices).position(0);
+            return buffer;
+        }
+        ShortBuffer buffer = ByteBuffer.allocateDirect(indices.length * 2)
+                .order(ByteOrder.nativeOrder())
+                .asShortBuffer();
+        for (int index : indices) buffer.put((short) index); // Пишем индексы напрямую, без промежуточного массива
+        buffer.position(0);
+        return buffer;
+    }
+}
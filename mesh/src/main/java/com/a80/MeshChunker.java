@@ -0,0 +1,135 @@
+package com.a80;
+
+import java.util.Arrays;
+
+// Делит сетку на пространственно связные куски: треугольники переставляются так,
+// что каждый кусок занимает непрерывный диапазон индексов, а внутри куска сохраняется прежний порядок
+public final class MeshChunker {
+    public static final int CHUNK_TRIANGLES = 8192; // Максимум треугольников в куске
+
+    private MeshChunker() {}
+
+    public static MeshData chunk(MeshData mesh) {
+        return chunk(mesh, CHUNK_TRIANGLES);
+    }
+
+    // Режем сетку пополам по медиане центров треугольников вдоль самой длинной оси, пока куски не станут маленькими
+    public static MeshData chunk(MeshData mesh, int maxTriangles) {
+        int triangleCount = mesh.getTriangleCount();
+        int stride = mesh.stride;
+        float[] vertices = mesh.vertices;
+        int[] indices = mesh.indices;
+
+        float[] centroids = new float[triangleCount * 3];
+        for (int t = 0; t < triangleCount; t++) {
+            int a = indices[t * 3] * stride, b = indices[t * 3 + 1] * stride, c = indices[t * 3 + 2] * stride;
+            for (int k = 0; k < 3; k++) centroids[t * 3 + k] = (vertices[a + k] + vertices[b + k] + vertices[c + k]) / 3;
+        }
+
+        int[] order = new int[triangleCount];
+        for (int t = 0; t < triangleCount; t++) order[t] = t;
+        int[] chunkOf = new int[triangleCount];
+        int chunkCount = split(order, 0, triangleCount, centroids, chunkOf, maxTriangles, 0);
+
+        // Устойчивая сортировка подсчетом: внутри куска треугольники идут в исходном порядке
+        int[] firstIndex = new int[chunkCount];
+        int[] indexCount = new int[chunkCount];
+        for (int t = 0; t < triangleCount; t++) indexCount[chunkOf[t]] += 3;
+        for (int c = 1; c < chunkCount; c++) firstIndex[c] = firstIndex[c - 1] + indexCount[c - 1];
+        int[] cursor = Arrays.copyOf(firstIndex, chunkCount);
+        int[] sorted = new int[indices.length];
+        for (int t = 0; t < triangleCount; t++) {
+            System.arraycopy(indices, t * 3, sorted, cursor[chunkOf[t]], 3);
+            cursor[chunkOf[t]] += 3;
+        }
+
+        float[] bounds = new float[chunkCount * 6];
+        float[] spheres = new float[chunkCount * 4];
+        for (int c = 0; c < chunkCount; c++) {
+            computeBounds(vertices, stride, sorted, firstIndex[c], indexCount[c], bounds, spheres, c);
+        }
+        MeshChunks chunks = new MeshChunks(firstIndex, indexCount, bounds, spheres);
+        return new MeshData(vertices, sorted, mesh.hasNormals, mesh.hasTexCoords, chunks);
+    }
+
+    // Рекурсивно делим диапазон order[from, to); возвращаем следующий свободный номер куска
+    private static int split(int[] order, int from, int to, float[] centroids, int[] chunkOf, int maxTriangles, int chunk) {
+        if (to - from <= maxTriangles) {
+            for (int i = from; i < to; i++) chunkOf[order[i]] = chunk;
+            return chunk + 1;
+        }
+
+        float[] extent = new float[6]; // Границы центров в диапазоне
+        Arrays.fill(extent, 0, 3, Float.POSITIVE_INFINITY);
+        Arrays.fill(extent, 3, 6, Float.NEGATIVE_INFINITY);
+        for (int i = from; i < to; i++) {
+            int t = order[i] * 3;
+            for (int k = 0; k < 3; k++) {
+                extent[k] = Math.min(extent[k], centroids[t + k]);
+                extent[k + 3] = Math.max(extent[k + 3], centroids[t + k]);
+            }
+        }
+        int axis = 0;
+        for (int k = 1; k < 3; k++) {
+            if (extent[k + 3] - extent[k] > extent[axis + 3] - extent[axis]) axis = k;
+        }
+
+        int middle = (from + to) >>> 1;
+        select(order, from, to - 1, middle, centroids, axis);
+        chunk = split(order, from, middle, centroids, chunkOf, maxTriangles, chunk);
+        return split(order, middle, to, centroids, chunkOf, maxTriangles, chunk);
+    }
+
+    // Быстрый выбор: после вызова order[k] стоит на своем месте по координате axis, слева не больше, справа не меньше
+    private static void select(int[] order, int left, int right, int k, float[] centroids, int axis) {
+        while (left < right) {
+            float pivot = centroids[order[(left + right) >>> 1] * 3 + axis];
+            int i = left, j = right;
+            while (i <= j) {
+                while (centroids[order[i] * 3 + axis] < pivot) i++;
+                while (centroids[order[j] * 3 + axis] > pivot) j--;
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i] = order[j];
+                    order[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) right = j;
+            else if (k >= i) left = i;
+            else return;
+        }
+    }
+
+    // Параллелепипед и сфера по вершинам диапазона индексов
+    private static void computeBounds(float[] vertices, int stride, int[] indices, int first, int count,
+                                      float[] bounds, float[] spheres, int chunk) {
+        int b = chunk * 6;
+        Arrays.fill(bounds, b, b + 3, Float.POSITIVE_INFINITY);
+        Arrays.fill(bounds, b + 3, b + 6, Float.NEGATIVE_INFINITY);
+        for (int i = first; i < first + count; i++) {
+            int v = indices[i] * stride;
+            for (int k = 0; k < 3; k++) {
+                bounds[b + k] = Math.min(bounds[b + k], vertices[v + k]);
+                bounds[b + k + 3] = Math.max(bounds[b + k + 3], vertices[v + k]);
+            }
+        }
+
+        // Центр сферы в центре параллелепипеда, радиус - до самой дальней вершины
+        float cx = (bounds[b] + bounds[b + 3]) * 0.5f;
+        float cy = (bounds[b + 1] + bounds[b + 4]) * 0.5f;
+        float cz = (bounds[b + 2] + bounds[b + 5]) * 0.5f;
+        float radius2 = 0;
+        for (int i = first; i < first + count; i++) {
+            int v = indices[i] * stride;
+            float dx = vertices[v] - cx, dy = vertices[v + 1] - cy, dz = vertices[v + 2] - cz;
+            radius2 = Math.max(radius2, dx * dx + dy * dy + dz * dz);
+        }
+        int s = chunk * 4;
+        spheres[s] = cx;
+        spheres[s + 1] = cy;
+        spheres[s + 2] = cz;
+        spheres[s + 3] = (float) Math.sqrt(radius2);
+    }
+}
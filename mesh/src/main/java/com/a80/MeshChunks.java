@@ -0,0 +1,18 @@
+package com.a80;
+
+// Таблица пространственных кусков сетки: каждый кусок - непрерывный диапазон индексов со своими границами
+public final class MeshChunks {
+    public final int count; // Количество кусков
+    public final int[] firstIndex; // Первый индекс куска в массиве индексов
+    public final int[] indexCount; // Количество индексов куска
+    public final float[] bounds; // По 6 float на кусок: minX, minY, minZ, maxX, maxY, maxZ
+    public final float[] spheres; // По 4 float на кусок: центр и радиус ограничивающей сферы
+
+    public MeshChunks(int[] firstIndex, int[] indexCount, float[] bounds, float[] spheres) {
+        this.count = firstIndex.length;
+        this.firstIndex = firstIndex;
+        this.indexCount = indexCount;
+        this.bounds = bounds;
+        this.spheres = spheres;
+    }
+}
@@ -0,0 +1,75 @@
+package com.a80;
+
+// Данные сетки в куче: чередующиеся атрибуты вершин и индексы треугольников
+public final class MeshData {
+    public static final int POSITION_SIZE = 3; // x, y, z
+    public static final int NORMAL_SIZE = 3; // nx, ny, nz
+    public static final int TEX_COORD_SIZE = 2; // u, v
+
+    public final float[] vertices; // Вершины: позиция, затем нормаль и текстурные координаты, если они есть
+    public final int[] indices; // Индексы треугольников
+    public final boolean hasNormals; // Есть ли в вершине нормаль
+    public final boolean hasTexCoords; // Есть ли в вершине текстурные координаты
+    public final int stride; // Размер вершины в float
+    public final MeshChunks chunks; // Пространственные куски; null, если сетка не разбита
+
+    // Сетка только с позициями
+    public MeshData(float[] vertices, int[] indices) {
+        this(vertices, indices, false, false);
+    }
+
+    public MeshData(float[] vertices, int[] indices, boolean hasNormals, boolean hasTexCoords) {
+        this(vertices, indices, hasNormals, hasTexCoords, null);
+    }
+
+    public MeshData(float[] vertices, int[] indices, boolean hasNormals, boolean hasTexCoords, MeshChunks chunks) {
+        this.vertices = vertices;
+        this.indices = indices;
+        this.hasNormals = hasNormals;
+        this.hasTexCoords = hasTexCoords;
+        this.stride = strideOf(hasNormals, hasTexCoords);
+        this.chunks = chunks;
+    }
+
+    // Размер вершины в float для заданного набора атрибутов
+    public static int strideOf(boolean hasNormals, boolean hasTexCoords) {
+        return POSITION_SIZE + (hasNormals ? NORMAL_SIZE : 0) + (hasTexCoords ? TEX_COORD_SIZE : 0);
+    }
+
+    // Смещение нормали в вершине (в float)
+    public int getNormalOffset() {
+        return POSITION_SIZE;
+    }
+
+    // Смещение текстурных координат в вершине (в float)
+    public int getTexCoordOffset() {
+        return POSITION_SIZE + (hasNormals ? NORMAL_SIZE : 0);
+    }
+
+    // Количество вершин
+    public int getVertexCount() {
+        return vertices.length / stride;
+    }
+
+    // Количество треугольников
+    public int getTriangleCount() {
+        return indices.length / 3;
+    }
+
+    // Ограничивающий параллелепипед: minX, minY, minZ, maxX, maxY, maxZ
+    public float[] computeBounds() {
+        float[] bounds = new float[6];
+        if (vertices.length == 0) return bounds;
+        bounds[0] = bounds[3] = vertices[0];
+        bounds[1] = bounds[4] = vertices[1];
+        bounds[2] = bounds[5] = vertices[2];
+        for (int i = stride; i < vertices.length; i += stride) {
+            for (int k = 0; k < 3; k++) {
+                float value = vertices[i + k];
+                if (value < bounds[k]) bounds[k] = value;
+                if (value > bounds[k + 3]) bounds[k + 3] = value;
+            }
+        }
+        return bounds;
+    }
+}
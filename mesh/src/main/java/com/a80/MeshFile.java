@@ -0,0 +1,141 @@
+package com.a80;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Компактный бинарный формат сетки: заголовок, границы, формат вершин и сырые little-endian блоки
+public final class MeshFile {
+    private static final int MAGIC = 0x534D4243; // "CBMS" в little-endian
+    private static final int VERSION = 3; // Версия формата; файлы других версий пересоздаются
+    private static final int FLAG_NORMALS = 1; // В вершине есть нормаль
+    private static final int FLAG_TEX_COORDS = 2; // В вершине есть текстурные координаты
+    static final int HEADER_SIZE = 64; // Заголовок фиксированного размера, блоки идут следом
+    private static final int CHUNK_RECORD_SIZE = 48; // Первый индекс, число индексов, параллелепипед и сфера
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024; // Размер буфера записи
+
+    private MeshFile() {}
+
+    // Записываем сетку в файл; индексы хранятся 16-битными, если вершин не больше 64K
+    public static void write(MeshData mesh, File file) throws IOException {
+        int vertexCount = mesh.getVertexCount();
+        int indexCount = mesh.indices.length;
+        int indexSize = MeshSplitter.fitsShortIndices(mesh) ? 2 : 4;
+        float[] bounds = mesh.computeBounds();
+
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw");
+             FileChannel channel = output.getChannel()) {
+            channel.truncate(0);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(vertexCount);
+            buffer.putInt(indexCount);
+            buffer.putInt(mesh.stride * 4); // Размер вершины в байтах
+            buffer.putInt(indexSize);
+            for (float value : bounds) buffer.putFloat(value);
+            buffer.putInt((mesh.hasNormals ? FLAG_NORMALS : 0) | (mesh.hasTexCoords ? FLAG_TEX_COORDS : 0));
+            MeshChunks chunks = mesh.chunks;
+            buffer.putInt(chunks != null ? chunks.count : 0);
+            while (buffer.position() < HEADER_SIZE) buffer.put((byte) 0); // Резерв под будущие поля
+
+            for (float value : mesh.vertices) {
+                if (buffer.remaining() < 4) flush(buffer, channel);
+                buffer.putFloat(value);
+            }
+            for (int index : mesh.indices) {
+                if (buffer.remaining() < 4) flush(buffer, channel);
+                if (indexSize == 2) buffer.putShort((short) index);
+                else buffer.putInt(index);
+            }
+            for (int c = 0; chunks != null && c < chunks.count; c++) { // Таблица кусков идет после индексов
+                if (buffer.remaining() < CHUNK_RECORD_SIZE) flush(buffer, channel);
+                buffer.putInt(chunks.firstIndex[c]);
+                buffer.putInt(chunks.indexCount[c]);
+                for (int k = 0; k < 6; k++) buffer.putFloat(chunks.bounds[c * 6 + k]);
+                for (int k = 0; k < 4; k++) buffer.putFloat(chunks.spheres[c * 4 + k]);
+            }
+            flush(buffer, channel);
+            channel.force(false);
+        }
+    }
+
+    // Отображаем файл в память; блоки возвращаются как срезы отображения без копирования
+    public static MappedMesh map(File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+             FileChannel channel = input.getChannel()) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) throw new IOException("Mesh file is truncated: " + file);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size); // Отображение живет и после закрытия канала
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+                throw new IOException("Unsupported mesh file: " + file);
+            }
+            int vertexCount = mapped.getInt(8);
+            int indexCount = mapped.getInt(12);
+            int vertexStride = mapped.getInt(16);
+            int indexSize = mapped.getInt(20);
+            float[] bounds = new float[6];
+            for (int i = 0; i < 6; i++) bounds[i] = mapped.getFloat(24 + i * 4);
+            int flags = mapped.getInt(48);
+            boolean hasNormals = (flags & FLAG_NORMALS) != 0;
+            boolean hasTexCoords = (flags & FLAG_TEX_COORDS) != 0;
+            if (vertexStride != MeshData.strideOf(hasNormals, hasTexCoords) * 4) {
+                throw new IOException("Mesh file has unexpected vertex format: " + file);
+            }
+
+            int chunkCount = mapped.getInt(52);
+
+            long vertexBytes = (long) vertexCount * vertexStride;
+            long indexBytes = (long) indexCount * indexSize;
+            long chunkBytes = (long) chunkCount * CHUNK_RECORD_SIZE;
+            if (HEADER_SIZE + vertexBytes + indexBytes + chunkBytes != size) {
+                throw new IOException("Mesh file is corrupted: " + file);
+            }
+
+            ByteBuffer vertexData = slice(mapped, HEADER_SIZE, (int) vertexBytes);
+            ByteBuffer indexData = slice(mapped, (int) (HEADER_SIZE + vertexBytes), (int) indexBytes);
+            MeshChunks chunks = chunkCount > 0
+                    ? readChunks(mapped, (int) (HEADER_SIZE + vertexBytes + indexBytes), chunkCount) : null;
+            return new MappedMesh(vertexCount, indexCount, vertexStride, indexSize, hasNormals, hasTexCoords, bounds,
+                    chunks, vertexData, indexData);
+        }
+    }
+
+    // Таблица кусков небольшая, читаем ее в кучу
+    private static MeshChunks readChunks(ByteBuffer data, int offset, int count) {
+        int[] firstIndex = new int[count];
+        int[] indexCount = new int[count];
+        float[] bounds = new float[count * 6];
+        float[] spheres = new float[count * 4];
+        for (int c = 0; c < count; c++) {
+            int record = offset + c * CHUNK_RECORD_SIZE;
+            firstIndex[c] = data.getInt(record);
+            indexCount[c] = data.getInt(record + 4);
+            for (int k = 0; k < 6; k++) bounds[c * 6 + k] = data.getFloat(record + 8 + k * 4);
+            for (int k = 0; k < 4; k++) spheres[c * 4 + k] = data.getFloat(record + 32 + k * 4);
+        }
+        return new MeshChunks(firstIndex, indexCount, bounds, spheres);
+    }
+
+    // Срез отображения без копирования данных
+    private static ByteBuffer slice(ByteBuffer source, int offset, int length) {
+        ByteBuffer view = source.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Сбрасываем накопленные байты в файл
+    private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+}
@@ -0,0 +1,96 @@
+package com.a80;
+
+import java.util.List;
+
+// Склейка небольших сеток с одинаковым форматом вершин в одну: позиции и нормали переводятся
+// матрицами частей в общие координаты, поэтому части рисуются одним буфером и одним вызовом
+public final class MeshMerger {
+    private MeshMerger() {}
+
+    // transforms - матрицы 4x4 по столбцам, как в android.opengl.Matrix; null или null-элемент - единичная.
+    // Куски исходных сеток не переносятся: склеенную сетку нужно разбить заново
+    public static MeshData merge(List<MeshData> meshes, List<float[]> transforms) {
+        MeshData first = meshes.get(0);
+        int vertexFloats = 0;
+        int indexCount = 0;
+        for (MeshData mesh : meshes) {
+            if (mesh.hasNormals != first.hasNormals || mesh.hasTexCoords != first.hasTexCoords) {
+                throw new IllegalArgumentException("Merged meshes must share the vertex format");
+            }
+            vertexFloats += mesh.vertices.length;
+            indexCount += mesh.indices.length;
+        }
+
+        float[] vertices = new float[vertexFloats];
+        int[] indices = new int[indexCount];
+        float[] normalMatrix = new float[9];
+        int vertexAt = 0;
+        int indexAt = 0;
+        for (int m = 0; m < meshes.size(); m++) {
+            MeshData mesh = meshes.get(m);
+            float[] transform = transforms != null ? transforms.get(m) : null;
+            int baseVertex = vertexAt / first.stride;
+            System.arraycopy(mesh.vertices, 0, vertices, vertexAt, mesh.vertices.length);
+            boolean mirrored = false;
+            if (transform != null) {
+                mirrored = normalMatrixOf(transform, normalMatrix) < 0;
+                transformVertices(vertices, vertexAt, mesh.getVertexCount(), mesh, transform, normalMatrix);
+            }
+            for (int i = 0; i < mesh.indices.length; i += 3) {
+                indices[indexAt + i] = mesh.indices[i] + baseVertex;
+                // Зеркальная матрица разворачивает треугольники: меняем порядок обхода обратно
+                indices[indexAt + i + 1] = mesh.indices[mirrored ? i + 2 : i + 1] + baseVertex;
+                indices[indexAt + i + 2] = mesh.indices[mirrored ? i + 1 : i + 2] + baseVertex;
+            }
+            vertexAt += mesh.vertices.length;
+            indexAt += mesh.indices.length;
+        }
+        return new MeshData(vertices, indices, first.hasNormals, first.hasTexCoords);
+    }
+
+    private static void transformVertices(float[] vertices, int from, int count, MeshData mesh, float[] m,
+                                          float[] normalMatrix) {
+        int normalOffset = mesh.getNormalOffset();
+        for (int v = 0, at = from; v < count; v++, at += mesh.stride) {
+            float x = vertices[at], y = vertices[at + 1], z = vertices[at + 2];
+            vertices[at] = m[0] * x + m[4] * y + m[8] * z + m[12];
+            vertices[at + 1] = m[1] * x + m[5] * y + m[9] * z + m[13];
+            vertices[at + 2] = m[2] * x + m[6] * y + m[10] * z + m[14];
+            if (!mesh.hasNormals) continue;
+            int n = at + normalOffset;
+            float nx = vertices[n], ny = vertices[n + 1], nz = vertices[n + 2];
+            float tx = normalMatrix[0] * nx + normalMatrix[1] * ny + normalMatrix[2] * nz;
+            float ty = normalMatrix[3] * nx + normalMatrix[4] * ny + normalMatrix[5] * nz;
+            float tz = normalMatrix[6] * nx + normalMatrix[7] * ny + normalMatrix[8] * nz;
+            float length = (float) Math.sqrt(tx * tx + ty * ty + tz * tz);
+            if (length > 0) {
+                vertices[n] = tx / length;
+                vertices[n + 1] = ty / length;
+                vertices[n + 2] = tz / length;
+            }
+        }
+    }
+
+    // Матрица нормалей - обратная транспонированная к верхней 3x3 с точностью до множителя:
+    // матрица алгебраических дополнений (по строкам) со знаком определителя.
+    // Возвращаем определитель: отрицательный у зеркальных матриц
+    private static float normalMatrixOf(float[] m, float[] out) {
+        float a = m[0], b = m[4], c = m[8];
+        float d = m[1], e = m[5], f = m[9];
+        float g = m[2], h = m[6], i = m[10];
+        out[0] = e * i - f * h; // Дополнения первой строки
+        out[1] = f * g - d * i;
+        out[2] = d * h - e * g;
+        out[3] = c * h - b * i;
+        out[4] = a * i - c * g;
+        out[5] = b * g - a * h;
+        out[6] = b * f - c * e;
+        out[7] = c * d - a * f;
+        out[8] = a * e - b * d;
+        float determinant = a * out[0] + b * out[1] + c * out[2];
+        if (determinant < 0) {
+            for (int k = 0; k < 9; k++) out[k] = -out[k];
+        }
+        return determinant;
+    }
+}
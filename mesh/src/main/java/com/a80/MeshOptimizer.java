@@ -0,0 +1,289 @@
+package com.a80;
+
+import java.util.Arrays;
+
+// Оптимизация сетки после разбора: порядок треугольников для кэша вершин и overdraw, порядок вершин для выборки
+public final class MeshOptimizer {
+    public static final int ACMR_CACHE_SIZE = 16; // Размер FIFO-кэша при подсчете ACMR (типично для мобильных GPU)
+
+    private static final int CACHE_SIZE = 32; // Размер моделируемого LRU-кэша в алгоритме Форсайта
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float LAST_TRIANGLE_SCORE = 0.75f; // Вершины только что добавленного треугольника
+    private static final float VALENCE_BOOST_SCALE = 2.0f; // Бонус вершинам с малым числом оставшихся треугольников
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+    private static final int MAX_VALENCE = 64; // Дальше бонус за валентность почти не меняется
+
+    private static final int MIN_CLUSTER_SIZE = 64; // Минимальный размер кластера при сортировке для overdraw
+
+    // Таблицы очков, чтобы не считать pow в цикле
+    private static final float[] CACHE_SCORES = new float[CACHE_SIZE];
+    private static final float[] VALENCE_SCORES = new float[MAX_VALENCE + 1];
+
+    static {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            if (i < 3) {
+                CACHE_SCORES[i] = LAST_TRIANGLE_SCORE;
+            } else {
+                float scaler = 1.0f / (CACHE_SIZE - 3);
+                CACHE_SCORES[i] = (float) Math.pow(1.0f - (i - 3) * scaler, CACHE_DECAY_POWER);
+            }
+        }
+        for (int i = 1; i <= MAX_VALENCE; i++) {
+            VALENCE_SCORES[i] = VALENCE_BOOST_SCALE * (float) Math.pow(i, -VALENCE_BOOST_POWER);
+        }
+    }
+
+    // Результат оптимизации для журнала
+    public static final class Report {
+        public float acmrBefore; // Среднее число промахов кэша на треугольник до оптимизации
+        public float acmrAfter; // То же после оптимизации
+
+        @Override
+        public String toString() {
+            return String.format(java.util.Locale.US, "ACMR %.3f -> %.3f", acmrBefore, acmrAfter);
+        }
+    }
+
+    private MeshOptimizer() {}
+
+    // Полный проход: кэш вершин, overdraw, порядок вершин
+    public static MeshData optimize(MeshData mesh, Report report) {
+        int vertexCount = mesh.getVertexCount();
+        report.acmrBefore = computeAcmr(mesh.indices, vertexCount, ACMR_CACHE_SIZE);
+
+        int[] indices = optimizeVertexCache(mesh.indices, vertexCount);
+        indices = optimizeOverdraw(indices, mesh.vertices, mesh.stride, vertexCount);
+        MeshData result = optimizeVertexFetch(new MeshData(mesh.vertices, indices, mesh.hasNormals, mesh.hasTexCoords));
+
+        report.acmrAfter = computeAcmr(result.indices, result.getVertexCount(), ACMR_CACHE_SIZE);
+        return result;
+    }
+
+    // ACMR: сколько вершин в среднем обрабатывает вершинный шейдер на один треугольник при FIFO-кэше
+    public static float computeAcmr(int[] indices, int vertexCount, int cacheSize) {
+        if (indices.length == 0) return 0;
+        int[] insertedAt = new int[vertexCount]; // Момент попадания вершины в кэш
+        Arrays.fill(insertedAt, -cacheSize); // Так, чтобы первое обращение всегда было промахом
+        int time = 0; // Сколько вершин прошло через кэш
+        int misses = 0;
+        for (int index : indices) {
+            if (time - insertedAt[index] >= cacheSize) { // Вершина вытеснена или еще не была в кэше
+                insertedAt[index] = ++time;
+                misses++;
+            }
+        }
+        return misses / (indices.length / 3f);
+    }
+
+    // Линейный алгоритм Форсайта: жадно выбираем треугольник с максимальной суммой очков вершин
+    public static int[] optimizeVertexCache(int[] indices, int vertexCount) {
+        int triangleCount = indices.length / 3;
+
+        // Списки смежных треугольников для каждой вершины (CSR)
+        int[] valence = new int[vertexCount]; // Сколько еще не выведенных треугольников у вершины
+        for (int index : indices) valence[index]++;
+        int[] offsets = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; v++) offsets[v + 1] = offsets[v] + valence[v];
+        int[] adjacency = new int[indices.length];
+        int[] fill = Arrays.copyOf(offsets, vertexCount);
+        for (int i = 0; i < indices.length; i++) adjacency[fill[indices[i]]++] = i / 3;
+
+        int[] cachePosition = new int[vertexCount];
+        Arrays.fill(cachePosition, -1);
+        float[] vertexScore = new float[vertexCount];
+        for (int v = 0; v < vertexCount; v++) vertexScore[v] = vertexScore(-1, valence[v]);
+
+        float[] triangleScore = new float[triangleCount];
+        for (int t = 0; t < triangleCount; t++) {
+            triangleScore[t] = vertexScore[indices[t * 3]] + vertexScore[indices[t * 3 + 1]] + vertexScore[indices[t * 3 + 2]];
+        }
+        boolean[] emitted = new boolean[triangleCount];
+
+        int[] cache = new int[CACHE_SIZE + 3];
+        int[] newCache = new int[CACHE_SIZE + 3];
+        int cacheCount = 0;
+
+        int[] result = new int[triangleCount * 3];
+        int cursor = 0; // Откуда искать следующий треугольник, если кэш ничего не предложил
+        int best = -1;
+        for (int out = 0; out < triangleCount; out++) {
+            if (best < 0) { // Начинаем новую область: берем первый невыведенный треугольник
+                while (emitted[cursor]) cursor++;
+                best = cursor;
+            }
+
+            emitted[best] = true;
+            int newCount = 0;
+            for (int k = 0; k < 3; k++) {
+                int v = indices[best * 3 + k];
+                result[out * 3 + k] = v;
+                removeTriangle(adjacency, offsets[v], valence[v], best);
+                valence[v]--;
+                if (!contains(newCache, newCount, v)) newCache[newCount++] = v; // Вершины треугольника идут в начало кэша
+            }
+            for (int i = 0; i < cacheCount; i++) { // Остальное содержимое сдвигается
+                int v = cache[i];
+                if (!contains(newCache, newCount, v)) newCache[newCount++] = v;
+            }
+
+            // Пересчитываем очки вершин в кэше и их треугольников, ищем лучший
+            best = -1;
+            float bestScore = -1;
+            for (int i = 0; i < newCount; i++) {
+                int v = newCache[i];
+                cachePosition[v] = i < CACHE_SIZE ? i : -1; // Вытесненные вершины теряют бонус за кэш
+                vertexScore[v] = vertexScore(cachePosition[v], valence[v]);
+            }
+            for (int i = 0; i < newCount; i++) {
+                int v = newCache[i];
+                for (int j = offsets[v], end = offsets[v] + valence[v]; j < end; j++) {
+                    int t = adjacency[j];
+                    float score = vertexScore[indices[t * 3]] + vertexScore[indices[t * 3 + 1]] + vertexScore[indices[t * 3 + 2]];
+                    triangleScore[t] = score;
+                    if (score > bestScore) {
+                        bestScore = score;
+                        best = t;
+                    }
+                }
+            }
+
+            int[] swap = cache; // Новый кэш становится текущим, вытесненные хвостовые вершины отбрасываются
+            cache = newCache;
+            newCache = swap;
+            cacheCount = Math.min(newCount, CACHE_SIZE);
+        }
+        return result;
+    }
+
+    // Делим поток треугольников на кластеры и выводим первыми те, что смотрят наружу от центра сетки:
+    // они чаще закрывают остальные, и меньше фрагментов рисуется зря
+    public static int[] optimizeOverdraw(int[] indices, float[] vertices, int stride, int vertexCount) {
+        int triangleCount = indices.length / 3;
+        if (triangleCount <= MIN_CLUSTER_SIZE) return indices;
+
+        // Границы кластеров: треугольник, все вершины которого промахнулись мимо кэша
+        IntStore clusterStarts = new IntStore(triangleCount / MIN_CLUSTER_SIZE + 1);
+        int[] insertedAt = new int[vertexCount];
+        Arrays.fill(insertedAt, -ACMR_CACHE_SIZE);
+        int time = 0;
+        int clusterStart = 0;
+        clusterStarts.add(0);
+        for (int t = 0; t < triangleCount; t++) {
+            int misses = 0;
+            for (int k = 0; k < 3; k++) {
+                int v = indices[t * 3 + k];
+                if (time - insertedAt[v] >= ACMR_CACHE_SIZE) {
+                    insertedAt[v] = ++time;
+                    misses++;
+                }
+            }
+            if (misses == 3 && t - clusterStart >= MIN_CLUSTER_SIZE) {
+                clusterStarts.add(t);
+                clusterStart = t;
+            }
+        }
+        int clusterCount = clusterStarts.size();
+        if (clusterCount == 1) return indices;
+
+        // Центр сетки
+        double cx = 0, cy = 0, cz = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            cx += vertices[v * stride];
+            cy += vertices[v * stride + 1];
+            cz += vertices[v * stride + 2];
+        }
+        cx /= vertexCount;
+        cy /= vertexCount;
+        cz /= vertexCount;
+
+        // Ключ сортировки: насколько средняя нормаль кластера направлена от центра сетки
+        float[] keys = new float[clusterCount];
+        for (int c = 0; c < clusterCount; c++) {
+            int from = clusterStarts.get(c);
+            int to = c + 1 < clusterCount ? clusterStarts.get(c + 1) : triangleCount;
+            double px = 0, py = 0, pz = 0, nx = 0, ny = 0, nz = 0, area = 0;
+            for (int t = from; t < to; t++) {
+                int a = indices[t * 3] * stride, b = indices[t * 3 + 1] * stride, d = indices[t * 3 + 2] * stride;
+                float e1x = vertices[b] - vertices[a], e1y = vertices[b + 1] - vertices[a + 1], e1z = vertices[b + 2] - vertices[a + 2];
+                float e2x = vertices[d] - vertices[a], e2y = vertices[d + 1] - vertices[a + 1], e2z = vertices[d + 2] - vertices[a + 2];
+                double tx = e1y * e2z - e1z * e2y, ty = e1z * e2x - e1x * e2z, tz = e1x * e2y - e1y * e2x; // Удвоенная площадь * нормаль
+                double triangleArea = Math.sqrt(tx * tx + ty * ty + tz * tz);
+                nx += tx;
+                ny += ty;
+                nz += tz;
+                px += (vertices[a] + vertices[b] + vertices[d]) / 3.0 * triangleArea;
+                py += (vertices[a + 1] + vertices[b + 1] + vertices[d + 1]) / 3.0 * triangleArea;
+                pz += (vertices[a + 2] + vertices[b + 2] + vertices[d + 2]) / 3.0 * triangleArea;
+                area += triangleArea;
+            }
+            double normalLength = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (area <= 0 || normalLength <= 0) continue; // Вырожденный кластер оставляем с ключом 0
+            double dx = px / area - cx, dy = py / area - cy, dz = pz / area - cz;
+            keys[c] = (float) ((dx * nx + dy * ny + dz * nz) / normalLength);
+        }
+
+        // Сортируем номера кластеров по убыванию ключа; сортировка стабильная
+        Integer[] order = new Integer[clusterCount];
+        for (int c = 0; c < clusterCount; c++) order[c] = c;
+        Arrays.sort(order, (a, b) -> Float.compare(keys[b], keys[a]));
+
+        int[] result = new int[indices.length];
+        int out = 0;
+        for (int c : order) {
+            int from = clusterStarts.get(c) * 3;
+            int to = (c + 1 < clusterCount ? clusterStarts.get(c + 1) : triangleCount) * 3;
+            System.arraycopy(indices, from, result, out, to - from);
+            out += to - from;
+        }
+        return result;
+    }
+
+    // Перенумеровываем вершины в порядке первого использования, чтобы выборка шла по памяти подряд.
+    // Вершины, на которые не ссылается ни один треугольник, отбрасываются
+    public static MeshData optimizeVertexFetch(MeshData mesh) {
+        int vertexCount = mesh.getVertexCount();
+        int[] remap = new int[vertexCount];
+        Arrays.fill(remap, -1);
+        int[] indices = new int[mesh.indices.length];
+        int next = 0;
+        for (int i = 0; i < indices.length; i++) {
+            int v = mesh.indices[i];
+            if (remap[v] < 0) remap[v] = next++;
+            indices[i] = remap[v];
+        }
+
+        int stride = mesh.stride;
+        float[] vertices = new float[next * stride];
+        for (int v = 0; v < vertexCount; v++) {
+            int target = remap[v];
+            if (target >= 0) System.arraycopy(mesh.vertices, v * stride, vertices, target * stride, stride);
+        }
+        return new MeshData(vertices, indices, mesh.hasNormals, mesh.hasTexCoords);
+    }
+
+    // Очки вершины по позиции в кэше и числу оставшихся треугольников
+    private static float vertexScore(int cachePosition, int valence) {
+        if (valence <= 0) return -1.0f; // Вершина больше не нужна
+        float score = cachePosition >= 0 ? CACHE_SCORES[cachePosition] : 0;
+        return score + VALENCE_SCORES[Math.min(valence, MAX_VALENCE)];
+    }
+
+    // Удаляем треугольник из активной части списка смежности вершины
+    private static void removeTriangle(int[] adjacency, int start, int count, int triangle) {
+        int end = start + count - 1;
+        for (int i = start; i <= end; i++) {
+            if (adjacency[i] == triangle) {
+                adjacency[i] = adjacency[end];
+                adjacency[end] = triangle;
+                return;
+            }
+        }
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) return true;
+        }
+        return false;
+    }
+}
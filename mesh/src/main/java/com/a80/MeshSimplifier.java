@@ -0,0 +1,397 @@
+package com.a80;
+
+import java.util.Arrays;
+
+// Упрощение сетки стягиванием ребер по квадрикам ошибки (вариант Форстманна без очереди с приоритетом).
+// Топология строится по совпадающим позициям, поэтому швы UV и нормалей не рвутся:
+// вершины шва стягиваются только вдоль шва, и углы треугольников на шве сохраняют свои атрибуты
+public final class MeshSimplifier {
+    private static final int MAX_ITERATIONS = 100; // Дальше порог ошибки слишком велик, упрощение останавливается
+    private static final double AGGRESSIVENESS = 7; // Скорость роста порога ошибки между итерациями
+    private static final double BORDER_WEIGHT = 1000; // Вес плоскостей, удерживающих открытые края на месте
+
+    private final int vertexCount; // Вершины по позициям
+    private final double[] positions; // Позиции в нормированных координатах
+    private final double[] quadrics; // Симметричные квадрики 4x4, по 10 чисел на вершину
+    private final boolean[] border; // Вершина лежит на открытом крае
+    private final boolean[] seam; // В этой позиции несколько исходных вершин с разными атрибутами
+    private final int[] attribute; // Исходная вершина, чьи атрибуты получают углы вне шва
+    private final int[] refStart; // Начало списка ссылок вершины на треугольники
+    private final int[] refCount; // Длина списка ссылок
+
+    private int triangleCount; // Треугольники, включая удаленные до ближайшего уплотнения
+    private int[] triangles; // Вершины треугольников
+    private int[] corners; // Исходная вершина (атрибуты) для каждого угла
+    private double[] errors; // Ошибка стягивания трех ребер и минимальная из них
+    private double[] normals; // Нормали треугольников
+    private boolean[] deleted;
+    private boolean[] dirty; // Треугольник изменен на текущей итерации
+
+    private int[] refs = new int[0]; // Ссылки: номер треугольника * 3 + номер угла
+    private int refSize;
+
+    private boolean[] deleted0 = new boolean[16]; // Временные отметки для проверки переворота
+    private boolean[] deleted1 = new boolean[16];
+    private final double[] point = new double[3]; // Временная точка стягивания
+    private final double[] sum = new double[10]; // Временная сумма квадрик
+    private final double[] d1 = new double[3]; // Временные векторы проверки переворота
+    private final double[] d2 = new double[3];
+    private final double[] n = new double[3];
+
+    private MeshSimplifier(double[] positions, int vertexCount, boolean[] seam, int[] attribute, int[] triangles,
+                           int[] corners) {
+        this.vertexCount = vertexCount;
+        this.positions = positions;
+        this.quadrics = new double[vertexCount * 10];
+        this.border = new boolean[vertexCount];
+        this.seam = seam;
+        this.attribute = attribute;
+        this.refStart = new int[vertexCount];
+        this.refCount = new int[vertexCount];
+        this.triangles = triangles;
+        this.corners = corners;
+        this.triangleCount = triangles.length / 3;
+        this.errors = new double[triangleCount * 4];
+        this.normals = new double[triangleCount * 3];
+        this.deleted = new boolean[triangleCount];
+        this.dirty = new boolean[triangleCount];
+    }
+
+    // Упрощаем сетку примерно до targetTriangles треугольников.
+    // Возвращает новую сетку с тем же форматом вершин; исходная не меняется
+    public static MeshData simplify(MeshData mesh, int targetTriangles) {
+        int stride = mesh.stride;
+        int sourceCount = mesh.getVertexCount();
+
+        // Склеиваем вершины с одинаковой позицией: швы атрибутов не должны становиться краями
+        VertexWelder welder = new VertexWelder(sourceCount);
+        int[] positionOf = new int[sourceCount];
+        for (int v = 0; v < sourceCount; v++) {
+            int base = v * stride;
+            positionOf[v] = welder.add(Float.floatToIntBits(mesh.vertices[base]),
+                    Float.floatToIntBits(mesh.vertices[base + 1]), Float.floatToIntBits(mesh.vertices[base + 2]), 0);
+        }
+
+        // Переводим в единичный куб: порог ошибки не должен зависеть от масштаба модели
+        float[] bounds = mesh.computeBounds();
+        double scale = Math.max(bounds[3] - bounds[0], Math.max(bounds[4] - bounds[1], bounds[5] - bounds[2]));
+        if (scale <= 0) scale = 1;
+        int vertexCount = welder.size();
+        double[] positions = new double[vertexCount * 3];
+        boolean[] seam = new boolean[vertexCount];
+        int[] attribute = new int[vertexCount];
+        Arrays.fill(attribute, -1);
+        for (int v = 0; v < sourceCount; v++) {
+            int id = positionOf[v];
+            if (attribute[id] < 0) attribute[id] = v;
+            else seam[id] = true; // Вторая исходная вершина в той же позиции
+            for (int k = 0; k < 3; k++) positions[id * 3 + k] = (mesh.vertices[v * stride + k] - bounds[k]) / scale;
+        }
+
+        int[] triangles = new int[mesh.indices.length];
+        for (int i = 0; i < triangles.length; i++) triangles[i] = positionOf[mesh.indices[i]];
+
+        MeshSimplifier simplifier = new MeshSimplifier(positions, vertexCount, seam, attribute, triangles,
+                mesh.indices.clone());
+        simplifier.run(targetTriangles);
+        return simplifier.toMeshData(mesh, bounds, scale);
+    }
+
+    // Основной цикл: стягиваем ребра с ошибкой ниже растущего порога
+    private void run(int targetTriangles) {
+        int deletedTriangles = 0;
+        int startCount = triangleCount;
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            if (startCount - deletedTriangles <= targetTriangles) break;
+            if (iteration % 5 == 0) updateMesh(iteration); // Периодически убираем удаленные треугольники
+            Arrays.fill(dirty, 0, triangleCount, false);
+
+            double threshold = 1e-9 * Math.pow(iteration + 3, AGGRESSIVENESS);
+            for (int t = 0; t < triangleCount; t++) {
+                if (errors[t * 4 + 3] > threshold || deleted[t] || dirty[t]) continue;
+
+                for (int j = 0; j < 3; j++) {
+                    if (errors[t * 4 + j] >= threshold) continue;
+                    int i0 = triangles[t * 3 + j];
+                    int i1 = triangles[t * 3 + (j + 1) % 3];
+                    if (border[i0] != border[i1]) continue; // Край стягивается только вдоль себя
+                    if (seam[i0] != seam[i1]) continue; // Шов тоже
+
+                    calculateError(i0, i1, point);
+                    ensureDeletedCapacity(Math.max(refCount[i0], refCount[i1]));
+                    if (flipped(point, i0, i1, deleted0) || flipped(point, i1, i0, deleted1)) continue;
+
+                    // Стягиваем i1 в i0
+                    System.arraycopy(point, 0, positions, i0 * 3, 3);
+                    for (int k = 0; k < 10; k++) quadrics[i0 * 10 + k] += quadrics[i1 * 10 + k];
+
+                    int start = refSize;
+                    deletedTriangles += updateTriangles(i0, i0, deleted0, -1);
+                    deletedTriangles += updateTriangles(i0, i1, deleted1, seam[i0] ? -1 : attribute[i0]);
+                    int count = refSize - start;
+                    if (count <= refCount[i0]) { // Новый список помещается на старое место
+                        System.arraycopy(refs, start, refs, refStart[i0], count);
+                        refSize = start;
+                    } else {
+                        refStart[i0] = start;
+                    }
+                    refCount[i0] = count;
+                    break;
+                }
+                if (startCount - deletedTriangles <= targetTriangles) break;
+            }
+        }
+        compact();
+    }
+
+    // Перестраиваем ссылки вершин на треугольники; на первой итерации считаем квадрики и края
+    private void updateMesh(int iteration) {
+        if (iteration > 0) compact();
+
+        Arrays.fill(refCount, 0);
+        for (int i = 0; i < triangleCount * 3; i++) refCount[triangles[i]]++;
+        int offset = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            refStart[v] = offset;
+            offset += refCount[v];
+            refCount[v] = 0;
+        }
+        if (refs.length < offset) refs = new int[offset + (offset >> 1)];
+        refSize = offset;
+        for (int t = 0; t < triangleCount; t++) {
+            for (int j = 0; j < 3; j++) {
+                int v = triangles[t * 3 + j];
+                refs[refStart[v] + refCount[v]++] = t * 3 + j;
+            }
+        }
+        if (iteration > 0) return;
+
+        Arrays.fill(quadrics, 0);
+        for (int t = 0; t < triangleCount; t++) {
+            int a = triangles[t * 3] * 3, b = triangles[t * 3 + 1] * 3, c = triangles[t * 3 + 2] * 3;
+            cross(positions[b] - positions[a], positions[b + 1] - positions[a + 1], positions[b + 2] - positions[a + 2],
+                    positions[c] - positions[a], positions[c + 1] - positions[a + 1], positions[c + 2] - positions[a + 2], n);
+            normalize(n);
+            System.arraycopy(n, 0, normals, t * 3, 3);
+            double d = -(n[0] * positions[a] + n[1] * positions[a + 1] + n[2] * positions[a + 2]);
+            for (int j = 0; j < 3; j++) addPlane(triangles[t * 3 + j], n[0], n[1], n[2], d, 1);
+        }
+
+        // Открытые края: ребро, которое есть только у одного треугольника
+        double[] edgeNormal = new double[3];
+        for (int t = 0; t < triangleCount; t++) {
+            for (int j = 0; j < 3; j++) {
+                int a = triangles[t * 3 + j];
+                int b = triangles[t * 3 + (j + 1) % 3];
+                if (countTrianglesWithEdge(a, b) != 1) continue;
+                border[a] = true;
+                border[b] = true;
+
+                // Плоскость через ребро перпендикулярно треугольнику не дает краю сдвигаться внутрь
+                double ex = positions[b * 3] - positions[a * 3];
+                double ey = positions[b * 3 + 1] - positions[a * 3 + 1];
+                double ez = positions[b * 3 + 2] - positions[a * 3 + 2];
+                cross(ex, ey, ez, normals[t * 3], normals[t * 3 + 1], normals[t * 3 + 2], edgeNormal);
+                normalize(edgeNormal);
+                double d = -(edgeNormal[0] * positions[a * 3] + edgeNormal[1] * positions[a * 3 + 1]
+                        + edgeNormal[2] * positions[a * 3 + 2]);
+                addPlane(a, edgeNormal[0], edgeNormal[1], edgeNormal[2], d, BORDER_WEIGHT);
+                addPlane(b, edgeNormal[0], edgeNormal[1], edgeNormal[2], d, BORDER_WEIGHT);
+            }
+        }
+
+        for (int t = 0; t < triangleCount; t++) updateErrors(t);
+    }
+
+    // Сколько живых треугольников вокруг a содержат вершину b
+    private int countTrianglesWithEdge(int a, int b) {
+        int count = 0;
+        for (int k = 0; k < refCount[a]; k++) {
+            int t = refs[refStart[a] + k] / 3;
+            if (triangles[t * 3] == b || triangles[t * 3 + 1] == b || triangles[t * 3 + 2] == b) count++;
+        }
+        return count;
+    }
+
+    // Переставляем ссылки треугольников стянутой вершины на i0 и пересчитываем их ошибки;
+    // newAttribute >= 0 заменяет атрибуты углов, -1 оставляет исходные
+    private int updateTriangles(int i0, int v, boolean[] deletedMarks, int newAttribute) {
+        int removed = 0;
+        int start = refStart[v];
+        int count = refCount[v];
+        for (int k = 0; k < count; k++) {
+            int ref = refs[start + k];
+            int t = ref / 3;
+            if (deleted[t]) continue;
+            if (deletedMarks[k]) { // Треугольник содержал стягиваемое ребро и вырождается
+                deleted[t] = true;
+                removed++;
+                continue;
+            }
+            triangles[ref] = i0;
+            if (newAttribute >= 0) corners[ref] = newAttribute;
+            dirty[t] = true;
+            updateErrors(t);
+            if (refSize == refs.length) refs = Arrays.copyOf(refs, refs.length + (refs.length >> 1) + 16);
+            refs[refSize++] = ref;
+        }
+        return removed;
+    }
+
+    // Перевернется ли какой-нибудь треугольник вокруг i0, если сдвинуть вершину в p
+    private boolean flipped(double[] p, int i0, int i1, boolean[] deletedMarks) {
+        for (int k = 0; k < refCount[i0]; k++) {
+            int ref = refs[refStart[i0] + k];
+            int t = ref / 3;
+            if (deleted[t]) continue;
+            int s = ref % 3;
+            int id1 = triangles[t * 3 + (s + 1) % 3];
+            int id2 = triangles[t * 3 + (s + 2) % 3];
+            if (id1 == i1 || id2 == i1) { // Треугольник исчезнет вместе с ребром
+                deletedMarks[k] = true;
+                continue;
+            }
+            deletedMarks[k] = false;
+
+            for (int c = 0; c < 3; c++) {
+                d1[c] = positions[id1 * 3 + c] - p[c];
+                d2[c] = positions[id2 * 3 + c] - p[c];
+            }
+            normalize(d1);
+            normalize(d2);
+            if (Math.abs(d1[0] * d2[0] + d1[1] * d2[1] + d1[2] * d2[2]) > 0.999) return true; // Вырожденный треугольник
+            cross(d1[0], d1[1], d1[2], d2[0], d2[1], d2[2], n);
+            normalize(n);
+            if (n[0] * normals[t * 3] + n[1] * normals[t * 3 + 1] + n[2] * normals[t * 3 + 2] < 0.2) return true;
+        }
+        return false;
+    }
+
+    private void updateErrors(int t) {
+        double min = Double.MAX_VALUE;
+        for (int j = 0; j < 3; j++) {
+            double error = calculateError(triangles[t * 3 + j], triangles[t * 3 + (j + 1) % 3], null);
+            errors[t * 4 + j] = error;
+            min = Math.min(min, error);
+        }
+        errors[t * 4 + 3] = min;
+    }
+
+    // Ошибка стягивания ребра (a, b) и лучшая точка для результата
+    private double calculateError(int a, int b, double[] result) {
+        double[] q = sum;
+        for (int k = 0; k < 10; k++) q[k] = quadrics[a * 10 + k] + quadrics[b * 10 + k];
+
+        double det = det(q, 0, 1, 2, 1, 4, 5, 2, 5, 7);
+        if (det != 0 && !(border[a] && border[b])) { // Квадрика обратима: точка с минимальной ошибкой
+            double x = -1 / det * det(q, 1, 2, 3, 4, 5, 6, 5, 7, 8);
+            double y = 1 / det * det(q, 0, 2, 3, 1, 5, 6, 2, 7, 8);
+            double z = -1 / det * det(q, 0, 1, 3, 1, 4, 6, 2, 5, 8);
+            if (result != null) {
+                result[0] = x;
+                result[1] = y;
+                result[2] = z;
+            }
+            return vertexError(q, x, y, z);
+        }
+
+        // Иначе выбираем лучшую из концов ребра и его середины
+        double ax = positions[a * 3], ay = positions[a * 3 + 1], az = positions[a * 3 + 2];
+        double bx = positions[b * 3], by = positions[b * 3 + 1], bz = positions[b * 3 + 2];
+        double mx = (ax + bx) / 2, my = (ay + by) / 2, mz = (az + bz) / 2;
+        double errorA = vertexError(q, ax, ay, az);
+        double errorB = vertexError(q, bx, by, bz);
+        double errorM = vertexError(q, mx, my, mz);
+        double error = Math.min(errorA, Math.min(errorB, errorM));
+        if (result != null) {
+            if (error == errorA) {
+                result[0] = ax; result[1] = ay; result[2] = az;
+            } else if (error == errorB) {
+                result[0] = bx; result[1] = by; result[2] = bz;
+            } else {
+                result[0] = mx; result[1] = my; result[2] = mz;
+            }
+        }
+        return error;
+    }
+
+    // Убираем удаленные треугольники
+    private void compact() {
+        int dst = 0;
+        for (int t = 0; t < triangleCount; t++) {
+            if (deleted[t]) continue;
+            System.arraycopy(triangles, t * 3, triangles, dst * 3, 3);
+            System.arraycopy(corners, t * 3, corners, dst * 3, 3);
+            System.arraycopy(normals, t * 3, normals, dst * 3, 3);
+            System.arraycopy(errors, t * 4, errors, dst * 4, 4);
+            deleted[dst] = false;
+            dst++;
+        }
+        triangleCount = dst;
+    }
+
+    // Собираем результат: вершина = (позиция после упрощения, атрибуты исходного угла)
+    private MeshData toMeshData(MeshData source, float[] bounds, double scale) {
+        int stride = source.stride;
+        VertexWelder welder = new VertexWelder(triangleCount);
+        int[] indices = new int[triangleCount * 3];
+        for (int i = 0; i < indices.length; i++) indices[i] = welder.add(triangles[i], corners[i], 0, 0);
+
+        float[] vertices = new float[welder.size() * stride];
+        for (int v = 0; v < welder.size(); v++) {
+            int p = welder.getPosition(v) * 3;
+            int out = v * stride;
+            System.arraycopy(source.vertices, welder.getTexCoord(v) * stride, vertices, out, stride); // Атрибуты угла
+            for (int k = 0; k < 3; k++) vertices[out + k] = (float) (positions[p + k] * scale + bounds[k]);
+        }
+        return new MeshData(vertices, indices, source.hasNormals, source.hasTexCoords);
+    }
+
+    private void addPlane(int v, double a, double b, double c, double d, double weight) {
+        int q = v * 10;
+        quadrics[q] += weight * a * a;
+        quadrics[q + 1] += weight * a * b;
+        quadrics[q + 2] += weight * a * c;
+        quadrics[q + 3] += weight * a * d;
+        quadrics[q + 4] += weight * b * b;
+        quadrics[q + 5] += weight * b * c;
+        quadrics[q + 6] += weight * b * d;
+        quadrics[q + 7] += weight * c * c;
+        quadrics[q + 8] += weight * c * d;
+        quadrics[q + 9] += weight * d * d;
+    }
+
+    private void ensureDeletedCapacity(int count) {
+        if (deleted0.length < count) {
+            deleted0 = new boolean[count * 2];
+            deleted1 = new boolean[count * 2];
+        }
+    }
+
+    // Ошибка точки относительно квадрики: v^T Q v
+    private static double vertexError(double[] q, double x, double y, double z) {
+        return q[0] * x * x + 2 * q[1] * x * y + 2 * q[2] * x * z + 2 * q[3] * x + q[4] * y * y
+                + 2 * q[5] * y * z + 2 * q[6] * y + q[7] * z * z + 2 * q[8] * z + q[9];
+    }
+
+    // Определитель 3x3 из элементов симметричной квадрики
+    private static double det(double[] m, int a11, int a12, int a13, int a21, int a22, int a23, int a31, int a32, int a33) {
+        return m[a11] * m[a22] * m[a33] + m[a13] * m[a21] * m[a32] + m[a12] * m[a23] * m[a31]
+                - m[a13] * m[a22] * m[a31] - m[a11] * m[a23] * m[a32] - m[a12] * m[a21] * m[a33];
+    }
+
+    private static void cross(double ax, double ay, double az, double bx, double by, double bz, double[] result) {
+        result[0] = ay * bz - az * by;
+        result[1] = az * bx - ax * bz;
+        result[2] = ax * by - ay * bx;
+    }
+
+    private static void normalize(double[] v) {
+        double length = Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+        if (length > 0) {
+            v[0] /= length;
+            v[1] /= length;
+            v[2] /= length;
+        }
+    }
+}
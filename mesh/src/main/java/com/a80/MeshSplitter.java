@@ -0,0 +1,64 @@
+package com.a80;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Делит большую сетку на части, каждая из которых адресуется 16-битными индексами
+public final class MeshSplitter {
+    public static final int MAX_VERTICES = 65536; // Столько вершин помещается в GL_UNSIGNED_SHORT
+
+    private MeshSplitter() {}
+
+    // Нужна ли сетке разбивка для 16-битных индексов
+    public static boolean fitsShortIndices(MeshData mesh) {
+        return mesh.getVertexCount() <= MAX_VERTICES;
+    }
+
+    // Разбиваем сетку на части не более чем по maxVertices вершин с локальными индексами
+    public static List<MeshData> split(MeshData mesh, int maxVertices) {
+        float[] vertices = mesh.vertices;
+        int[] indices = mesh.indices;
+        List<MeshData> parts = new ArrayList<>();
+
+        int[] remap = new int[mesh.getVertexCount()]; // Локальный индекс вершины в текущей части
+        int[] stamp = new int[mesh.getVertexCount()]; // Номер части, в которой remap актуален
+        int part = 1;
+
+        int stride = mesh.stride;
+        FloatStore partVertices = new FloatStore(maxVertices * stride);
+        IntStore partIndices = new IntStore(maxVertices * 3);
+        for (int t = 0; t < indices.length; t += 3) {
+            int a = indices[t], b = indices[t + 1], c = indices[t + 2];
+
+            // Сколько новых вершин добавит треугольник в текущую часть
+            int added = (stamp[a] != part ? 1 : 0)
+                    + (stamp[b] != part && b != a ? 1 : 0)
+                    + (stamp[c] != part && c != a && c != b ? 1 : 0);
+            if (partVertices.size() / stride + added > maxVertices) { // Часть заполнена: закрываем ее
+                parts.add(new MeshData(partVertices.toArray(), partIndices.toArray(), mesh.hasNormals, mesh.hasTexCoords));
+                partVertices.clear();
+                partIndices.clear();
+                part++;
+            }
+
+            partIndices.add(local(a, part, vertices, stride, partVertices, remap, stamp),
+                    local(b, part, vertices, stride, partVertices, remap, stamp),
+                    local(c, part, vertices, stride, partVertices, remap, stamp));
+        }
+        if (partIndices.size() > 0) {
+            parts.add(new MeshData(partVertices.toArray(), partIndices.toArray(), mesh.hasNormals, mesh.hasTexCoords));
+        }
+        return parts;
+    }
+
+    // Возвращаем локальный индекс вершины, копируя ее в часть при первом обращении
+    private static int local(int index, int part, float[] vertices, int stride, FloatStore partVertices,
+                             int[] remap, int[] stamp) {
+        if (stamp[index] != part) {
+            stamp[index] = part;
+            remap[index] = partVertices.size() / stride;
+            for (int k = 0; k < stride; k++) partVertices.add(vertices[index * stride + k]);
+        }
+        return remap[index];
+    }
+}
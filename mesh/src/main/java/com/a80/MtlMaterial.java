@@ -0,0 +1,14 @@
+package com.a80;
+
+// Материал из библиотеки MTL: то, что умеет показать просмотрщик
+public final class MtlMaterial {
+    public final String name; // Имя из newmtl, на него ссылается usemtl
+    public final float[] diffuse; // Kd: диффузный цвет r, g, b
+    public final String diffuseMap; // map_Kd: путь к текстуре относительно MTL как в файле; null, если текстуры нет
+
+    public MtlMaterial(String name, float[] diffuse, String diffuseMap) {
+        this.name = name;
+        this.diffuse = diffuse;
+        this.diffuseMap = diffuseMap;
+    }
+}
@@ -0,0 +1,96 @@
+package com.a80;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Разбор библиотеки материалов MTL. Файлы маленькие, поэтому разбираем построчно через строки;
+// из модели освещения берем только диффузный цвет и его текстуру
+public final class MtlParser {
+    private static final float[] DEFAULT_DIFFUSE = { 0.8f, 0.8f, 0.8f }; // Kd по умолчанию из спецификации MTL
+
+    private MtlParser() {}
+
+    // Материалы по имени в порядке объявления
+    public static Map<String, MtlMaterial> parse(InputStream input) throws IOException {
+        Map<String, MtlMaterial> materials = new LinkedHashMap<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        String name = null;
+        float[] diffuse = null;
+        String diffuseMap = null;
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] tokens = line.split("\\s+");
+            switch (tokens[0]) {
+                case "newmtl":
+                    if (name != null) materials.put(name, new MtlMaterial(name, diffuse, diffuseMap));
+                    name = line.substring(tokens[0].length()).trim();
+                    diffuse = DEFAULT_DIFFUSE.clone();
+                    diffuseMap = null;
+                    break;
+                case "Kd":
+                    if (name == null) break;
+                    if (tokens.length < 4) throw new IOException("Kd needs 3 values at line " + lineNumber);
+                    for (int k = 0; k < 3; k++) diffuse[k] = parseFloat(tokens[k + 1], lineNumber);
+                    break;
+                case "map_Kd":
+                    if (name != null) diffuseMap = mapFileName(tokens, line);
+                    break;
+                default:
+                    break; // Ka, Ks, Ns, illum и прочее освещение не поддерживаем
+            }
+        }
+        if (name != null) materials.put(name, new MtlMaterial(name, diffuse, diffuseMap));
+        return materials;
+    }
+
+    // Имя файла после опций вида -s 1 1 1; имя может содержать пробелы, поэтому берем остаток строки
+    private static String mapFileName(String[] tokens, String line) {
+        int i = 1;
+        while (i < tokens.length - 1 && tokens[i].startsWith("-")) i += 1 + optionArguments(tokens, i);
+        if (i >= tokens.length) return null;
+        int at = line.indexOf(tokens[i], line.indexOf(tokens[i - 1]) + tokens[i - 1].length());
+        return line.substring(at).trim();
+    }
+
+    // Количество аргументов опции map_*: у -o, -s, -t до трех чисел, у -mm два, у остальных один
+    private static int optionArguments(String[] tokens, int option) {
+        switch (tokens[option]) {
+            case "-o":
+            case "-s":
+            case "-t":
+                int count = 0;
+                while (count < 3 && option + 1 + count < tokens.length - 1 && isNumber(tokens[option + 1 + count])) count++;
+                return count;
+            case "-mm":
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    private static boolean isNumber(String token) {
+        try {
+            Float.parseFloat(token);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static float parseFloat(String token, int lineNumber) throws IOException {
+        try {
+            return Float.parseFloat(token);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid number '" + token + "' at line " + lineNumber);
+        }
+    }
+}
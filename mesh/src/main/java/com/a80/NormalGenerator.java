@@ -0,0 +1,372 @@
+package com.a80;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Сглаженные нормали для сеток без vn: нормаль угла - сумма нормалей граней вокруг позиции, взвешенных
+// по площади. Грани, которые расходятся с гранью угла больше угла излома, в сумму не входят, и на изломе
+// вершина делится на копии. Тяжелые проходы идут на fork-join пуле по диапазонам, и каждый пишет только
+// в свои ячейки: суммы собираются для позиции, а не разбрасываются по вершинам, поэтому без атомиков
+public final class NormalGenerator {
+    public static final float DEFAULT_CREASE_ANGLE = 45f; // Градусы; углы куба и ребра деталей остаются острыми
+    private static final int TRIANGLES_PER_TASK = 16384; // Меньше диапазон дробить невыгодно
+    private static final int BLOCKS_PER_THREAD = 8; // Блоков позиций на поток: выравнивает неравные блоки
+    private static final int WELD_BUCKET_BITS = 10; // До 1024 корзин склейки позиций
+
+    private NormalGenerator() {}
+
+    public static MeshData generate(MeshData mesh, float creaseAngle) {
+        return generate(mesh, creaseAngle, ForkJoinPool.commonPool());
+    }
+
+    // Сетка с нормалями; порядок треугольников не меняется, поэтому диапазоны материалов остаются верными.
+    // Угол излома от 180 градусов сглаживает все грани позиции. Сетку с нормалями возвращаем как есть
+    public static MeshData generate(MeshData mesh, float creaseAngle, ForkJoinPool pool) {
+        if (mesh.hasNormals) return mesh;
+        int vertexCount = mesh.getVertexCount();
+        int triangleCount = mesh.getTriangleCount();
+        int[] indices = mesh.indices;
+
+        // Вершины с разными текстурными координатами в одной точке сглаживаются вместе. Позиция - это
+        // ее вершина с наименьшим номером: блоки позиций идут по порядку вершин, и обращения к памяти локальны
+        int[] positionOf = weldPositions(mesh, pool);
+
+        // Нормали граней длиной в удвоенную площадь и обратные длины для проверки угла
+        float[] faceNormals = new float[triangleCount * 3];
+        float[] inverseLengths = new float[triangleCount];
+        pool.invoke(new RangeTask(0, triangleCount, TRIANGLES_PER_TASK,
+                (from, to) -> computeFaceNormals(mesh, faceNormals, inverseLengths, from, to)));
+
+        // Углы по позициям в виде CSR: углы позиции p - corners[offsets[p]..offsets[p + 1]); у вершин,
+        // которые не первые в своей позиции, углов нет
+        int[] offsets = new int[vertexCount + 1];
+        for (int index : indices) offsets[positionOf[index] + 1]++;
+        for (int p = 0; p < vertexCount; p++) offsets[p + 1] += offsets[p];
+        int[] corners = new int[indices.length];
+        int[] fill = Arrays.copyOf(offsets, vertexCount);
+        for (int c = 0; c < indices.length; c++) corners[fill[positionOf[indices[c]]]++] = c;
+
+        // Нормали вершин по блокам позиций. Первая нормаль вершины остается за ней, другие на изломе
+        // становятся копиями, которые блок копит у себя; номера копиям раздаются после всех блоков
+        float cosine = creaseAngle >= 180f ? Float.NEGATIVE_INFINITY : (float) Math.cos(Math.toRadians(creaseAngle));
+        int blockCount = Math.max(1, Math.min(vertexCount, pool.getParallelism() * BLOCKS_PER_THREAD));
+        int blockSize = (vertexCount + blockCount - 1) / blockCount;
+        float[] normals = new float[vertexCount * 3];
+        int[] newIndices = indices.clone(); // Углы копий помечаются -(номер копии в блоке + 1)
+        Copies[] copies = new Copies[blockCount];
+        pool.invoke(new RangeTask(0, blockCount, 1, (from, to) -> {
+            for (int block = from; block < to; block++) {
+                copies[block] = smoothBlock(block * blockSize, Math.min(vertexCount, (block + 1) * blockSize),
+                        indices, offsets, corners, faceNormals, inverseLengths, cosine, normals, newIndices);
+            }
+        }));
+
+        int[] copyBase = new int[blockCount];
+        int total = vertexCount;
+        for (int block = 0; block < blockCount; block++) {
+            copyBase[block] = total;
+            total += copies[block].vertices.size();
+        }
+        if (total > vertexCount) {
+            pool.invoke(new RangeTask(0, triangleCount, TRIANGLES_PER_TASK, (from, to) -> {
+                for (int c = from * 3; c < to * 3; c++) {
+                    if (newIndices[c] >= 0) continue;
+                    newIndices[c] = copyBase[positionOf[indices[c]] / blockSize] - newIndices[c] - 1;
+                }
+            }));
+        }
+
+        // Собираем вершины: позиция, нормаль, текстурные координаты
+        int stride = MeshData.strideOf(true, mesh.hasTexCoords);
+        float[] vertices = new float[total * stride];
+        pool.invoke(new RangeTask(0, vertexCount, TRIANGLES_PER_TASK,
+                (from, to) -> writeVertices(mesh, normals, 0, from, to, from, vertices, stride)));
+        for (int block = 0; block < blockCount; block++) {
+            IntStore copyVertices = copies[block].vertices;
+            float[] copyNormals = copies[block].normals.toArray();
+            for (int i = 0; i < copyVertices.size(); i++) {
+                writeVertices(mesh, copyNormals, i * 3, copyVertices.get(i), copyVertices.get(i) + 1,
+                        copyBase[block] + i, vertices, stride);
+            }
+        }
+        return new MeshData(vertices, newIndices, true, mesh.hasTexCoords);
+    }
+
+    // Первая вершина с теми же координатами для каждой вершины; совпадение точное, по битам float.
+    // Вершины раскладываются по корзинам старшими битами хэша, и корзины склеиваются параллельно
+    // своими небольшими таблицами
+    private static int[] weldPositions(MeshData mesh, ForkJoinPool pool) {
+        int vertexCount = mesh.getVertexCount();
+        float[] v = mesh.vertices;
+        int stride = mesh.stride;
+        int[] hashes = new int[vertexCount];
+        pool.invoke(new RangeTask(0, vertexCount, TRIANGLES_PER_TASK, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                int base = i * stride;
+                hashes[i] = hash(bits(v[base]), bits(v[base + 1]), bits(v[base + 2]));
+            }
+        }));
+
+        int bucketBits = Math.min(WELD_BUCKET_BITS, Math.max(0, 31 - Integer.numberOfLeadingZeros(vertexCount / 1024)));
+        int bucketCount = 1 << bucketBits;
+        int[] bucketStart = new int[bucketCount + 1];
+        for (int hash : hashes) bucketStart[bucket(hash, bucketBits) + 1]++;
+        for (int b = 0; b < bucketCount; b++) bucketStart[b + 1] += bucketStart[b];
+        int[] order = new int[vertexCount]; // Вершины по корзинам, внутри корзины по возрастанию
+        int[] fill = Arrays.copyOf(bucketStart, bucketCount);
+        for (int i = 0; i < vertexCount; i++) order[fill[bucket(hashes[i], bucketBits)]++] = i;
+
+        int[] positionOf = new int[vertexCount];
+        pool.invoke(new RangeTask(0, bucketCount, 1, (from, to) -> {
+            for (int b = from; b < to; b++) {
+                int size = bucketStart[b + 1] - bucketStart[b];
+                int mask = Integer.highestOneBit(Math.max(size, 4) * 2 - 1) * 2 - 1; // Заполнение не больше 50%
+                int[] table = new int[mask + 1]; // Первая вершина позиции + 1; 0 - пусто
+                for (int k = bucketStart[b]; k < bucketStart[b + 1]; k++) {
+                    int i = order[k];
+                    int x = bits(v[i * stride]), y = bits(v[i * stride + 1]), z = bits(v[i * stride + 2]);
+                    int slot = hashes[i] & mask; // Старшие биты ушли на корзину, младшие - на ячейку
+                    while (true) {
+                        int entry = table[slot];
+                        if (entry == 0) {
+                            table[slot] = i + 1;
+                            positionOf[i] = i;
+                            break;
+                        }
+                        int other = (entry - 1) * stride;
+                        if (bits(v[other]) == x && bits(v[other + 1]) == y && bits(v[other + 2]) == z) {
+                            positionOf[i] = entry - 1;
+                            break;
+                        }
+                        slot = (slot + 1) & mask; // Линейное пробирование
+                    }
+                }
+            }
+        }));
+        return positionOf;
+    }
+
+    private static int bucket(int hash, int bucketBits) {
+        return bucketBits == 0 ? 0 : hash >>> (32 - bucketBits);
+    }
+
+    private static void computeFaceNormals(MeshData mesh, float[] faceNormals, float[] inverseLengths, int from, int to) {
+        float[] v = mesh.vertices;
+        int[] indices = mesh.indices;
+        int stride = mesh.stride;
+        for (int t = from; t < to; t++) {
+            int a = indices[t * 3] * stride, b = indices[t * 3 + 1] * stride, c = indices[t * 3 + 2] * stride;
+            float e1x = v[b] - v[a], e1y = v[b + 1] - v[a + 1], e1z = v[b + 2] - v[a + 2];
+            float e2x = v[c] - v[a], e2y = v[c + 1] - v[a + 1], e2z = v[c + 2] - v[a + 2];
+            float nx = e1y * e2z - e1z * e2y;
+            float ny = e1z * e2x - e1x * e2z;
+            float nz = e1x * e2y - e1y * e2x;
+            faceNormals[t * 3] = nx;
+            faceNormals[t * 3 + 1] = ny;
+            faceNormals[t * 3 + 2] = nz;
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            inverseLengths[t] = length > 0 ? 1 / length : 0; // 0 - вырожденная грань, направления у нее нет
+        }
+    }
+
+    // Нормали углов позиций [from, to). Нормаль угла считается только по граням той же позиции,
+    // поэтому блок пишет лишь в нормали своих вершин и в свои углы. Вырожденные грани в углах не сравниваются
+    // и в суммы не входят: иначе полюса UV-сфер и сварные сетки CAD делились бы на изломах, которых нет
+    private static Copies smoothBlock(int from, int to, int[] indices, int[] offsets, int[] corners,
+                                      float[] faceNormals, float[] inverseLengths, float cosine, float[] normals,
+                                      int[] newIndices) {
+        Copies copies = new Copies();
+        float[] faces = new float[48]; // Нормали граней позиции подряд: дальше работа идет в кэше
+        float[] units = new float[48]; // Они же единичной длины
+        float[] sums = new float[48]; // Нормали углов
+        boolean[] degenerate = new boolean[16]; // Грани нулевой площади
+        for (int p = from; p < to; p++) {
+            int first = offsets[p], count = offsets[p + 1] - first;
+            if (count * 3 > faces.length) {
+                faces = new float[count * 6];
+                units = new float[count * 6];
+                sums = new float[count * 6];
+                degenerate = new boolean[count * 2];
+            }
+            float sx = 0, sy = 0, sz = 0;
+            int solid = -1; // Какой-нибудь невырожденный угол; -1 - все грани позиции вырождены
+            for (int i = 0; i < count; i++) {
+                int t = corners[first + i] / 3;
+                float scale = inverseLengths[t];
+                degenerate[i] = scale == 0;
+                if (degenerate[i]) { // Нормаль нулевая, а при NaN в координатах испортила бы сумму
+                    faces[i * 3] = faces[i * 3 + 1] = faces[i * 3 + 2] = 0;
+                    continue;
+                }
+                if (solid < 0) solid = i;
+                float nx = faceNormals[t * 3], ny = faceNormals[t * 3 + 1], nz = faceNormals[t * 3 + 2];
+                faces[i * 3] = nx;
+                faces[i * 3 + 1] = ny;
+                faces[i * 3 + 2] = nz;
+                units[i * 3] = nx * scale;
+                units[i * 3 + 1] = ny * scale;
+                units[i * 3 + 2] = nz * scale;
+                sx += nx;
+                sy += ny;
+                sz += nz;
+            }
+
+            // Чаще всего излома у позиции нет: все углы получают общую сумму, вершины не делятся
+            if (isSmooth(units, degenerate, count, cosine)) {
+                for (int i = 0; i < count; i++) {
+                    int vertex = indices[corners[first + i]];
+                    normals[vertex * 3] = sx;
+                    normals[vertex * 3 + 1] = sy;
+                    normals[vertex * 3 + 2] = sz;
+                }
+                continue;
+            }
+
+            for (int i = 0; i < count; i++) {
+                if (degenerate[i]) continue;
+                float ux = units[i * 3], uy = units[i * 3 + 1], uz = units[i * 3 + 2];
+                sx = 0;
+                sy = 0;
+                sz = 0;
+                for (int j = 0; j < count; j++) {
+                    if (degenerate[j]) continue;
+                    if (j != i && ux * units[j * 3] + uy * units[j * 3 + 1] + uz * units[j * 3 + 2] < cosine) continue;
+                    sx += faces[j * 3];
+                    sy += faces[j * 3 + 1];
+                    sz += faces[j * 3 + 2];
+                }
+                sums[i * 3] = sx;
+                sums[i * 3 + 1] = sy;
+                sums[i * 3 + 2] = sz;
+            }
+            for (int i = 0; i < count; i++) { // Вырожденный угол берет нормаль любой другой грани позиции
+                if (!degenerate[i]) continue;
+                sums[i * 3] = solid >= 0 ? sums[solid * 3] : 0;
+                sums[i * 3 + 1] = solid >= 0 ? sums[solid * 3 + 1] : 0;
+                sums[i * 3 + 2] = solid >= 0 ? sums[solid * 3 + 2] : 0;
+            }
+
+            // Углы одной вершины с одинаковой нормалью делят вершину; суммы одинаковых наборов граней
+            // складываются в одном порядке и совпадают до бита
+            for (int i = 0; i < count; i++) {
+                int corner = corners[first + i];
+                int vertex = indices[corner];
+                int match = -1; // Более ранний угол той же вершины с той же нормалью
+                boolean seen = false; // Встречалась ли вершина раньше в этой позиции
+                for (int j = 0; j < i && match < 0; j++) {
+                    if (indices[corners[first + j]] != vertex) continue;
+                    seen = true;
+                    if (sums[j * 3] == sums[i * 3] && sums[j * 3 + 1] == sums[i * 3 + 1]
+                            && sums[j * 3 + 2] == sums[i * 3 + 2]) {
+                        match = j;
+                    }
+                }
+                if (match >= 0) {
+                    newIndices[corner] = newIndices[corners[first + match]];
+                } else if (!seen) { // Первый угол вершины: нормаль остается за самой вершиной
+                    normals[vertex * 3] = sums[i * 3];
+                    normals[vertex * 3 + 1] = sums[i * 3 + 1];
+                    normals[vertex * 3 + 2] = sums[i * 3 + 2];
+                } else { // Излом: копия вершины со своей нормалью
+                    newIndices[corner] = -copies.vertices.size() - 1;
+                    copies.vertices.add(vertex);
+                    copies.normals.add(sums[i * 3], sums[i * 3 + 1], sums[i * 3 + 2]);
+                }
+            }
+        }
+        return copies;
+    }
+
+    // Все ли невырожденные грани позиции попарно в пределах угла излома
+    private static boolean isSmooth(float[] units, boolean[] degenerate, int count, float cosine) {
+        if (cosine == Float.NEGATIVE_INFINITY) return true;
+        for (int i = 1; i < count; i++) {
+            if (degenerate[i]) continue;
+            float ux = units[i * 3], uy = units[i * 3 + 1], uz = units[i * 3 + 2];
+            for (int j = 0; j < i; j++) {
+                if (degenerate[j]) continue;
+                if (ux * units[j * 3] + uy * units[j * 3 + 1] + uz * units[j * 3 + 2] < cosine) return false;
+            }
+        }
+        return true;
+    }
+
+    // Вершины [from, to) исходной сетки с нормалями normals начиная с normalOffset, в выходные номера с target
+    private static void writeVertices(MeshData mesh, float[] normals, int normalOffset, int from, int to, int target,
+                                      float[] vertices, int stride) {
+        float[] source = mesh.vertices;
+        for (int i = from, out = target * stride, n = normalOffset; i < to; i++, out += stride, n += 3) {
+            int in = i * mesh.stride;
+            vertices[out] = source[in];
+            vertices[out + 1] = source[in + 1];
+            vertices[out + 2] = source[in + 2];
+            float nx = normals[n], ny = normals[n + 1], nz = normals[n + 2];
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length > 0) {
+                vertices[out + 3] = nx / length;
+                vertices[out + 4] = ny / length;
+                vertices[out + 5] = nz / length;
+            } else { // Вершина без граней или только вырожденные грани
+                vertices[out + 5] = 1;
+            }
+            if (mesh.hasTexCoords) {
+                vertices[out + 6] = source[in + 3];
+                vertices[out + 7] = source[in + 4];
+            }
+        }
+    }
+
+    // -0 и +0 - одна точка
+    private static int bits(float value) {
+        return Float.floatToIntBits(value + 0f);
+    }
+
+    // Смешиваем биты координат финализатором Murmur3, как в VertexWelder
+    private static int hash(int x, int y, int z) {
+        int h = x * 0x9E3779B1 + y * 0x85EBCA77 + z * 0xC2B2AE3D;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    // Копии вершин на изломах, найденные одним блоком позиций
+    private static final class Copies {
+        final IntStore vertices = new IntStore(16); // Исходная вершина копии
+        final FloatStore normals = new FloatStore(48); // Ненормированная нормаль копии
+    }
+
+    // Диапазон [from, to) делится пополам, пока не станет не больше threshold
+    private static final class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        interface Body {
+            void run(int from, int to);
+        }
+
+        private final int from;
+        private final int to;
+        private final int threshold;
+        private final Body body;
+
+        RangeTask(int from, int to, int threshold, Body body) {
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                body.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, middle, threshold, body), new RangeTask(middle, to, threshold, body));
+        }
+    }
+}
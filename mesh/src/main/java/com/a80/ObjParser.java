@@ -0,0 +1,455 @@
+package com.a80;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Потоковый парсер OBJ, который работает напрямую с байтами и не создает объектов на каждую строку.
+// Углы граней склеиваются по тройкам (v, vt, vn) в общий чередующийся буфер вершин
+public class ObjParser {
+    private static final int BUFFER_SIZE = 64 * 1024; // Размер буфера чтения
+    private static final int MAX_FAST_DIGITS = 18; // Сколько цифр помещается в long без переполнения
+    private static final long FLOAT_DROPPED_BITS = (1L << 29) - 1; // Биты мантиссы double, которых нет у float
+    private static final long FLOAT_HALFWAY = 1L << 28; // Ровно половина младшего бита float
+
+    // Степени десяти, которые double представляет точно
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Биты маски относительных индексов: такие компоненты сдвигаются при склейке кусков файла
+    static final int RELATIVE_POSITION = 1;
+    static final int RELATIVE_TEX_COORD = 2;
+    static final int RELATIVE_NORMAL = 4;
+
+    private byte[] buffer; // Переиспользуемый буфер чтения, создается при первом потоковом разборе
+    private final FloatStore positions = new FloatStore(3 * 1024); // Координаты из строк v
+    private final FloatStore texCoords = new FloatStore(16); // Текстурные координаты из строк vt
+    private final FloatStore normals = new FloatStore(16); // Нормали из строк vn
+    private final VertexWelder welder = new VertexWelder(1024); // Уникальные тройки (v, vt, vn) углов граней
+    private final IntStore indices = new IntStore(3 * 1024); // Индексы треугольников в склеенных вершинах
+    private final MaterialGroups materials = new MaterialGroups(); // Диапазоны треугольников из строк usemtl
+    private final List<String> materialLibraries = new ArrayList<>(); // Файлы из строк mtllib
+    private int[] face = new int[16]; // Вершины текущей грани
+
+    private boolean chunk; // Разбираем кусок: относительные индексы помечаются, а не разрешаются
+    private byte[] data; // Текущие разбираемые данные
+    private int pos; // Позиция курсора в строке
+    private int limit; // Конец текущей строки
+    private int lineNumber; // Номер строки для сообщений об ошибках
+    private int relativeMask; // Относительные компоненты текущего угла
+
+    // Разбираем весь поток и возвращаем данные сетки
+    public MeshData parse(InputStream inputStream) throws IOException {
+        reset();
+        if (buffer == null) buffer = new byte[BUFFER_SIZE];
+
+        int filled = 0; // Сколько байт лежит в буфере
+        int read;
+        while ((read = inputStream.read(buffer, filled, buffer.length - filled)) >= 0) {
+            filled += read;
+            int lastNewline = lastNewline(buffer, filled);
+            if (lastNewline < 0) {
+                if (filled == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2); // Очень длинная строка
+                continue;
+            }
+            parseLines(buffer, 0, lastNewline + 1); // Разбираем только целые строки
+            int rest = filled - lastNewline - 1;
+            System.arraycopy(buffer, lastNewline + 1, buffer, 0, rest); // Хвост переносим в начало буфера
+            filled = rest;
+        }
+        if (filled > 0) parseLines(buffer, 0, filled); // Последняя строка без перевода строки
+
+        return interleave(welder, positions, texCoords, normals, indices.toArray());
+    }
+
+    // Сколько треугольников уже разобрано; читать из того же потока, что и parse
+    public int getParsedTriangles() {
+        return indices.size() / 3;
+    }
+
+    // Сколько строк разобрано; у куска - сколько в нем строк
+    int getLineCount() {
+        return lineNumber;
+    }
+
+    // Разбираем отдельный кусок файла; индексы вершин и номера строк в ошибках остаются локальными для этого куска
+    void parseChunk(byte[] source, int from, int to) throws IOException {
+        reset();
+        chunk = true;
+        parseLines(source, from, to);
+        data = null; // Не держим ссылку на кусок после разбора
+    }
+
+    // Материалы треугольников в порядке индексов результата parse
+    public MaterialGroups getMaterialGroups() {
+        return materials;
+    }
+
+    // Имена библиотек MTL как они записаны в файле
+    public List<String> getMaterialLibraries() {
+        return materialLibraries;
+    }
+
+    FloatStore getPositions() {
+        return positions;
+    }
+
+    FloatStore getTexCoords() {
+        return texCoords;
+    }
+
+    FloatStore getNormals() {
+        return normals;
+    }
+
+    // Вершины куска; компоненты с битами RELATIVE_* отсчитаны от начала куска
+    VertexWelder getWelder() {
+        return welder;
+    }
+
+    IntStore getIndices() {
+        return indices;
+    }
+
+    // Собираем чередующийся буфер вершин из склеенных троек; отсутствующие атрибуты заполняются нулями
+    static MeshData interleave(VertexWelder welder, FloatStore positions, FloatStore texCoords, FloatStore normals,
+                               int[] indices) throws IOException {
+        int count = welder.size();
+        boolean hasNormals = false;
+        boolean hasTexCoords = false;
+        for (int id = 0; id < count; id++) {
+            hasNormals |= welder.getNormal(id) >= 0;
+            hasTexCoords |= welder.getTexCoord(id) >= 0;
+        }
+
+        int stride = MeshData.strideOf(hasNormals, hasTexCoords);
+        int positionCount = positions.size() / 3;
+        int texCoordCount = texCoords.size() / 2;
+        int normalCount = normals.size() / 3;
+        float[] vertices = new float[count * stride];
+        for (int id = 0; id < count; id++) {
+            int out = id * stride;
+            int v = checkRange(welder.getPosition(id), positionCount, "Vertex");
+            vertices[out] = positions.get(v * 3);
+            vertices[out + 1] = positions.get(v * 3 + 1);
+            vertices[out + 2] = positions.get(v * 3 + 2);
+            out += MeshData.POSITION_SIZE;
+
+            if (hasNormals) {
+                int vn = welder.getNormal(id);
+                if (vn >= 0) {
+                    checkRange(vn, normalCount, "Normal");
+                    vertices[out] = normals.get(vn * 3);
+                    vertices[out + 1] = normals.get(vn * 3 + 1);
+                    vertices[out + 2] = normals.get(vn * 3 + 2);
+                }
+                out += MeshData.NORMAL_SIZE;
+            }
+            if (hasTexCoords) {
+                int vt = welder.getTexCoord(id);
+                if (vt >= 0) {
+                    checkRange(vt, texCoordCount, "Texture coordinate");
+                    vertices[out] = texCoords.get(vt * 2);
+                    vertices[out + 1] = texCoords.get(vt * 2 + 1);
+                }
+            }
+        }
+        return new MeshData(vertices, indices, hasNormals, hasTexCoords);
+    }
+
+    // Индекс должен ссылаться на уже объявленный элемент
+    private static int checkRange(int index, int count, String name) throws IOException {
+        if (index < 0 || index >= count) throw new IOException(name + " index " + (index + 1) + " is out of range");
+        return index;
+    }
+
+    // Сбрасываем состояние перед новым разбором
+    private void reset() {
+        positions.clear();
+        texCoords.clear();
+        normals.clear();
+        welder.clear();
+        indices.clear();
+        materials.clear();
+        materialLibraries.clear();
+        chunk = false;
+        lineNumber = 0;
+    }
+
+    // Разбираем все строки в диапазоне [from, to)
+    private void parseLines(byte[] source, int from, int to) throws IOException {
+        data = source;
+        int lineStart = from;
+        while (lineStart < to) {
+            int lineEnd = lineStart;
+            while (lineEnd < to && source[lineEnd] != '\n') lineEnd++;
+            lineNumber++;
+            pos = lineStart;
+            limit = lineEnd;
+            parseLine();
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    // Разбираем одну строку по ключевому слову
+    private void parseLine() throws IOException {
+        skipSpaces();
+        if (pos + 1 >= limit) return;
+
+        byte keyword = data[pos];
+        byte next = data[pos + 1];
+        if (keyword == 'v' && isSpace(next)) { // Позиция вершины
+            pos++;
+            float x = nextFloat();
+            float y = nextFloat();
+            float z = nextFloat();
+            positions.add(x, y, z);
+        } else if (keyword == 'v' && next == 'n' && pos + 2 < limit && isSpace(data[pos + 2])) { // Нормаль
+            pos += 2;
+            float x = nextFloat();
+            float y = nextFloat();
+            float z = nextFloat();
+            normals.add(x, y, z);
+        } else if (keyword == 'v' && next == 't' && pos + 2 < limit && isSpace(data[pos + 2])) { // Текстурные координаты
+            pos += 2;
+            float u = nextFloat();
+            skipSpaces();
+            float v = pos < limit ? nextFloat() : 0; // Вторая координата необязательна, третья не нужна
+            texCoords.add(u);
+            texCoords.add(v);
+        } else if (keyword == 'f' && isSpace(next)) { // Грань
+            pos++;
+            parseFace();
+        } else if (keyword == 'u' && skipKeyword("usemtl")) { // Материал следующих граней; имя может содержать пробелы
+            materials.use(restOfLine(), indices.size());
+        } else if (keyword == 'm' && skipKeyword("mtllib")) { // Библиотеки материалов через пробел
+            for (String name : restOfLine().split("\\s+")) {
+                if (!name.isEmpty() && !materialLibraries.contains(name)) materialLibraries.add(name);
+            }
+        }
+    }
+
+    // Строки с материалами редкие, поэтому ключевое слово сравниваем со строкой
+    private boolean skipKeyword(String keyword) {
+        int end = pos + keyword.length();
+        if (end >= limit || !isSpace(data[end])) return false;
+        for (int i = 0; i < keyword.length(); i++) {
+            if (data[pos + i] != keyword.charAt(i)) return false;
+        }
+        pos = end;
+        return true;
+    }
+
+    // Остаток строки без пробелов по краям
+    private String restOfLine() {
+        skipSpaces();
+        int end = limit;
+        while (end > pos && isSpace(data[end - 1])) end--;
+        return new String(data, pos, end - pos, StandardCharsets.UTF_8);
+    }
+
+    // Читаем все углы грани и разбиваем многоугольник веером на треугольники
+    private void parseFace() throws IOException {
+        int corners = 0;
+        skipSpaces();
+        while (pos < limit && data[pos] != '#') {
+            if (corners == face.length) face = Arrays.copyOf(face, corners * 2);
+            face[corners++] = nextCorner();
+            skipSpaces();
+        }
+        if (corners < 3) throw error("Face has fewer than 3 vertices");
+        for (int i = 2; i < corners; i++) {
+            indices.add(face[0], face[i - 1], face[i]);
+        }
+    }
+
+    // Читаем угол вида v, v/vt, v//vn или v/vt/vn и возвращаем номер склеенной вершины
+    private int nextCorner() throws IOException {
+        relativeMask = 0;
+        int v = resolveIndex(nextIndex(), positions.size() / 3, RELATIVE_POSITION);
+        int vt = -1;
+        int vn = -1;
+        if (pos < limit && data[pos] == '/') {
+            pos++;
+            if (pos < limit && data[pos] != '/') vt = resolveIndex(nextIndex(), texCoords.size() / 2, RELATIVE_TEX_COORD);
+            if (pos < limit && data[pos] == '/') {
+                pos++;
+                vn = resolveIndex(nextIndex(), normals.size() / 3, RELATIVE_NORMAL);
+            }
+        }
+        if (pos < limit && !isSpace(data[pos])) throw error("Unexpected character in face");
+        return welder.add(v, vt, vn, relativeMask);
+    }
+
+    // Переводим индекс OBJ в индекс массива; отрицательный индекс отсчитывается от последнего элемента
+    private int resolveIndex(int index, int count, int relativeBit) throws IOException {
+        if (index > 0) return index - 1; // Индексы в OBJ начинаются с 1
+        if (index == 0) throw error("Invalid index 0");
+        if (chunk) {
+            relativeMask |= relativeBit; // Сдвинем на число элементов до куска при склейке
+        } else if (count + index < 0) {
+            throw error("Index " + index + " is out of range");
+        }
+        return count + index; // -1 означает последний прочитанный элемент
+    }
+
+    // Читаем целое число со знаком
+    private int nextIndex() throws IOException {
+        boolean negative = false;
+        if (pos < limit && (data[pos] == '-' || data[pos] == '+')) {
+            negative = data[pos] == '-';
+            pos++;
+        }
+        int start = pos;
+        int value = 0;
+        while (pos < limit) {
+            int digit = data[pos] - '0';
+            if (digit < 0 || digit > 9) break;
+            value = value * 10 + digit;
+            pos++;
+        }
+        if (pos == start) throw error("Expected index");
+        return negative ? -value : value;
+    }
+
+    // Читаем число с плавающей точкой без создания строки
+    private float nextFloat() throws IOException {
+        skipSpaces();
+        int start = pos;
+        boolean negative = false;
+        if (pos < limit && (data[pos] == '-' || data[pos] == '+')) {
+            negative = data[pos] == '-';
+            pos++;
+        }
+
+        long mantissa = 0; // Значащие цифры
+        int digits = 0; // Количество значащих цифр в мантиссе
+        int exponent = 0; // Десятичный порядок
+        boolean hasDigits = false;
+        boolean truncated = false; // Цифр больше, чем помещается в long
+
+        while (pos < limit) { // Целая часть
+            int digit = data[pos] - '0';
+            if (digit < 0 || digit > 9) break;
+            hasDigits = true;
+            if (digits < MAX_FAST_DIGITS) {
+                mantissa = mantissa * 10 + digit;
+                if (mantissa != 0) digits++;
+            } else {
+                exponent++;
+                truncated |= digit != 0;
+            }
+            pos++;
+        }
+        if (pos < limit && data[pos] == '.') { // Дробная часть
+            pos++;
+            while (pos < limit) {
+                int digit = data[pos] - '0';
+                if (digit < 0 || digit > 9) break;
+                hasDigits = true;
+                if (digits < MAX_FAST_DIGITS) {
+                    mantissa = mantissa * 10 + digit;
+                    if (mantissa != 0) digits++;
+                    exponent--;
+                } else {
+                    truncated |= digit != 0;
+                }
+                pos++;
+            }
+        }
+        if (!hasDigits) return slowFloat(start); // Например, nan или inf
+
+        if (pos < limit && (data[pos] == 'e' || data[pos] == 'E')) { // Экспонента
+            pos++;
+            boolean negativeExponent = false;
+            if (pos < limit && (data[pos] == '-' || data[pos] == '+')) {
+                negativeExponent = data[pos] == '-';
+                pos++;
+            }
+            int expStart = pos;
+            int value = 0;
+            while (pos < limit) {
+                int digit = data[pos] - '0';
+                if (digit < 0 || digit > 9) break;
+                if (value < 10000) value = value * 10 + digit;
+                pos++;
+            }
+            if (pos == expStart) return slowFloat(start);
+            exponent += negativeExponent ? -value : value;
+        }
+        if (pos < limit && !isSpace(data[pos])) return slowFloat(start); // Неожиданные символы в числе
+
+        float value;
+        if (mantissa == 0) {
+            value = 0f;
+        } else if (!truncated && mantissa < (1L << 53) && exponent >= -22 && exponent <= 22) {
+            // Быстрый путь: мантисса и степень десяти точны в double, и double округлен верно. Перевод во float
+            // округляет второй раз; он совпадает с однократным округлением, если только double не попал ровно
+            // на середину между соседними float: тогда сторону решает отброшенный остаток, и нужен точный разбор
+            double result = exponent < 0 ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+            if ((Double.doubleToRawLongBits(result) & FLOAT_DROPPED_BITS) == FLOAT_HALFWAY) return slowFloat(start);
+            value = (float) result;
+        } else {
+            return slowFloat(start);
+        }
+        return negative ? -value : value;
+    }
+
+    // Медленный, но точный разбор редких форматов через стандартную библиотеку
+    private float slowFloat(int start) throws IOException {
+        pos = start;
+        while (pos < limit && !isSpace(data[pos])) pos++;
+        if (pos == start) throw error("Expected number");
+        String token = new String(data, start, pos - start, StandardCharsets.US_ASCII);
+        try {
+            return Float.parseFloat(token);
+        } catch (NumberFormatException e) {
+            throw error("Invalid number '" + token + "'");
+        }
+    }
+
+    // Пропускаем пробелы и табуляции
+    private void skipSpaces() {
+        while (pos < limit && isSpace(data[pos])) pos++;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    // Ищем последний перевод строки в буфере
+    private static int lastNewline(byte[] source, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (source[i] == '\n') return i;
+        }
+        return -1;
+    }
+
+    private IOException error(String message) {
+        return new SyntaxError(message, lineNumber);
+    }
+
+    // Ошибка в строке файла; у куска номер строки отсчитан от его начала и сдвигается при склейке
+    static final class SyntaxError extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final String reason; // Сообщение без номера строки
+        private final int line;
+
+        SyntaxError(String reason, int line) {
+            super(reason + " at line " + line);
+            this.reason = reason;
+            this.line = line;
+        }
+
+        // Та же ошибка в куске, перед которым lines строк
+        SyntaxError shiftedBy(int lines) {
+            return new SyntaxError(reason, line + lines);
+        }
+    }
+}
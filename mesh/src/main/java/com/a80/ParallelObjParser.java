@@ -0,0 +1,201 @@
+package com.a80;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Параллельный парсер OBJ: режет поток на куски по границам строк и разбирает их на fork-join пуле
+public class ParallelObjParser {
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024; // Размер куска входных данных
+
+    private final ForkJoinPool pool; // Пул потоков для разбора
+    private final int chunkSize; // Размер куска
+    private final AtomicLong parsedTriangles = new AtomicLong(); // Треугольники в уже разобранных кусках
+    private final MaterialGroups materials = new MaterialGroups(); // Материалы последнего разобранного файла
+    private final List<String> materialLibraries = new ArrayList<>(); // Библиотеки MTL последнего файла
+
+    public ParallelObjParser() {
+        this(ForkJoinPool.commonPool(), CHUNK_SIZE);
+    }
+
+    public ParallelObjParser(ForkJoinPool pool, int chunkSize) {
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    // Сколько треугольников уже разобрано; можно читать из любого потока
+    public long getParsedTriangles() {
+        return parsedTriangles.get();
+    }
+
+    // Материалы треугольников после parse; совпадают с последовательным ObjParser
+    public MaterialGroups getMaterialGroups() {
+        return materials;
+    }
+
+    public List<String> getMaterialLibraries() {
+        return materialLibraries;
+    }
+
+    // Разбираем поток; результат совпадает с последовательным ObjParser
+    public MeshData parse(InputStream inputStream) throws IOException {
+        parsedTriangles.set(0);
+        materials.clear();
+        materialLibraries.clear();
+        List<ForkJoinTask<ObjParser>> tasks = new ArrayList<>(); // Задачи в порядке следования кусков
+        try {
+            return parse(inputStream, tasks);
+        } catch (IOException | RuntimeException e) {
+            for (ForkJoinTask<ObjParser> task : tasks) task.cancel(true); // Отмена или ошибка: бросаем оставшиеся куски
+            throw e;
+        }
+    }
+
+    private MeshData parse(InputStream inputStream, List<ForkJoinTask<ObjParser>> tasks) throws IOException {
+        int maxInFlight = pool.getParallelism() * 2; // Ограничиваем число непрочитанных кусков в памяти
+        int joined = 0;
+
+        byte[] carry = new byte[0]; // Неполная строка, оставшаяся от предыдущего куска
+        boolean eof = false;
+        while (!eof) {
+            byte[] chunk = new byte[Math.max(chunkSize, carry.length * 2)];
+            System.arraycopy(carry, 0, chunk, 0, carry.length);
+            int filled = carry.length;
+            while (filled < chunk.length) { // Заполняем кусок целиком
+                int read = inputStream.read(chunk, filled, chunk.length - filled);
+                if (read < 0) {
+                    eof = true;
+                    break;
+                }
+                filled += read;
+            }
+
+            int end = eof ? filled : lastNewline(chunk, filled) + 1; // Режем по последнему переводу строки
+            if (end == 0) { // В куске нет ни одного перевода строки: читаем дальше
+                carry = Arrays.copyOf(chunk, filled);
+                continue;
+            }
+            carry = Arrays.copyOfRange(chunk, end, filled);
+
+            final byte[] source = chunk;
+            final int length = end;
+            tasks.add(pool.submit(() -> {
+                ObjParser parser = new ObjParser();
+                parser.parseChunk(source, 0, length);
+                parsedTriangles.addAndGet(parser.getParsedTriangles());
+                return parser;
+            }));
+
+            if (tasks.size() - joined > maxInFlight) { // Даем пулу догнать чтение
+                joinChunk(tasks, joined++);
+            }
+        }
+
+        return merge(tasks);
+    }
+
+    // Склеиваем результаты кусков: локальные вершины склеиваются еще раз, уже по глобальным индексам
+    private MeshData merge(List<ForkJoinTask<ObjParser>> tasks) throws IOException {
+        int count = tasks.size();
+        ObjParser[] parsers = new ObjParser[count];
+        int positionTotal = 0, texCoordTotal = 0, normalTotal = 0, indexTotal = 0, vertexTotal = 0;
+        for (int i = 0; i < count; i++) {
+            parsers[i] = joinChunk(tasks, i);
+            positionTotal += parsers[i].getPositions().size();
+            texCoordTotal += parsers[i].getTexCoords().size();
+            normalTotal += parsers[i].getNormals().size();
+            indexTotal += parsers[i].getIndices().size();
+            vertexTotal += parsers[i].getWelder().size();
+        }
+
+        FloatStore positions = new FloatStore(positionTotal);
+        FloatStore texCoords = new FloatStore(texCoordTotal);
+        FloatStore normals = new FloatStore(normalTotal);
+        VertexWelder welder = new VertexWelder(vertexTotal);
+        int[] indices = new int[indexTotal];
+        List<ForkJoinTask<?>> remaps = new ArrayList<>(count);
+        int indexOffset = 0;
+        for (int i = 0; i < count; i++) {
+            ObjParser parser = parsers[i];
+            // Относительные индексы считались от начала куска, сдвигаем на число элементов до него
+            int positionBase = positions.size() / 3;
+            int texCoordBase = texCoords.size() / 2;
+            int normalBase = normals.size() / 3;
+            positions.addAll(parser.getPositions());
+            texCoords.addAll(parser.getTexCoords());
+            normals.addAll(parser.getNormals());
+
+            // Вершины на стыках кусков встречаются в нескольких кусках; порядок совпадает с последовательным разбором
+            VertexWelder local = parser.getWelder();
+            final int[] remap = new int[local.size()];
+            for (int j = 0; j < remap.length; j++) {
+                int relative = local.getRelative(j);
+                int v = local.getPosition(j) + ((relative & ObjParser.RELATIVE_POSITION) != 0 ? positionBase : 0);
+                int vt = local.getTexCoord(j) + ((relative & ObjParser.RELATIVE_TEX_COORD) != 0 ? texCoordBase : 0);
+                int vn = local.getNormal(j) + ((relative & ObjParser.RELATIVE_NORMAL) != 0 ? normalBase : 0);
+                remap[j] = welder.add(v, vt, vn, 0);
+            }
+
+            materials.append(parser.getMaterialGroups(), indexOffset); // Диапазоны куска - в глобальных индексах
+            for (String library : parser.getMaterialLibraries()) {
+                if (!materialLibraries.contains(library)) materialLibraries.add(library);
+            }
+
+            final IntStore localIndices = parser.getIndices();
+            final int offset = indexOffset;
+            remaps.add(pool.submit(() -> { // Переводим индексы куска в глобальные номера вершин
+                for (int k = 0; k < localIndices.size(); k++) indices[offset + k] = remap[localIndices.get(k)];
+            }));
+            indexOffset += localIndices.size();
+        }
+        for (ForkJoinTask<?> remap : remaps) join(remap);
+
+        return ObjParser.interleave(welder, positions, texCoords, normals, indices);
+    }
+
+    // Ждем кусок; куски дожидаются по порядку, поэтому все предыдущие уже разобраны, и номер строки ошибки
+    // переводится из номера в куске в номер в файле
+    private static ObjParser joinChunk(List<ForkJoinTask<ObjParser>> tasks, int index) throws IOException {
+        try {
+            return join(tasks.get(index));
+        } catch (ObjParser.SyntaxError e) {
+            int linesBefore = 0;
+            for (int i = 0; i < index; i++) linesBefore += join(tasks.get(i)).getLineCount();
+            throw e.shiftedBy(linesBefore);
+        }
+    }
+
+    // Ждем задачу и пробрасываем ошибку разбора как IOException; пул заворачивает ее в RuntimeException,
+    // иногда не один раз
+    private static <T> T join(ForkJoinTask<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Parsing interrupted");
+        } catch (CancellationException e) {
+            throw new InterruptedIOException("Parsing cancelled");
+        } catch (ExecutionException e) {
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) throw (IOException) cause;
+            }
+            throw new IOException("Error parsing chunk: " + e.getCause(), e.getCause());
+        }
+    }
+
+    // Ищем последний перевод строки в куске
+    private static int lastNewline(byte[] source, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (source[i] == '\n') return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,60 @@
+package com.a80;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+// Поток, который считает прочитанные байты и прерывает чтение, если поток загрузки отменен
+public class ProgressInputStream extends FilterInputStream {
+    // Получатель числа прочитанных байт
+    public interface Listener {
+        void onBytesRead(long bytesRead);
+    }
+
+    private final Listener listener;
+    private long bytesRead; // Сколько байт прочитано
+
+    public ProgressInputStream(InputStream in, Listener listener) {
+        super(in);
+        this.listener = listener;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkInterrupted();
+        int value = super.read();
+        if (value >= 0) advance(1);
+        return value;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkInterrupted();
+        int read = super.read(b, off, len);
+        if (read > 0) advance(read);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        checkInterrupted();
+        long skipped = super.skip(n);
+        if (skipped > 0) advance(skipped);
+        return skipped;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    private void advance(long count) {
+        bytesRead += count;
+        listener.onBytesRead(bytesRead);
+    }
+
+    // Отмена загрузки приходит как прерывание потока
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Loading cancelled");
+    }
+}
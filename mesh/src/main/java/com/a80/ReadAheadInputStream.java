@@ -0,0 +1,138 @@
+package com.a80;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Чтение наперед на отдельном потоке: источник, например распаковка gzip, заполняет буферы, пока читатель
+// разбирает уже готовые. Буферов несколько и они переиспользуются, поэтому память ограничена и не растет
+public class ReadAheadInputStream extends InputStream {
+    private static final int BUFFER_SIZE = 1024 * 1024; // Распакованных данных в одном буфере
+    private static final int BUFFER_COUNT = 4; // Сколько буферов может быть заполнено впереди читателя
+    private static final Chunk END = new Chunk(null, 0, null); // Источник кончился
+
+    private final InputStream source;
+    private final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(BUFFER_COUNT); // Пустые буферы
+    private final BlockingQueue<Chunk> filled = new ArrayBlockingQueue<>(BUFFER_COUNT + 1); // И место под конец
+    private final Thread reader; // Поток, который читает source
+    private Chunk current; // Буфер, из которого сейчас читаем
+    private int position; // Позиция в current
+    private boolean finished; // Дочитали до конца или ошибки
+
+    public ReadAheadInputStream(InputStream source, String threadName) {
+        this.source = source;
+        for (int i = 0; i < BUFFER_COUNT; i++) free.add(new byte[BUFFER_SIZE]);
+        reader = new Thread(this::fill, threadName);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) return -1;
+        return current.data[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!ensureData()) return -1;
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current.data, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current != null && current.data != null ? current.length - position : 0;
+    }
+
+    // Останавливаем поток чтения и закрываем источник. После возврата источник никто не читает,
+    // поэтому, например, следующий файл архива можно читать сразу
+    @Override
+    public void close() throws IOException {
+        reader.interrupt();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                reader.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true; // Дожидаемся все равно: иначе источник закроется под читающим потоком
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        finished = true;
+        source.close();
+    }
+
+    // Берем следующий буфер, если текущий прочитан; false - данных больше нет
+    private boolean ensureData() throws IOException {
+        if (current != null && position < current.length) return true;
+        if (finished) return false;
+        if (current != null) free.add(current.data); // Место в free есть: буферов ровно BUFFER_COUNT
+        current = null;
+        Chunk chunk;
+        try {
+            chunk = filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Reading interrupted");
+        }
+        if (chunk.data == null) {
+            finished = true;
+            if (chunk.error != null) throw new IOException(chunk.error.getMessage(), chunk.error);
+            return false;
+        }
+        current = chunk;
+        position = 0;
+        return true;
+    }
+
+    // Поток чтения: заполняем свободные буферы, пока источник не кончится или нас не остановят.
+    // Прочитанное до ошибки источника читатель получает раньше самой ошибки
+    private void fill() {
+        try {
+            while (true) {
+                byte[] buffer = free.take();
+                int length = 0;
+                int read = 0;
+                Exception error = null;
+                try {
+                    while (length < buffer.length && (read = source.read(buffer, length, buffer.length - length)) >= 0) {
+                        length += read;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    error = e;
+                }
+                if (length > 0) filled.put(new Chunk(buffer, length, null));
+                if (error != null) {
+                    filled.put(new Chunk(null, 0, error)); // Место есть: под конец в очереди запасена ячейка
+                    return;
+                }
+                if (read < 0) {
+                    filled.put(END);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Читатель закрыл поток
+        }
+    }
+
+    // Заполненная часть буфера; без данных - конец или ошибка источника
+    private static final class Chunk {
+        final byte[] data;
+        final int length;
+        final Exception error;
+
+        Chunk(byte[] data, int length, Exception error) {
+            this.data = data;
+            this.length = length;
+            this.error = error;
+        }
+    }
+}
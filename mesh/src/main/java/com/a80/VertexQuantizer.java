@@ -0,0 +1,136 @@
+package com.a80;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+// Сжатый формат вершин для GPU: позиции - 16-битные нормализованные числа внутри AABB,
+// нормали - октаэдрическая развертка в два short, текстурные координаты - half float.
+// Перевод позиций обратно в координаты модели делается матрицей, а не в шейдере
+public final class VertexQuantizer {
+    public static final int POSITION_BYTES = 8; // 3 unsigned short и выравнивание до 4 байт
+    public static final int NORMAL_BYTES = 4; // 2 short октаэдрической развертки
+    public static final int HALF_TEX_COORD_BYTES = 4; // 2 half float
+    public static final int FLOAT_TEX_COORD_BYTES = 8; // 2 float, если драйвер не принимает half float
+
+    private static final float POSITION_RANGE = 65535f; // Максимум unsigned short
+    private static final float NORMAL_RANGE = 32767f; // Максимум short
+
+    private VertexQuantizer() {}
+
+    // Размер сжатой вершины в байтах
+    public static int strideOf(boolean hasNormals, boolean hasTexCoords, boolean halfTexCoords) {
+        return POSITION_BYTES + (hasNormals ? NORMAL_BYTES : 0)
+                + (hasTexCoords ? (halfTexCoords ? HALF_TEX_COORD_BYTES : FLOAT_TEX_COORD_BYTES) : 0);
+    }
+
+    // Смещение нормали в сжатой вершине (в байтах)
+    public static int normalOffset() {
+        return POSITION_BYTES;
+    }
+
+    // Смещение текстурных координат в сжатой вершине (в байтах)
+    public static int texCoordOffset(boolean hasNormals) {
+        return POSITION_BYTES + (hasNormals ? NORMAL_BYTES : 0);
+    }
+
+    // Упаковываем чередующиеся float-вершины (stride в float) в прямой буфер сжатого формата.
+    // bounds - AABB позиций, относительно которого квантуются координаты
+    public static ByteBuffer quantize(FloatBuffer vertices, int vertexCount, int stride, boolean hasNormals,
+                                      boolean hasTexCoords, boolean halfTexCoords, float[] bounds) {
+        int outStride = strideOf(hasNormals, hasTexCoords, halfTexCoords);
+        ByteBuffer out = ByteBuffer.allocateDirect(vertexCount * outStride).order(ByteOrder.nativeOrder());
+        float[] scale = new float[3]; // Множитель из координат модели в [0, 65535]
+        for (int k = 0; k < 3; k++) {
+            float extent = bounds[k + 3] - bounds[k];
+            scale[k] = extent > 0 ? POSITION_RANGE / extent : 0; // Плоская ось: все значения равны минимуму
+        }
+        int normalOffset = MeshData.POSITION_SIZE;
+        int texCoordOffset = MeshData.POSITION_SIZE + (hasNormals ? MeshData.NORMAL_SIZE : 0);
+
+        for (int v = 0; v < vertexCount; v++) {
+            int base = v * stride;
+            int at = v * outStride;
+            for (int k = 0; k < 3; k++) {
+                int q = Math.round((vertices.get(base + k) - bounds[k]) * scale[k]);
+                out.putShort(at + k * 2, (short) Math.max(0, Math.min(65535, q)));
+            }
+            out.putShort(at + 6, (short) 0); // Выравнивание
+            at += POSITION_BYTES;
+            if (hasNormals) {
+                putOctahedral(out, at, vertices.get(base + normalOffset), vertices.get(base + normalOffset + 1),
+                        vertices.get(base + normalOffset + 2));
+                at += NORMAL_BYTES;
+            }
+            if (hasTexCoords) {
+                float u = vertices.get(base + texCoordOffset);
+                float t = vertices.get(base + texCoordOffset + 1);
+                if (halfTexCoords) {
+                    out.putShort(at, toHalf(u));
+                    out.putShort(at + 2, toHalf(t));
+                } else {
+                    out.putFloat(at, u);
+                    out.putFloat(at + 4, t);
+                }
+            }
+        }
+        return out;
+    }
+
+    // Матрица, переводящая нормализованные [0, 1] координаты обратно в координаты модели
+    // (масштаб на размер AABB и сдвиг в его минимум), по столбцам, как в android.opengl.Matrix
+    public static void dequantization(float[] bounds, float[] matrix) {
+        for (int i = 0; i < 16; i++) matrix[i] = 0;
+        matrix[0] = bounds[3] - bounds[0];
+        matrix[5] = bounds[4] - bounds[1];
+        matrix[10] = bounds[5] - bounds[2];
+        matrix[12] = bounds[0];
+        matrix[13] = bounds[1];
+        matrix[14] = bounds[2];
+        matrix[15] = 1;
+    }
+
+    // Проецируем нормаль на октаэдр и разворачиваем нижнюю половину в квадрат [-1, 1]^2
+    static void putOctahedral(ByteBuffer out, int at, float x, float y, float z) {
+        float length = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        float u = 0;
+        float v = 0; // Нулевая нормаль превращается в (0, 0, 1)
+        if (length > 0) {
+            u = x / length;
+            v = y / length;
+            if (z < 0) { // Нижняя полусфера уходит в углы квадрата
+                float foldedU = (1 - Math.abs(v)) * (u >= 0 ? 1 : -1);
+                float foldedV = (1 - Math.abs(u)) * (v >= 0 ? 1 : -1);
+                u = foldedU;
+                v = foldedV;
+            }
+        }
+        out.putShort(at, (short) Math.round(u * NORMAL_RANGE));
+        out.putShort(at + 2, (short) Math.round(v * NORMAL_RANGE));
+    }
+
+    // float -> half float с округлением к ближайшему четному
+    static short toHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+        if (exponent == 0xFF) return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0)); // Бесконечность и NaN
+        int e = exponent - 127 + 15;
+        if (e >= 0x1F) return (short) (sign | 0x7C00); // Слишком большое: бесконечность
+        if (e <= 0) { // Денормализованное half или ноль
+            if (e < -10) return (short) sign;
+            mantissa |= 0x800000;
+            int shift = 14 - e;
+            int half = mantissa >> shift;
+            int rest = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (rest > halfway || (rest == halfway && (half & 1) != 0)) half++;
+            return (short) (sign | half);
+        }
+        int half = (e << 10) | (mantissa >> 13);
+        int rest = mantissa & 0x1FFF;
+        if (rest > 0x1000 || (rest == 0x1000 && (half & 1) != 0)) half++; // Перенос в экспоненту тоже корректен
+        return (short) (sign | half);
+    }
+}
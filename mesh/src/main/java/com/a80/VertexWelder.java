@@ -0,0 +1,99 @@
+package com.a80;
+
+import java.util.Arrays;
+
+// Склейка углов граней OBJ: каждая уникальная тройка (v, vt, vn) получает один номер вершины.
+// Хэш-таблица с открытой адресацией на массивах int, без упаковки ключей в объекты
+public final class VertexWelder {
+    private static final int KEY_SIZE = 4; // v, vt, vn и маска относительных индексов
+
+    private int[] keys; // Ключи вершин подряд по KEY_SIZE int
+    private int count; // Количество уникальных вершин
+    private int[] table; // Номер вершины + 1; 0 означает пустую ячейку
+    private int mask; // Размер таблицы - 1 (размер всегда степень двойки)
+
+    public VertexWelder(int expectedVertices) {
+        int capacity = Integer.highestOneBit(Math.max(expectedVertices, 8) * 2 - 1) * 2; // Заполнение не больше 50%
+        table = new int[capacity];
+        mask = capacity - 1;
+        keys = new int[Math.max(expectedVertices, 8) * KEY_SIZE];
+    }
+
+    // Номер вершины для тройки индексов; -1 означает отсутствующий атрибут.
+    // relative - маска компонент, которые еще нужно сдвинуть при склейке кусков файла
+    public int add(int v, int vt, int vn, int relative) {
+        int slot = hash(v, vt, vn, relative) & mask;
+        while (true) {
+            int entry = table[slot];
+            if (entry == 0) break; // Такой тройки еще не было
+            int key = (entry - 1) * KEY_SIZE;
+            if (keys[key] == v && keys[key + 1] == vt && keys[key + 2] == vn && keys[key + 3] == relative) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask; // Линейное пробирование
+        }
+
+        int id = count++;
+        int key = id * KEY_SIZE;
+        if (key + KEY_SIZE > keys.length) keys = Arrays.copyOf(keys, keys.length + (keys.length >> 1) + KEY_SIZE);
+        keys[key] = v;
+        keys[key + 1] = vt;
+        keys[key + 2] = vn;
+        keys[key + 3] = relative;
+        table[slot] = id + 1;
+        if (count * 2 > table.length) rehash(); // Держим таблицу наполовину пустой
+        return id;
+    }
+
+    // Количество уникальных вершин
+    public int size() {
+        return count;
+    }
+
+    public int getPosition(int id) {
+        return keys[id * KEY_SIZE];
+    }
+
+    public int getTexCoord(int id) {
+        return keys[id * KEY_SIZE + 1];
+    }
+
+    public int getNormal(int id) {
+        return keys[id * KEY_SIZE + 2];
+    }
+
+    public int getRelative(int id) {
+        return keys[id * KEY_SIZE + 3];
+    }
+
+    // Очищаем без освобождения памяти
+    public void clear() {
+        Arrays.fill(table, 0);
+        count = 0;
+    }
+
+    // Удваиваем таблицу и заново раскладываем номера вершин
+    private void rehash() {
+        int[] old = table;
+        table = new int[old.length * 2];
+        mask = table.length - 1;
+        for (int entry : old) {
+            if (entry == 0) continue;
+            int key = (entry - 1) * KEY_SIZE;
+            int slot = hash(keys[key], keys[key + 1], keys[key + 2], keys[key + 3]) & mask;
+            while (table[slot] != 0) slot = (slot + 1) & mask;
+            table[slot] = entry;
+        }
+    }
+
+    // Смешиваем компоненты и доводим биты финализатором Murmur3
+    private static int hash(int v, int vt, int vn, int relative) {
+        int h = v * 0x9E3779B1 + vt * 0x85EBCA77 + vn * 0xC2B2AE3D + relative;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,75 @@
+package com.a80;
+
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+// Сжатие определяется по сигнатуре, и поток после проверки читается с начала
+public class CompressionFormatTest {
+    private static final byte[] OBJ = "v 0 0 0\nv 1 0 0\nv 0 1 0\nf 1 2 3\n".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    public void plainObjIsNotCompressed() throws IOException {
+        InputStream input = buffered(OBJ);
+        assertEquals(CompressionFormat.NONE, CompressionFormat.detect(input));
+        assertArrayEquals(OBJ, readAll(input));
+    }
+
+    @Test
+    public void gzipIsDetectedAndStillReadable() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream output = new GZIPOutputStream(bytes)) {
+            output.write(OBJ);
+        }
+        InputStream input = buffered(bytes.toByteArray());
+        assertEquals(CompressionFormat.GZIP, CompressionFormat.detect(input));
+        assertArrayEquals(OBJ, readAll(new GZIPInputStream(input)));
+    }
+
+    @Test
+    public void zipIsDetectedAndStillReadable() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream output = new ZipOutputStream(bytes)) {
+            output.putNextEntry(new ZipEntry("model.obj"));
+            output.write(OBJ);
+            output.closeEntry();
+        }
+        InputStream input = buffered(bytes.toByteArray());
+        assertEquals(CompressionFormat.ZIP, CompressionFormat.detect(input));
+        ZipInputStream zip = new ZipInputStream(input);
+        assertEquals("model.obj", zip.getNextEntry().getName());
+        assertArrayEquals(OBJ, readAll(zip));
+    }
+
+    @Test
+    public void shortInputsAreNotCompressed() throws IOException {
+        assertEquals(CompressionFormat.NONE, CompressionFormat.detect(buffered(new byte[0])));
+        assertEquals(CompressionFormat.NONE, CompressionFormat.detect(buffered(new byte[] { 0x1F })));
+        assertEquals(CompressionFormat.NONE, CompressionFormat.detect(buffered(new byte[] { 'P', 'K', 3 })));
+    }
+
+    private static InputStream buffered(byte[] data) {
+        return new BufferedInputStream(new ByteArrayInputStream(data));
+    }
+
+    static byte[] readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7919]; // Не кратно буферам источника
+        int read;
+        while ((read = input.read(buffer)) >= 0) output.write(buffer, 0, read);
+        return output.toByteArray();
+    }
+}
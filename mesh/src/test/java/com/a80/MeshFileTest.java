@@ -0,0 +1,96 @@
+package com.a80;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// Запись и отображение файла кэша: сетка из файла должна совпадать с записанной до бита
+public class MeshFileTest {
+    private File file;
+
+    @After
+    public void tearDown() {
+        if (file != null) file.delete();
+    }
+
+    @Test
+    public void shortIndicesRoundTripWithChunks() throws IOException {
+        MeshData mesh = MeshChunker.chunk(TestMeshes.grid(40, true, true), 256);
+        MappedMesh mapped = writeAndMap(mesh);
+        assertEquals("16-bit indices for 1681 vertices", 2, mapped.indexSize);
+        assertTrue("chunks are stored", mapped.chunks != null && mapped.chunks.count > 1);
+        assertSameMesh(mesh, mapped);
+    }
+
+    @Test
+    public void intIndicesRoundTrip() throws IOException {
+        MeshData mesh = TestMeshes.grid(300, false, false); // 90601 вершина не помещается в 16 бит
+        MappedMesh mapped = writeAndMap(mesh);
+        assertEquals("32-bit indices", 4, mapped.indexSize);
+        assertNull(mapped.chunks);
+        assertSameMesh(mesh, mapped);
+    }
+
+    @Test
+    public void truncatedFileIsRejected() throws IOException {
+        writeAndMap(TestMeshes.grid(8, true, false));
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.setLength(output.length() - 4);
+        }
+        assertUnreadable();
+    }
+
+    @Test
+    public void otherVersionIsRejected() throws IOException {
+        writeAndMap(TestMeshes.grid(8, true, false));
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.seek(4);
+            output.write(new byte[] { 2, 0, 0, 0 }); // Версия 2, little-endian
+        }
+        assertUnreadable();
+    }
+
+    private MappedMesh writeAndMap(MeshData mesh) throws IOException {
+        file = File.createTempFile("mesh", ".mesh");
+        MeshFile.write(mesh, file);
+        return MeshFile.map(file);
+    }
+
+    private void assertUnreadable() {
+        try {
+            MeshFile.map(file);
+            fail("Damaged file was mapped");
+        } catch (IOException expected) {
+            // Кэш удаляет такой файл и разбирает исходник заново
+        }
+    }
+
+    private static void assertSameMesh(MeshData expected, MappedMesh mapped) {
+        assertEquals("vertex count", expected.getVertexCount(), mapped.vertexCount);
+        assertEquals("index count", expected.indices.length, mapped.indexCount);
+        assertEquals("vertex stride", expected.stride * 4, mapped.vertexStride);
+        assertEquals(expected.hasNormals, mapped.hasNormals);
+        assertEquals(expected.hasTexCoords, mapped.hasTexCoords);
+        assertArrayEquals("bounds", expected.computeBounds(), mapped.bounds, 0);
+
+        MeshData copy = mapped.toMeshData();
+        assertArrayEquals("vertices", expected.vertices, copy.vertices, 0);
+        assertArrayEquals("indices", expected.indices, copy.indices);
+        if (expected.chunks == null) return;
+        MeshChunks chunks = mapped.chunks;
+        assertEquals("chunk count", expected.chunks.count, chunks.count);
+        assertArrayEquals("chunk starts", expected.chunks.firstIndex, chunks.firstIndex);
+        assertArrayEquals("chunk sizes", expected.chunks.indexCount, chunks.indexCount);
+        assertArrayEquals("chunk bounds", expected.chunks.bounds, chunks.bounds, 0);
+        assertArrayEquals("chunk spheres", expected.chunks.spheres, chunks.spheres, 0);
+    }
+}
@@ -0,0 +1,118 @@
+package com.a80;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Упрощение, оптимизация порядка и нарезка на куски не должны портить сетку: индексы в пределах вершин,
+// треугольники невырождены, а там, где набор треугольников сохраняется, он совпадает с исходным
+public class MeshProcessingTest {
+    private static final float EPSILON = 1e-5f;
+
+    @Test
+    public void simplifiedMeshStaysValidAndInBounds() {
+        MeshData mesh = TestMeshes.grid(60, true, true);
+        MeshData simplified = MeshSimplifier.simplify(mesh, mesh.getTriangleCount() / 4);
+        int triangles = simplified.getTriangleCount();
+        assertTrue("simplified to " + triangles, triangles > 0 && triangles <= mesh.getTriangleCount() / 2);
+        assertEquals(mesh.stride, simplified.stride);
+        assertValidIndices(simplified);
+
+        // Квадрики ставят вершину в точку наименьшей ошибки, и на изгибе она чуть выходит за исходную
+        // поверхность: допускаем 1% размера модели
+        float[] bounds = mesh.computeBounds();
+        float[] result = simplified.computeBounds();
+        float tolerance = 0.01f * Math.max(bounds[3] - bounds[0], Math.max(bounds[4] - bounds[1], bounds[5] - bounds[2]));
+        for (int k = 0; k < 3; k++) {
+            assertTrue("min " + k, result[k] >= bounds[k] - tolerance);
+            assertTrue("max " + k, result[k + 3] <= bounds[k + 3] + tolerance);
+        }
+    }
+
+    @Test
+    public void optimizerKeepsTrianglesAndLowersAcmr() {
+        MeshData mesh = shuffled(TestMeshes.grid(50, true, false));
+        MeshOptimizer.Report report = new MeshOptimizer.Report();
+        MeshData optimized = MeshOptimizer.optimize(mesh, report);
+        assertValidIndices(optimized);
+        assertEquals(triangleSet(mesh), triangleSet(optimized));
+        assertTrue(report.toString(), report.acmrAfter < report.acmrBefore);
+    }
+
+    @Test
+    public void chunksCoverEveryTriangleOnce() {
+        MeshData mesh = TestMeshes.grid(50, false, true);
+        MeshData chunked = MeshChunker.chunk(mesh, 500);
+        MeshChunks chunks = chunked.chunks;
+        assertTrue("several chunks", chunks.count > 1);
+        assertEquals(triangleSet(mesh), triangleSet(chunked));
+
+        int next = 0;
+        for (int c = 0; c < chunks.count; c++) {
+            assertEquals("chunks are contiguous", next, chunks.firstIndex[c]);
+            assertTrue("chunk size", chunks.indexCount[c] > 0 && chunks.indexCount[c] <= 500 * 3);
+            next += chunks.indexCount[c];
+            for (int i = chunks.firstIndex[c]; i < next; i++) { // Вершины куска внутри его AABB и сферы
+                int base = chunked.indices[i] * chunked.stride;
+                float distance = 0;
+                for (int k = 0; k < 3; k++) {
+                    float value = chunked.vertices[base + k];
+                    assertTrue("inside chunk bounds", value >= chunks.bounds[c * 6 + k] - EPSILON
+                            && value <= chunks.bounds[c * 6 + 3 + k] + EPSILON);
+                    float delta = value - chunks.spheres[c * 4 + k];
+                    distance += delta * delta;
+                }
+                assertTrue("inside chunk sphere", Math.sqrt(distance) <= chunks.spheres[c * 4 + 3] + EPSILON);
+            }
+        }
+        assertEquals("chunks cover all indices", chunked.indices.length, next);
+    }
+
+    private static void assertValidIndices(MeshData mesh) {
+        int vertexCount = mesh.getVertexCount();
+        int[] indices = mesh.indices;
+        assertEquals("whole triangles", 0, indices.length % 3);
+        for (int i = 0; i < indices.length; i += 3) {
+            int a = indices[i], b = indices[i + 1], c = indices[i + 2];
+            assertTrue("index in range", a >= 0 && b >= 0 && c >= 0 && a < vertexCount && b < vertexCount && c < vertexCount);
+            assertTrue("triangle " + i / 3 + " is degenerate", a != b && b != c && a != c);
+        }
+    }
+
+    // Треугольники как тройки вершин целиком: номера вершин оптимизация меняет. Тройка поворачивается
+    // к наименьшей вершине, чтобы не зависеть от первого угла, но обход сохраняется
+    private static List<String> triangleSet(MeshData mesh) {
+        List<String> result = new ArrayList<>();
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            String[] corners = new String[3];
+            for (int k = 0; k < 3; k++) corners[k] = vertex(mesh, mesh.indices[t * 3 + k]);
+            int first = 0;
+            for (int k = 1; k < 3; k++) if (corners[k].compareTo(corners[first]) < 0) first = k;
+            result.add(corners[first] + "|" + corners[(first + 1) % 3] + "|" + corners[(first + 2) % 3]);
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private static String vertex(MeshData mesh, int index) {
+        StringBuilder text = new StringBuilder();
+        for (int k = 0; k < mesh.stride; k++) text.append(mesh.vertices[index * mesh.stride + k]).append(' ');
+        return text.toString();
+    }
+
+    // Треугольники в случайном порядке: у исходной сетки порядок уже почти хороший для кэша
+    private static MeshData shuffled(MeshData mesh) {
+        int count = mesh.getTriangleCount();
+        List<Integer> order = new ArrayList<>();
+        for (int t = 0; t < count; t++) order.add(t);
+        Collections.shuffle(order, new java.util.Random(3));
+        int[] indices = new int[mesh.indices.length];
+        for (int t = 0; t < count; t++) System.arraycopy(mesh.indices, order.get(t) * 3, indices, t * 3, 3);
+        return new MeshData(mesh.vertices, indices, mesh.hasNormals, mesh.hasTexCoords);
+    }
+}
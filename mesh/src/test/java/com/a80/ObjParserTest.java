@@ -0,0 +1,68 @@
+package com.a80;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+// Быстрый разбор чисел должен давать ровно то же, что Float.parseFloat: иначе модель отличается
+// от разобранной стандартной библиотекой
+public class ObjParserTest {
+    private static final String[] KNOWN_CASES = { // Точные double ровно посередине между соседними float
+            "31.69102382659912", "20.87343120574951", "3.898694157600403", "1.828376591205597"
+    };
+
+    @Test
+    public void knownHalfwayCasesMatchParseFloat() throws IOException {
+        assertMatchesParseFloat(KNOWN_CASES);
+    }
+
+    // 15-17 значащих цифр, как у экспорта из double
+    @Test
+    public void randomLongNumbersMatchParseFloat() throws IOException {
+        Random random = new Random(11);
+        String[] numbers = new String[30000];
+        for (int i = 0; i < numbers.length; i++) {
+            if (i % 2 == 0) { // Середина между соседними float: на таких числах ошибается двойное округление
+                float low = (float) Math.pow(10, random.nextInt(10) - 3) * (1 + random.nextFloat());
+                numbers[i] = Double.toString(((double) low + Math.nextUp(low)) / 2); // От 0.001: без записи с E
+                continue;
+            }
+            int digits = 15 + random.nextInt(3);
+            StringBuilder number = new StringBuilder(random.nextBoolean() ? "-" : "");
+            int point = random.nextInt(digits + 3) - 2; // Бывает и 0.00ddd
+            if (point <= 0) {
+                number.append("0.");
+                for (int k = point; k < 0; k++) number.append('0');
+            }
+            for (int k = 0; k < digits; k++) {
+                if (k == point && point > 0) number.append('.');
+                number.append((char) ('0' + (k == 0 ? 1 + random.nextInt(9) : random.nextInt(10))));
+            }
+            numbers[i] = number.toString();
+        }
+        assertMatchesParseFloat(numbers);
+    }
+
+    // Числа становятся координатами x вершин. Грани берут вершины по кругу, поэтому первое использование
+    // идет по порядку строк v, и вершина i результата - это число i
+    private static void assertMatchesParseFloat(String[] numbers) throws IOException {
+        int count = numbers.length;
+        StringBuilder obj = new StringBuilder();
+        for (String number : numbers) obj.append("v ").append(number).append(" 0 0\n");
+        for (int i = 0; i < count; i += 3) {
+            obj.append("f ").append(i % count + 1).append(' ').append((i + 1) % count + 1).append(' ')
+                    .append((i + 2) % count + 1).append('\n');
+        }
+        MeshData mesh = new ObjParser().parse(new ByteArrayInputStream(obj.toString().getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(count, mesh.getVertexCount());
+        for (int i = 0; i < count; i++) {
+            assertEquals(numbers[i], Float.floatToIntBits(Float.parseFloat(numbers[i])),
+                    Float.floatToIntBits(mesh.vertices[i * mesh.stride]));
+        }
+    }
+}
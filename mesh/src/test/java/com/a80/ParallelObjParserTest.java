@@ -0,0 +1,163 @@
+package com.a80;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// Параллельный разбор должен давать ровно то же, что последовательный: куски режутся по переводам строк,
+// относительные индексы сдвигаются на элементы предыдущих кусков, а вершины склеиваются заново глобально.
+// Куски маленькие, поэтому строки и грани с относительными ссылками часто оказываются на стыках
+public class ParallelObjParserTest {
+    private static final int[] CHUNK_SIZES = { 64, 97, 256, 1024 }; // Меньше строки, некратные и обычные
+
+    @Test
+    public void fullFacesMatchSequentialParser() throws IOException {
+        assertSameAsSequential(generateObj(12, true, true, "\r\n"));
+    }
+
+    @Test
+    public void positionOnlyFacesMatchSequentialParser() throws IOException {
+        assertSameAsSequential(generateObj(12, false, false, "\n"));
+    }
+
+    @Test
+    public void lineLongerThanChunkMatchesSequentialParser() throws IOException {
+        StringBuilder comment = new StringBuilder("# ");
+        for (int i = 0; i < 600; i++) comment.append('x'); // Длиннее куска: строка переносится через несколько
+        String obj = comment + "\r\n" + generateObj(4, true, false, "\r\n") + comment + "\r\n";
+        assertSameAsSequential(obj);
+    }
+
+    @Test
+    public void syntaxErrorReportsSameLineAsSequentialParser() throws IOException {
+        String obj = generateObj(12, true, true, "\r\n");
+        int cut = obj.indexOf("usemtl second");
+        obj = obj.substring(0, cut) + "v 1 zz 0\r\n" + obj.substring(cut); // Далеко от начала: за много кусков
+        byte[] bytes = obj.getBytes(StandardCharsets.US_ASCII);
+        String expected = parseError(new ObjParser()::parse, bytes);
+        assertTrue(expected, expected.startsWith("Invalid number 'zz' at line "));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int chunkSize : CHUNK_SIZES) {
+                assertEquals("chunk size " + chunkSize, expected,
+                        parseError(new ParallelObjParser(pool, chunkSize)::parse, bytes));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static String parseError(Parser parser, byte[] bytes) {
+        try {
+            parser.parse(new ByteArrayInputStream(bytes));
+        } catch (IOException e) {
+            return e.getMessage();
+        }
+        fail("Invalid number was accepted");
+        return null;
+    }
+
+    // parse последовательного или параллельного парсера
+    private interface Parser {
+        MeshData parse(InputStream input) throws IOException;
+    }
+
+    private static void assertSameAsSequential(String obj) throws IOException {
+        byte[] bytes = obj.getBytes(StandardCharsets.US_ASCII);
+        ObjParser sequential = new ObjParser();
+        MeshData expected = sequential.parse(new ByteArrayInputStream(bytes));
+        assertTrue("generated OBJ has faces", expected.getTriangleCount() > 0);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int chunkSize : CHUNK_SIZES) {
+                ParallelObjParser parser = new ParallelObjParser(pool, chunkSize);
+                MeshData actual = parser.parse(new ByteArrayInputStream(bytes));
+                String message = "chunk size " + chunkSize;
+                assertEquals(message, expected.hasNormals, actual.hasNormals);
+                assertEquals(message, expected.hasTexCoords, actual.hasTexCoords);
+                assertArrayEquals(message + " vertices", expected.vertices, actual.vertices, 0);
+                assertArrayEquals(message + " indices", expected.indices, actual.indices);
+                assertEquals(message + " triangles", expected.getTriangleCount(), parser.getParsedTriangles());
+                assertEquals(message + " libraries", sequential.getMaterialLibraries(), parser.getMaterialLibraries());
+
+                MaterialGroups groups = parser.getMaterialGroups();
+                MaterialGroups expectedGroups = sequential.getMaterialGroups();
+                assertEquals(message + " materials", expectedGroups.getMaterialCount(), groups.getMaterialCount());
+                MeshData[] expectedParts = expectedGroups.split(expected);
+                MeshData[] parts = groups.split(actual);
+                assertEquals(message + " parts", expectedParts.length, parts.length);
+                for (int m = 0; m < parts.length; m++) {
+                    if (m < groups.getMaterialCount()) assertEquals(expectedGroups.getName(m), groups.getName(m));
+                    assertEquals(message + " part " + m, expectedParts[m] == null, parts[m] == null);
+                    if (parts[m] != null) assertArrayEquals(message + " part " + m, expectedParts[m].indices, parts[m].indices);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Сетка size x size квадов двумя половинами: первая ссылается на вершины абсолютными индексами,
+    // вторая - относительными, и атрибуты второй идут вперемешку с гранями. Квады разбиваются веером
+    private static String generateObj(int size, boolean texCoords, boolean normals, String newline) {
+        StringBuilder obj = new StringBuilder("# generated" + newline + "mtllib parts.mtl" + newline);
+        int side = size + 1;
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                float u = (float) x / size, v = (float) y / size;
+                obj.append(String.format(Locale.US, "v %.6f %.6f %.6f", u, v, 0.1 * Math.sin(u * 5 + v * 3)))
+                        .append(newline);
+                if (texCoords) obj.append(String.format(Locale.US, "vt %.4f %.4f", u, v)).append(newline);
+                if (normals) obj.append("vn 0 0 1").append(newline);
+            }
+        }
+        obj.append("usemtl first").append(newline);
+        for (int y = 0; y < size / 2; y++) {
+            for (int x = 0; x < size; x++) {
+                int a = y * side + x + 1; // OBJ считает с единицы
+                obj.append('f');
+                for (int corner : new int[] { a, a + 1, a + side + 1, a + side }) {
+                    obj.append(' ').append(corner(corner, corner, corner, texCoords, normals));
+                }
+                obj.append(newline);
+            }
+        }
+
+        obj.append("usemtl second material").append(newline);
+        for (int y = size / 2; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                // Свежий квад из четырех новых вершин и сразу грань на них: -4..-1 от конца списков
+                int a = y * side + x, b = a + 1, c = a + side + 1, d = a + side;
+                for (int vertex : new int[] { a, b, c, d }) {
+                    obj.append(String.format(Locale.US, "v %.6f %.6f 0.5", (float) (vertex % side) / size,
+                            (float) (vertex / side) / size)).append(newline);
+                    if (texCoords) obj.append("vt 0.25 0.75").append(newline);
+                    if (normals) obj.append("vn 0 1 0").append(newline);
+                }
+                obj.append('f');
+                for (int k = -4; k <= -1; k++) obj.append(' ').append(corner(k, k, k, texCoords, normals));
+                obj.append(newline);
+            }
+        }
+        return obj.toString();
+    }
+
+    private static String corner(int v, int vt, int vn, boolean texCoords, boolean normals) {
+        if (texCoords && normals) return v + "/" + vt + "/" + vn;
+        if (normals) return v + "//" + vn;
+        if (texCoords) return v + "/" + vt;
+        return Integer.toString(v);
+    }
+}
@@ -0,0 +1,116 @@
+package com.a80;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// Чтение наперед: данные приходят без потерь и по порядку, ошибки источника доходят до читателя,
+// а после close поток чтения завершен и источник закрыт
+public class ReadAheadInputStreamTest {
+    private static final String THREAD = "ReadAheadTest"; // Имя потока чтения
+
+    @Test
+    public void readsWholeSourceAcrossBuffers() throws IOException {
+        byte[] data = new byte[3 * 1024 * 1024 + 12345]; // Несколько буферов и неполный последний
+        new Random(7).nextBytes(data);
+        try (InputStream input = new ReadAheadInputStream(new ByteArrayInputStream(data), THREAD)) {
+            int first = input.read(); // Побайтовое чтение вперемешку с блочным
+            byte[] rest = CompressionFormatTest.readAll(input);
+            assertEquals(data[0] & 0xFF, first);
+            byte[] expected = new byte[data.length - 1];
+            System.arraycopy(data, 1, expected, 0, expected.length);
+            assertArrayEquals(expected, rest);
+            assertEquals("EOF is repeated", -1, input.read());
+            assertEquals("EOF is repeated", -1, input.read(new byte[16], 0, 16));
+        }
+    }
+
+    @Test
+    public void emptySourceEndsImmediately() throws IOException {
+        try (InputStream input = new ReadAheadInputStream(new ByteArrayInputStream(new byte[0]), THREAD)) {
+            assertEquals(-1, input.read());
+        }
+    }
+
+    @Test
+    public void sourceErrorReachesReader() throws IOException {
+        InputStream failing = new InputStream() {
+            private int left = 100; // Отдаем немного данных, потом ломаемся
+
+            @Override
+            public int read() throws IOException {
+                if (left-- > 0) return 'v';
+                throw new IOException("Corrupt gzip trailer");
+            }
+        };
+        try (InputStream input = new ReadAheadInputStream(failing, THREAD)) {
+            int read = 0;
+            try {
+                while (input.read() >= 0) read++;
+                fail("Source error was swallowed");
+            } catch (IOException e) {
+                assertTrue("message kept: " + e.getMessage(), e.getMessage().contains("Corrupt gzip trailer"));
+            }
+            assertEquals("data before the error", 100, read);
+        }
+    }
+
+    @Test
+    public void closeStopsReaderAndClosesSource() throws IOException {
+        EndlessInput source = new EndlessInput();
+        InputStream input = new ReadAheadInputStream(source, THREAD);
+        input.read(); // Поток чтения заполнил буферы и ждет свободного
+        input.close();
+        assertTrue("source closed", source.closed);
+        assertFalse("reader thread is still running", isReaderAlive());
+    }
+
+    @Test
+    public void closeWaitsForReaderEvenWhenInterrupted() throws IOException {
+        EndlessInput source = new EndlessInput();
+        InputStream input = new ReadAheadInputStream(source, THREAD);
+        input.read();
+        Thread.currentThread().interrupt(); // Так close вызывается при отмене загрузки
+        input.close();
+        assertTrue("interrupt is restored", Thread.interrupted());
+        assertTrue("source closed", source.closed);
+        assertFalse("reader thread is still running", isReaderAlive());
+    }
+
+    private static boolean isReaderAlive() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals(THREAD) && thread.isAlive()) return true;
+        }
+        return false;
+    }
+
+    // Источник без конца: поток чтения упирается в свободные буферы и ждет
+    private static final class EndlessInput extends InputStream {
+        volatile boolean closed;
+
+        @Override
+        public int read() {
+            return 'f';
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            for (int i = 0; i < len; i++) b[off + i] = 'f';
+            return len;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.a80;
+
+// Синтетические сетки для тестов: волнистая сетка квадов, как у отсканированной поверхности
+final class TestMeshes {
+    private TestMeshes() {}
+
+    // Квадратная сетка size x size квадов по два треугольника; вершин (size + 1)^2
+    static MeshData grid(int size, boolean normals, boolean texCoords) {
+        int stride = MeshData.strideOf(normals, texCoords);
+        int side = size + 1;
+        float[] vertices = new float[side * side * stride];
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                int base = (y * side + x) * stride;
+                float u = (float) x / size, v = (float) y / size;
+                vertices[base] = u;
+                vertices[base + 1] = v;
+                vertices[base + 2] = 0.05f * (float) (Math.sin(u * 9) * Math.cos(v * 7));
+                if (normals) vertices[base + 5] = 1;
+                if (texCoords) {
+                    vertices[base + stride - 2] = u;
+                    vertices[base + stride - 1] = v;
+                }
+            }
+        }
+        int[] indices = new int[size * size * 6];
+        int k = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int a = y * side + x, b = a + 1, c = a + side, d = c + 1;
+                indices[k++] = a;
+                indices[k++] = b;
+                indices[k++] = d;
+                indices[k++] = a;
+                indices[k++] = d;
+                indices[k++] = c;
+            }
+        }
+        return new MeshData(vertices, indices, normals, texCoords);
+    }
+}
@@ -15,4 +15,6 @@ dependencyResolutionManagement {
 
 rootProject.name = "8.0"
 include(":app")
+include(":mesh")
+include(":benchmark")
  
\ No newline at end of file